@@ -0,0 +1,113 @@
+package com.bank.bootcoinservice.config;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Stores an exchange rate as a fixed 36 byte big-endian record:
+ * <pre>
+ *  0  magic (0xBC)          1  format version
+ *  2  buy rate unscaled     10 buy rate scale
+ *  11 sell rate unscaled    19 sell rate scale
+ *  20 updatedAt epoch millis (UTC)
+ *  28 version
+ * </pre>
+ * Values written by the previous JSON format are still read, so existing keys keep working
+ * until they are next updated.
+ */
+public class ExchangeRateRedisSerializer implements RedisSerializer<BootCoinExchangeRate> {
+    public static final int RECORD_LENGTH = 36;
+    public static final int VERSION_OFFSET = 28;
+    private static final byte MAGIC = (byte) 0xBC;
+    private static final byte FORMAT_VERSION = 1;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+    private final ObjectMapper objectMapper;
+    public ExchangeRateRedisSerializer(ObjectMapper objectMapper) {
+        this.objectMapper = objectMapper;
+    }
+    @Override
+    public byte[] serialize(BootCoinExchangeRate rate) throws SerializationException {
+        if (rate == null) {
+            return new byte[0];
+        }
+        byte[] bytes = new byte[RECORD_LENGTH];
+        bytes[0] = MAGIC;
+        bytes[1] = FORMAT_VERSION;
+        writeDecimal(bytes, 2, rate.getBuyRate());
+        writeDecimal(bytes, 11, rate.getSellRate());
+        writeLong(bytes, 20, toEpochMillis(rate.getUpdatedAt()));
+        writeLong(bytes, VERSION_OFFSET, rate.getVersion());
+        return bytes;
+    }
+    @Override
+    public BootCoinExchangeRate deserialize(byte[] bytes) throws SerializationException {
+        if (bytes == null || bytes.length == 0) {
+            return null;
+        }
+        if (bytes[0] == '{') {
+            return readJson(bytes);
+        }
+        if (bytes.length != RECORD_LENGTH || bytes[0] != MAGIC || bytes[1] != FORMAT_VERSION) {
+            throw new SerializationException("Unrecognized exchange rate record of " + bytes.length + " bytes");
+        }
+        BootCoinExchangeRate rate = new BootCoinExchangeRate();
+        rate.setBuyRate(BigDecimal.valueOf(readLong(bytes, 2), bytes[10]));
+        rate.setSellRate(BigDecimal.valueOf(readLong(bytes, 11), bytes[19]));
+        rate.setUpdatedAt(fromEpochMillis(readLong(bytes, 20)));
+        rate.setVersion(readLong(bytes, VERSION_OFFSET));
+        return rate;
+    }
+    private BootCoinExchangeRate readJson(byte[] bytes) {
+        try {
+            return objectMapper.readValue(bytes, BootCoinExchangeRate.class);
+        } catch (Exception e) {
+            throw new SerializationException("Could not read exchange rate JSON: " + e.getMessage(), e);
+        }
+    }
+    private static void writeDecimal(byte[] bytes, int offset, BigDecimal value) {
+        if (value == null) {
+            throw new SerializationException("Exchange rate values cannot be null");
+        }
+        if (value.scale() < Byte.MIN_VALUE || value.scale() > Byte.MAX_VALUE) {
+            throw new SerializationException("Exchange rate scale out of range: " + value);
+        }
+        try {
+            writeLong(bytes, offset, value.unscaledValue().longValueExact());
+        } catch (ArithmeticException e) {
+            throw new SerializationException("Exchange rate does not fit in 64 bits: " + value, e);
+        }
+        bytes[offset + 8] = (byte) value.scale();
+    }
+    private static long toEpochMillis(LocalDateTime dateTime) {
+        if (dateTime == null) {
+            return NO_TIMESTAMP;
+        }
+        return dateTime.toEpochSecond(ZoneOffset.UTC) * 1000 + dateTime.getNano() / 1_000_000;
+    }
+    private static LocalDateTime fromEpochMillis(long millis) {
+        if (millis == NO_TIMESTAMP) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(millis, 1000),
+                (int) Math.floorMod(millis, 1000) * 1_000_000, ZoneOffset.UTC);
+    }
+    private static void writeLong(byte[] bytes, int offset, long value) {
+        for (int i = 7; i >= 0; i--) {
+            bytes[offset + i] = (byte) value;
+            value >>>= 8;
+        }
+    }
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+}
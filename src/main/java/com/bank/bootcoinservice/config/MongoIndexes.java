@@ -0,0 +1,128 @@
+package com.bank.bootcoinservice.config;
+
+import com.mongodb.MongoException;
+import io.reactivex.Completable;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.data.mapping.context.MappingContext;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.IndexResolver;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentEntity;
+import org.springframework.data.mongodb.core.mapping.MongoPersistentProperty;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Creates the indexes declared on every {@code @Document} class at startup, since automatic index
+ * creation is off. Creation runs in the background so startup does not wait on it; code whose
+ * correctness depends on an index, such as a unique constraint, waits for {@link #ready()}.
+ *
+ * An index that already exists under the same name with other options is kept as it is. Any other
+ * failure, such as a unique index over duplicated data, fails the attempt once the remaining indexes
+ * have been tried: {@link #ready()} then errors, and the next call starts a new attempt, so nothing
+ * relying on an index runs without it. Failed attempts are retried in the background with backoff,
+ * and the instance reports OUT_OF_SERVICE, then DOWN, until an attempt succeeds.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class MongoIndexes implements ReactiveHealthIndicator {
+    // IndexAlreadyExists, IndexOptionsConflict and IndexKeySpecsConflict
+    private static final Set<Integer> EXISTING_INDEX_CODES = Set.of(68, 85, 86);
+    private static final Duration FIRST_RETRY = Duration.ofSeconds(1);
+    private static final Duration MAX_RETRY = Duration.ofMinutes(1);
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final AtomicReference<Completable> attempt = new AtomicReference<>();
+    private volatile boolean created;
+    private volatile String lastError;
+    private Disposable creation;
+    @PostConstruct
+    public void createIndexes() {
+        creation = Mono.defer(() -> Mono.from(ready().toFlowable()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, FIRST_RETRY).maxBackoff(MAX_RETRY))
+                .subscribe(null, error -> { }, () -> log.info("Mongo indexes ensured"));
+    }
+    @PreDestroy
+    public void stop() {
+        if (creation != null) {
+            creation.dispose();
+        }
+    }
+    /**
+     * Completes once every declared index has been ensured, right away after the first time. Errors
+     * when the current attempt failed; calling it again starts a new attempt.
+     */
+    public Completable ready() {
+        return Completable.defer(() -> attempt.updateAndGet(current -> current != null ? current : newAttempt()));
+    }
+    @Override
+    public Mono<Health> health() {
+        return Mono.fromSupplier(() -> {
+            if (created) {
+                return Health.up().build();
+            }
+            String error = lastError;
+            return error == null
+                    ? Health.outOfService().withDetail("indexes", "being created").build()
+                    : Health.down().withDetail("lastError", error).build();
+        });
+    }
+    private Completable newAttempt() {
+        AtomicReference<Completable> self = new AtomicReference<>();
+        self.set(ensureIndexes()
+                .doOnComplete(() -> {
+                    created = true;
+                    lastError = null;
+                })
+                .doOnError(error -> {
+                    lastError = error.getMessage();
+                    log.error("Could not ensure Mongo indexes: {}", error.getMessage());
+                    attempt.compareAndSet(self.get(), null);
+                })
+                .cache());
+        return self.get();
+    }
+    Completable ensureIndexes() {
+        MappingContext<? extends MongoPersistentEntity<?>, MongoPersistentProperty> mappingContext =
+                mongoTemplate.getConverter().getMappingContext();
+        IndexResolver resolver = IndexResolver.create(mappingContext);
+        return Completable.fromPublisher(Flux.<MongoPersistentEntity<?>>fromIterable(
+                        mappingContext.getPersistentEntities())
+                .filter(entity -> entity.isAnnotationPresent(Document.class))
+                .concatMapDelayError(entity -> Flux.fromIterable(resolver.resolveIndexFor(entity.getType()))
+                        .concatMapDelayError(index -> ensureIndex(entity.getCollection(), index)))
+                .then());
+    }
+    private Mono<String> ensureIndex(String collection, IndexDefinition index) {
+        Object name = index.getIndexOptions().get("name");
+        return mongoTemplate.indexOps(collection).ensureIndex(index)
+                .doOnNext(ensured -> log.debug("Ensured index {} on {}", ensured, collection))
+                .onErrorResume(MongoIndexes::isExistingIndex, error -> {
+                    log.warn("Keeping existing index {} on {}: {}", name, collection, error.getMessage());
+                    return Mono.empty();
+                })
+                .doOnError(error -> log.error("Could not create index {} on {}: {}", name, collection,
+                        error.getMessage()));
+    }
+    static boolean isExistingIndex(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException && EXISTING_INDEX_CODES.contains(((MongoException) cause).getCode())) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
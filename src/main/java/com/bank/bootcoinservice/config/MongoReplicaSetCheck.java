@@ -0,0 +1,41 @@
+package com.bank.bootcoinservice.config;
+
+import lombok.extern.slf4j.Slf4j;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PostConstruct;
+import java.time.Duration;
+
+/**
+ * Stops startup when MongoDB is a standalone server. Ledger postings are written in multi-document
+ * transactions and the pending purchase and user feeds read change streams, and both need a replica
+ * set or a sharded cluster. Without this check a standalone server would only fail on the first
+ * posting.
+ */
+@Component
+@Slf4j
+public class MongoReplicaSetCheck {
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final Duration timeout;
+    public MongoReplicaSetCheck(ReactiveMongoTemplate mongoTemplate,
+                                @Value("${bootcoin.mongo.topology-check-timeout-ms:10000}") long timeoutMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+    }
+    @PostConstruct
+    public void check() {
+        Document hello = mongoTemplate.executeCommand(new Document("hello", 1)).block(timeout);
+        if (hello == null || !supportsTransactions(hello)) {
+            throw new IllegalStateException("MongoDB must be a replica set or a sharded cluster: ledger "
+                    + "postings need multi-document transactions.");
+        }
+        log.info("MongoDB supports transactions ({})", hello.containsKey("setName")
+                ? "replica set " + hello.getString("setName") : "sharded cluster");
+    }
+    static boolean supportsTransactions(Document hello) {
+        return hello.containsKey("setName") || "isdbgrid".equals(hello.getString("msg"));
+    }
+}
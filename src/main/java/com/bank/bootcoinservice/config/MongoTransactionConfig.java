@@ -0,0 +1,26 @@
+package com.bank.bootcoinservice.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.data.mongodb.ReactiveMongoDatabaseFactory;
+import org.springframework.data.mongodb.ReactiveMongoTransactionManager;
+import org.springframework.transaction.ReactiveTransactionManager;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+/**
+ * Reactive Mongo transactions, for writes that must land together, such as the two entries of a
+ * ledger posting. MongoDB only runs multi-document transactions on a replica set or a sharded
+ * cluster, which the change streams already require; {@link MongoReplicaSetCheck} stops startup
+ * on anything else.
+ */
+@Configuration
+public class MongoTransactionConfig {
+    @Bean
+    public ReactiveMongoTransactionManager reactiveMongoTransactionManager(ReactiveMongoDatabaseFactory factory) {
+        return new ReactiveMongoTransactionManager(factory);
+    }
+    @Bean
+    public TransactionalOperator transactionalOperator(ReactiveTransactionManager reactiveMongoTransactionManager) {
+        return TransactionalOperator.create(reactiveMongoTransactionManager);
+    }
+}
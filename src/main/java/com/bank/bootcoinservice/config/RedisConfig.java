@@ -1,9 +1,20 @@
 package com.bank.bootcoinservice.config;
 
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateSnapshotStore;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import io.lettuce.core.ClientOptions;
+import io.lettuce.core.ReadFrom;
 import io.lettuce.core.SocketOptions;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.cluster.ClusterTopologyRefreshOptions;
+import io.lettuce.core.metrics.MicrometerCommandLatencyRecorder;
+import io.lettuce.core.metrics.MicrometerOptions;
+import io.lettuce.core.resource.ClientResources;
+import io.lettuce.core.resource.DefaultClientResources;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
-import org.springframework.boot.actuate.health.AbstractHealthIndicator;
 import org.springframework.boot.actuate.health.Health;
 import org.springframework.boot.actuate.health.HealthIndicator;
 import org.springframework.context.annotation.Bean;
@@ -19,54 +30,123 @@ import org.springframework.data.redis.serializer.RedisSerializationContext;
 import org.springframework.data.redis.serializer.StringRedisSerializer;
 
 import java.time.Duration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
 
+/**
+ * One Lettuce client resource set (event loops, timers and command latency metrics) shared by
+ * every connection factory. The topology is selected with {@code spring.data.redis.mode}:
+ * <ul>
+ *   <li>{@code standalone} (default) uses {@code host}/{@code port};</li>
+ *   <li>{@code sentinel} uses {@code nodes} as sentinels and {@code sentinel.master};</li>
+ *   <li>{@code cluster} uses {@code nodes} as seed nodes and follows topology changes.</li>
+ * </ul>
+ * The primary factory serves both blocking and reactive templates, including every exchange rate
+ * read that must see a preceding write (quotes, near cache refills after a change notification).
+ * Reads that tolerate replication lag, such as rate history, go through a second factory on the
+ * same resources, which prefers replicas when the topology has them (sentinel or cluster).
+ */
 @Configuration
 public class RedisConfig {
-    @Value("${spring.data.redis.host}")
+    private static final String MODE_SENTINEL = "sentinel";
+    private static final String MODE_CLUSTER = "cluster";
+    @Value("${spring.data.redis.mode:standalone}")
+    private String redisMode;
+    @Value("${spring.data.redis.host:localhost}")
     private String redisHost;
     @Value("${spring.data.redis.port:6380}")
     private int redisPort;
+    @Value("${spring.data.redis.nodes:}")
+    private List<String> redisNodes;
+    @Value("${spring.data.redis.sentinel.master:}")
+    private String sentinelMaster;
     @Value("${spring.data.redis.password}")
     private String redisPassword;
     @Value("${spring.data.redis.ssl:false}")
     private boolean redisSsl;
     @Value("${spring.data.redis.timeout:10000}")
     private int timeout;
+    @Value("${bootcoin.exchange-rate.redis.read-from:replicaPreferred}")
+    private String exchangeRateReadFrom;
     @Bean
     public ReactiveStringRedisTemplate reactiveStringRedisTemplate(ReactiveRedisConnectionFactory factory) {
         return new ReactiveStringRedisTemplate(factory);
     }
-    private RedisStandaloneConfiguration createRedisConfiguration() {
+    @Bean(destroyMethod = "shutdown")
+    public ClientResources lettuceClientResources(MeterRegistry meterRegistry) {
+        return DefaultClientResources.builder()
+                .commandLatencyRecorder(new MicrometerCommandLatencyRecorder(meterRegistry,
+                        MicrometerOptions.create()))
+                .build();
+    }
+    private LettuceConnectionFactory createConnectionFactory(ClientResources clientResources, ReadFrom readFrom) {
+        LettuceClientConfiguration clientConfiguration = createLettuceConfiguration(clientResources, readFrom);
+        if (MODE_CLUSTER.equalsIgnoreCase(redisMode)) {
+            RedisClusterConfiguration clusterConfig = new RedisClusterConfiguration(requireNodes());
+            clusterConfig.setPassword(RedisPassword.of(redisPassword));
+            return new LettuceConnectionFactory(clusterConfig, clientConfiguration);
+        }
+        if (MODE_SENTINEL.equalsIgnoreCase(redisMode)) {
+            RedisSentinelConfiguration sentinelConfig = new RedisSentinelConfiguration(sentinelMaster,
+                    new HashSet<>(requireNodes()));
+            sentinelConfig.setPassword(RedisPassword.of(redisPassword));
+            return new LettuceConnectionFactory(sentinelConfig, clientConfiguration);
+        }
         RedisStandaloneConfiguration redisConfig = new RedisStandaloneConfiguration(redisHost, redisPort);
         redisConfig.setPassword(RedisPassword.of(redisPassword));
-        return redisConfig;
+        return new LettuceConnectionFactory(redisConfig, clientConfiguration);
+    }
+    private boolean isStandalone() {
+        return !MODE_CLUSTER.equalsIgnoreCase(redisMode) && !MODE_SENTINEL.equalsIgnoreCase(redisMode);
     }
-    private LettuceClientConfiguration createLettuceConfiguration(boolean useSsl) {
+    private List<String> requireNodes() {
+        List<String> nodes = redisNodes.stream()
+                .map(String::trim)
+                .filter(node -> !node.isEmpty())
+                .collect(Collectors.toList());
+        if (nodes.isEmpty()) {
+            throw new IllegalStateException("spring.data.redis.nodes is required in " + redisMode + " mode");
+        }
+        return nodes;
+    }
+    private LettuceClientConfiguration createLettuceConfiguration(ClientResources clientResources,
+                                                                  ReadFrom readFrom) {
+        SocketOptions socketOptions = SocketOptions.builder()
+                .connectTimeout(Duration.ofMillis(timeout))
+                .build();
+        ClientOptions clientOptions = MODE_CLUSTER.equalsIgnoreCase(redisMode)
+                ? ClusterClientOptions.builder()
+                        .socketOptions(socketOptions)
+                        .topologyRefreshOptions(ClusterTopologyRefreshOptions.builder()
+                                .enableAllAdaptiveRefreshTriggers()
+                                .enablePeriodicRefresh(Duration.ofSeconds(30))
+                                .build())
+                        .build()
+                : ClientOptions.builder()
+                        .socketOptions(socketOptions)
+                        .build();
         LettuceClientConfiguration.LettuceClientConfigurationBuilder builder = LettuceClientConfiguration.builder()
+                .clientResources(clientResources)
                 .commandTimeout(Duration.ofMillis(timeout))
                 .shutdownTimeout(Duration.ZERO)
-                .clientOptions(ClientOptions.builder()
-                        .socketOptions(SocketOptions.builder()
-                                .connectTimeout(Duration.ofMillis(timeout))
-                                .build())
-                        .build());
-        if (useSsl) {
+                .clientOptions(clientOptions);
+        if (readFrom != null && !isStandalone()) {
+            builder.readFrom(readFrom);
+        }
+        if (redisSsl) {
             builder.useSsl();
         }
         return builder.build();
     }
     @Bean
     @Primary
-    public RedisConnectionFactory redisConnectionFactory() {
-        return new LettuceConnectionFactory(
-                createRedisConfiguration(),
-                createLettuceConfiguration(redisSsl));
+    public LettuceConnectionFactory redisConnectionFactory(ClientResources lettuceClientResources) {
+        return createConnectionFactory(lettuceClientResources, null);
     }
     @Bean
-    public ReactiveRedisConnectionFactory reactiveRedisConnectionFactory() {
-        return new LettuceConnectionFactory(
-                createRedisConfiguration(),
-                createLettuceConfiguration(redisSsl));
+    public LettuceConnectionFactory replicaConnectionFactory(ClientResources lettuceClientResources) {
+        return createConnectionFactory(lettuceClientResources, ReadFrom.valueOf(exchangeRateReadFrom));
     }
     @Bean
     @Primary
@@ -82,6 +162,29 @@ public class RedisConfig {
         return new ReactiveRedisTemplate<>(reactiveRedisConnectionFactory, context);
     }
     @Bean
+    public ExchangeRateRedisSerializer exchangeRateRedisSerializer(ObjectMapper objectMapper) {
+        return new ExchangeRateRedisSerializer(objectMapper);
+    }
+    @Bean
+    public ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate(
+            @Qualifier("redisConnectionFactory") ReactiveRedisConnectionFactory redisConnectionFactory,
+            ExchangeRateRedisSerializer exchangeRateRedisSerializer) {
+        return new ReactiveRedisTemplate<>(redisConnectionFactory, exchangeRateContext(exchangeRateRedisSerializer));
+    }
+    @Bean
+    public ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateReplicaRedisTemplate(
+            @Qualifier("replicaConnectionFactory") ReactiveRedisConnectionFactory replicaConnectionFactory,
+            ExchangeRateRedisSerializer exchangeRateRedisSerializer) {
+        return new ReactiveRedisTemplate<>(replicaConnectionFactory, exchangeRateContext(exchangeRateRedisSerializer));
+    }
+    private static RedisSerializationContext<String, BootCoinExchangeRate> exchangeRateContext(
+            ExchangeRateRedisSerializer exchangeRateRedisSerializer) {
+        return RedisSerializationContext
+                .<String, BootCoinExchangeRate>newSerializationContext(new StringRedisSerializer())
+                .value(exchangeRateRedisSerializer)
+                .build();
+    }
+    @Bean
     public RedisTemplate<String, String> redisTemplate(RedisConnectionFactory redisConnectionFactory) {
         RedisTemplate<String, String> template = new RedisTemplate<>();
         template.setConnectionFactory(redisConnectionFactory);
@@ -90,20 +193,10 @@ public class RedisConfig {
         return template;
     }
     @Bean
-    public HealthIndicator redisHealthIndicator(ReactiveRedisConnectionFactory redisConnectionFactory) {
-        return new AbstractHealthIndicator() {
-            @Override
-            protected void doHealthCheck(Health.Builder builder) {
-                try {
-                    ReactiveRedisConnection connection = redisConnectionFactory.getReactiveConnection();
-                    connection.ping()
-                            .block(Duration.ofSeconds(1));
-                    builder.up();
-                    connection.close();
-                } catch (Exception e) {
-                    builder.down(e);
-                }
-            }
-        };
+    public HealthIndicator exchangeRateSnapshotHealthIndicator(ExchangeRateSnapshotStore snapshotStore) {
+        return () -> Health.up()
+                .withDetail("servingSnapshot", snapshotStore.isServingSnapshot())
+                .withDetail("snapshotAgeMs", snapshotStore.snapshotAgeMillis())
+                .build();
     }
 }
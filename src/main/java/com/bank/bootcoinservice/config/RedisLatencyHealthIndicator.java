@@ -0,0 +1,137 @@
+package com.bank.bootcoinservice.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.ReactiveHealthIndicator;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Redis health from a background PING sampler, so probes never touch Redis themselves. Pings go
+ * over the shared connection, and their latencies feed the {@code bootcoin.redis.ping} timer.
+ * The last samples are also kept in a window. Health is DOWN after consecutive failed pings, and
+ * OUT_OF_SERVICE while the window's p99 is above the threshold, which takes the instance out of
+ * readiness before Redis fails outright.
+ */
+@Component("redisHealthIndicator")
+@Slf4j
+public class RedisLatencyHealthIndicator implements ReactiveHealthIndicator {
+    private static final int FAILURES_FOR_DOWN = 3;
+    private final ReactiveRedisTemplate<String, String> redisTemplate;
+    private final Duration sampleInterval;
+    private final Duration pingTimeout;
+    private final long p99ThresholdNanos;
+    private final Timer pingTimer;
+    private final long[] window;
+    private int samples;
+    private int next;
+    private int consecutiveFailures;
+    private String lastError;
+    private Disposable sampler;
+    public RedisLatencyHealthIndicator(ReactiveRedisTemplate<String, String> redisTemplate,
+                                       MeterRegistry meterRegistry,
+                                       @Value("${bootcoin.redis.health.sample-interval-ms:2000}")
+                                       long sampleIntervalMillis,
+                                       @Value("${bootcoin.redis.health.window-size:150}") int windowSize,
+                                       @Value("${bootcoin.redis.health.p99-threshold-ms:200}")
+                                       long p99ThresholdMillis) {
+        this.redisTemplate = redisTemplate;
+        this.sampleInterval = Duration.ofMillis(sampleIntervalMillis);
+        this.pingTimeout = Duration.ofSeconds(1);
+        this.p99ThresholdNanos = TimeUnit.MILLISECONDS.toNanos(p99ThresholdMillis);
+        this.window = new long[windowSize];
+        this.pingTimer = Timer.builder("bootcoin.redis.ping")
+                .description("Latency of background Redis PINGs")
+                .publishPercentileHistogram()
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+    }
+    @PostConstruct
+    public void start() {
+        sampler = Flux.interval(Duration.ZERO, sampleInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> ping(), 1)
+                .subscribe();
+    }
+    @PreDestroy
+    public void stop() {
+        if (sampler != null) {
+            sampler.dispose();
+        }
+    }
+    @Override
+    public Mono<Health> health() {
+        return Mono.fromSupplier(this::currentHealth);
+    }
+    private Mono<Void> ping() {
+        return Mono.defer(() -> {
+            long start = System.nanoTime();
+            return redisTemplate.execute(connection -> connection.ping())
+                    .next()
+                    .timeout(pingTimeout)
+                    .doOnSuccess(pong -> record(System.nanoTime() - start))
+                    .doOnError(this::recordFailure)
+                    .onErrorResume(error -> Mono.empty())
+                    .then();
+        });
+    }
+    synchronized void record(long latencyNanos) {
+        pingTimer.record(latencyNanos, TimeUnit.NANOSECONDS);
+        window[next] = latencyNanos;
+        next = (next + 1) % window.length;
+        samples = Math.min(samples + 1, window.length);
+        consecutiveFailures = 0;
+        lastError = null;
+    }
+    synchronized void recordFailure(Throwable error) {
+        consecutiveFailures++;
+        lastError = error.getClass().getSimpleName() + ": " + error.getMessage();
+        if (consecutiveFailures == FAILURES_FOR_DOWN) {
+            log.error("Redis PING failed {} times in a row: {}", consecutiveFailures, lastError);
+        }
+    }
+    synchronized Health currentHealth() {
+        if (samples == 0 && consecutiveFailures == 0) {
+            return Health.unknown().withDetail("samples", 0).build();
+        }
+        long[] sorted = Arrays.copyOf(window, samples);
+        Arrays.sort(sorted);
+        long p50 = percentile(sorted, 0.50);
+        long p99 = percentile(sorted, 0.99);
+        Status status = Status.UP;
+        if (consecutiveFailures >= FAILURES_FOR_DOWN) {
+            status = Status.DOWN;
+        } else if (p99 > p99ThresholdNanos) {
+            status = Status.OUT_OF_SERVICE;
+        }
+        Health.Builder builder = Health.status(status)
+                .withDetail("samples", samples)
+                .withDetail("p50Ms", TimeUnit.NANOSECONDS.toMillis(p50))
+                .withDetail("p99Ms", TimeUnit.NANOSECONDS.toMillis(p99))
+                .withDetail("p99ThresholdMs", TimeUnit.NANOSECONDS.toMillis(p99ThresholdNanos))
+                .withDetail("consecutiveFailures", consecutiveFailures);
+        if (lastError != null) {
+            builder.withDetail("lastError", lastError);
+        }
+        return builder.build();
+    }
+    private static long percentile(long[] sorted, double quantile) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        return sorted[(int) Math.min(sorted.length - 1, Math.ceil(quantile * sorted.length) - 1)];
+    }
+}
@@ -0,0 +1,25 @@
+package com.bank.bootcoinservice.config;
+
+import com.bank.bootcoinservice.service.bootcoinpurchase.SagaTimeouts;
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.actuate.endpoint.annotation.Endpoint;
+import org.springframework.boot.actuate.endpoint.annotation.ReadOperation;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Mono;
+
+import java.util.List;
+
+/**
+ * {@code /actuator/sagas}: purchase sagas waiting for their payment result on any instance, oldest
+ * first, with their age and the time left before the watchdog fails them.
+ */
+@Component
+@Endpoint(id = "sagas")
+@RequiredArgsConstructor
+public class SagaEndpoint {
+    private final SagaTimeouts sagaTimeouts;
+    @ReadOperation
+    public Mono<List<SagaTimeouts.InFlightSaga>> inFlightSagas() {
+        return sagaTimeouts.inFlight().collectList();
+    }
+}
@@ -1,34 +1,114 @@
 package com.bank.bootcoinservice.controller;
 
 import com.bank.bootcoinservice.dto.BaseResponse;
+import com.bank.bootcoinservice.dto.exchangerate.ExchangeRateHistoryPage;
 import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateQuote;
 import com.bank.bootcoinservice.service.exchangerate.BootCoinExchangeRateService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateQuoteService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateVersionConflictException;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
+import org.springframework.util.DigestUtils;
 import org.springframework.web.bind.annotation.*;
 
+import java.time.Instant;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
 @RestController
 @RequestMapping("/api/bootcoin/exchange-rate")
 @RequiredArgsConstructor
 public class BootCoinExchangeRateController {
+    private static final long HEARTBEAT_SECONDS = 15;
     private final BootCoinExchangeRateService exchangeRateService;
+    private final ExchangeRateQuoteService quoteService;
+    private final ObjectMapper objectMapper;
+    private final AtomicReference<EncodedRate> encodedRate = new AtomicReference<>();
+    /**
+     * The rate changes rarely, so the encoded response is kept per version and served as is;
+     * its strong ETag lets clients revalidate with If-None-Match and get a bodiless 304.
+     */
     @GetMapping
-    public Single<ResponseEntity<BaseResponse<BootCoinExchangeRate>>> getExchangeRate() {
+    public Single<ResponseEntity<byte[]>> getExchangeRate(
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch) {
         return exchangeRateService.getCurrentExchangeRate()
-                .map(rate -> ResponseEntity.ok(
-                        BaseResponse.<BootCoinExchangeRate>builder()
-                                .status(HttpStatus.OK.value())
-                                .message("Exchange rate retrieved")
-                                .data(rate)
-                                .build()))
+                .map(rate -> {
+                    EncodedRate encoded = encode(rate);
+                    if (matches(ifNoneMatch, encoded.etag)) {
+                        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                                .eTag(encoded.etag)
+                                .<byte[]>build();
+                    }
+                    return ResponseEntity.ok()
+                            .eTag(encoded.etag)
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(encoded.body);
+                })
                 .onErrorReturn(e -> {
                     return ResponseEntity.status(HttpStatus.NOT_FOUND)
-                            .body(BaseResponse.<BootCoinExchangeRate>builder()
+                            .contentType(MediaType.APPLICATION_JSON)
+                            .body(objectMapper.writeValueAsBytes(BaseResponse.<BootCoinExchangeRate>builder()
                                     .status(HttpStatus.NOT_FOUND.value())
                                     .message("No exchange rate found")
                                     .data(null)
+                                    .build()));
+                });
+    }
+    private EncodedRate encode(BootCoinExchangeRate rate) throws JsonProcessingException {
+        EncodedRate current = encodedRate.get();
+        if (current != null && current.version == rate.getVersion() && rate.getVersion() > 0) {
+            return current;
+        }
+        byte[] body = objectMapper.writeValueAsBytes(BaseResponse.<BootCoinExchangeRate>builder()
+                .status(HttpStatus.OK.value())
+                .message("Exchange rate retrieved")
+                .data(rate)
+                .build());
+        EncodedRate encoded = new EncodedRate(rate.getVersion(), body,
+                "\"" + rate.getVersion() + "-" + DigestUtils.md5DigestAsHex(body) + "\"");
+        encodedRate.set(encoded);
+        return encoded;
+    }
+    private static boolean matches(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : ifNoneMatch.split(",")) {
+            String tag = candidate.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    @PostMapping("/quote")
+    public Single<ResponseEntity<BaseResponse<ExchangeRateQuote>>> createQuote() {
+        return quoteService.createQuote()
+                .map(quote -> ResponseEntity.status(HttpStatus.CREATED)
+                        .body(BaseResponse.<ExchangeRateQuote>builder()
+                                .status(HttpStatus.CREATED.value())
+                                .message("Exchange rate quote created")
+                                .data(quote)
+                                .build()))
+                .onErrorReturn(e -> {
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .body(BaseResponse.<ExchangeRateQuote>builder()
+                                    .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                                    .message("Exchange rate quote unavailable")
+                                    .data(null)
                                     .build());
                 });
     }
@@ -54,7 +134,8 @@ public class BootCoinExchangeRateController {
     @PutMapping("/update")
     public Single<ResponseEntity<BaseResponse<BootCoinExchangeRate>>> updateExchangeRate(
             @RequestBody BootCoinExchangeRate request) {
-        return exchangeRateService.updateExchangeRate(request.getBuyRate(), request.getSellRate())
+        return exchangeRateService.updateExchangeRate(request.getBuyRate(), request.getSellRate(),
+                        request.getVersion())
                 .map(rate -> ResponseEntity.ok(
                         BaseResponse.<BootCoinExchangeRate>builder()
                                 .status(HttpStatus.OK.value())
@@ -62,6 +143,14 @@ public class BootCoinExchangeRateController {
                                 .data(rate)
                                 .build()))
                 .onErrorReturn(e -> {
+                    if (e instanceof ExchangeRateVersionConflictException) {
+                        return ResponseEntity.status(HttpStatus.CONFLICT)
+                                .body(BaseResponse.<BootCoinExchangeRate>builder()
+                                        .status(HttpStatus.CONFLICT.value())
+                                        .message(e.getMessage())
+                                        .data(null)
+                                        .build());
+                    }
                     return ResponseEntity.status(HttpStatus.BAD_REQUEST)
                             .body(BaseResponse.<BootCoinExchangeRate>builder()
                                     .status(HttpStatus.BAD_REQUEST.value())
@@ -70,4 +159,139 @@ public class BootCoinExchangeRateController {
                                     .build());
                 });
     }
+    @GetMapping("/currencies")
+    public Single<ResponseEntity<BaseResponse<Map<String, BootCoinExchangeRate>>>> getExchangeRates() {
+        return exchangeRateService.getExchangeRates()
+                .map(rates -> ResponseEntity.ok(
+                        BaseResponse.<Map<String, BootCoinExchangeRate>>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Exchange rates retrieved")
+                                .data(rates)
+                                .build()))
+                .onErrorReturn(e -> {
+                    return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                            .body(BaseResponse.<Map<String, BootCoinExchangeRate>>builder()
+                                    .status(HttpStatus.SERVICE_UNAVAILABLE.value())
+                                    .message("Exchange rates unavailable")
+                                    .data(null)
+                                    .build());
+                });
+    }
+    @GetMapping("/currencies/{currency}")
+    public Single<ResponseEntity<BaseResponse<BootCoinExchangeRate>>> getExchangeRateForCurrency(
+            @PathVariable String currency) {
+        return exchangeRateService.getExchangeRate(currency)
+                .map(rate -> ResponseEntity.ok(
+                        BaseResponse.<BootCoinExchangeRate>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Exchange rate retrieved")
+                                .data(rate)
+                                .build()))
+                .onErrorReturn(e -> {
+                    HttpStatus status = e instanceof IllegalArgumentException
+                            ? HttpStatus.BAD_REQUEST
+                            : HttpStatus.NOT_FOUND;
+                    return ResponseEntity.status(status)
+                            .body(BaseResponse.<BootCoinExchangeRate>builder()
+                                    .status(status.value())
+                                    .message(e.getMessage())
+                                    .data(null)
+                                    .build());
+                });
+    }
+    @PutMapping("/currencies")
+    public Single<ResponseEntity<BaseResponse<Map<String, BootCoinExchangeRate>>>> updateExchangeRates(
+            @RequestBody Map<String, BootCoinExchangeRate> request) {
+        return exchangeRateService.updateExchangeRates(request)
+                .map(rates -> ResponseEntity.ok(
+                        BaseResponse.<Map<String, BootCoinExchangeRate>>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Exchange rates updated")
+                                .data(rates)
+                                .build()))
+                .onErrorReturn(e -> {
+                    return ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                            .body(BaseResponse.<Map<String, BootCoinExchangeRate>>builder()
+                                    .status(HttpStatus.BAD_REQUEST.value())
+                                    .message(e.getMessage())
+                                    .data(null)
+                                    .build());
+                });
+    }
+    @GetMapping("/history")
+    public Single<ResponseEntity<BaseResponse<ExchangeRateHistoryPage>>> getExchangeRateHistory(
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        return exchangeRateService.getExchangeRateHistory(cursor, size)
+                .map(page -> ResponseEntity.ok(
+                        BaseResponse.<ExchangeRateHistoryPage>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Exchange rate history retrieved")
+                                .data(page)
+                                .build()))
+                .onErrorReturn(e -> {
+                    HttpStatus status = e instanceof IllegalArgumentException
+                            ? HttpStatus.BAD_REQUEST
+                            : HttpStatus.INTERNAL_SERVER_ERROR;
+                    return ResponseEntity.status(status)
+                            .body(BaseResponse.<ExchangeRateHistoryPage>builder()
+                                    .status(status.value())
+                                    .message(e.getMessage())
+                                    .data(null)
+                                    .build());
+                });
+    }
+    @GetMapping("/history/at")
+    public Single<ResponseEntity<BaseResponse<BootCoinExchangeRate>>> getExchangeRateAt(
+            @RequestParam Instant instant) {
+        return exchangeRateService.getRateAt(instant)
+                .map(rate -> ResponseEntity.ok(
+                        BaseResponse.<BootCoinExchangeRate>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Exchange rate retrieved")
+                                .data(rate)
+                                .build()))
+                .onErrorReturn(e -> {
+                    return ResponseEntity.status(HttpStatus.NOT_FOUND)
+                            .body(BaseResponse.<BootCoinExchangeRate>builder()
+                                    .status(HttpStatus.NOT_FOUND.value())
+                                    .message("No exchange rate found at " + instant)
+                                    .data(null)
+                                    .build());
+                });
+    }
+    /**
+     * Sends the current rate, then every change as it is stored. Event ids carry the rate
+     * version so clients can discard anything older than what they already hold; comment
+     * frames keep idle connections from being closed by proxies.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flowable<ServerSentEvent<BootCoinExchangeRate>> streamExchangeRate() {
+        Flowable<BootCoinExchangeRate> current = exchangeRateService.getCurrentExchangeRate()
+                .toFlowable()
+                .onErrorResumeNext(Flowable.empty());
+        Flowable<ServerSentEvent<BootCoinExchangeRate>> rates = Flowable
+                .merge(current, exchangeRateService.getExchangeRateChanges())
+                .map(rate -> ServerSentEvent.builder(rate)
+                        .id(String.valueOf(rate.getVersion()))
+                        .event("exchange-rate")
+                        .build());
+        Flowable<ServerSentEvent<BootCoinExchangeRate>> heartbeats = Flowable
+                .interval(HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<BootCoinExchangeRate>builder()
+                        .comment("heartbeat")
+                        .build());
+        return Flowable.merge(rates, heartbeats);
+    }
+    private static final class EncodedRate {
+        private final long version;
+        private final byte[] body;
+        private final String etag;
+        private EncodedRate(long version, byte[] body, String etag) {
+            this.version = version;
+            this.body = body;
+            this.etag = etag;
+        }
+    }
 }
\ No newline at end of file
@@ -3,7 +3,12 @@ package com.bank.bootcoinservice.controller;
 import com.bank.bootcoinservice.dto.BaseResponse;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinPurchaseRequest;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinPurchaseResponse;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinSellOfferRequest;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinSellRequest;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.PendingPurchaseEvent;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.PendingPurchasePage;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
 import com.bank.bootcoinservice.service.bootcoinpurchase.BootCoinPurchaseService;
 import com.google.common.net.HttpHeaders;
 import io.reactivex.Flowable;
@@ -11,13 +16,19 @@ import io.reactivex.Single;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import org.springframework.web.bind.annotation.*;
+
+import java.math.BigDecimal;
+import java.util.concurrent.TimeUnit;
 @RestController
 @RequestMapping("/api/bootcoin/purchases")
 @RequiredArgsConstructor
 @Slf4j
 public class BootCoinPurchaseController {
+    private static final long HEARTBEAT_SECONDS = 15;
     private final BootCoinPurchaseService service;
     @PostMapping
     public Single<ResponseEntity<BaseResponse<BootCoinPurchaseResponse>>> requestPurchase(
@@ -39,21 +50,76 @@ public class BootCoinPurchaseController {
                 .doOnError(error -> log.error("Error creating purchase request: {}", error.getMessage()));
     }
     @GetMapping
-    public Flowable<BaseResponse<BootCoinPurchaseResponse>> getPendingPurchases(
+    public Single<ResponseEntity<BaseResponse<PendingPurchasePage>>> getPendingPurchases(
+            @RequestParam(required = false) PaymentMethod paymentMethod,
+            @RequestParam(required = false) BigDecimal minAmount,
+            @RequestParam(required = false) BigDecimal maxAmount,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
             @RequestHeader(HttpHeaders.AUTHORIZATION) String authorizationHeader) {
         if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
-            return Flowable.just(new BaseResponse<>(401, "Missing or invalid token", null));
+            return Single.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new BaseResponse<>(401, "Missing or invalid token", null)));
         }
         log.info("Fetching pending purchase requests");
-        return service.getPendingPurchases()
-                .map(response -> BaseResponse.<BootCoinPurchaseResponse>builder()
-                        .status(HttpStatus.OK.value())
-                        .message("Pending purchase requests retrieved successfully")
-                        .data(response)
-                        .build()
-                )
+        return service.getPendingPurchases(paymentMethod, minAmount, maxAmount, cursor, size)
+                .map(page -> ResponseEntity.ok(
+                        BaseResponse.<PendingPurchasePage>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Pending purchase requests retrieved successfully")
+                                .data(page)
+                                .build()
+                ))
+                .onErrorResumeNext(error -> error instanceof IllegalArgumentException
+                        ? Single.just(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                .body(BaseResponse.<PendingPurchasePage>builder()
+                                        .status(HttpStatus.BAD_REQUEST.value())
+                                        .message(error.getMessage())
+                                        .data(null)
+                                        .build()))
+                        : Single.error(error))
                 .doOnError(error -> log.error("Error fetching pending purchases: {}", error.getMessage()));
     }
+    /**
+     * Server-sent events with the first page of pending purchases and then every purchase that
+     * enters or leaves WAITING_FOR_SELLER. Browsers reconnect with the Last-Event-ID header and
+     * receive only what they missed. A client too slow to keep up gets a final "resync" event and
+     * should reconnect.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public Flowable<ServerSentEvent<PendingPurchaseEvent>> streamPendingPurchases(
+            @RequestParam(required = false) PaymentMethod paymentMethod,
+            @RequestParam(required = false) BigDecimal minAmount,
+            @RequestParam(required = false) BigDecimal maxAmount,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestHeader(value = HttpHeaders.LAST_EVENT_ID, required = false) String lastEventId,
+            @RequestHeader(HttpHeaders.AUTHORIZATION) String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return Flowable.just(ServerSentEvent.<PendingPurchaseEvent>builder()
+                    .event("error")
+                    .comment("Missing or invalid token")
+                    .build());
+        }
+        log.info("Streaming pending purchase requests from {}", lastEventId);
+        Flowable<ServerSentEvent<PendingPurchaseEvent>> events = service
+                .streamPendingPurchases(paymentMethod, minAmount, maxAmount, size, lastEventId)
+                .map(event -> ServerSentEvent.builder(event)
+                        .id(event.getResumeToken())
+                        .event("pending-purchase")
+                        .build());
+        Flowable<ServerSentEvent<PendingPurchaseEvent>> heartbeats = Flowable
+                .interval(HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS)
+                .onBackpressureDrop()
+                .map(tick -> ServerSentEvent.<PendingPurchaseEvent>builder()
+                        .comment("heartbeat")
+                        .build());
+        return Flowable.merge(events, heartbeats)
+                .doOnError(error -> log.error("Error streaming pending purchases: {}", error.getMessage()))
+                .onErrorReturn(error -> ServerSentEvent.<PendingPurchaseEvent>builder()
+                        .event(error instanceof IllegalArgumentException ? "error" : "resync")
+                        .comment(error.getMessage())
+                        .build());
+    }
     @PostMapping("/{purchaseId}/accept")
     public Single<ResponseEntity<BaseResponse<BootCoinPurchaseResponse>>> acceptPurchase(
             @PathVariable String purchaseId,
@@ -74,4 +140,43 @@ public class BootCoinPurchaseController {
                 ))
                 .doOnError(error -> log.error("Error accepting purchase request: {}", error.getMessage()));
     }
+    @PostMapping("/offers")
+    public Single<ResponseEntity<BaseResponse<BootCoinSellOffer>>> postSellOffer(
+            @RequestBody BootCoinSellOfferRequest request,
+            @RequestHeader(HttpHeaders.AUTHORIZATION) String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return Single.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new BaseResponse<>(401, "Missing or invalid token", null)));
+        }
+        log.info("Received sell offer: {}", request);
+        return service.postSellOffer(request)
+                .map(offer -> ResponseEntity.ok(
+                        BaseResponse.<BootCoinSellOffer>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Sell offer posted successfully")
+                                .data(offer)
+                                .build()
+                ))
+                .doOnError(error -> log.error("Error posting sell offer: {}", error.getMessage()));
+    }
+    @DeleteMapping("/offers/{offerId}")
+    public Single<ResponseEntity<BaseResponse<BootCoinSellOffer>>> cancelSellOffer(
+            @PathVariable String offerId,
+            @RequestParam String sellerDocumentNumber,
+            @RequestHeader(HttpHeaders.AUTHORIZATION) String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return Single.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new BaseResponse<>(401, "Missing or invalid token", null)));
+        }
+        log.info("Cancelling sell offer with ID: {}", offerId);
+        return service.cancelSellOffer(offerId, sellerDocumentNumber)
+                .map(offer -> ResponseEntity.ok(
+                        BaseResponse.<BootCoinSellOffer>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("Sell offer cancelled successfully")
+                                .data(offer)
+                                .build()
+                ))
+                .doOnError(error -> log.error("Error cancelling sell offer: {}", error.getMessage()));
+    }
 }
\ No newline at end of file
@@ -0,0 +1,73 @@
+package com.bank.bootcoinservice.controller;
+
+import com.bank.bootcoinservice.dto.BaseResponse;
+import com.bank.bootcoinservice.dto.history.UserHistoryEntry;
+import com.bank.bootcoinservice.dto.history.UserHistoryPage;
+import com.bank.bootcoinservice.service.user.BootCoinUserHistoryService;
+import com.google.common.net.HttpHeaders;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+
+@RestController
+@RequestMapping("/api/bootcoin/users")
+@RequiredArgsConstructor
+@Slf4j
+public class BootCoinUserHistoryController {
+    private final BootCoinUserHistoryService historyService;
+    @GetMapping(value = "/{documentNumber}/history", produces = MediaType.APPLICATION_JSON_VALUE)
+    public Single<ResponseEntity<BaseResponse<UserHistoryPage>>> getHistory(
+            @PathVariable String documentNumber,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "50") int size,
+            @RequestHeader(HttpHeaders.AUTHORIZATION) String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return Single.just(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                    .body(new BaseResponse<>(401, "Missing or invalid token", null)));
+        }
+        log.info("Fetching history of user {}", documentNumber);
+        return historyService.getHistory(documentNumber, cursor, size)
+                .map(page -> ResponseEntity.ok(
+                        BaseResponse.<UserHistoryPage>builder()
+                                .status(HttpStatus.OK.value())
+                                .message("User history retrieved successfully")
+                                .data(page)
+                                .build()
+                ))
+                .onErrorResumeNext(error -> error instanceof IllegalArgumentException
+                        ? Single.just(ResponseEntity.status(HttpStatus.BAD_REQUEST)
+                                .body(BaseResponse.<UserHistoryPage>builder()
+                                        .status(HttpStatus.BAD_REQUEST.value())
+                                        .message(error.getMessage())
+                                        .data(null)
+                                        .build()))
+                        : Single.error(error))
+                .doOnError(error -> log.error("Error fetching user history: {}", error.getMessage()));
+    }
+    /**
+     * The whole history after {@code cursor} as newline-delimited JSON, one entry per line, written as
+     * the client reads it. Each entry carries the cursor to resume from if the connection drops.
+     */
+    @GetMapping(value = "/{documentNumber}/history", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public Flowable<UserHistoryEntry> streamHistory(
+            @PathVariable String documentNumber,
+            @RequestParam(required = false) String cursor,
+            @RequestHeader(HttpHeaders.AUTHORIZATION) String authorizationHeader) {
+        if (authorizationHeader == null || !authorizationHeader.startsWith("Bearer ")) {
+            return Flowable.error(new ResponseStatusException(HttpStatus.UNAUTHORIZED, "Missing or invalid token"));
+        }
+        log.info("Streaming history of user {}", documentNumber);
+        // an invalid cursor fails before the first line, while the status can still be set
+        return historyService.streamHistory(documentNumber, cursor)
+                .onErrorResumeNext((Throwable error) -> Flowable.error(error instanceof IllegalArgumentException
+                        ? new ResponseStatusException(HttpStatus.BAD_REQUEST, error.getMessage())
+                        : error))
+                .doOnError(error -> log.error("Error streaming user history: {}", error.getMessage()));
+    }
+}
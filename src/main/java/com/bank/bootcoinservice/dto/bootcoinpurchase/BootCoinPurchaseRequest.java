@@ -11,4 +11,5 @@ public class BootCoinPurchaseRequest {
     private String buyerDocumentNumber;
     private PaymentMethod paymentMethod;
     private BigDecimal amount;
+    private String quoteId; // Optional, prices the purchase at a previously quoted rate
 }
\ No newline at end of file
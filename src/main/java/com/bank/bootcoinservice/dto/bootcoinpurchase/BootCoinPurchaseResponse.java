@@ -24,4 +24,5 @@ public class BootCoinPurchaseResponse {
     private String sellerPhoneNumber;
     private String sellerAccountNumber;
     private LocalDateTime createdAt;
+    private LocalDateTime expiresAt;
 }
@@ -0,0 +1,18 @@
+package com.bank.bootcoinservice.dto.bootcoinpurchase;
+
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import lombok.Builder;
+import lombok.Data;
+
+import java.math.BigDecimal;
+
+@Data
+@Builder
+public class BootCoinSellOfferRequest {
+    private String sellerDocumentNumber;
+    private PaymentMethod paymentMethod;
+    private BigDecimal amount;
+    private BigDecimal rate; // Lowest price in PEN per BootCoin
+    private String sellerPhoneNumber; // Only if the payment is Yanki
+    private String sellerAccountNumber; // Only if payment is by transfer
+}
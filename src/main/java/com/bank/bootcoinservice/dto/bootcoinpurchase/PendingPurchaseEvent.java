@@ -0,0 +1,19 @@
+package com.bank.bootcoinservice.dto.bootcoinpurchase;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PendingPurchaseEvent {
+    private Type type;
+    private String purchaseId;
+    private BootCoinPurchaseResponse purchase; // Null when removed
+    private String resumeToken; // Sent back as Last-Event-ID to resume after a reconnect
+    public enum Type {
+        ADDED, // Waiting for a seller, either new or given back
+        REMOVED // No longer waiting for a seller
+    }
+}
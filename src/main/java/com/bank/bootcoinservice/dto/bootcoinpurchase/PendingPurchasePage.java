@@ -0,0 +1,15 @@
+package com.bank.bootcoinservice.dto.bootcoinpurchase;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PendingPurchasePage {
+    private List<BootCoinPurchaseResponse> items; // Oldest first
+    private String nextCursor; // Null on the last page
+}
@@ -0,0 +1,16 @@
+package com.bank.bootcoinservice.dto.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateHistoryEntry;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExchangeRateHistoryPage {
+    private List<ExchangeRateHistoryEntry> items; // Newest first
+    private String nextCursor; // Null on the last page
+}
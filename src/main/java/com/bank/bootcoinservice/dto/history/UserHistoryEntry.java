@@ -0,0 +1,38 @@
+package com.bank.bootcoinservice.dto.history;
+
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.bank.bootcoinservice.model.transaction.TransactionType;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Data
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserHistoryEntry {
+    private Source source;
+    private String id;
+    private Role role; // The user's side of the trade
+    private String counterpartyDocumentNumber; // Null until a seller takes a purchase, and for bank sales
+    private TransactionType transactionType;
+    private PaymentMethod paymentMethod;
+    private TransactionStatus status;
+    private BigDecimal amount;
+    private BigDecimal totalAmountInPEN;
+    private LocalDateTime createdAt;
+    private String cursor; // Resumes the history right after this entry
+    public enum Source {
+        PURCHASE,
+        TRANSACTION
+    }
+    public enum Role {
+        BUYER,
+        SELLER
+    }
+}
@@ -0,0 +1,15 @@
+package com.bank.bootcoinservice.dto.history;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class UserHistoryPage {
+    private List<UserHistoryEntry> items; // Newest first
+    private String nextCursor; // Null on the last page
+}
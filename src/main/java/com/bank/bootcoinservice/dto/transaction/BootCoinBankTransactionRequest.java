@@ -28,4 +28,5 @@ public class BootCoinBankTransactionRequest {
 
     private PaymentMethod paymentMethod;
     private TransactionType transactionType;
+    private String quoteId; // Optional, prices the transaction at a previously quoted rate
 }
@@ -5,12 +5,35 @@ import com.bank.bootcoinservice.model.transaction.TransactionStatus;
 import com.bank.bootcoinservice.model.transaction.TransactionType;
 import lombok.*;
 import nonapi.io.github.classgraph.json.Id;
+import org.springframework.data.annotation.Version;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Document(collection = "bootcoin_purchases")
+@CompoundIndexes({
+    // Pending pages: equality on status (and payment method), keyset sort, then the amount range
+    @CompoundIndex(name = "status_created_amount", def = "{'status': 1, 'createdAt': 1, '_id': 1, 'amount': 1}"),
+    @CompoundIndex(name = "status_method_created_amount",
+            def = "{'status': 1, 'paymentMethod': 1, 'createdAt': 1, '_id': 1, 'amount': 1}"),
+    // User history: newest first per party, merged by the planner for the buyer-or-seller query
+    @CompoundIndex(name = "buyer_created", def = "{'buyerDocumentNumber': 1, 'createdAt': 1, '_id': 1}"),
+    @CompoundIndex(name = "seller_created", def = "{'sellerDocumentNumber': 1, 'createdAt': 1, '_id': 1}"),
+    // Escrow sweep: purchases left in a status since before a cutoff
+    @CompoundIndex(name = "status_updated", def = "{'status': 1, 'updatedAt': 1}"),
+    // Expiry sweep: only open orders are indexed, and _id makes the lookup covered
+    @CompoundIndex(name = "waiting_expires", def = "{'expiresAt': 1, '_id': 1}",
+            partialFilter = "{'status': 'WAITING_FOR_SELLER'}"),
+    // Matching: open orders of a payment method, highest price first, then oldest
+    @CompoundIndex(name = "waiting_method_rate",
+            def = "{'paymentMethod': 1, 'limitRate': -1, 'createdAt': 1, '_id': 1}",
+            partialFilter = "{'status': 'WAITING_FOR_SELLER'}")
+})
 @Getter
 @Setter
 @Builder
@@ -21,6 +44,7 @@ public class BootCoinPurchase {
     private String id;
     private String buyerDocumentNumber;
     private PaymentMethod paymentMethod;
+    @Field(targetType = FieldType.DECIMAL128)
     private BigDecimal amount;
     private TransactionStatus status;
     private String sellerDocumentNumber; // It is filled when a seller accepts the request
@@ -31,6 +55,13 @@ public class BootCoinPurchase {
     private String buyerAccountNumber;
     private TransactionType transactionType;
     private BigDecimal totalAmountInPEN;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal limitRate; // Highest price in PEN per BootCoin the buyer accepts
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal reservedAmount; // Held in escrow from the seller's claim until it is settled or released
     private LocalDateTime createdAt;
     private LocalDateTime updatedAt;
+    private LocalDateTime expiresAt; // Moved to EXPIRED after this if still waiting for a seller
+    @Version
+    private Long version;
 }
\ No newline at end of file
@@ -0,0 +1,43 @@
+package com.bank.bootcoinservice.model.bootcoinpurchase;
+
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Document(collection = "bootcoin_sell_offers")
+@CompoundIndexes({
+    @CompoundIndex(name = "status_created", def = "{'status': 1, 'createdAt': 1}"),
+    // Matching: open offers of a payment method, lowest rate first, then oldest
+    @CompoundIndex(name = "open_method_rate", def = "{'paymentMethod': 1, 'rate': 1, 'createdAt': 1, '_id': 1}",
+            partialFilter = "{'status': 'OPEN'}")
+})
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class BootCoinSellOffer {
+    @Id
+    private String id;
+    private String sellerDocumentNumber;
+    private PaymentMethod paymentMethod;
+    private String sellerPhoneNumber; // It is filled if the seller uses Yanki
+    private String sellerAccountNumber; // It is filled if the seller uses transfer
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal amount;
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal remainingAmount; // Decreases as purchases are matched against the offer
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal rate; // Lowest price in PEN per BootCoin the seller accepts
+    private SellOfferStatus status;
+    private LocalDateTime createdAt;
+    private LocalDateTime updatedAt;
+}
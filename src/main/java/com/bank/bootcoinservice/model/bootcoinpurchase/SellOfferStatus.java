@@ -0,0 +1,7 @@
+package com.bank.bootcoinservice.model.bootcoinpurchase;
+
+public enum SellOfferStatus {
+    OPEN,
+    FILLED,
+    CANCELLED
+}
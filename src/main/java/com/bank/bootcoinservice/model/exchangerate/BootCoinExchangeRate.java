@@ -15,4 +15,5 @@ public class BootCoinExchangeRate {
     private BigDecimal buyRate;
     private BigDecimal sellRate;
     private LocalDateTime updatedAt;
+    private long version;
 }
\ No newline at end of file
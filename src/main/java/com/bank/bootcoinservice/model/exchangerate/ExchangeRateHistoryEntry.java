@@ -0,0 +1,16 @@
+package com.bank.bootcoinservice.model.exchangerate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExchangeRateHistoryEntry {
+    private String id; // Stream entry id, also used as the pagination cursor
+    private Instant effectiveAt;
+    private BootCoinExchangeRate rate;
+}
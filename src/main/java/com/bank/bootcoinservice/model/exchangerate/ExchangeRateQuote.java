@@ -0,0 +1,19 @@
+package com.bank.bootcoinservice.model.exchangerate;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class ExchangeRateQuote {
+    private String quoteId;
+    private BigDecimal buyRate;
+    private BigDecimal sellRate;
+    private long rateVersion;
+    private Instant expiresAt;
+}
@@ -0,0 +1,34 @@
+package com.bank.bootcoinservice.model.ledger;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Document(collection = "bootcoin_ledger")
+@CompoundIndexes({
+    @CompoundIndex(name = "account_sequence", def = "{'account': 1, 'sequence': 1}", unique = true),
+    @CompoundIndex(name = "posting_account", def = "{'postingId': 1, 'account': 1}", unique = true)
+})
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LedgerEntry {
+    @Id
+    private String id;
+    private String postingId; // Shared by the debit and credit entries of one posting
+    private String account; // A user's document number, or a system account
+    private long sequence; // Increases by one with every entry of the account
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal amount; // Negative for debits
+    private String counterparty;
+    private LocalDateTime createdAt;
+}
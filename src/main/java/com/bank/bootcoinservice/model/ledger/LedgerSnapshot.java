@@ -0,0 +1,25 @@
+package com.bank.bootcoinservice.model.ledger;
+
+import lombok.*;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.Field;
+import org.springframework.data.mongodb.core.mapping.FieldType;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
+@Document(collection = "bootcoin_ledger_snapshots")
+@Getter
+@Setter
+@Builder
+@AllArgsConstructor
+@NoArgsConstructor
+public class LedgerSnapshot {
+    @Id
+    private String id; // The account
+    private long sequence; // Last entry included in the balance
+    @Field(targetType = FieldType.DECIMAL128)
+    private BigDecimal balance;
+    private LocalDateTime takenAt;
+}
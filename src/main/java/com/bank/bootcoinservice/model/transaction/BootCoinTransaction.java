@@ -5,12 +5,18 @@ import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 import nonapi.io.github.classgraph.json.Id;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.CompoundIndexes;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 
 @Document(collection = "bootcoin_transactions")
+@CompoundIndexes({
+    // User history: bank sales newest first per buyer
+    @CompoundIndex(name = "buyer_created", def = "{'buyerDocumentNumber': 1, 'createdAt': 1, '_id': 1}")
+})
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
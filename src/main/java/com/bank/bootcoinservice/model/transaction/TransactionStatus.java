@@ -5,5 +5,6 @@ public enum TransactionStatus {
     WAITING_FOR_SELLER,
     PROCESSING,
     COMPLETED,
-    FAILED
+    FAILED,
+    EXPIRED // No seller took the purchase before it expired
 }
@@ -4,6 +4,9 @@ import lombok.Data;
 import lombok.Getter;
 import lombok.Setter;
 import nonapi.io.github.classgraph.json.Id;
+import org.springframework.data.annotation.ReadOnlyProperty;
+import org.springframework.data.mongodb.core.index.CompoundIndex;
+import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import java.math.BigDecimal;
@@ -12,13 +15,18 @@ import java.math.BigDecimal;
 @Getter
 @Setter
 @Document(collection = "bootcoin_user")
+// Login looks users up by phone and document together
+@CompoundIndex(name = "phone_document", def = "{'phoneNumber': 1, 'documentNumber': 1}")
 public class BootCoinUser {
     @Id
     private String id;
+    @Indexed(name = "document_number", unique = true)
     private String documentNumber;
     private String phoneNumber;
     private String email;
-    private BigDecimal balance = BigDecimal.ZERO;
+    @ReadOnlyProperty
+    @Indexed(name = "legacy_balance", sparse = true)
+    private BigDecimal balance; // Legacy; moved into the ledger at startup and then removed
     private boolean hasYanki;
     private String bankAccountId;
 }
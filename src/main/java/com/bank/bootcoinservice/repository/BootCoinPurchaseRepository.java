@@ -6,7 +6,13 @@ import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import org.springframework.data.repository.reactive.RxJava2CrudRepository;
 
-public interface BootCoinPurchaseRepository extends RxJava2CrudRepository<BootCoinPurchase, String> {
-    Flowable<BootCoinPurchase> findByStatus(TransactionStatus status);
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public interface BootCoinPurchaseRepository extends RxJava2CrudRepository<BootCoinPurchase, String>,
+        BootCoinPurchaseRepositoryCustom {
     Maybe<BootCoinPurchase> findByIdAndStatus(String id, TransactionStatus status);
+    Flowable<BootCoinPurchase> findByStatusAndUpdatedAtBefore(TransactionStatus status, LocalDateTime updatedAt);
+    Flowable<BootCoinPurchase> findByStatusInAndReservedAmountExistsAndUpdatedAtBefore(
+            Collection<TransactionStatus> statuses, boolean exists, LocalDateTime updatedAt);
 }
@@ -0,0 +1,77 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+public interface BootCoinPurchaseRepositoryCustom {
+    /**
+     * Moves a waiting purchase paid with one of {@code paymentMethods} to PROCESSING with the seller
+     * fields of {@code claim}, and its total when given, as a single conditional update, and records
+     * its amount as reserved. Emits the updated document, or completes empty when the purchase is no
+     * longer waiting for a seller or is paid otherwise.
+     */
+    Maybe<BootCoinPurchase> claimWaitingPurchase(BootCoinPurchase claim, Collection<PaymentMethod> paymentMethods);
+    /**
+     * Gives a claim whose reservation failed back, so the purchase waits for a seller again.
+     */
+    Maybe<BootCoinPurchase> releaseClaim(String purchaseId, String sellerDocumentNumber);
+    /**
+     * Moves a PROCESSING purchase to {@code status}. Completes empty when it already left PROCESSING.
+     */
+    Maybe<BootCoinPurchase> finishProcessing(String purchaseId, TransactionStatus status, String messageResponse);
+    Completable clearReservation(String purchaseId);
+    /**
+     * Ids of up to {@code limit} purchases still waiting for a seller whose expiresAt is not after
+     * {@code now}, soonest first.
+     */
+    Flowable<String> findExpiredWaitingIds(LocalDateTime now, int limit);
+    /**
+     * Moves the purchases among {@code ids} that are still waiting for a seller to EXPIRED in one
+     * update, and emits how many moved.
+     */
+    Single<Long> expireWaiting(Collection<String> ids, String messageResponse);
+    /**
+     * Gives waiting purchases stored before expiry existed an expiresAt of createdAt plus {@code expireAfter}.
+     */
+    Completable backfillExpiry(Duration expireAfter);
+    /**
+     * One page of purchases waiting for a seller, oldest first, after the keyset position
+     * ({@code afterCreatedAt}, {@code afterId}) when given. Null filters are not applied. Only the
+     * fields shown for a pending purchase are loaded.
+     */
+    Flowable<BootCoinPurchase> findWaitingPage(PaymentMethod paymentMethod, BigDecimal minAmount, BigDecimal maxAmount,
+                                               LocalDateTime afterCreatedAt, String afterId, int limit);
+    /**
+     * Purchases where the user is the buyer or the seller, newest first, before the keyset position
+     * ({@code beforeCreatedAt}, {@code beforeId}) when given, and including the purchase at that position
+     * when {@code includeBeforeId} is set. Read lazily from one cursor in batches of {@code batchSize};
+     * cancel to stop reading.
+     */
+    Flowable<BootCoinPurchase> findHistory(String documentNumber, LocalDateTime beforeCreatedAt, String beforeId,
+                                           boolean includeBeforeId, int batchSize);
+    /**
+     * Rewrites amounts stored as strings as decimals, so amount ranges compare numerically.
+     */
+    Completable convertLegacyAmounts();
+    /**
+     * Gives waiting purchases stored before matching moved to Mongo a limitRate of totalAmountInPEN
+     * over amount.
+     */
+    Completable backfillLimitRates();
+    /**
+     * Purchases waiting for a seller for {@code paymentMethod} priced at or above {@code minRate} for
+     * at most {@code maxAmount}, not requested by {@code excludedBuyer}, highest price first and then oldest.
+     */
+    Flowable<BootCoinPurchase> findMatchingPurchases(PaymentMethod paymentMethod, BigDecimal minRate,
+                                                     BigDecimal maxAmount, String excludedBuyer);
+}
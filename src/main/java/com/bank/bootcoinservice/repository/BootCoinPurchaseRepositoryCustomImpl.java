@@ -0,0 +1,188 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.mongodb.client.result.UpdateResult;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.Decimal128;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.aggregation.ConvertOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+import org.springframework.data.mongodb.core.schema.JsonSchemaObject;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Collection;
+
+@RequiredArgsConstructor
+public class BootCoinPurchaseRepositoryCustomImpl implements BootCoinPurchaseRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+    @Override
+    public Maybe<BootCoinPurchase> claimWaitingPurchase(BootCoinPurchase claim,
+                                                        Collection<PaymentMethod> paymentMethods) {
+        Query query = Query.query(Criteria.where("_id").is(claim.getId())
+                .and("status").is(TransactionStatus.WAITING_FOR_SELLER)
+                .and("paymentMethod").in(paymentMethods));
+        // a pipeline update, so the reserved amount is read from the document rather than from the caller
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("status").toValue(TransactionStatus.PROCESSING.name())
+                .set("sellerDocumentNumber").toValue(claim.getSellerDocumentNumber())
+                .set("sellerPhoneNumber").toValue(claim.getSellerPhoneNumber())
+                .set("sellerAccountNumber").toValue(claim.getSellerAccountNumber())
+                .set("reservedAmount").toValue("$amount")
+                .set("updatedAt").toValue("$$NOW")
+                .set("version").toValue(ArithmeticOperators.Add.valueOf(ConditionalOperators.ifNull("version")
+                        .then(0)).add(1));
+        if (claim.getTotalAmountInPEN() != null) {
+            // stored as a string, like the mapped field
+            update = update.set("totalAmountInPEN").toValue(claim.getTotalAmountInPEN().toString());
+        }
+        return modify(query, update);
+    }
+    @Override
+    public Maybe<BootCoinPurchase> releaseClaim(String purchaseId, String sellerDocumentNumber) {
+        Query query = Query.query(Criteria.where("_id").is(purchaseId)
+                .and("status").is(TransactionStatus.PROCESSING)
+                .and("sellerDocumentNumber").is(sellerDocumentNumber));
+        Update update = new Update()
+                .set("status", TransactionStatus.WAITING_FOR_SELLER)
+                .unset("sellerDocumentNumber")
+                .unset("sellerPhoneNumber")
+                .unset("sellerAccountNumber")
+                .unset("reservedAmount")
+                .set("updatedAt", LocalDateTime.now())
+                .inc("version", 1);
+        return modify(query, update);
+    }
+    @Override
+    public Maybe<BootCoinPurchase> finishProcessing(String purchaseId, TransactionStatus status,
+                                                    String messageResponse) {
+        Query query = Query.query(Criteria.where("_id").is(purchaseId)
+                .and("status").is(TransactionStatus.PROCESSING));
+        Update update = new Update()
+                .set("status", status)
+                .set("messageResponse", messageResponse)
+                .set("updatedAt", LocalDateTime.now())
+                .inc("version", 1);
+        return modify(query, update);
+    }
+    @Override
+    public Completable clearReservation(String purchaseId) {
+        Query query = Query.query(Criteria.where("_id").is(purchaseId));
+        return Completable.fromPublisher(mongoTemplate.updateFirst(query, new Update().unset("reservedAmount"),
+                BootCoinPurchase.class));
+    }
+    @Override
+    public Flowable<String> findExpiredWaitingIds(LocalDateTime now, int limit) {
+        Query query = Query.query(Criteria.where("status").is(TransactionStatus.WAITING_FOR_SELLER)
+                        .and("expiresAt").lte(now))
+                .with(Sort.by(Sort.Direction.ASC, "expiresAt", "_id"))
+                .limit(limit);
+        query.fields().include("_id");
+        return Flowable.fromPublisher(mongoTemplate.find(query, BootCoinPurchase.class))
+                .map(BootCoinPurchase::getId);
+    }
+    @Override
+    public Single<Long> expireWaiting(Collection<String> ids, String messageResponse) {
+        Query query = Query.query(Criteria.where("_id").in(ids)
+                .and("status").is(TransactionStatus.WAITING_FOR_SELLER));
+        Update update = new Update()
+                .set("status", TransactionStatus.EXPIRED)
+                .set("messageResponse", messageResponse)
+                .set("updatedAt", LocalDateTime.now())
+                .inc("version", 1);
+        return Single.fromPublisher(mongoTemplate.updateMulti(query, update, BootCoinPurchase.class))
+                .map(UpdateResult::getModifiedCount);
+    }
+    @Override
+    public Completable backfillExpiry(Duration expireAfter) {
+        Query query = Query.query(Criteria.where("status").is(TransactionStatus.WAITING_FOR_SELLER)
+                .and("expiresAt").exists(false));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("expiresAt").toValue(ArithmeticOperators.Add.valueOf("createdAt").add(expireAfter.toMillis()));
+        return Completable.fromPublisher(mongoTemplate.updateMulti(query, update, BootCoinPurchase.class));
+    }
+    @Override
+    public Flowable<BootCoinPurchase> findWaitingPage(PaymentMethod paymentMethod, BigDecimal minAmount,
+                                                      BigDecimal maxAmount, LocalDateTime afterCreatedAt,
+                                                      String afterId, int limit) {
+        Criteria criteria = Criteria.where("status").is(TransactionStatus.WAITING_FOR_SELLER);
+        if (paymentMethod != null) {
+            criteria.and("paymentMethod").is(paymentMethod);
+        }
+        if (minAmount != null || maxAmount != null) {
+            Criteria amount = criteria.and("amount");
+            if (minAmount != null) {
+                amount.gte(new Decimal128(minAmount));
+            }
+            if (maxAmount != null) {
+                amount.lte(new Decimal128(maxAmount));
+            }
+        }
+        if (afterCreatedAt != null) {
+            criteria.orOperator(Criteria.where("createdAt").gt(afterCreatedAt),
+                    Criteria.where("createdAt").is(afterCreatedAt).and("_id").gt(afterId));
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.ASC, "createdAt", "_id"))
+                .limit(limit);
+        query.fields().include("buyerDocumentNumber", "paymentMethod", "amount", "status", "sellerDocumentNumber",
+                "sellerPhoneNumber", "sellerAccountNumber", "totalAmountInPEN", "transactionType", "createdAt",
+                "expiresAt");
+        return Flowable.fromPublisher(mongoTemplate.find(query, BootCoinPurchase.class));
+    }
+    @Override
+    public Flowable<BootCoinPurchase> findHistory(String documentNumber, LocalDateTime beforeCreatedAt,
+                                                  String beforeId, boolean includeBeforeId, int batchSize) {
+        return Flowable.fromPublisher(mongoTemplate.find(
+                HistoryQueries.involving(documentNumber, beforeCreatedAt, beforeId, includeBeforeId, batchSize),
+                BootCoinPurchase.class));
+    }
+    @Override
+    public Completable convertLegacyAmounts() {
+        Query query = Query.query(Criteria.where("amount").type(JsonSchemaObject.Type.STRING));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("amount").toValue(ConvertOperators.ToDecimal.toDecimal("$amount"));
+        return Completable.fromPublisher(mongoTemplate.updateMulti(query, update, BootCoinPurchase.class));
+    }
+    @Override
+    public Completable backfillLimitRates() {
+        Query query = Query.query(Criteria.where("status").is(TransactionStatus.WAITING_FOR_SELLER)
+                .and("limitRate").exists(false));
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("limitRate").toValue(ArithmeticOperators.Divide
+                        .valueOf(ConvertOperators.ToDecimal.toDecimal("$totalAmountInPEN"))
+                        .divideBy(ConvertOperators.ToDecimal.toDecimal("$amount")));
+        return Completable.fromPublisher(mongoTemplate.updateMulti(query, update, BootCoinPurchase.class));
+    }
+    @Override
+    public Flowable<BootCoinPurchase> findMatchingPurchases(PaymentMethod paymentMethod, BigDecimal minRate,
+                                                            BigDecimal maxAmount, String excludedBuyer) {
+        Query query = Query.query(Criteria.where("status").is(TransactionStatus.WAITING_FOR_SELLER)
+                        .and("paymentMethod").is(paymentMethod)
+                        .and("limitRate").gte(new Decimal128(minRate))
+                        .and("amount").lte(new Decimal128(maxAmount))
+                        .and("buyerDocumentNumber").ne(excludedBuyer))
+                .with(Sort.by(Sort.Direction.DESC, "limitRate").and(Sort.by(Sort.Direction.ASC, "createdAt", "_id")));
+        return Flowable.fromPublisher(mongoTemplate.find(query, BootCoinPurchase.class));
+    }
+    private Maybe<BootCoinPurchase> modify(Query query, UpdateDefinition update) {
+        return Flowable.fromPublisher(mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().returnNew(true), BootCoinPurchase.class))
+                .singleElement();
+    }
+}
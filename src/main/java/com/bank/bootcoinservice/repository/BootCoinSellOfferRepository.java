@@ -0,0 +1,11 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.bootcoinpurchase.SellOfferStatus;
+import io.reactivex.Flowable;
+import org.springframework.data.repository.reactive.RxJava2CrudRepository;
+
+public interface BootCoinSellOfferRepository extends RxJava2CrudRepository<BootCoinSellOffer, String>,
+        BootCoinSellOfferRepositoryCustom {
+    Flowable<BootCoinSellOffer> findByStatusOrderByCreatedAtAsc(SellOfferStatus status);
+}
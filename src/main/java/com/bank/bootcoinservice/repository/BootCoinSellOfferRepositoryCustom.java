@@ -0,0 +1,33 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+
+import java.math.BigDecimal;
+
+public interface BootCoinSellOfferRepositoryCustom {
+    /**
+     * Open offers for {@code paymentMethod} priced at or below {@code maxRate} with at least
+     * {@code amount} left, not posted by {@code excludedSeller}, lowest rate first and then oldest.
+     */
+    Flowable<BootCoinSellOffer> findMatchingOffers(PaymentMethod paymentMethod, BigDecimal maxRate, BigDecimal amount,
+                                                   String excludedSeller);
+    /**
+     * Takes {@code amount} from an open offer that still has it, as a single conditional update,
+     * and marks the offer FILLED when nothing is left. Emits the updated offer, or completes empty
+     * when the offer is no longer open or has less left.
+     */
+    Maybe<BootCoinSellOffer> takeFromOffer(String offerId, BigDecimal amount);
+    /**
+     * Returns an amount taken for a purchase that could not be claimed, reopening a filled offer.
+     * Completes empty when the offer was cancelled meanwhile.
+     */
+    Maybe<BootCoinSellOffer> giveBackToOffer(String offerId, BigDecimal amount);
+    /**
+     * Moves an open offer of {@code sellerDocumentNumber} to CANCELLED. Completes empty when it is
+     * no longer open.
+     */
+    Maybe<BootCoinSellOffer> cancelOpenOffer(String offerId, String sellerDocumentNumber);
+}
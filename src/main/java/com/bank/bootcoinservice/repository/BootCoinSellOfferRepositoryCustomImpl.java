@@ -0,0 +1,82 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.bootcoinpurchase.SellOfferStatus;
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import lombok.RequiredArgsConstructor;
+import org.bson.types.Decimal128;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
+import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
+import org.springframework.data.mongodb.core.aggregation.ComparisonOperators;
+import org.springframework.data.mongodb.core.aggregation.ConditionalOperators;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.mongodb.core.query.UpdateDefinition;
+
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class BootCoinSellOfferRepositoryCustomImpl implements BootCoinSellOfferRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+    @Override
+    public Flowable<BootCoinSellOffer> findMatchingOffers(PaymentMethod paymentMethod, BigDecimal maxRate,
+                                                          BigDecimal amount, String excludedSeller) {
+        Query query = Query.query(Criteria.where("status").is(SellOfferStatus.OPEN)
+                        .and("paymentMethod").is(paymentMethod)
+                        .and("rate").lte(new Decimal128(maxRate))
+                        .and("remainingAmount").gte(new Decimal128(amount))
+                        .and("sellerDocumentNumber").ne(excludedSeller))
+                .with(Sort.by(Sort.Direction.ASC, "rate", "createdAt", "_id"));
+        return Flowable.fromPublisher(mongoTemplate.find(query, BootCoinSellOffer.class));
+    }
+    @Override
+    public Maybe<BootCoinSellOffer> takeFromOffer(String offerId, BigDecimal amount) {
+        Decimal128 taken = new Decimal128(amount);
+        Query query = Query.query(Criteria.where("_id").is(offerId)
+                .and("status").is(SellOfferStatus.OPEN)
+                .and("remainingAmount").gte(taken));
+        // the status is decided on the remaining amount from before this update
+        AggregationUpdate update = AggregationUpdate.update()
+                .set("status").toValue(ConditionalOperators
+                        .when(ComparisonOperators.valueOf("remainingAmount").greaterThanValue(taken))
+                        .then(SellOfferStatus.OPEN.name())
+                        .otherwise(SellOfferStatus.FILLED.name()))
+                .set("remainingAmount").toValue(ArithmeticOperators.Subtract.valueOf("remainingAmount")
+                        .subtract(taken))
+                .set("updatedAt").toValue("$$NOW");
+        return modify(query, update);
+    }
+    @Override
+    public Maybe<BootCoinSellOffer> giveBackToOffer(String offerId, BigDecimal amount) {
+        Query query = Query.query(Criteria.where("_id").is(offerId)
+                .and("status").in(List.of(SellOfferStatus.OPEN, SellOfferStatus.FILLED)));
+        Update update = new Update()
+                .inc("remainingAmount", new Decimal128(amount))
+                .set("status", SellOfferStatus.OPEN)
+                .set("updatedAt", LocalDateTime.now());
+        return modify(query, update);
+    }
+    @Override
+    public Maybe<BootCoinSellOffer> cancelOpenOffer(String offerId, String sellerDocumentNumber) {
+        Query query = Query.query(Criteria.where("_id").is(offerId)
+                .and("status").is(SellOfferStatus.OPEN)
+                .and("sellerDocumentNumber").is(sellerDocumentNumber));
+        Update update = new Update()
+                .set("status", SellOfferStatus.CANCELLED)
+                .set("updatedAt", LocalDateTime.now());
+        return modify(query, update);
+    }
+    private Maybe<BootCoinSellOffer> modify(Query query, UpdateDefinition update) {
+        return Flowable.fromPublisher(mongoTemplate.findAndModify(query, update,
+                        FindAndModifyOptions.options().returnNew(true), BootCoinSellOffer.class))
+                .singleElement();
+    }
+}
@@ -0,0 +1,17 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
+import io.reactivex.Flowable;
+
+import java.time.LocalDateTime;
+
+public interface BootCoinTransactionRepositoryCustom {
+    /**
+     * Bank sales to the user, newest first, strictly before the keyset position ({@code beforeCreatedAt},
+     * {@code beforeId}) when given. Transactions recording a settled P2P purchase are left out: they share
+     * the purchase's id and the purchase is already in the history. Read lazily from one cursor in
+     * batches of {@code batchSize}; cancel to stop reading.
+     */
+    Flowable<BootCoinTransaction> findBankHistory(String documentNumber, LocalDateTime beforeCreatedAt,
+                                                  String beforeId, int batchSize);
+}
@@ -0,0 +1,20 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
+import io.reactivex.Flowable;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+
+import java.time.LocalDateTime;
+
+@RequiredArgsConstructor
+public class BootCoinTransactionRepositoryCustomImpl implements BootCoinTransactionRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+    @Override
+    public Flowable<BootCoinTransaction> findBankHistory(String documentNumber, LocalDateTime beforeCreatedAt,
+                                                         String beforeId, int batchSize) {
+        return Flowable.fromPublisher(mongoTemplate.find(
+                HistoryQueries.boughtFromBank(documentNumber, beforeCreatedAt, beforeId, batchSize),
+                BootCoinTransaction.class));
+    }
+}
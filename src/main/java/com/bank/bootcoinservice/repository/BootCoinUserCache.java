@@ -0,0 +1,223 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.user.BootCoinUser;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded, least recently used copies of users by document number, behind
+ * {@link BootCoinUserRepository#findByDocumentNumber}. Entries are dropped on local writes and on
+ * every update, replace or delete seen on the users change stream, so writes from other instances
+ * are noticed too; the TTL bounds staleness if a change is ever missed, and the whole cache is
+ * dropped whenever the change stream reconnects. Balances are not cached: the legacy balance field
+ * is left out of the copies, and balances are read from the ledger.
+ */
+@Component
+@Slf4j
+public class BootCoinUserCache {
+    static final String COLLECTION = "bootcoin_user";
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final int maxSize;
+    private final long ttlNanos;
+    private final Map<String, Entry> entries;
+    private final Map<String, String> documentNumbers = new HashMap<>(); // user id to document number
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+    private final Counter evictions;
+    private Disposable subscription;
+    public BootCoinUserCache(ReactiveMongoTemplate mongoTemplate,
+                             MeterRegistry meterRegistry,
+                             @Value("${bootcoin.user.cache.max-size:10000}") int maxSize,
+                             @Value("${bootcoin.user.cache.ttl-ms:300000}") long ttlMillis) {
+        this.mongoTemplate = mongoTemplate;
+        this.maxSize = maxSize;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() <= BootCoinUserCache.this.maxSize) {
+                    return false;
+                }
+                documentNumbers.remove(eldest.getValue().user.getId());
+                evictions.increment();
+                return true;
+            }
+        };
+        this.hits = Counter.builder("bootcoin.user.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("bootcoin.user.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("bootcoin.user.cache.invalidations")
+                .register(meterRegistry);
+        this.evictions = Counter.builder("bootcoin.user.cache.evictions")
+                .register(meterRegistry);
+        Gauge.builder("bootcoin.user.cache.size", this, BootCoinUserCache::size)
+                .register(meterRegistry);
+        Gauge.builder("bootcoin.user.cache.hit.ratio", this, BootCoinUserCache::hitRatio)
+                .register(meterRegistry);
+    }
+    @PostConstruct
+    public void subscribe() {
+        ChangeStreamOptions options = ChangeStreamOptions.builder()
+                .filter(Aggregation.newAggregation(Aggregation.match(
+                        Criteria.where("operationType").in("update", "replace", "delete"))))
+                .build();
+        subscription = Flux.defer(() -> resume(options))
+                .doOnError(error -> log.error("User change stream failed: {}", error.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::onChange);
+    }
+    private Flux<ChangeStreamEvent<Document>> resume(ChangeStreamOptions options) {
+        // changes made while the stream was down were missed
+        invalidateAll();
+        return mongoTemplate.changeStream(COLLECTION, options, Document.class);
+    }
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+    public Maybe<BootCoinUser> findByDocumentNumber(String documentNumber) {
+        return Maybe.defer(() -> {
+            BootCoinUser cached = lookup(documentNumber);
+            if (cached != null) {
+                hits.increment();
+                return Maybe.just(copyOf(cached));
+            }
+            misses.increment();
+            long loadedGeneration = generation.get();
+            Query query = Query.query(Criteria.where("documentNumber").is(documentNumber));
+            query.fields().exclude("balance");
+            return Flowable.fromPublisher(mongoTemplate.findOne(query, BootCoinUser.class))
+                    .singleElement()
+                    .map(BootCoinUserCache::copyOf)
+                    .doOnSuccess(user -> put(user, loadedGeneration))
+                    .map(BootCoinUserCache::copyOf);
+        });
+    }
+    public void invalidate(String documentNumber) {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            Entry removed = entries.remove(documentNumber);
+            if (removed != null) {
+                documentNumbers.remove(removed.user.getId());
+            }
+        }
+        invalidations.increment();
+    }
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        synchronized (entries) {
+            entries.clear();
+            documentNumbers.clear();
+        }
+        invalidations.increment();
+    }
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+    double hitRatio() {
+        double requests = hits.count() + misses.count();
+        return requests == 0 ? 0 : hits.count() / requests;
+    }
+    private BootCoinUser lookup(String documentNumber) {
+        synchronized (entries) {
+            Entry entry = entries.get(documentNumber);
+            if (entry == null) {
+                return null;
+            }
+            if (System.nanoTime() - entry.loadedAt >= ttlNanos) {
+                entries.remove(documentNumber);
+                documentNumbers.remove(entry.user.getId());
+                return null;
+            }
+            return entry.user;
+        }
+    }
+    /**
+     * Stores a user read from MongoDB, unless an invalidation arrived while it was being read.
+     */
+    private void put(BootCoinUser user, long loadedGeneration) {
+        synchronized (entries) {
+            if (generation.get() != loadedGeneration) {
+                return;
+            }
+            entries.put(user.getDocumentNumber(), new Entry(user, System.nanoTime()));
+            documentNumbers.put(user.getId(), user.getDocumentNumber());
+        }
+    }
+    private void onChange(ChangeStreamEvent<Document> event) {
+        ChangeStreamDocument<Document> raw = event.getRaw();
+        BsonValue key = raw == null || raw.getDocumentKey() == null ? null : raw.getDocumentKey().get("_id");
+        if (key == null) {
+            invalidateAll();
+            return;
+        }
+        String id = key.isObjectId() ? key.asObjectId().getValue().toHexString()
+                : key.isString() ? key.asString().getValue() : key.toString();
+        String documentNumber;
+        synchronized (entries) {
+            documentNumber = documentNumbers.get(id);
+        }
+        if (documentNumber != null) {
+            invalidate(documentNumber);
+        } else {
+            // a load may be in flight for this user
+            generation.incrementAndGet();
+        }
+    }
+    private static BootCoinUser copyOf(BootCoinUser user) {
+        BootCoinUser copy = new BootCoinUser();
+        copy.setId(user.getId());
+        copy.setDocumentNumber(user.getDocumentNumber());
+        copy.setPhoneNumber(user.getPhoneNumber());
+        copy.setEmail(user.getEmail());
+        copy.setBalance(null);
+        copy.setHasYanki(user.isHasYanki());
+        copy.setBankAccountId(user.getBankAccountId());
+        return copy;
+    }
+    private static final class Entry {
+        private final BootCoinUser user;
+        private final long loadedAt;
+        private Entry(BootCoinUser user, long loadedAt) {
+            this.user = user;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
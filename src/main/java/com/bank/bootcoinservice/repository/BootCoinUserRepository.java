@@ -1,10 +1,16 @@
 package com.bank.bootcoinservice.repository;
 
 import com.bank.bootcoinservice.model.user.BootCoinUser;
+import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import org.springframework.data.repository.reactive.RxJava2CrudRepository;
 
-public interface BootCoinUserRepository extends RxJava2CrudRepository<BootCoinUser, String> {
-    Maybe<BootCoinUser> findByDocumentNumber(String documentNumber);
+public interface BootCoinUserRepository extends RxJava2CrudRepository<BootCoinUser, String>,
+        BootCoinUserRepositoryCustom {
+    /**
+     * Always reads MongoDB, for read-modify-write paths that must not save a cached copy back.
+     */
+    Maybe<BootCoinUser> findOneByDocumentNumber(String documentNumber);
     Maybe<BootCoinUser> findByPhoneNumberAndDocumentNumber(String phoneNumber, String documentNumber);
+    Flowable<BootCoinUser> findByBalanceExists(boolean exists);
 }
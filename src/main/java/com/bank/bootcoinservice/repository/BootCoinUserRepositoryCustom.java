@@ -0,0 +1,16 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.user.BootCoinUser;
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+
+public interface BootCoinUserRepositoryCustom {
+    /**
+     * Served from {@link BootCoinUserCache}, so the user may be slightly stale and never carries a balance.
+     */
+    Maybe<BootCoinUser> findByDocumentNumber(String documentNumber);
+    /**
+     * Removes the balance stored on the user once it has been moved into the ledger.
+     */
+    Completable clearLegacyBalance(String documentNumber);
+}
@@ -0,0 +1,27 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.user.BootCoinUser;
+import io.reactivex.Completable;
+import io.reactivex.Maybe;
+import lombok.RequiredArgsConstructor;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+@RequiredArgsConstructor
+public class BootCoinUserRepositoryCustomImpl implements BootCoinUserRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final BootCoinUserCache userCache;
+    @Override
+    public Maybe<BootCoinUser> findByDocumentNumber(String documentNumber) {
+        return userCache.findByDocumentNumber(documentNumber);
+    }
+    @Override
+    public Completable clearLegacyBalance(String documentNumber) {
+        Query query = Query.query(Criteria.where("documentNumber").is(documentNumber));
+        return Completable.fromPublisher(mongoTemplate.updateFirst(query, new Update().unset("balance"),
+                BootCoinUser.class).then())
+                .doOnComplete(() -> userCache.invalidate(documentNumber));
+    }
+}
@@ -0,0 +1,59 @@
+package com.bank.bootcoinservice.repository;
+
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+
+import java.time.LocalDateTime;
+
+/**
+ * Queries shared by the purchase and transaction history finders.
+ */
+final class HistoryQueries {
+    private HistoryQueries() {
+    }
+    /**
+     * Documents where the user is the buyer or the seller, newest first by creation time and then id,
+     * before the keyset position ({@code beforeCreatedAt}, {@code beforeId}) when given. The document at
+     * the position itself is returned only when {@code includeBeforeId} is set. Each branch of the
+     * {@code $or} is bounded on its own (party, createdAt, _id) index so the server merges two index
+     * scans instead of sorting; the tie on {@code createdAt} is filtered after the scan. Documents
+     * without a creation time are left out, and only the fields shown in the history are loaded.
+     */
+    static Query involving(String documentNumber, LocalDateTime beforeCreatedAt, String beforeId,
+                           boolean includeBeforeId, int batchSize) {
+        Criteria criteria = new Criteria().orOperator(
+                createdBefore(Criteria.where("buyerDocumentNumber").is(documentNumber), beforeCreatedAt),
+                createdBefore(Criteria.where("sellerDocumentNumber").is(documentNumber), beforeCreatedAt));
+        return newestFirst(criteria, beforeCreatedAt, beforeId, includeBeforeId, batchSize);
+    }
+    /**
+     * Documents the user bought without a seller, that is from the bank, in the same order and with the
+     * same fields as {@link #involving}, strictly before the keyset position when given. Served by the
+     * (buyerDocumentNumber, createdAt, _id) index.
+     */
+    static Query boughtFromBank(String documentNumber, LocalDateTime beforeCreatedAt, String beforeId,
+                                int batchSize) {
+        Criteria criteria = createdBefore(Criteria.where("buyerDocumentNumber").is(documentNumber)
+                .and("sellerDocumentNumber").is(null), beforeCreatedAt);
+        return newestFirst(criteria, beforeCreatedAt, beforeId, false, batchSize);
+    }
+    private static Criteria createdBefore(Criteria party, LocalDateTime beforeCreatedAt) {
+        return beforeCreatedAt == null
+                ? party.and("createdAt").ne(null)
+                : party.and("createdAt").lte(beforeCreatedAt);
+    }
+    private static Query newestFirst(Criteria criteria, LocalDateTime beforeCreatedAt, String beforeId,
+                                     boolean includeBeforeId, int batchSize) {
+        if (beforeCreatedAt != null) {
+            Criteria id = Criteria.where("createdAt").is(beforeCreatedAt).and("_id");
+            criteria.norOperator(includeBeforeId ? id.gt(beforeId) : id.gte(beforeId));
+        }
+        Query query = Query.query(criteria)
+                .with(Sort.by(Sort.Direction.DESC, "createdAt", "_id"))
+                .cursorBatchSize(batchSize);
+        query.fields().include("buyerDocumentNumber", "sellerDocumentNumber", "paymentMethod", "amount", "status",
+                "totalAmountInPEN", "transactionType", "createdAt");
+        return query;
+    }
+}
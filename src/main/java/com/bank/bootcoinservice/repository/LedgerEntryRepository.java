@@ -0,0 +1,11 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.ledger.LedgerEntry;
+import io.reactivex.Flowable;
+import org.springframework.data.repository.reactive.RxJava2CrudRepository;
+
+public interface LedgerEntryRepository extends RxJava2CrudRepository<LedgerEntry, String>,
+        LedgerEntryRepositoryCustom {
+    Flowable<LedgerEntry> findByAccountAndSequenceGreaterThanOrderBySequenceAsc(String account, long sequence);
+    Flowable<LedgerEntry> findByPostingId(String postingId);
+}
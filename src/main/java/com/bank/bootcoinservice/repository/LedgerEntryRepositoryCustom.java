@@ -0,0 +1,20 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.ledger.LedgerEntry;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+public interface LedgerEntryRepositoryCustom {
+    /**
+     * Sum of every entry amount, which is zero while all postings are balanced.
+     */
+    Single<BigDecimal> sumOfAmounts();
+    /**
+     * Inserts the entries of one posting in a single transaction, so either all of them land or none does.
+     * Needs a replica set or a sharded cluster.
+     */
+    Flowable<LedgerEntry> insertPosting(List<LedgerEntry> entries);
+}
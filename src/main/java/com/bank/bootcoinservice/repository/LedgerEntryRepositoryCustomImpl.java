@@ -0,0 +1,32 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.ledger.LedgerEntry;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import lombok.RequiredArgsConstructor;
+import org.bson.Document;
+import org.bson.types.Decimal128;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.transaction.reactive.TransactionalOperator;
+
+import java.math.BigDecimal;
+import java.util.List;
+
+@RequiredArgsConstructor
+public class LedgerEntryRepositoryCustomImpl implements LedgerEntryRepositoryCustom {
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final TransactionalOperator transactionalOperator;
+    @Override
+    public Single<BigDecimal> sumOfAmounts() {
+        Aggregation total = Aggregation.newAggregation(Aggregation.group().sum("amount").as("total"));
+        return Single.fromPublisher(mongoTemplate.aggregate(total, LedgerEntry.class, Document.class)
+                .next()
+                .map(result -> result.get("total", Decimal128.class).bigDecimalValue())
+                .defaultIfEmpty(BigDecimal.ZERO));
+    }
+    @Override
+    public Flowable<LedgerEntry> insertPosting(List<LedgerEntry> entries) {
+        return Flowable.fromPublisher(transactionalOperator.transactional(mongoTemplate.insertAll(entries)));
+    }
+}
@@ -0,0 +1,7 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.ledger.LedgerSnapshot;
+import org.springframework.data.repository.reactive.RxJava2CrudRepository;
+
+public interface LedgerSnapshotRepository extends RxJava2CrudRepository<LedgerSnapshot, String> {
+}
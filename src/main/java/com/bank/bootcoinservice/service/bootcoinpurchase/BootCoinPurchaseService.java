@@ -2,16 +2,46 @@ package com.bank.bootcoinservice.service.bootcoinpurchase;
 
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinPurchaseRequest;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinPurchaseResponse;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinSellOfferRequest;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinSellRequest;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.PendingPurchaseEvent;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.PendingPurchasePage;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.TransactionResponse;
 import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
 import io.reactivex.Flowable;
 import io.reactivex.Single;
 
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+
 public interface BootCoinPurchaseService {
     Single<BootCoinPurchaseResponse> requestPurchase(BootCoinPurchaseRequest request);
-    Flowable<BootCoinPurchaseResponse> getPendingPurchases();
+    /**
+     * Purchases waiting for a seller, oldest first, optionally filtered by payment method and an
+     * inclusive amount range. {@code cursor} is the nextCursor of the previous page, or null.
+     */
+    Single<PendingPurchasePage> getPendingPurchases(PaymentMethod paymentMethod, BigDecimal minAmount,
+                                                    BigDecimal maxAmount, String cursor, int size);
+    /**
+     * The first page of pending purchases as ADDED events, then purchases entering or leaving
+     * WAITING_FOR_SELLER as they happen. With the resume token of the last event a client saw, only
+     * the events it missed are sent instead of the page, as long as they are still kept.
+     */
+    Flowable<PendingPurchaseEvent> streamPendingPurchases(PaymentMethod paymentMethod, BigDecimal minAmount,
+                                                          BigDecimal maxAmount, int size, String lastEventId);
     Single<BootCoinPurchaseResponse> acceptPurchase(String purchaseId, BootCoinSellRequest request);
+    Single<BootCoinSellOffer> postSellOffer(BootCoinSellOfferRequest request);
+    /**
+     * Cancels the unmatched remainder of an open offer posted by {@code sellerDocumentNumber}.
+     */
+    Single<BootCoinSellOffer> cancelSellOffer(String offerId, String sellerDocumentNumber);
     Single<BootCoinPurchase> updateTransactionStatus(TransactionResponse response);
+    /**
+     * Moves up to {@code limit} purchases still waiting for a seller past their expiry to EXPIRED.
+     * Emits how many were due, so callers repeat while it is {@code limit}.
+     */
+    Single<Integer> expireWaitingPurchases(LocalDateTime now, int limit);
     Single<BootCoinPurchase> getById(String id);
 }
\ No newline at end of file
@@ -2,35 +2,90 @@ package com.bank.bootcoinservice.service.bootcoinpurchase;
 
 import com.bank.bootcoinservice.dto.bootcoinpurchase.*;
 import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.bootcoinpurchase.SellOfferStatus;
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
 import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
 import com.bank.bootcoinservice.model.transaction.PaymentMethod;
 import com.bank.bootcoinservice.model.transaction.TransactionStatus;
 import com.bank.bootcoinservice.model.transaction.TransactionType;
+import com.bank.bootcoinservice.model.user.BootCoinUser;
 import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import com.bank.bootcoinservice.repository.BootCoinSellOfferRepository;
 import com.bank.bootcoinservice.repository.BootCoinTransactionRepository;
 import com.bank.bootcoinservice.repository.BootCoinUserRepository;
 import com.bank.bootcoinservice.service.exchangerate.BootCoinExchangeRateService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateQuoteService;
+import com.bank.bootcoinservice.service.ledger.InsufficientBalanceException;
+import com.bank.bootcoinservice.service.ledger.LedgerService;
+import io.reactivex.Completable;
 import io.reactivex.Single;
 import io.reactivex.Flowable;
 import io.reactivex.Maybe;
+import io.reactivex.disposables.Disposable;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class BootCoinPurchaseServiceImpl implements BootCoinPurchaseService {
+    private static final String RESERVE_POSTING_PREFIX = "reserve:";
+    private static final String SETTLE_POSTING_PREFIX = "settle:";
+    private static final String RELEASE_POSTING_PREFIX = "release:";
+    private static final int MAX_PENDING_PAGE_SIZE = 500;
+    static final String EXPIRED_MESSAGE = "No seller took the purchase before it expired.";
     private final BootCoinPurchaseRepository repository;
     private final BootCoinUserRepository bootCoinUserRepository;
     private final BootCoinTransactionRepository bootCoinTransactionRepository;
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final BootCoinExchangeRateService exchangeRateService;
+    private final ExchangeRateQuoteService quoteService;
+    private final BootCoinSellOfferRepository sellOfferRepository;
+    private final LedgerService ledgerService;
+    private final PendingPurchaseFeed pendingPurchaseFeed;
+    private final SagaTimeouts sagaTimeouts;
+    @Value("${bootcoin.purchases.expire-after-ms:86400000}")
+    private long expireAfterMillis;
+    private Disposable catchUp;
+    /**
+     * Migrates purchases stored before matching moved to Mongo, then matches every open offer once,
+     * so a match cut short by a crash is finished. This runs in the background once the application
+     * is ready; every step is a conditional update, so instances starting together are safe.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void catchUpMatching() {
+        catchUp = repository.convertLegacyAmounts()
+                .andThen(repository.backfillLimitRates())
+                .andThen(sellOfferRepository.findByStatusOrderByCreatedAtAsc(SellOfferStatus.OPEN))
+                .concatMapCompletable(this::matchOffer)
+                .subscribe(() -> log.info("Open sell offers matched against waiting purchases"),
+                    error -> log.error("Could not match open sell offers: {}", error.getMessage()));
+    }
+    @PreDestroy
+    public void stopCatchUp() {
+        if (catchUp != null) {
+            catchUp.dispose();
+        }
+    }
     @Override
     public Single<BootCoinPurchaseResponse> requestPurchase(BootCoinPurchaseRequest request) {
+        if (request.getAmount() == null || request.getAmount().signum() <= 0) {
+            return Single.error(new IllegalArgumentException("Amount must be greater than zero."));
+        }
         return bootCoinUserRepository.findByDocumentNumber(request.getBuyerDocumentNumber())
                 .switchIfEmpty(Maybe.error(new IllegalArgumentException("User not found.")))
                 .flatMapSingle(user -> {
@@ -42,80 +97,314 @@ public class BootCoinPurchaseServiceImpl implements BootCoinPurchaseService {
                         || user.getBankAccountId().isEmpty())) {
                         return Single.error(new IllegalArgumentException("User does not have a valid bank account."));
                     }
-                    return exchangeRateService.getCurrentExchangeRate()
-                            .map(exchangeRate -> request.getAmount().multiply(exchangeRate.getSellRate()))
-                            .flatMap(totalAmountInPEN -> {
+                    return pricingRate(request.getQuoteId())
+                            .flatMap(exchangeRate -> {
+                                LocalDateTime now = LocalDateTime.now();
                                 BootCoinPurchase purchase = BootCoinPurchase.builder()
                                         .buyerDocumentNumber(request.getBuyerDocumentNumber())
                                         .paymentMethod(request.getPaymentMethod())
                                         .buyerPhoneNumber(user.getPhoneNumber())
                                         .buyerAccountNumber(user.getBankAccountId())
                                         .amount(request.getAmount())
-                                        .totalAmountInPEN(totalAmountInPEN)
+                                        .totalAmountInPEN(request.getAmount().multiply(exchangeRate.getSellRate()))
+                                        .limitRate(exchangeRate.getSellRate())
                                         .status(TransactionStatus.WAITING_FOR_SELLER)
                                         .transactionType(TransactionType.P2P)
-                                        .createdAt(LocalDateTime.now())
-                                        .updatedAt(LocalDateTime.now())
+                                        .createdAt(now)
+                                        .updatedAt(now)
+                                        .expiresAt(now.plus(Duration.ofMillis(expireAfterMillis)))
                                         .build();
-                                return repository.save(purchase).map(this::mapToResponse);
+                                return repository.save(purchase)
+                                        .flatMap(this::matchPurchase)
+                                        .map(this::mapToResponse);
                             });
                 });
     }
     @Override
-    public Flowable<BootCoinPurchaseResponse> getPendingPurchases() {
-        return repository.findByStatus(TransactionStatus.WAITING_FOR_SELLER)
-                .map(this::mapToResponse);
+    public Single<BootCoinSellOffer> postSellOffer(BootCoinSellOfferRequest request) {
+        if (request.getAmount() == null || request.getAmount().signum() <= 0
+                || request.getRate() == null || request.getRate().signum() <= 0) {
+            return Single.error(new IllegalArgumentException("Amount and rate must be greater than zero."));
+        }
+        return bootCoinUserRepository.findByDocumentNumber(request.getSellerDocumentNumber())
+                .switchIfEmpty(Maybe.error(new IllegalArgumentException("Seller not found.")))
+                .flatMapSingle(seller -> {
+                    if (request.getPaymentMethod() == PaymentMethod.YANKI
+                            && (!seller.isHasYanki()
+                            || !seller.getPhoneNumber().equals(request.getSellerPhoneNumber()))) {
+                        return Single.error(new IllegalArgumentException("Seller Yanki phone number does not match."));
+                    }
+                    if (request.getPaymentMethod() == PaymentMethod.TRANSFER
+                            && (seller.getBankAccountId() == null
+                            || !seller.getBankAccountId().equals(request.getSellerAccountNumber()))) {
+                        return Single.error(new IllegalArgumentException("Seller bank account does not match."));
+                    }
+                    return ledgerService.balanceOf(seller.getDocumentNumber());
+                })
+                .flatMap(balance -> {
+                    if (balance.compareTo(request.getAmount()) < 0) {
+                        return Single.error(new IllegalArgumentException("Seller does not have " +
+                            "enough balance for the offer."));
+                    }
+                    BootCoinSellOffer offer = BootCoinSellOffer.builder()
+                            .sellerDocumentNumber(request.getSellerDocumentNumber())
+                            .paymentMethod(request.getPaymentMethod())
+                            .sellerPhoneNumber(request.getPaymentMethod() == PaymentMethod.YANKI
+                                    ? request.getSellerPhoneNumber() : null)
+                            .sellerAccountNumber(request.getPaymentMethod() == PaymentMethod.TRANSFER
+                                    ? request.getSellerAccountNumber() : null)
+                            .amount(request.getAmount())
+                            .remainingAmount(request.getAmount())
+                            .rate(request.getRate())
+                            .status(SellOfferStatus.OPEN)
+                            .createdAt(LocalDateTime.now())
+                            .updatedAt(LocalDateTime.now())
+                            .build();
+                    return sellOfferRepository.save(offer)
+                            .flatMap(saved -> matchOffer(saved)
+                                    .andThen(sellOfferRepository.findById(saved.getId()).toSingle(saved)));
+                });
+    }
+    @Override
+    public Single<BootCoinSellOffer> cancelSellOffer(String offerId, String sellerDocumentNumber) {
+        return sellOfferRepository.findById(offerId)
+                .switchIfEmpty(Maybe.error(new IllegalArgumentException("Sell offer not found or already filled.")))
+                .flatMapSingle(offer -> {
+                    if (!offer.getSellerDocumentNumber().equals(sellerDocumentNumber)) {
+                        return Single.error(new IllegalArgumentException("Sell offer does not belong to the seller."));
+                    }
+                    return sellOfferRepository.cancelOpenOffer(offerId, sellerDocumentNumber)
+                            .switchIfEmpty(Single.error(new IllegalArgumentException("Sell offer not found " +
+                                "or already filled.")));
+                });
+    }
+    /**
+     * Fills the purchase from the best open offer that covers its whole amount at or below its price,
+     * trading at the offer's rate, or leaves it waiting when there is none. Emits the claimed purchase
+     * when it was filled here, or the purchase as given otherwise.
+     */
+    private Single<BootCoinPurchase> matchPurchase(BootCoinPurchase purchase) {
+        return sellOfferRepository.findMatchingOffers(purchase.getPaymentMethod(), purchase.getLimitRate(),
+                        purchase.getAmount(), purchase.getBuyerDocumentNumber())
+                .concatMapSingle(offer -> trade(purchase, offer, offer.getRate()), 1)
+                .filter(Trade::closesPurchase)
+                .firstElement()
+                .map(trade -> trade.getOutcome() == Trade.Outcome.FILLED ? trade.getPurchase() : purchase)
+                .toSingle(purchase);
+    }
+    /**
+     * Fills waiting purchases priced at or above the offer, highest price first and then oldest,
+     * trading at each purchase's own price, until the offer is filled, cancelled or can no longer
+     * be funded. A purchase the seller could not fund is matched against the other offers.
+     */
+    private Completable matchOffer(BootCoinSellOffer offer) {
+        return repository.findMatchingPurchases(offer.getPaymentMethod(), offer.getRate(), offer.getRemainingAmount(),
+                        offer.getSellerDocumentNumber())
+                .concatMapSingle(purchase -> trade(purchase, offer, purchase.getLimitRate()), 1)
+                .takeUntil(Trade::closesOffer)
+                .concatMapCompletable(trade -> trade.getOutcome() == Trade.Outcome.OFFER_UNFUNDED
+                        ? matchPurchase(trade.getPurchase()).ignoreElement()
+                        : Completable.complete());
+    }
+    /**
+     * Trades a purchase against an offer in Mongo, so instances matching at the same time never sell
+     * the same amount twice. The amount is taken from the offer before the purchase is claimed, so a
+     * crash between the two writes can only under-sell the offer, never over-sell it. When the purchase
+     * was claimed first by someone else, the amount goes back to the offer; when the seller can no
+     * longer fund the trade, the offer is withdrawn and the purchase waits again.
+     */
+    private Single<Trade> trade(BootCoinPurchase purchase, BootCoinSellOffer offer, BigDecimal rate) {
+        Single<Trade> offerTaken = sellOfferRepository.findById(offer.getId())
+                .map(current -> new Trade(Trade.Outcome.OFFER_TAKEN, current, purchase))
+                .toSingle(new Trade(Trade.Outcome.OFFER_TAKEN, null, purchase));
+        return sellOfferRepository.takeFromOffer(offer.getId(), purchase.getAmount())
+                .flatMapSingleElement(taken -> claim(purchase, taken, rate))
+                .switchIfEmpty(offerTaken);
+    }
+    private Single<Trade> claim(BootCoinPurchase purchase, BootCoinSellOffer offer, BigDecimal rate) {
+        BootCoinPurchase claim = BootCoinPurchase.builder()
+                .id(purchase.getId())
+                .sellerDocumentNumber(offer.getSellerDocumentNumber())
+                .sellerPhoneNumber(purchase.getPaymentMethod() == PaymentMethod.YANKI
+                        ? offer.getSellerPhoneNumber() : null)
+                .sellerAccountNumber(purchase.getPaymentMethod() == PaymentMethod.TRANSFER
+                        ? offer.getSellerAccountNumber() : null)
+                .amount(purchase.getAmount())
+                .totalAmountInPEN(rate.compareTo(purchase.getLimitRate()) != 0
+                        ? purchase.getAmount().multiply(rate) : purchase.getTotalAmountInPEN())
+                .build();
+        log.info("Matched purchase {} with sell offer {} at {}", purchase.getId(), offer.getId(), rate);
+        return repository.claimWaitingPurchase(claim, List.of(purchase.getPaymentMethod()))
+                .flatMapSingleElement(claimed -> reserve(claimed)
+                        .doOnSuccess(this::sendTransactionEvent)
+                        .map(reserved -> new Trade(Trade.Outcome.FILLED, offer, reserved))
+                        .onErrorResumeNext(error -> error instanceof InsufficientBalanceException
+                                ? withdrawUnfundedOffer(offer, purchase)
+                                : Single.error(error)))
+                .switchIfEmpty(Single.defer(() -> giveBack(offer, purchase)));
+    }
+    private Single<Trade> giveBack(BootCoinSellOffer offer, BootCoinPurchase purchase) {
+        log.warn("Purchase {} was taken before the match with offer {} settled", purchase.getId(), offer.getId());
+        return sellOfferRepository.giveBackToOffer(offer.getId(), purchase.getAmount())
+                .map(current -> new Trade(Trade.Outcome.PURCHASE_TAKEN, current, purchase))
+                .toSingle(new Trade(Trade.Outcome.PURCHASE_TAKEN, null, purchase));
+    }
+    private Single<Trade> withdrawUnfundedOffer(BootCoinSellOffer offer, BootCoinPurchase purchase) {
+        log.warn("Seller {} can no longer fund sell offer {}, withdrawing it",
+                offer.getSellerDocumentNumber(), offer.getId());
+        return sellOfferRepository.giveBackToOffer(offer.getId(), purchase.getAmount())
+                .ignoreElement()
+                .andThen(sellOfferRepository.cancelOpenOffer(offer.getId(), offer.getSellerDocumentNumber()))
+                .ignoreElement()
+                .toSingleDefault(new Trade(Trade.Outcome.OFFER_UNFUNDED, offer, purchase));
+    }
+    /**
+     * Moves the purchase amount from the seller into the purchase's escrow account. When that fails
+     * the claim is given back, so the purchase can be taken by another seller.
+     */
+    private Single<BootCoinPurchase> reserve(BootCoinPurchase claimed) {
+        return ledgerService.transfer(RESERVE_POSTING_PREFIX + claimed.getId(), claimed.getSellerDocumentNumber(),
+                        escrowAccount(claimed), claimed.getAmount())
+                .toSingleDefault(claimed)
+                .onErrorResumeNext(error -> !(error instanceof InsufficientBalanceException)
+                        ? Single.error(error)
+                        : repository.releaseClaim(claimed.getId(), claimed.getSellerDocumentNumber())
+                                .ignoreElement()
+                                .andThen(Single.error(error)));
+    }
+    private static String escrowAccount(BootCoinPurchase purchase) {
+        return LedgerService.ESCROW_ACCOUNT_PREFIX + purchase.getId();
+    }
+    private Single<BootCoinExchangeRate> pricingRate(String quoteId) {
+        return quoteId == null
+                ? exchangeRateService.getCurrentExchangeRate()
+                : quoteService.getQuotedRate(quoteId);
+    }
+    @Override
+    public Single<PendingPurchasePage> getPendingPurchases(PaymentMethod paymentMethod, BigDecimal minAmount,
+                                                           BigDecimal maxAmount, String cursor, int size) {
+        if (size < 1 || size > MAX_PENDING_PAGE_SIZE) {
+            return Single.error(new IllegalArgumentException("Page size must be between 1 and "
+                    + MAX_PENDING_PAGE_SIZE));
+        }
+        if (minAmount != null && maxAmount != null && minAmount.compareTo(maxAmount) > 0) {
+            return Single.error(new IllegalArgumentException("Minimum amount must not exceed maximum amount."));
+        }
+        PendingPurchaseCursor after;
+        try {
+            after = cursor == null ? null : PendingPurchaseCursor.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            return Single.error(e);
+        }
+        // one extra purchase tells whether there is a next page
+        return repository.findWaitingPage(paymentMethod, minAmount, maxAmount,
+                        after == null ? null : after.getCreatedAt(), after == null ? null : after.getId(), size + 1)
+                .toList()
+                .map(purchases -> {
+                    if (purchases.size() <= size) {
+                        return new PendingPurchasePage(purchases.stream().map(this::mapToResponse)
+                                .collect(Collectors.toList()), null);
+                    }
+                    BootCoinPurchase last = purchases.get(size - 1);
+                    return new PendingPurchasePage(purchases.subList(0, size).stream().map(this::mapToResponse)
+                            .collect(Collectors.toList()),
+                            new PendingPurchaseCursor(last.getCreatedAt(), last.getId()).encode());
+                });
+    }
+    @Override
+    public Flowable<PendingPurchaseEvent> streamPendingPurchases(PaymentMethod paymentMethod, BigDecimal minAmount,
+                                                                 BigDecimal maxAmount, int size, String lastEventId) {
+        if (size < 1 || size > MAX_PENDING_PAGE_SIZE) {
+            return Flowable.error(new IllegalArgumentException("Page size must be between 1 and "
+                    + MAX_PENDING_PAGE_SIZE));
+        }
+        if (minAmount != null && maxAmount != null && minAmount.compareTo(maxAmount) > 0) {
+            return Flowable.error(new IllegalArgumentException("Minimum amount must not exceed maximum amount."));
+        }
+        Flowable<BootCoinPurchase> firstPage = repository.findWaitingPage(paymentMethod, minAmount, maxAmount,
+                null, null, size);
+        // removals are sent whatever the filters, since the client only drops purchases it is showing
+        return Flowable.fromPublisher(pendingPurchaseFeed.changes(lastEventId, firstPage))
+                .filter(change -> change.getType() == PendingPurchaseEvent.Type.REMOVED
+                        || matches(change.getPurchase(), paymentMethod, minAmount, maxAmount))
+                .map(change -> new PendingPurchaseEvent(change.getType(), change.getPurchaseId(),
+                        change.getPurchase() == null ? null : mapToResponse(change.getPurchase()),
+                        change.getResumeToken()));
+    }
+    private static boolean matches(BootCoinPurchase purchase, PaymentMethod paymentMethod, BigDecimal minAmount,
+                                   BigDecimal maxAmount) {
+        return (paymentMethod == null || purchase.getPaymentMethod() == paymentMethod)
+                && (minAmount == null || purchase.getAmount().compareTo(minAmount) >= 0)
+                && (maxAmount == null || purchase.getAmount().compareTo(maxAmount) <= 0);
     }
+    /**
+     * Lets a seller take a waiting purchase. The conditional claim is the only check on the purchase,
+     * and it only matches a payment method the seller's details were verified for, so concurrent
+     * sellers cannot both take it. The purchase is read again only to explain a rejected claim.
+     */
     @Override
     public Single<BootCoinPurchaseResponse> acceptPurchase(String purchaseId,
                                                            BootCoinSellRequest request) {
-        return repository.findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER)
-                .switchIfEmpty(Maybe.error(new IllegalArgumentException("Purchase request " +
-                    "not found or already taken.")))
-                .flatMapSingle(purchase ->
-                        bootCoinUserRepository.findByDocumentNumber(request.getSellerDocumentNumber())
-                                .switchIfEmpty(Maybe.error(new IllegalArgumentException("Seller not found.")))
-                                .flatMapSingle(seller -> {
-                                    if (purchase.getPaymentMethod() == PaymentMethod.YANKI
-                                        && !seller.isHasYanki()) {
-                                        return Single.error(new IllegalArgumentException("Seller does " +
-                                            "not have Yanki enabled."));
-                                    }
-                                    if (purchase.getPaymentMethod() == PaymentMethod.TRANSFER &&
-                                        (seller.getBankAccountId() == null
-                                        || seller.getBankAccountId().isEmpty())) {
-                                        return Single.error(new IllegalArgumentException("Seller does " +
-                                            "not have a valid bank account."));
-                                    }
-                                    if (purchase.getPaymentMethod() == PaymentMethod.YANKI &&
-                                            !seller.getPhoneNumber().equals(request.getSellerPhoneNumber())) {
-                                        return Single.error(new IllegalArgumentException("Seller phone " +
-                                            "number does not match."));
-                                    }
-                                    if (purchase.getPaymentMethod() == PaymentMethod.TRANSFER &&
-                                            !seller.getBankAccountId().equals(request.getSellerAccountNumber())) {
-                                        return Single.error(new IllegalArgumentException("Seller bank " +
-                                            "account does not match."));
-                                    }
-                                    if (seller.getBalance().compareTo(purchase.getAmount()) < 0) {
-                                        return Single.error(new IllegalArgumentException("Seller does not have " +
-                                            "enough balance to take the offer."));
-                                    }
-                                    purchase.setSellerDocumentNumber(request.getSellerDocumentNumber());
-                                    if (purchase.getPaymentMethod() == PaymentMethod.YANKI) {
-                                        purchase.setSellerPhoneNumber(request.getSellerPhoneNumber());
-                                    } else {
-                                        purchase.setSellerAccountNumber(request.getSellerAccountNumber());
-                                    }
-                                    purchase.setStatus(TransactionStatus.PROCESSING);
-                                    purchase.setUpdatedAt(LocalDateTime.now());
-                                    return repository.save(purchase)
-                                            .doOnSuccess(this::sendTransactionEvent)
-                                            .map(this::mapToResponse);
-                                })
-                );
+        return bootCoinUserRepository.findByDocumentNumber(request.getSellerDocumentNumber())
+                .switchIfEmpty(Maybe.error(new IllegalArgumentException("Seller not found.")))
+                .flatMapSingle(seller -> {
+                    List<PaymentMethod> accepted = acceptedPaymentMethods(seller, request);
+                    BootCoinPurchase claim = BootCoinPurchase.builder()
+                            .id(purchaseId)
+                            .sellerDocumentNumber(seller.getDocumentNumber())
+                            .sellerPhoneNumber(accepted.contains(PaymentMethod.YANKI)
+                                    ? request.getSellerPhoneNumber() : null)
+                            .sellerAccountNumber(accepted.contains(PaymentMethod.TRANSFER)
+                                    ? request.getSellerAccountNumber() : null)
+                            .build();
+                    Single<BootCoinPurchase> rejected = Single.defer(() -> rejectClaim(purchaseId, seller, accepted));
+                    Maybe<BootCoinPurchase> claimed = accepted.isEmpty()
+                            ? Maybe.empty()
+                            : repository.claimWaitingPurchase(claim, accepted);
+                    return claimed.switchIfEmpty(rejected)
+                            .flatMap(this::reserve)
+                            .onErrorResumeNext(error -> Single.error(error instanceof InsufficientBalanceException
+                                    ? new IllegalArgumentException("Seller does not have enough balance to take " +
+                                        "the offer.")
+                                    : error))
+                            .doOnSuccess(this::sendTransactionEvent)
+                            .map(this::mapToResponse);
+                });
+    }
+    private static List<PaymentMethod> acceptedPaymentMethods(BootCoinUser seller, BootCoinSellRequest request) {
+        List<PaymentMethod> accepted = new ArrayList<>();
+        if (seller.isHasYanki() && seller.getPhoneNumber() != null
+                && seller.getPhoneNumber().equals(request.getSellerPhoneNumber())) {
+            accepted.add(PaymentMethod.YANKI);
+        }
+        if (seller.getBankAccountId() != null && !seller.getBankAccountId().isEmpty()
+                && seller.getBankAccountId().equals(request.getSellerAccountNumber())) {
+            accepted.add(PaymentMethod.TRANSFER);
+        }
+        return accepted;
+    }
+    private Single<BootCoinPurchase> rejectClaim(String purchaseId, BootCoinUser seller,
+                                                 List<PaymentMethod> accepted) {
+        return repository.findById(purchaseId)
+                .filter(purchase -> purchase.getStatus() == TransactionStatus.WAITING_FOR_SELLER
+                        && !accepted.contains(purchase.getPaymentMethod()))
+                .flatMapSingleElement(purchase -> Single.<BootCoinPurchase>error(
+                        new IllegalArgumentException(sellerMismatch(purchase.getPaymentMethod(), seller))))
+                .switchIfEmpty(Single.error(new IllegalArgumentException("Purchase request not found or " +
+                    "already taken.")));
+    }
+    private static String sellerMismatch(PaymentMethod paymentMethod, BootCoinUser seller) {
+        if (paymentMethod == PaymentMethod.YANKI) {
+            return !seller.isHasYanki()
+                    ? "Seller does not have Yanki enabled."
+                    : "Seller phone number does not match.";
+        }
+        return seller.getBankAccountId() == null || seller.getBankAccountId().isEmpty()
+                ? "Seller does not have a valid bank account."
+                : "Seller bank account does not match.";
     }
     private void sendTransactionEvent(BootCoinPurchase purchase) {
+        sagaTimeouts.start(purchase.getId());
         if (purchase.getPaymentMethod() == PaymentMethod.TRANSFER) {
             TransactionEvent event = TransactionEvent.builder()
                     .purchaseId(purchase.getId())
@@ -143,62 +432,98 @@ public class BootCoinPurchaseServiceImpl implements BootCoinPurchaseService {
         }
     }
     @Override
+    public Single<Integer> expireWaitingPurchases(LocalDateTime now, int limit) {
+        return repository.findExpiredWaitingIds(now, limit)
+                .toList()
+                .flatMap(ids -> ids.isEmpty()
+                        ? Single.just(0)
+                        : repository.expireWaiting(ids, EXPIRED_MESSAGE)
+                                .doOnSuccess(expired -> log.info("Expired {} of {} purchases due", expired,
+                                        ids.size()))
+                                .map(expired -> ids.size()));
+    }
+    @Override
     public Single<BootCoinPurchase> getById(String id) {
         return repository.findById(id).toSingle();
     }
+    /**
+     * Finishes the saga of an accepted purchase: the escrowed amount goes to the buyer when the payment
+     * succeeded, or back to the seller when it failed. The status moves out of PROCESSING only once, so
+     * a result arriving after the sweeper expired the purchase is rejected. Redelivered results and
+     * escrows left open by a crash are finished again, because every posting is idempotent.
+     */
     @Override
     public Single<BootCoinPurchase> updateTransactionStatus(TransactionResponse response) {
         TransactionStatus newStatus = response.isSuccess() ? TransactionStatus.COMPLETED : TransactionStatus.FAILED;
         return repository.findById(response.getTransactionId())
                 .switchIfEmpty(Maybe.error(new IllegalArgumentException("Transaction not found.")))
                 .flatMapSingle(transaction -> {
-                    transaction.setStatus(newStatus);
-                    transaction.setUpdatedAt(LocalDateTime.now());
-                    transaction.setMessageResponse(response.getMessage());
-                    return repository.save(transaction)
-                            .flatMap(updatedTransaction -> {
-                                if (newStatus == TransactionStatus.COMPLETED) {
-                                    BootCoinTransaction bootCoinTransaction = BootCoinTransaction.builder()
-                                            .id(updatedTransaction.getId())
-                                            .paymentMethod(updatedTransaction.getPaymentMethod())
-                                            .transactionType(updatedTransaction.getTransactionType())
-                                            .status(updatedTransaction.getStatus())
-                                            .amount(updatedTransaction.getAmount())
-                                            .totalAmountInPEN(updatedTransaction.getTotalAmountInPEN())
-                                            .buyerDocumentNumber(updatedTransaction.getBuyerDocumentNumber())
-                                            .buyerAccountNumber(updatedTransaction.getBuyerAccountNumber())
-                                            .createdAt(LocalDateTime.now())
-                                            .updatedAt(LocalDateTime.now())
-                                            .sellerDocumentNumber(updatedTransaction.getSellerDocumentNumber())
-                                            .sellerPhoneNumber(updatedTransaction.getSellerPhoneNumber())
-                                            .sellerAccountNumber(updatedTransaction.getSellerAccountNumber())
-                                            .buyerPhoneNumber(updatedTransaction.getBuyerPhoneNumber())
-                                            .build();
-                                    return bootCoinTransactionRepository.save(bootCoinTransaction)
-                                            .flatMap(savedTransaction -> updateUserBalance(updatedTransaction));
-                                }
-                                return Single.just(updatedTransaction);
-                            });
+                    if (transaction.getStatus() == newStatus) {
+                        return transaction.getReservedAmount() != null
+                                ? closeEscrow(transaction)
+                                : Single.just(transaction);
+                    }
+                    if (transaction.getStatus() != TransactionStatus.PROCESSING) {
+                        return Single.error(new IllegalArgumentException("Transaction is no longer processing."));
+                    }
+                    return repository.finishProcessing(transaction.getId(), newStatus, response.getMessage())
+                            .switchIfEmpty(Single.error(new IllegalArgumentException("Transaction is no " +
+                                "longer processing.")))
+                            .flatMap(this::closeEscrow);
+                })
+                .doOnSuccess(updatedTransaction -> {
+                    sagaTimeouts.finish(updatedTransaction.getId());
+                    log.info("Transaction successfully updated: {}", updatedTransaction);
                 })
-                .doOnSuccess(updatedTransaction -> log.info("Transaction successfully updated: {}", updatedTransaction))
                 .doOnError(error -> log.error("Failed to update transaction: {}", error.getMessage()));
     }
-    private Single<BootCoinPurchase> updateUserBalance(BootCoinPurchase transaction) {
-        return bootCoinUserRepository.findByDocumentNumber(transaction.getBuyerDocumentNumber())
-                .switchIfEmpty(Maybe.error(new IllegalArgumentException("Buyer not found.")))
-                .flatMapSingle(buyer -> {
-                    buyer.setBalance(buyer.getBalance().add(transaction.getAmount()));
-                    return bootCoinUserRepository.save(buyer);
-                })
-                .flatMap(buyerUpdated -> bootCoinUserRepository
-                    .findByDocumentNumber(transaction.getSellerDocumentNumber())
-                        .switchIfEmpty(Maybe.error(new IllegalArgumentException("Seller not found.")))
-                        .flatMapSingle(seller -> {
-                            seller.setBalance(seller.getBalance().subtract(transaction.getAmount()));
-                            return bootCoinUserRepository.save(seller);
-                        })
-                )
-                .map(sellerUpdated -> transaction);
+    private Single<BootCoinPurchase> closeEscrow(BootCoinPurchase updatedTransaction) {
+        Completable escrow;
+        if (updatedTransaction.getStatus() == TransactionStatus.COMPLETED) {
+            BootCoinTransaction bootCoinTransaction = BootCoinTransaction.builder()
+                    .id(updatedTransaction.getId())
+                    .paymentMethod(updatedTransaction.getPaymentMethod())
+                    .transactionType(updatedTransaction.getTransactionType())
+                    .status(updatedTransaction.getStatus())
+                    .amount(updatedTransaction.getAmount())
+                    .totalAmountInPEN(updatedTransaction.getTotalAmountInPEN())
+                    .buyerDocumentNumber(updatedTransaction.getBuyerDocumentNumber())
+                    .buyerAccountNumber(updatedTransaction.getBuyerAccountNumber())
+                    .createdAt(LocalDateTime.now())
+                    .updatedAt(LocalDateTime.now())
+                    .sellerDocumentNumber(updatedTransaction.getSellerDocumentNumber())
+                    .sellerPhoneNumber(updatedTransaction.getSellerPhoneNumber())
+                    .sellerAccountNumber(updatedTransaction.getSellerAccountNumber())
+                    .buyerPhoneNumber(updatedTransaction.getBuyerPhoneNumber())
+                    .build();
+            escrow = bootCoinTransactionRepository.save(bootCoinTransaction).ignoreElement()
+                    .andThen(settleEscrow(updatedTransaction));
+        } else {
+            escrow = releaseEscrow(updatedTransaction);
+        }
+        return escrow
+                .andThen(updatedTransaction.getReservedAmount() != null
+                        ? repository.clearReservation(updatedTransaction.getId())
+                        : Completable.complete())
+                .toSingleDefault(updatedTransaction);
+    }
+    /**
+     * Purchases accepted before escrow existed have nothing reserved, so they are paid straight from the
+     * seller's balance as before. A reserved purchase is only ever paid from its escrow, and a failure
+     * there is surfaced rather than charging the seller a second time.
+     */
+    private Completable settleEscrow(BootCoinPurchase transaction) {
+        if (transaction.getReservedAmount() == null) {
+            return ledgerService.transfer(transaction.getId(), transaction.getSellerDocumentNumber(),
+                    transaction.getBuyerDocumentNumber(), transaction.getAmount());
+        }
+        return ledgerService.transfer(SETTLE_POSTING_PREFIX + transaction.getId(), escrowAccount(transaction),
+                transaction.getBuyerDocumentNumber(), transaction.getAmount());
+    }
+    private Completable releaseEscrow(BootCoinPurchase transaction) {
+        return ledgerService.transfer(RELEASE_POSTING_PREFIX + transaction.getId(), escrowAccount(transaction),
+                        transaction.getSellerDocumentNumber(), transaction.getAmount())
+                .onErrorComplete(error -> error instanceof InsufficientBalanceException);
     }
     private BootCoinPurchaseResponse mapToResponse(BootCoinPurchase purchase) {
         return BootCoinPurchaseResponse.builder()
@@ -213,6 +538,34 @@ public class BootCoinPurchaseServiceImpl implements BootCoinPurchaseService {
                 .totalAmountInPEN(purchase.getTotalAmountInPEN())
                 .transactionType(purchase.getTransactionType())
                 .createdAt(purchase.getCreatedAt())
+                .expiresAt(purchase.getExpiresAt())
                 .build();
     }
-}
\ No newline at end of file
+    /**
+     * How a purchase traded against an offer, with the offer as it was left and the purchase, claimed
+     * when it was filled.
+     */
+    private static final class Trade {
+        enum Outcome { FILLED, OFFER_TAKEN, PURCHASE_TAKEN, OFFER_UNFUNDED }
+        private final Outcome outcome;
+        private final BootCoinSellOffer offer;
+        private final BootCoinPurchase purchase;
+        private Trade(Outcome outcome, BootCoinSellOffer offer, BootCoinPurchase purchase) {
+            this.outcome = outcome;
+            this.offer = offer;
+            this.purchase = purchase;
+        }
+        Outcome getOutcome() {
+            return outcome;
+        }
+        BootCoinPurchase getPurchase() {
+            return purchase;
+        }
+        boolean closesPurchase() {
+            return outcome == Outcome.FILLED || outcome == Outcome.PURCHASE_TAKEN;
+        }
+        boolean closesOffer() {
+            return outcome == Outcome.OFFER_UNFUNDED || offer == null || offer.getStatus() != SellOfferStatus.OPEN;
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.dto.bootcoinpurchase.TransactionResponse;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import io.reactivex.Completable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Repairs escrows left open by a crash between finishing a purchase and settling or releasing its
+ * reservation. Such purchases are finished again through the regular status update, so running the
+ * sweeper on several instances is safe. Purchases stuck in PROCESSING are failed by the
+ * {@link SagaWatchdog}.
+ */
+@Component
+@Slf4j
+public class EscrowSweeper {
+    private final BootCoinPurchaseRepository repository;
+    private final BootCoinPurchaseService purchaseService;
+    private final Duration interval;
+    private Disposable sweeper;
+    public EscrowSweeper(BootCoinPurchaseRepository repository,
+                         BootCoinPurchaseService purchaseService,
+                         @Value("${bootcoin.escrow.sweep-interval-ms:60000}") long intervalMillis) {
+        this.repository = repository;
+        this.purchaseService = purchaseService;
+        this.interval = Duration.ofMillis(intervalMillis);
+    }
+    @PostConstruct
+    public void start() {
+        sweeper = Flux.interval(interval, interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.from(sweep().toFlowable()), 1)
+                .subscribe();
+    }
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+    Completable sweep() {
+        // finished at least one interval ago, so a settlement still in flight is left alone
+        LocalDateTime cutoff = LocalDateTime.now().minus(interval);
+        return repository.findByStatusInAndReservedAmountExistsAndUpdatedAtBefore(
+                        List.of(TransactionStatus.COMPLETED, TransactionStatus.FAILED), true, cutoff)
+                .map(purchase -> result(purchase, purchase.getStatus() == TransactionStatus.COMPLETED,
+                        purchase.getMessageResponse()))
+                .concatMapCompletable(result -> purchaseService.updateTransactionStatus(result)
+                        .ignoreElement()
+                        .doOnComplete(() -> log.info("Swept escrow of purchase {}", result.getTransactionId()))
+                        .doOnError(error -> log.warn("Failed to sweep escrow of purchase {}: {}",
+                                result.getTransactionId(), error.getMessage()))
+                        .onErrorComplete())
+                .doOnError(error -> log.warn("Escrow sweep failed: {}", error.getMessage()))
+                .onErrorComplete();
+    }
+    private static TransactionResponse result(BootCoinPurchase purchase, boolean success, String message) {
+        TransactionResponse result = new TransactionResponse();
+        result.setTransactionId(purchase.getId());
+        result.setSuccess(success);
+        result.setMessage(message);
+        return result;
+    }
+}
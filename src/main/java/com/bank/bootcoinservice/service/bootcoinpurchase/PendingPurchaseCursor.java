@@ -0,0 +1,43 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset position in the pending purchases, ordered by creation time and then id. Clients get it as
+ * an opaque URL-safe token.
+ */
+final class PendingPurchaseCursor {
+    private static final String SEPARATOR = "|";
+    private final LocalDateTime createdAt;
+    private final String id;
+    PendingPurchaseCursor(LocalDateTime createdAt, String id) {
+        this.createdAt = createdAt;
+        this.id = id;
+    }
+    LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    String getId() {
+        return id;
+    }
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + SEPARATOR + id).getBytes(StandardCharsets.UTF_8));
+    }
+    static PendingPurchaseCursor decode(String token) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = value.indexOf(SEPARATOR);
+            if (separator < 0 || separator == value.length() - 1) {
+                throw new IllegalArgumentException("Invalid purchase cursor: " + token);
+            }
+            return new PendingPurchaseCursor(LocalDateTime.parse(value.substring(0, separator)),
+                    value.substring(separator + 1));
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid purchase cursor: " + token);
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.dto.bootcoinpurchase.PendingPurchaseEvent;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.FullDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import lombok.extern.slf4j.Slf4j;
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.reactivestreams.Publisher;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.concurrent.Queues;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The one change stream per instance on the purchases collection, turned into purchases entering or
+ * leaving WAITING_FOR_SELLER and fanned out to every connected seller. The most recent changes are
+ * kept so a client that reconnects with the resume token of the last change it saw gets only what it
+ * missed; older tokens fall back to a fresh snapshot. Each client has its own bounded buffer, and a
+ * client that fills it is failed instead of slowing the others, so it reconnects and resumes. When the
+ * stream can no longer resume because the oplog has moved past it, the kept changes are dropped and
+ * every client is failed, since changes were missed; they reconnect and start from a fresh snapshot.
+ */
+@Component
+@Slf4j
+public class PendingPurchaseFeed {
+    static final String COLLECTION = "bootcoin_purchases";
+    private static final int CHANGE_STREAM_HISTORY_LOST = 286;
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final int bufferSize;
+    private final int replaySize;
+    private final Sinks.Many<Change> changes = Sinks.many().multicast().directBestEffort();
+    private final Deque<Change> recent = new ArrayDeque<>();
+    private final Set<Sinks.Many<Change>> clients = ConcurrentHashMap.newKeySet();
+    private long sequence;
+    private volatile BsonValue resumeToken;
+    private Disposable subscription;
+    public PendingPurchaseFeed(ReactiveMongoTemplate mongoTemplate,
+                               @Value("${bootcoin.purchases.feed.buffer-size:256}") int bufferSize,
+                               @Value("${bootcoin.purchases.feed.replay-size:1024}") int replaySize) {
+        this.mongoTemplate = mongoTemplate;
+        this.bufferSize = bufferSize;
+        this.replaySize = replaySize;
+    }
+    @PostConstruct
+    public void connect() {
+        subscription = Flux.defer(() -> mongoTemplate.changeStream(COLLECTION, options(), BootCoinPurchase.class))
+                .doOnError(error -> {
+                    log.error("Pending purchase change stream failed: {}", error.getMessage());
+                    if (historyLost(error)) {
+                        resumeToken = null;
+                        forgetHistory();
+                    }
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(this::publish);
+    }
+    @PreDestroy
+    public void disconnect() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        changes.tryEmitComplete();
+    }
+    /**
+     * Changes after {@code afterToken}, or {@code snapshot} followed by every change from now on when
+     * the token is null or no longer kept. Changes are listened to before the snapshot is read, so none
+     * is missed; one may repeat what the snapshot already shows.
+     */
+    public Flux<Change> changes(String afterToken, Publisher<BootCoinPurchase> snapshot) {
+        return Flux.defer(() -> {
+            Sinks.Many<Change> pending = Sinks.many().unicast()
+                    .onBackpressureBuffer(Queues.<Change>get(bufferSize).get());
+            clients.add(pending);
+            Disposable live = changes.asFlux().subscribe(change -> {
+                if (pending.tryEmitNext(change).isFailure()) {
+                    pending.tryEmitError(new IllegalStateException("Pending purchase feed client fell behind"));
+                }
+            });
+            List<Change> missed = null;
+            long last;
+            String token;
+            synchronized (recent) {
+                last = sequence;
+                token = recent.isEmpty() ? null : recent.getLast().getResumeToken();
+                if (afterToken != null) {
+                    missed = since(afterToken);
+                }
+            }
+            Flux<Change> start = missed != null
+                    ? Flux.fromIterable(missed)
+                    : Flux.from(snapshot).map(purchase -> new Change(last, token, PendingPurchaseEvent.Type.ADDED,
+                            purchase.getId(), purchase));
+            return Flux.concat(start, pending.asFlux().filter(change -> change.getSequence() > last))
+                    .doFinally(signal -> {
+                        clients.remove(pending);
+                        live.dispose();
+                    });
+        });
+    }
+    private void forgetHistory() {
+        synchronized (recent) {
+            recent.clear();
+            clients.forEach(client -> client.tryEmitError(
+                    new IllegalStateException("Pending purchase feed lost changes, reload the snapshot")));
+        }
+    }
+    private List<Change> since(String afterToken) {
+        List<Change> missed = new ArrayList<>();
+        boolean found = false;
+        for (Change change : recent) {
+            if (found) {
+                missed.add(change);
+            } else if (change.getResumeToken().equals(afterToken)) {
+                found = true;
+            }
+        }
+        return found ? missed : null;
+    }
+    private ChangeStreamOptions options() {
+        Criteria statusChanges = new Criteria().orOperator(
+                Criteria.where("operationType").in("insert", "replace"),
+                Criteria.where("operationType").is("update")
+                        .and("updateDescription.updatedFields.status").exists(true));
+        ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+                .filter(Aggregation.newAggregation(Aggregation.match(statusChanges)))
+                .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+        if (resumeToken != null) {
+            options.resumeAfter(resumeToken);
+        }
+        return options.build();
+    }
+    private void publish(ChangeStreamEvent<BootCoinPurchase> event) {
+        resumeToken = event.getResumeToken();
+        BootCoinPurchase purchase = event.getBody();
+        if (purchase == null || event.getResumeToken() == null) {
+            return; // deleted before the lookup
+        }
+        boolean waiting = purchase.getStatus() == TransactionStatus.WAITING_FOR_SELLER;
+        if (!waiting && event.getOperationType() == OperationType.INSERT) {
+            return;
+        }
+        synchronized (recent) {
+            Change change = new Change(++sequence, tokenOf(event.getResumeToken()),
+                    waiting ? PendingPurchaseEvent.Type.ADDED : PendingPurchaseEvent.Type.REMOVED,
+                    purchase.getId(), waiting ? purchase : null);
+            recent.addLast(change);
+            if (recent.size() > replaySize) {
+                recent.removeFirst();
+            }
+            changes.tryEmitNext(change);
+        }
+    }
+    private static String tokenOf(BsonValue token) {
+        if (token.isDocument()) {
+            BsonDocument document = token.asDocument();
+            if (document.isString("_data")) {
+                return document.getString("_data").getValue();
+            }
+            return document.toJson();
+        }
+        return token.toString();
+    }
+    private static boolean historyLost(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoException
+                    && ((MongoException) cause).getCode() == CHANGE_STREAM_HISTORY_LOST) {
+                return true;
+            }
+        }
+        return false;
+    }
+    public static final class Change {
+        private final long sequence;
+        private final String resumeToken;
+        private final PendingPurchaseEvent.Type type;
+        private final String purchaseId;
+        private final BootCoinPurchase purchase;
+        Change(long sequence, String resumeToken, PendingPurchaseEvent.Type type, String purchaseId,
+               BootCoinPurchase purchase) {
+            this.sequence = sequence;
+            this.resumeToken = resumeToken;
+            this.type = type;
+            this.purchaseId = purchaseId;
+            this.purchase = purchase;
+        }
+        long getSequence() {
+            return sequence;
+        }
+        public String getResumeToken() {
+            return resumeToken;
+        }
+        public PendingPurchaseEvent.Type getType() {
+            return type;
+        }
+        public String getPurchaseId() {
+            return purchaseId;
+        }
+        public BootCoinPurchase getPurchase() {
+            return purchase;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import com.bank.bootcoinservice.util.RedisLease;
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+/**
+ * Moves purchases no seller took before their expiry to EXPIRED, a batch at a time. Only the
+ * instance holding the Redis lease sweeps; it renews the lease before every batch and stops as
+ * soon as it loses it. The update only touches purchases still waiting, so a sweep overlapping a
+ * claim or a lapsed lease leaves every purchase in a single final state.
+ */
+@Component
+@Slf4j
+public class PurchaseExpirySweeper {
+    static final String LEASE_KEY = "bootcoin:purchases:expiry-sweeper";
+    private final BootCoinPurchaseRepository repository;
+    private final BootCoinPurchaseService purchaseService;
+    private final RedisLease lease;
+    private final Duration expireAfter;
+    private final Duration interval;
+    private final Duration leaseDuration;
+    private final int batchSize;
+    private Disposable sweeper;
+    public PurchaseExpirySweeper(BootCoinPurchaseRepository repository,
+                                 BootCoinPurchaseService purchaseService,
+                                 ReactiveStringRedisTemplate redisTemplate,
+                                 @Value("${bootcoin.purchases.expire-after-ms:86400000}") long expireAfterMillis,
+                                 @Value("${bootcoin.purchases.expiry.sweep-interval-ms:60000}") long intervalMillis,
+                                 @Value("${bootcoin.purchases.expiry.lease-ms:30000}") long leaseMillis,
+                                 @Value("${bootcoin.purchases.expiry.batch-size:500}") int batchSize) {
+        this.repository = repository;
+        this.purchaseService = purchaseService;
+        this.lease = new RedisLease(redisTemplate, LEASE_KEY);
+        this.expireAfter = Duration.ofMillis(expireAfterMillis);
+        this.interval = Duration.ofMillis(intervalMillis);
+        this.leaseDuration = Duration.ofMillis(leaseMillis);
+        this.batchSize = batchSize;
+    }
+    @PostConstruct
+    public void start() {
+        sweeper = Flux.from(repository.backfillExpiry(expireAfter)
+                        .doOnError(error -> log.warn("Could not backfill purchase expiry: {}", error.getMessage()))
+                        .onErrorComplete()
+                        .toFlowable())
+                .thenMany(Flux.interval(interval, interval))
+                .onBackpressureDrop()
+                .concatMap(tick -> Flux.from(sweep().toFlowable()), 1)
+                .subscribe();
+    }
+    @PreDestroy
+    public void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+    Completable sweep() {
+        LocalDateTime now = LocalDateTime.now();
+        return acquire()
+                .flatMapCompletable(held -> held
+                        ? expireBatches(now)
+                                .doOnError(error -> log.warn("Purchase expiry sweep failed: {}", error.getMessage()))
+                                .onErrorComplete()
+                                .andThen(Completable.defer(() -> Completable.fromPublisher(lease.release())))
+                        : Completable.complete())
+                .doOnError(error -> log.warn("Purchase expiry lease failed: {}", error.getMessage()))
+                .onErrorComplete();
+    }
+    private Completable expireBatches(LocalDateTime now) {
+        return purchaseService.expireWaitingPurchases(now, batchSize)
+                .flatMapCompletable(due -> due < batchSize
+                        ? Completable.complete()
+                        : acquire().flatMapCompletable(held -> held
+                                ? expireBatches(now)
+                                : Completable.complete()));
+    }
+    private Single<Boolean> acquire() {
+        return Single.fromPublisher(lease.acquire(leaseDuration));
+    }
+}
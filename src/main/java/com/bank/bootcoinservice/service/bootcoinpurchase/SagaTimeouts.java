@@ -0,0 +1,142 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Deadlines of purchase sagas waiting in PROCESSING for the payment result. Each deadline is kept
+ * in a hashed wheel timer on the instance that started the saga, which fires it on time without a
+ * scan, and in a Redis sorted set scored by deadline, from which any instance picks up the sagas of
+ * an instance that went away. Whichever instance removes a due saga from the set handles it.
+ */
+@Component
+@Slf4j
+public class SagaTimeouts {
+    static final String SAGAS_KEY = "bootcoin:purchases:sagas";
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final Duration timeout;
+    private final HashedWheelTimer timer;
+    private final ConcurrentMap<String, Timeout> deadlines = new ConcurrentHashMap<>();
+    private final Sinks.Many<String> expired = Sinks.many().unicast().onBackpressureBuffer();
+    public SagaTimeouts(ReactiveStringRedisTemplate redisTemplate,
+                        @Value("${bootcoin.saga.timeout-ms:300000}") long timeoutMillis,
+                        @Value("${bootcoin.saga.tick-ms:100}") long tickMillis) {
+        this.redisTemplate = redisTemplate;
+        this.timeout = Duration.ofMillis(timeoutMillis);
+        this.timer = new HashedWheelTimer(new DefaultThreadFactory("saga-timeouts", true),
+                tickMillis, TimeUnit.MILLISECONDS);
+    }
+    @PreDestroy
+    public void stop() {
+        timer.stop();
+    }
+    public Duration getTimeout() {
+        return timeout;
+    }
+    /**
+     * Starts the deadline of a saga, replacing any earlier one.
+     */
+    public void start(String purchaseId) {
+        schedule(purchaseId, timeout);
+    }
+    /**
+     * Gives a saga whose compensation failed another try after {@code delay}.
+     */
+    public void retryLater(String purchaseId, Duration delay) {
+        schedule(purchaseId, delay);
+    }
+    public void finish(String purchaseId) {
+        Timeout deadline = deadlines.remove(purchaseId);
+        if (deadline != null) {
+            deadline.cancel();
+        }
+        redisTemplate.opsForZSet().remove(SAGAS_KEY, purchaseId)
+                .subscribe(removed -> { }, error -> log.warn("Could not finish saga {} in Redis: {}",
+                        purchaseId, error.getMessage()));
+    }
+    /**
+     * Sagas whose deadline fired on this instance. They still have to be claimed.
+     */
+    public Flux<String> expired() {
+        return expired.asFlux();
+    }
+    /**
+     * The ids among {@code purchaseIds} this instance removed from the set, and so has to handle.
+     */
+    public Flux<String> claim(Collection<String> purchaseIds) {
+        return Flux.fromIterable(purchaseIds)
+                .concatMap(purchaseId -> redisTemplate.opsForZSet().remove(SAGAS_KEY, purchaseId)
+                        .filter(removed -> removed > 0)
+                        .map(removed -> purchaseId));
+    }
+    /**
+     * Claims up to {@code limit} sagas past their deadline, whichever instance started them.
+     */
+    public Flux<String> claimDue(int limit) {
+        return redisTemplate.opsForZSet()
+                .rangeByScore(SAGAS_KEY, Range.closed(0.0, (double) System.currentTimeMillis()),
+                        RedisZSetCommands.Limit.limit().count(limit))
+                .collectList()
+                .flatMapMany(this::claim);
+    }
+    /**
+     * Every saga in flight across instances with its deadline, oldest first.
+     */
+    public Flux<InFlightSaga> inFlight() {
+        long now = System.currentTimeMillis();
+        return redisTemplate.opsForZSet().rangeWithScores(SAGAS_KEY, Range.closed(0L, -1L))
+                .map(saga -> {
+                    long deadline = saga.getScore().longValue();
+                    return new InFlightSaga(saga.getValue(), now - (deadline - timeout.toMillis()), deadline - now);
+                });
+    }
+    private void schedule(String purchaseId, Duration delay) {
+        Timeout deadline = timer.newTimeout(fired -> {
+            if (deadlines.remove(purchaseId, fired)) {
+                expired.tryEmitNext(purchaseId);
+            }
+        }, delay.toMillis(), TimeUnit.MILLISECONDS);
+        Timeout previous = deadlines.put(purchaseId, deadline);
+        if (previous != null) {
+            previous.cancel();
+        }
+        redisTemplate.opsForZSet().add(SAGAS_KEY, purchaseId, System.currentTimeMillis() + delay.toMillis())
+                .subscribe(added -> { }, error -> log.warn("Could not track saga {} in Redis: {}",
+                        purchaseId, error.getMessage()));
+    }
+    public static final class InFlightSaga {
+        private final String purchaseId;
+        private final long ageMs;
+        private final long dueInMs;
+        InFlightSaga(String purchaseId, long ageMs, long dueInMs) {
+            this.purchaseId = purchaseId;
+            this.ageMs = ageMs;
+            this.dueInMs = dueInMs;
+        }
+        public String getPurchaseId() {
+            return purchaseId;
+        }
+        public long getAgeMs() {
+            return ageMs;
+        }
+        public long getDueInMs() {
+            return dueInMs;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.dto.bootcoinpurchase.TransactionResponse;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Compensates purchase sagas whose payment result never arrived. Deadlines fired on this instance
+ * and deadlines left in Redis by other instances are claimed in batches; each claimed purchase is
+ * read again and, when it is still PROCESSING, failed through the regular status update, which
+ * releases the escrow back to the seller. A failed compensation is retried later. Each scan also
+ * fails purchases left in PROCESSING past the saga timeout of {@link SagaTimeouts}, which covers
+ * deadlines lost to a crash between claiming and compensating.
+ */
+@Component
+@Slf4j
+public class SagaWatchdog {
+    static final String TIMEOUT_MESSAGE = "Payment result did not arrive before the saga deadline.";
+    private final SagaTimeouts sagaTimeouts;
+    private final BootCoinPurchaseRepository repository;
+    private final BootCoinPurchaseService purchaseService;
+    private final Duration scanInterval;
+    private final Duration retryDelay;
+    private final int batchSize;
+    private Disposable watchdog;
+    public SagaWatchdog(SagaTimeouts sagaTimeouts,
+                        BootCoinPurchaseRepository repository,
+                        BootCoinPurchaseService purchaseService,
+                        @Value("${bootcoin.saga.scan-interval-ms:10000}") long scanIntervalMillis,
+                        @Value("${bootcoin.saga.retry-delay-ms:30000}") long retryDelayMillis,
+                        @Value("${bootcoin.saga.batch-size:100}") int batchSize) {
+        this.sagaTimeouts = sagaTimeouts;
+        this.repository = repository;
+        this.purchaseService = purchaseService;
+        this.scanInterval = Duration.ofMillis(scanIntervalMillis);
+        this.retryDelay = Duration.ofMillis(retryDelayMillis);
+        this.batchSize = batchSize;
+    }
+    @PostConstruct
+    public void start() {
+        Flux<List<String>> fired = sagaTimeouts.expired()
+                .bufferTimeout(batchSize, Duration.ofSeconds(1))
+                .concatMap(purchaseIds -> sagaTimeouts.claim(purchaseIds).collectList()
+                        .onErrorResume(error -> {
+                            log.warn("Could not claim expired sagas: {}", error.getMessage());
+                            return Mono.empty();
+                        }));
+        Flux<List<String>> orphaned = Flux.interval(scanInterval, scanInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> sagaTimeouts.claimDue(batchSize).collectList()
+                        .onErrorResume(error -> {
+                            log.warn("Could not claim due sagas: {}", error.getMessage());
+                            return Mono.empty();
+                        })
+                        .concatWith(Flux.from(stale())), 1);
+        watchdog = Flux.merge(fired, orphaned)
+                .filter(purchaseIds -> !purchaseIds.isEmpty())
+                .concatMap(purchaseIds -> Flux.from(compensate(purchaseIds).toFlowable()))
+                .subscribe();
+    }
+    @PreDestroy
+    public void stop() {
+        if (watchdog != null) {
+            watchdog.dispose();
+        }
+    }
+    Completable compensate(List<String> purchaseIds) {
+        return Flowable.fromIterable(purchaseIds)
+                .concatMapCompletable(purchaseId -> repository.findById(purchaseId)
+                        .filter(purchase -> purchase.getStatus() == TransactionStatus.PROCESSING)
+                        .flatMapSingleElement(purchase -> purchaseService.updateTransactionStatus(timedOut(purchaseId)))
+                        .doOnSuccess(purchase -> log.info("Compensated timed out saga of purchase {}", purchaseId))
+                        .ignoreElement()
+                        .doOnError(error -> {
+                            log.warn("Failed to compensate saga of purchase {}: {}", purchaseId, error.getMessage());
+                            if (!(error instanceof IllegalArgumentException)) {
+                                sagaTimeouts.retryLater(purchaseId, retryDelay);
+                            }
+                        })
+                        .onErrorComplete());
+    }
+    Flowable<List<String>> stale() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(sagaTimeouts.getTimeout());
+        return repository.findByStatusAndUpdatedAtBefore(TransactionStatus.PROCESSING, cutoff)
+                .map(BootCoinPurchase::getId)
+                .buffer(batchSize)
+                .doOnError(error -> log.warn("Could not find stale sagas: {}", error.getMessage()))
+                .onErrorResumeNext(Flowable.empty());
+    }
+    private static TransactionResponse timedOut(String purchaseId) {
+        TransactionResponse result = new TransactionResponse();
+        result.setTransactionId(purchaseId);
+        result.setSuccess(false);
+        result.setMessage(TIMEOUT_MESSAGE);
+        return result;
+    }
+}
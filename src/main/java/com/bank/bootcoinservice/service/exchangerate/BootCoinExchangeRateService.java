@@ -1,12 +1,23 @@
 package com.bank.bootcoinservice.service.exchangerate;
 
+import com.bank.bootcoinservice.dto.exchangerate.ExchangeRateHistoryPage;
 import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
 
 public interface BootCoinExchangeRateService {
     Single<BootCoinExchangeRate> getCurrentExchangeRate();
     Single<BootCoinExchangeRate> saveExchangeRateToCache(BigDecimal buyRate, BigDecimal sellRate);
     Single<BootCoinExchangeRate> updateExchangeRate(BigDecimal buyRate, BigDecimal sellRate);
+    Single<BootCoinExchangeRate> updateExchangeRate(BigDecimal buyRate, BigDecimal sellRate, long expectedVersion);
+    Single<BootCoinExchangeRate> getExchangeRate(String currency);
+    Single<Map<String, BootCoinExchangeRate>> getExchangeRates();
+    Single<Map<String, BootCoinExchangeRate>> updateExchangeRates(Map<String, BootCoinExchangeRate> rates);
+    Single<BootCoinExchangeRate> getRateAt(Instant instant);
+    Single<ExchangeRateHistoryPage> getExchangeRateHistory(String cursor, int size);
+    Flowable<BootCoinExchangeRate> getExchangeRateChanges();
 }
 
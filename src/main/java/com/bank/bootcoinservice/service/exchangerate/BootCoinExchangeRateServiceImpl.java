@@ -1,64 +1,110 @@
 package com.bank.bootcoinservice.service.exchangerate;
 
+import com.bank.bootcoinservice.config.ExchangeRateRedisSerializer;
+import com.bank.bootcoinservice.dto.exchangerate.ExchangeRateHistoryPage;
 import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.bank.bootcoinservice.util.SingleFlight;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.dao.DataAccessException;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.GenericToStringSerializer;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.RedisElementWriter;
+import org.springframework.data.redis.serializer.RedisSerializer;
+import org.springframework.data.redis.serializer.SerializationException;
 import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
-import reactor.core.scheduler.Schedulers;
 
 import java.math.BigDecimal;
-import java.time.Duration;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
 @Service
 @RequiredArgsConstructor
 @Slf4j
 public class BootCoinExchangeRateServiceImpl implements BootCoinExchangeRateService {
-    private final ReactiveRedisTemplate<String, String> redisTemplate;
-    private final ObjectMapper objectMapper;
-    private static final String EXCHANGE_RATE_KEY = "bootcoin:exchange_rate";
+    private final ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate;
+    private final ExchangeRateRedisSerializer exchangeRateSerializer;
+    private final ExchangeRateNearCache nearCache;
+    private final ExchangeRateHistory exchangeRateHistory;
+    private final ExchangeRateChangeFeed changeFeed;
+    private final ExchangeRateTable exchangeRateTable;
+    private final ExchangeRateSnapshotStore snapshotStore;
+    private final SingleFlight<String, BootCoinExchangeRate> exchangeRateLoads = new SingleFlight<>();
+    private static final String EXCHANGE_RATE_KEY = ExchangeRateTable.keyFor(ExchangeRateTable.BASE_CURRENCY);
+    private static final String MODE_CREATE = "create";
+    private static final String MODE_UPDATE = "update";
+    private static final String MODE_UPSERT = "upsert";
+    private static final long VERSION_CONFLICT = -1L;
+    private static final int MAX_HISTORY_PAGE_SIZE = 500;
+    private static final RedisScript<Long> UPSERT_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/exchange_rate_upsert.lua"), Long.class);
+    private static final RedisElementWriter<byte[]> SCRIPT_ARGS_WRITER =
+            RedisElementWriter.from(RedisSerializer.byteArray());
+    private static final RedisElementReader<Long> SCRIPT_RESULT_READER =
+            RedisElementReader.from(new GenericToStringSerializer<>(Long.class));
     @Override
     public Single<BootCoinExchangeRate> getCurrentExchangeRate() {
+        BootCoinExchangeRate cached = nearCache.get();
+        if (cached != null) {
+            return Single.just(cached);
+        }
+        long generation = nearCache.generation();
+        Supplier<Mono<BootCoinExchangeRate>> loader = () -> loadExchangeRate(generation);
+        Mono<BootCoinExchangeRate> load = exchangeRateLoads.execute(EXCHANGE_RATE_KEY, loader);
+        Mono<BootCoinExchangeRate> overBudget = Mono.delay(snapshotStore.latencyBudget())
+                .flatMap(tick -> Mono.justOrEmpty(snapshotStore.fallback()));
+        return Single.fromPublisher(Flux.merge(load, overBudget)
+                .next()
+                .onErrorResume(BootCoinExchangeRateServiceImpl::isRedisUnavailable,
+                    error -> snapshotOr(Mono.error(error))));
+    }
+    /**
+     * Used when Redis is failing. The caller gets the last known rate if it is recent enough.
+     * Over the latency budget the snapshot races the load instead, so the caller stays
+     * subscribed to the shared load and it is not restarted when no snapshot is available.
+     */
+    private Mono<BootCoinExchangeRate> snapshotOr(Mono<BootCoinExchangeRate> otherwise) {
+        BootCoinExchangeRate snapshot = snapshotStore.fallback();
+        return snapshot != null ? Mono.just(snapshot) : otherwise;
+    }
+    /**
+     * The read itself is bounded by the client's command timeout ({@code spring.data.redis.timeout}),
+     * which surfaces as a {@link DataAccessException}; callers only wait past the latency budget
+     * when there is no snapshot to serve. Writes and history reads have no budget of their own and
+     * are bounded by the same command timeout.
+     */
+    private static boolean isRedisUnavailable(Throwable error) {
+        return error instanceof TimeoutException || error instanceof DataAccessException;
+    }
+    private Mono<BootCoinExchangeRate> loadExchangeRate(long generation) {
         log.info("Attempting to retrieve exchange rate from Redis with key: {}", EXCHANGE_RATE_KEY);
-        return Single.create(emitter ->
-                redisTemplate.opsForValue().get(EXCHANGE_RATE_KEY)
-                        .subscribeOn(Schedulers.boundedElastic())
-                        .doOnSubscribe(s -> log.info("Subscribe to get exchange rate from Redis"))
-                        .doOnNext(value -> {
-                            if (value == null) {
-                                log.warn("Null value retrieved from Redis for exchange rate");
-                            } else {
-                                log.info("Retrieved exchange rate from cache: value length={}", value.length());
-                            }
-                        })
-                        .flatMap(json -> {
-                            try {
-                                BootCoinExchangeRate exchangeRate =
-                                    objectMapper.readValue(json, BootCoinExchangeRate.class);
-                                log.info("Successfully deserialized exchange rate: buy={}, sell={}",
-                                        exchangeRate.getBuyRate(), exchangeRate.getSellRate());
-                                return Mono.just(exchangeRate);
-                            } catch (Exception e) {
-                                log.error("Error deserializing exchange rate JSON: {}", e.getMessage(), e);
-                                return Mono.error(new RuntimeException("Error parsing exchange rate data", e));
-                            }
-                        })
-                        .switchIfEmpty(Mono.error(new RuntimeException("Exchange rate not found")))
-                        .timeout(Duration.ofSeconds(5))
-                        .doOnError(TimeoutException.class, e ->
-                                log.error("Redis operation timed out for exchange rate"))
-                        .doOnError(e -> {
-                            if (!(e instanceof TimeoutException)) {
-                                log.error("Error retrieving exchange rate from cache: {}", e.getMessage());
-                            }
-                        })
-                        .subscribe(emitter::onSuccess, emitter::onError)
-        );
+        return exchangeRateRedisTemplate.opsForValue().get(EXCHANGE_RATE_KEY)
+                .doOnSubscribe(s -> log.info("Subscribe to get exchange rate from Redis"))
+                .doOnNext(exchangeRate -> log.info("Retrieved exchange rate from cache: buy={}, sell={}, version={}",
+                        exchangeRate.getBuyRate(), exchangeRate.getSellRate(), exchangeRate.getVersion()))
+                .onErrorMap(SerializationException.class, e -> {
+                    log.error("Error deserializing exchange rate: {}", e.getMessage(), e);
+                    return new RuntimeException("Error parsing exchange rate data", e);
+                })
+                .switchIfEmpty(Mono.error(new RuntimeException("Exchange rate not found")))
+                .doOnNext(exchangeRate -> {
+                    nearCache.put(exchangeRate, generation);
+                    snapshotStore.record(exchangeRate);
+                })
+                .doOnError(e -> log.error("Error retrieving exchange rate from cache: {}", e.getMessage()));
     }
     @Override
     public Single<BootCoinExchangeRate> saveExchangeRateToCache(BigDecimal buyRate, BigDecimal sellRate) {
@@ -66,96 +112,143 @@ public class BootCoinExchangeRateServiceImpl implements BootCoinExchangeRateServ
             return Single.error(new IllegalArgumentException("Buy rate and sell rate cannot be null"));
         }
         log.info("Attempting to save new exchange rate: buy={}, sell={}", buyRate, sellRate);
+        return writeExchangeRate(MODE_CREATE, buyRate, sellRate, 0L);
+    }
+    @Override
+    public Single<BootCoinExchangeRate> updateExchangeRate(BigDecimal buyRate, BigDecimal sellRate) {
+        return updateExchangeRate(buyRate, sellRate, 0L);
+    }
+    @Override
+    public Single<BootCoinExchangeRate> updateExchangeRate(BigDecimal buyRate, BigDecimal sellRate,
+                                                          long expectedVersion) {
+        if (buyRate == null || sellRate == null) {
+            return Single.error(new IllegalArgumentException("Buy rate and sell rate cannot be null"));
+        }
+        log.info("Attempting to update exchange rate: buy={}, sell={}, expectedVersion={}",
+                buyRate, sellRate, expectedVersion);
+        return writeExchangeRate(MODE_UPDATE, buyRate, sellRate, expectedVersion);
+    }
+    private Single<BootCoinExchangeRate> writeExchangeRate(String mode, BigDecimal buyRate, BigDecimal sellRate,
+                                                           long expectedVersion) {
         BootCoinExchangeRate exchangeRate = new BootCoinExchangeRate();
         exchangeRate.setBuyRate(buyRate);
         exchangeRate.setSellRate(sellRate);
         exchangeRate.setUpdatedAt(LocalDateTime.now());
-        return Single.create(emitter ->
-                redisTemplate.opsForValue().get(EXCHANGE_RATE_KEY)
-                        .flatMap(json -> {
-                            if (json != null) {
-                                log.warn("Exchange rate already exists in Redis");
-                                return Mono.error(new RuntimeException("Exchange rate already" +
-                                    " exists, use update instead"));
-                            }
-                            return Mono.empty();
-                        })
-                        .switchIfEmpty(Mono.defer(() ->
-                                Mono.fromCallable(() -> objectMapper.writeValueAsString(exchangeRate))
-                                    .doOnNext(json -> log.info("Serialized exchange " +
-                                        "rate JSON: {}", json))
-                                    .doOnError(error -> log.error("Error serializing " +
-                                        "exchange rate: {}", error.getMessage()))
-                                    .flatMap(exchangeRateJson -> redisTemplate.opsForValue()
-                                        .set(EXCHANGE_RATE_KEY, exchangeRateJson)
-                                            .doOnNext(result -> log.info("Redis SET result {}", result))
-                                            .doOnSuccess(result -> log.info("Successfully " +
-                                                "cached exchange rate"))
-                                            .doOnError(error -> log.error("Error storing " +
-                                                "exchange rate in Redis: {}", error.getMessage()))
-                                            .thenReturn(exchangeRate))
-                        ))
-                        .timeout(Duration.ofSeconds(5))
-                        .doOnError(TimeoutException.class, e ->
-                                log.error("Redis operation timed out when saving exchange rate"))
-                        .doOnError(e -> {
-                            if (!(e instanceof TimeoutException)) {
-                                log.error("Error saving exchange rate to cache: {}", e.getMessage());
-                            }
-                        })
-                        .subscribe(
-                                result -> emitter.onSuccess(exchangeRate),
-                                emitter::onError
-                        )
+        return Single.fromPublisher(
+                storeExchangeRate(ExchangeRateTable.BASE_CURRENCY, mode, exchangeRate, expectedVersion)
+                        .doOnError(e -> log.error("Error writing exchange rate to cache: {}", e.getMessage()))
         );
     }
+    private Mono<BootCoinExchangeRate> storeExchangeRate(String currency, String mode,
+                                                         BootCoinExchangeRate exchangeRate, long expectedVersion) {
+        return Mono.fromCallable(() -> exchangeRateSerializer.serialize(exchangeRate))
+                .doOnError(error -> log.error("Error serializing exchange rate: {}", error.getMessage()))
+                .flatMap(record -> exchangeRateRedisTemplate.execute(UPSERT_SCRIPT,
+                        List.of(ExchangeRateTable.keyFor(currency), ExchangeRateTable.historyKeyFor(currency)),
+                        List.of(utf8(mode), record, utf8(String.valueOf(expectedVersion)),
+                                utf8(ExchangeRateTable.channelFor(currency))),
+                        SCRIPT_ARGS_WRITER, SCRIPT_RESULT_READER)
+                        .next())
+                .flatMap(version -> {
+                    if (version > 0) {
+                        log.info("Successfully stored {} exchange rate version {}", currency, version);
+                        exchangeRate.setVersion(version);
+                        exchangeRateTable.apply(currency, exchangeRate);
+                        if (ExchangeRateTable.BASE_CURRENCY.equals(currency)) {
+                            nearCache.invalidate();
+                        }
+                        return Mono.just(exchangeRate);
+                    }
+                    if (version == VERSION_CONFLICT) {
+                        return Mono.error(new ExchangeRateVersionConflictException(expectedVersion));
+                    }
+                    if (MODE_CREATE.equals(mode)) {
+                        log.warn("Exchange rate already exists in Redis");
+                        return Mono.error(new RuntimeException("Exchange rate already" +
+                            " exists, use update instead"));
+                    }
+                    return Mono.error(new RuntimeException("Exchange rate does not exist, cannot update"));
+                });
+    }
     @Override
-    public Single<BootCoinExchangeRate> updateExchangeRate(BigDecimal buyRate, BigDecimal sellRate) {
-        if (buyRate == null || sellRate == null) {
-            return Single.error(new IllegalArgumentException("Buy rate and sell rate cannot be null"));
+    public Single<BootCoinExchangeRate> getExchangeRate(String currency) {
+        String normalized;
+        try {
+            normalized = exchangeRateTable.normalize(currency);
+        } catch (IllegalArgumentException e) {
+            return Single.error(e);
         }
-        log.info("Attempting to update exchange rate: buy={}, sell={}", buyRate, sellRate);
-        return Single.create(emitter ->
-                redisTemplate.opsForValue().get(EXCHANGE_RATE_KEY)
-                        .switchIfEmpty(Mono.error(new RuntimeException("Exchange rate does not exist, cannot update")))
-                        .flatMap(json -> {
-                            try {
-                                BootCoinExchangeRate exchangeRate =
-                                    objectMapper.readValue(json, BootCoinExchangeRate.class);
-                                log.info("Retrieved existing exchange rate for update: buy={}, sell={}",
-                                        exchangeRate.getBuyRate(), exchangeRate.getSellRate());
-                                exchangeRate.setBuyRate(buyRate);
-                                exchangeRate.setSellRate(sellRate);
-                                exchangeRate.setUpdatedAt(LocalDateTime.now());
-                                return Mono.fromCallable(() -> objectMapper.writeValueAsString(exchangeRate))
-                                    .doOnNext(updatedJson -> log.info("Serialized updated " +
-                                        "exchange rate JSON: {}", updatedJson))
-                                    .doOnError(error -> log.error("Error serializing " +
-                                        "updated exchange rate: {}", error.getMessage()))
-                                    .flatMap(exchangeRateJson ->
-                                        redisTemplate.opsForValue().set(EXCHANGE_RATE_KEY, exchangeRateJson)
-                                            .doOnNext(result ->
-                                                log.info("Redis SET result for update {}", result))
-                                            .doOnSuccess(result ->
-                                                log.info("Successfully updated exchange rate"))
-                                            .doOnError(error ->
-                                                log.error("Error updating exchange rate in " +
-                                                    "Redis: {}", error.getMessage()))
-                                            .thenReturn(exchangeRate));
-                            } catch (Exception e) {
-                                log.error("Error deserializing existing exchange rate JSON: {}", e.getMessage(), e);
-                                return Mono.error(new RuntimeException("Error parsing existing exchange rate data", e));
-                            }
-                        })
-                        .timeout(Duration.ofSeconds(5))
-                        .doOnError(TimeoutException.class, e ->
-                                log.error("Redis operation timed out when updating exchange rate"))
-                        .doOnError(e -> {
-                            if (!(e instanceof TimeoutException)) {
-                                log.error("Error updating exchange rate in cache: {}", e.getMessage());
-                            }
-                        })
-                        .subscribe(emitter::onSuccess, emitter::onError)
+        return Single.fromPublisher(
+                Mono.defer(exchangeRateTable::rates)
+                        .flatMap(rates -> Mono.justOrEmpty(rates.get(normalized)))
+                        .switchIfEmpty(Mono.error(new RuntimeException("Exchange rate not found for " + normalized)))
+                        .doOnError(e -> log.error("Error retrieving {} exchange rate: {}", normalized, e.getMessage()))
         );
     }
-}
\ No newline at end of file
+    @Override
+    public Single<Map<String, BootCoinExchangeRate>> getExchangeRates() {
+        return Single.fromPublisher(
+                Mono.defer(exchangeRateTable::rates)
+                        .doOnError(e -> log.error("Error retrieving exchange rates: {}", e.getMessage()))
+        );
+    }
+    /**
+     * Stores every rate in one batch; the script calls share the connection, so they go out
+     * pipelined and the batch costs one round trip rather than one per currency.
+     */
+    @Override
+    public Single<Map<String, BootCoinExchangeRate>> updateExchangeRates(Map<String, BootCoinExchangeRate> rates) {
+        if (rates == null || rates.isEmpty()) {
+            return Single.error(new IllegalArgumentException("At least one exchange rate is required"));
+        }
+        Map<String, BootCoinExchangeRate> requested = new LinkedHashMap<>();
+        try {
+            rates.forEach((currency, rate) -> {
+                if (rate == null || rate.getBuyRate() == null || rate.getSellRate() == null) {
+                    throw new IllegalArgumentException("Buy rate and sell rate cannot be null");
+                }
+                requested.put(exchangeRateTable.normalize(currency), new BootCoinExchangeRate(rate.getBuyRate(),
+                        rate.getSellRate(), LocalDateTime.now(), 0L));
+            });
+        } catch (IllegalArgumentException e) {
+            return Single.error(e);
+        }
+        log.info("Attempting to store exchange rates for {}", requested.keySet());
+        return Single.fromPublisher(
+                Flux.fromIterable(requested.entrySet())
+                        .flatMap(entry -> storeExchangeRate(entry.getKey(), MODE_UPSERT, entry.getValue(), 0L)
+                                .map(stored -> Map.entry(entry.getKey(), stored)))
+                        .collectMap(Map.Entry::getKey, Map.Entry::getValue, LinkedHashMap::new)
+                        .doOnError(e -> log.error("Error writing exchange rates: {}", e.getMessage()))
+        );
+    }
+    @Override
+    public Single<BootCoinExchangeRate> getRateAt(Instant instant) {
+        if (instant == null) {
+            return Single.error(new IllegalArgumentException("Instant cannot be null"));
+        }
+        return Single.fromPublisher(
+                exchangeRateHistory.rateAt(instant)
+                        .switchIfEmpty(Mono.error(new RuntimeException("No exchange rate recorded at " + instant)))
+                        .doOnError(e -> log.error("Error retrieving exchange rate at {}: {}", instant, e.getMessage()))
+        );
+    }
+    @Override
+    public Single<ExchangeRateHistoryPage> getExchangeRateHistory(String cursor, int size) {
+        if (size < 1 || size > MAX_HISTORY_PAGE_SIZE) {
+            return Single.error(new IllegalArgumentException("Page size must be between 1 and "
+                    + MAX_HISTORY_PAGE_SIZE));
+        }
+        return Single.fromPublisher(
+                exchangeRateHistory.page(cursor, size)
+                        .doOnError(e -> log.error("Error retrieving exchange rate history: {}", e.getMessage()))
+        );
+    }
+    @Override
+    public Flowable<BootCoinExchangeRate> getExchangeRateChanges() {
+        return Flowable.fromPublisher(changeFeed.changes());
+    }
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
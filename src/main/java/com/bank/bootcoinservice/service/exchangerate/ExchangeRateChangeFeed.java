@@ -0,0 +1,64 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.BufferOverflowStrategy;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+
+/**
+ * The one subscription per instance to {@link #CHANGES_CHANNEL}, on which the upsert script
+ * publishes every stored rate. Each stored rate is fanned out to all local subscribers; a
+ * subscriber that falls behind loses its oldest pending rates instead of slowing the others.
+ */
+@Component
+@Slf4j
+public class ExchangeRateChangeFeed {
+    public static final String CHANGES_CHANNEL = "bootcoin:exchange_rate:changes";
+    private final ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate;
+    private final int bufferSize;
+    private final Sinks.Many<BootCoinExchangeRate> changes = Sinks.many().multicast().directBestEffort();
+    private Disposable subscription;
+    public ExchangeRateChangeFeed(ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate,
+                                  @Value("${bootcoin.exchange-rate.stream.buffer-size:16}") int bufferSize) {
+        this.exchangeRateRedisTemplate = exchangeRateRedisTemplate;
+        this.bufferSize = bufferSize;
+    }
+    @PostConstruct
+    public void connect() {
+        subscription = exchangeRateRedisTemplate.listenToChannel(CHANGES_CHANNEL)
+                .map(ReactiveSubscription.Message::getMessage)
+                .doOnError(error -> log.error("Exchange rate change subscription failed: {}", error.getMessage()))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(rate -> {
+                    log.info("Exchange rate change notified, version {}", rate.getVersion());
+                    changes.tryEmitNext(rate);
+                });
+    }
+    @PreDestroy
+    public void disconnect() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        changes.tryEmitComplete();
+    }
+    public Flux<BootCoinExchangeRate> changes() {
+        return changes.asFlux()
+                .onBackpressureBuffer(bufferSize, ExchangeRateChangeFeed::onDropped,
+                        BufferOverflowStrategy.DROP_OLDEST);
+    }
+    private static void onDropped(BootCoinExchangeRate dropped) {
+        log.debug("Dropped exchange rate version {} for a slow subscriber", dropped.getVersion());
+    }
+}
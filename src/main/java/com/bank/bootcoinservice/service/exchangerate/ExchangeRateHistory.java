@@ -0,0 +1,245 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.config.ExchangeRateRedisSerializer;
+import com.bank.bootcoinservice.dto.exchangerate.ExchangeRateHistoryPage;
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateHistoryEntry;
+import com.bank.bootcoinservice.util.SingleFlight;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStreamOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import org.springframework.data.redis.serializer.StringRedisSerializer;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Pattern;
+
+/**
+ * Every stored exchange rate, appended to the {@link #HISTORY_KEY} stream by the upsert script.
+ * The stream id carries the time a rate took effect. The most recent versions are kept in memory
+ * so point-in-time lookups are a binary search; older instants cost one bounded stream read.
+ * Every change notification appends the new entries to the window, so instants up to now are
+ * served from memory once the window holds the last notified version. Without notifications the
+ * window is trusted for the near cache TTL, in case one was missed. History tolerates replication
+ * lag, so it is read through the replica-preferring template.
+ */
+@Component
+@Slf4j
+public class ExchangeRateHistory {
+    public static final String HISTORY_KEY = ExchangeRateTable.historyKeyFor(ExchangeRateTable.BASE_CURRENCY);
+    private static final String RATE_FIELD = "rate";
+    private static final Pattern STREAM_ID = Pattern.compile("\\d+-\\d+");
+    private final ReactiveStreamOperations<String, String, BootCoinExchangeRate> streamOperations;
+    private final int windowSize;
+    private final AtomicReference<Window> window = new AtomicReference<>(Window.NOT_LOADED);
+    private final SingleFlight<String, Window> refreshes = new SingleFlight<>();
+    private final ExchangeRateChangeFeed changeFeed;
+    private final long ttlMillis;
+    private final AtomicLong notifiedVersion = new AtomicLong();
+    private Disposable subscription;
+    public ExchangeRateHistory(@Qualifier("exchangeRateReplicaRedisTemplate")
+                               ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate,
+                               ExchangeRateRedisSerializer exchangeRateSerializer,
+                               ExchangeRateChangeFeed changeFeed,
+                               @Value("${bootcoin.exchange-rate.history.window-size:256}") int windowSize,
+                               @Value("${bootcoin.exchange-rate.near-cache.ttl-ms:30000}") long ttlMillis) {
+        RedisSerializationContext<String, BootCoinExchangeRate> context = RedisSerializationContext
+                .<String, BootCoinExchangeRate>newSerializationContext(new StringRedisSerializer())
+                .value(exchangeRateSerializer)
+                .hashValue(exchangeRateSerializer)
+                .build();
+        this.streamOperations = exchangeRateRedisTemplate.opsForStream(context);
+        this.windowSize = windowSize;
+        this.changeFeed = changeFeed;
+        this.ttlMillis = ttlMillis;
+    }
+    @PostConstruct
+    public void subscribe() {
+        subscription = changeFeed.changes().subscribe(this::onChange);
+    }
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+    private void onChange(BootCoinExchangeRate rate) {
+        notifiedVersion.accumulateAndGet(rate.getVersion(), Math::max);
+        if (window.get().loaded) {
+            refresh()
+                    .doOnError(error -> log.warn("Exchange rate history refresh failed: {}", error.getMessage()))
+                    .onErrorResume(error -> Mono.empty())
+                    .subscribe();
+        }
+    }
+    /**
+     * The rate in effect at the given instant, empty if none had been stored yet.
+     */
+    public Mono<BootCoinExchangeRate> rateAt(Instant instant) {
+        long millis = instant.toEpochMilli();
+        Window current = window.get();
+        Mono<Window> ready = covers(current, millis) ? Mono.just(current) : refresh();
+        return ready.flatMap(loaded -> {
+            int index = loaded.indexAt(millis);
+            if (index >= 0) {
+                return Mono.just(loaded.rates[index]);
+            }
+            if (loaded.complete) {
+                return Mono.empty();
+            }
+            log.info("Exchange rate at {} is older than the in-memory window, reading the stream", instant);
+            return streamOperations.reverseRange(HISTORY_KEY,
+                            Range.leftUnbounded(Range.Bound.inclusive(String.valueOf(millis))),
+                            Limit.limit().count(1))
+                    .next()
+                    .map(record -> record.getValue().get(RATE_FIELD));
+        });
+    }
+    private boolean covers(Window current, long millis) {
+        if (!current.loaded) {
+            return false;
+        }
+        if (millis < current.refreshedAt) {
+            return true;
+        }
+        long now = System.currentTimeMillis();
+        return millis <= now
+                && now - current.refreshedAt < ttlMillis
+                && current.lastVersion() >= notifiedVersion.get();
+    }
+    /**
+     * One page of the history, newest first, starting after {@code cursor} (null for the newest).
+     */
+    public Mono<ExchangeRateHistoryPage> page(String cursor, int size) {
+        if (cursor != null && !STREAM_ID.matcher(cursor).matches()) {
+            return Mono.error(new IllegalArgumentException("Invalid history cursor: " + cursor));
+        }
+        Range<String> range = cursor == null
+                ? Range.unbounded()
+                : Range.leftUnbounded(Range.Bound.inclusive(cursor));
+        // one extra entry tells whether there is a next page, another covers the cursor itself
+        int count = cursor == null ? size + 1 : size + 2;
+        return streamOperations.reverseRange(HISTORY_KEY, range, Limit.limit().count(count))
+                .filter(record -> !record.getId().getValue().equals(cursor))
+                .map(ExchangeRateHistory::toEntry)
+                .collectList()
+                .map(entries -> {
+                    if (entries.size() <= size) {
+                        return new ExchangeRateHistoryPage(entries, null);
+                    }
+                    List<ExchangeRateHistoryEntry> items = new ArrayList<>(entries.subList(0, size));
+                    return new ExchangeRateHistoryPage(items, items.get(size - 1).getId());
+                });
+    }
+    /**
+     * Appends the entries written since the last refresh, or loads the latest window on first use.
+     */
+    private Mono<Window> refresh() {
+        return refreshes.execute(HISTORY_KEY, () -> {
+            Window current = window.get();
+            long startedAt = System.currentTimeMillis();
+            Range<String> range = current.lastId() == null
+                    ? Range.unbounded()
+                    : Range.rightUnbounded(Range.Bound.inclusive(successor(current.lastId())));
+            return streamOperations.reverseRange(HISTORY_KEY, range, Limit.limit().count(windowSize))
+                    .map(ExchangeRateHistory::toEntry)
+                    .collectList()
+                    .map(newest -> {
+                        Collections.reverse(newest);
+                        Window next = current.append(newest, windowSize, startedAt);
+                        window.set(next);
+                        return next;
+                    });
+        });
+    }
+    private static ExchangeRateHistoryEntry toEntry(MapRecord<String, String, BootCoinExchangeRate> record) {
+        return new ExchangeRateHistoryEntry(record.getId().getValue(),
+                Instant.ofEpochMilli(record.getId().getTimestamp()),
+                record.getValue().get(RATE_FIELD));
+    }
+    private static String successor(String id) {
+        RecordId recordId = RecordId.of(id);
+        return recordId.getTimestamp() + "-" + (recordId.getSequence() + 1);
+    }
+    /**
+     * Immutable snapshot of the most recent entries in ascending stream order.
+     */
+    private static final class Window {
+        private static final Window NOT_LOADED = new Window(false, false, 0L, new String[0], new long[0],
+                new BootCoinExchangeRate[0]);
+        private final boolean loaded;
+        private final boolean complete; // holds the whole stream, so misses need no fallback read
+        private final long refreshedAt;
+        private final String[] ids;
+        private final long[] effectiveAt;
+        private final BootCoinExchangeRate[] rates;
+        private Window(boolean loaded, boolean complete, long refreshedAt, String[] ids, long[] effectiveAt,
+                       BootCoinExchangeRate[] rates) {
+            this.loaded = loaded;
+            this.complete = complete;
+            this.refreshedAt = refreshedAt;
+            this.ids = ids;
+            this.effectiveAt = effectiveAt;
+            this.rates = rates;
+        }
+        private String lastId() {
+            return ids.length == 0 ? null : ids[ids.length - 1];
+        }
+        private long lastVersion() {
+            return rates.length == 0 ? 0L : rates[rates.length - 1].getVersion();
+        }
+        private Window append(List<ExchangeRateHistoryEntry> newest, int capacity, long refreshedAt) {
+            // a full read may have skipped entries between this window and the new ones
+            boolean gap = newest.size() >= capacity;
+            int kept = gap ? 0 : Math.min(ids.length, capacity - newest.size());
+            int skipped = ids.length - kept;
+            int length = kept + newest.size();
+            String[] nextIds = new String[length];
+            long[] nextEffectiveAt = new long[length];
+            BootCoinExchangeRate[] nextRates = new BootCoinExchangeRate[length];
+            System.arraycopy(ids, skipped, nextIds, 0, kept);
+            System.arraycopy(effectiveAt, skipped, nextEffectiveAt, 0, kept);
+            System.arraycopy(rates, skipped, nextRates, 0, kept);
+            for (int i = 0; i < newest.size(); i++) {
+                ExchangeRateHistoryEntry entry = newest.get(i);
+                nextIds[kept + i] = entry.getId();
+                nextEffectiveAt[kept + i] = entry.getEffectiveAt().toEpochMilli();
+                nextRates[kept + i] = entry.getRate();
+            }
+            boolean nextComplete = loaded ? complete && skipped == 0 && !gap : !gap;
+            return new Window(true, nextComplete, refreshedAt, nextIds, nextEffectiveAt, nextRates);
+        }
+        /**
+         * Index of the last entry that took effect at or before {@code millis}, -1 if there is none.
+         */
+        private int indexAt(long millis) {
+            int low = 0;
+            int high = effectiveAt.length - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (effectiveAt[mid] <= millis) {
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return high;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * In-process copy of the parsed exchange rate. Each instance drops its copy when the
+ * {@link ExchangeRateChangeFeed} reports a write; the TTL bounds staleness if a change
+ * notification is ever missed.
+ */
+@Component
+@Slf4j
+public class ExchangeRateNearCache {
+    private final ExchangeRateChangeFeed changeFeed;
+    private final long ttlNanos;
+    private final AtomicReference<Entry> entry = new AtomicReference<>();
+    private final AtomicLong generation = new AtomicLong();
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter invalidations;
+    private Disposable subscription;
+    public ExchangeRateNearCache(ExchangeRateChangeFeed changeFeed,
+                                 MeterRegistry meterRegistry,
+                                 @Value("${bootcoin.exchange-rate.near-cache.ttl-ms:30000}") long ttlMillis) {
+        this.changeFeed = changeFeed;
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+        this.hits = Counter.builder("bootcoin.exchange.rate.cache.requests")
+                .tag("result", "hit")
+                .register(meterRegistry);
+        this.misses = Counter.builder("bootcoin.exchange.rate.cache.requests")
+                .tag("result", "miss")
+                .register(meterRegistry);
+        this.invalidations = Counter.builder("bootcoin.exchange.rate.cache.invalidations")
+                .register(meterRegistry);
+    }
+    @PostConstruct
+    public void subscribe() {
+        subscription = changeFeed.changes().subscribe(rate -> invalidate());
+    }
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+    public BootCoinExchangeRate get() {
+        Entry current = entry.get();
+        if (current != null && System.nanoTime() - current.loadedAt < ttlNanos) {
+            hits.increment();
+            return current.rate;
+        }
+        misses.increment();
+        return null;
+    }
+    public long generation() {
+        return generation.get();
+    }
+    /**
+     * Stores a rate read from Redis, unless an invalidation arrived while it was being read.
+     */
+    public void put(BootCoinExchangeRate rate, long loadedGeneration) {
+        Entry candidate = new Entry(rate, System.nanoTime());
+        entry.set(candidate);
+        if (generation.get() != loadedGeneration) {
+            entry.compareAndSet(candidate, null);
+        }
+    }
+    public void invalidate() {
+        generation.incrementAndGet();
+        entry.set(null);
+        invalidations.increment();
+    }
+    private static final class Entry {
+        private final BootCoinExchangeRate rate;
+        private final long loadedAt;
+        private Entry(BootCoinExchangeRate rate, long loadedAt) {
+            this.rate = rate;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
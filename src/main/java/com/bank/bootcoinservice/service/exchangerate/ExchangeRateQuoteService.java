@@ -0,0 +1,10 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateQuote;
+import io.reactivex.Single;
+
+public interface ExchangeRateQuoteService {
+    Single<ExchangeRateQuote> createQuote();
+    Single<BootCoinExchangeRate> getQuotedRate(String quoteId);
+}
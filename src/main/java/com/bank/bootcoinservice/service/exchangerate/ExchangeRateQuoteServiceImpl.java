@@ -0,0 +1,151 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateQuote;
+import io.reactivex.Single;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Quotes lock the current rate for a short time. The quote id is {@code nonce.expiresAt.signature},
+ * so forged or expired ids are rejected without any lookup. Quotes live in a local map, which is
+ * what pricing hits; they are also written to Redis with the same TTL so any instance can honour
+ * a quote issued by another.
+ */
+@Service
+@Slf4j
+public class ExchangeRateQuoteServiceImpl implements ExchangeRateQuoteService {
+    private static final String QUOTE_KEY_PREFIX = "bootcoin:exchange_rate:quote:";
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+    private static final Base64.Encoder ENCODER = Base64.getUrlEncoder().withoutPadding();
+    private static final Base64.Decoder DECODER = Base64.getUrlDecoder();
+    private final BootCoinExchangeRateService exchangeRateService;
+    private final ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate;
+    private final SecretKeySpec signingKey;
+    private final long ttlMillis;
+    private final SecureRandom random = new SecureRandom();
+    private final Map<String, ExchangeRateQuote> quotes = new ConcurrentHashMap<>();
+    private Disposable sweeper;
+    public ExchangeRateQuoteServiceImpl(BootCoinExchangeRateService exchangeRateService,
+                                        ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate,
+                                        @Value("${bootcoin.quote.secret:${jwt.secret}}") String secret,
+                                        @Value("${bootcoin.quote.ttl-ms:30000}") long ttlMillis) {
+        this.exchangeRateService = exchangeRateService;
+        this.exchangeRateRedisTemplate = exchangeRateRedisTemplate;
+        this.signingKey = new SecretKeySpec(secret.getBytes(StandardCharsets.UTF_8), HMAC_ALGORITHM);
+        this.ttlMillis = ttlMillis;
+    }
+    @PostConstruct
+    public void startSweeper() {
+        sweeper = Flux.interval(Duration.ofMillis(Math.max(ttlMillis, 1000)))
+                .subscribe(tick -> removeExpired());
+    }
+    @PreDestroy
+    public void stopSweeper() {
+        if (sweeper != null) {
+            sweeper.dispose();
+        }
+    }
+    @Override
+    public Single<ExchangeRateQuote> createQuote() {
+        return exchangeRateService.getCurrentExchangeRate()
+                .flatMap(rate -> {
+                    long expiresAt = System.currentTimeMillis() + ttlMillis;
+                    ExchangeRateQuote quote = new ExchangeRateQuote(newQuoteId(expiresAt), rate.getBuyRate(),
+                            rate.getSellRate(), rate.getVersion(), Instant.ofEpochMilli(expiresAt));
+                    quotes.put(quote.getQuoteId(), quote);
+                    return Single.fromPublisher(
+                            exchangeRateRedisTemplate.opsForValue()
+                                    .set(QUOTE_KEY_PREFIX + quote.getQuoteId(), rate, Duration.ofMillis(ttlMillis))
+                                    .timeout(Duration.ofSeconds(5))
+                                    .thenReturn(quote)
+                    );
+                })
+                .doOnSuccess(quote -> log.info("Issued quote expiring at {} for rate version {}",
+                        quote.getExpiresAt(), quote.getRateVersion()))
+                .doOnError(error -> log.error("Error issuing quote: {}", error.getMessage()));
+    }
+    @Override
+    public Single<BootCoinExchangeRate> getQuotedRate(String quoteId) {
+        long expiresAt;
+        try {
+            expiresAt = verify(quoteId);
+        } catch (IllegalArgumentException e) {
+            return Single.error(e);
+        }
+        if (expiresAt <= System.currentTimeMillis()) {
+            quotes.remove(quoteId);
+            return Single.error(new IllegalArgumentException("Quote has expired."));
+        }
+        ExchangeRateQuote quote = quotes.get(quoteId);
+        if (quote != null) {
+            return Single.just(toRate(quote));
+        }
+        return Single.fromPublisher(
+                exchangeRateRedisTemplate.opsForValue().get(QUOTE_KEY_PREFIX + quoteId)
+                        .switchIfEmpty(Mono.error(new IllegalArgumentException("Quote not found or expired.")))
+                        .doOnNext(rate -> quotes.put(quoteId, new ExchangeRateQuote(quoteId, rate.getBuyRate(),
+                                rate.getSellRate(), rate.getVersion(), Instant.ofEpochMilli(expiresAt))))
+                        .timeout(Duration.ofSeconds(5))
+        );
+    }
+    void removeExpired() {
+        Instant now = Instant.now();
+        quotes.values().removeIf(quote -> !quote.getExpiresAt().isAfter(now));
+    }
+    private static BootCoinExchangeRate toRate(ExchangeRateQuote quote) {
+        return new BootCoinExchangeRate(quote.getBuyRate(), quote.getSellRate(), null, quote.getRateVersion());
+    }
+    private String newQuoteId(long expiresAt) {
+        byte[] nonce = new byte[16];
+        random.nextBytes(nonce);
+        String payload = ENCODER.encodeToString(nonce) + "." + expiresAt;
+        return payload + "." + ENCODER.encodeToString(sign(payload));
+    }
+    /**
+     * Checks the signature and returns the expiry encoded in the quote id.
+     */
+    private long verify(String quoteId) {
+        String[] parts = quoteId == null ? new String[0] : quoteId.split("\\.");
+        if (parts.length != 3) {
+            throw new IllegalArgumentException("Invalid quote.");
+        }
+        try {
+            byte[] signature = DECODER.decode(parts[2]);
+            if (!MessageDigest.isEqual(signature, sign(parts[0] + "." + parts[1]))) {
+                throw new IllegalArgumentException("Invalid quote.");
+            }
+            return Long.parseLong(parts[1]);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid quote.", e);
+        }
+    }
+    private byte[] sign(String payload) {
+        try {
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(signingKey);
+            return mac.doFinal(payload.getBytes(StandardCharsets.UTF_8));
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Cannot sign quote", e);
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.config.ExchangeRateRedisSerializer;
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Last exchange rate this instance saw, kept in a small memory-mapped file so it survives
+ * restarts. It is served when Redis does not answer within the latency budget, as long as it
+ * is not older than the staleness limit.
+ * <pre>
+ *  0  magic        4  observedAt epoch millis
+ *  12 CRC32 of bytes 4..11 and the record
+ *  16 rate record (see {@link ExchangeRateRedisSerializer})
+ * </pre>
+ * A write interrupted by a crash fails the checksum, and the file is then ignored.
+ */
+@Component
+@Slf4j
+public class ExchangeRateSnapshotStore {
+    private static final int MAGIC = 0x42435352;
+    private static final int OBSERVED_AT_OFFSET = 4;
+    private static final int CHECKSUM_OFFSET = 12;
+    private static final int RECORD_OFFSET = 16;
+    private static final int FILE_LENGTH = RECORD_OFFSET + ExchangeRateRedisSerializer.RECORD_LENGTH;
+    private final ExchangeRateRedisSerializer exchangeRateSerializer;
+    private final ExchangeRateChangeFeed changeFeed;
+    private final Path path;
+    private final Duration latencyBudget;
+    private final long maxStalenessMillis;
+    private final AtomicBoolean servingSnapshot = new AtomicBoolean();
+    private volatile Snapshot snapshot;
+    private MappedByteBuffer buffer;
+    private Disposable subscription;
+    public ExchangeRateSnapshotStore(ExchangeRateRedisSerializer exchangeRateSerializer,
+                                     ExchangeRateChangeFeed changeFeed,
+                                     @Value("${bootcoin.exchange-rate.snapshot.path:"
+                                             + "${java.io.tmpdir}/bootcoin-exchange-rate.snapshot}") String path,
+                                     @Value("${bootcoin.exchange-rate.redis.latency-budget-ms:250}")
+                                     long latencyBudgetMillis,
+                                     @Value("${bootcoin.exchange-rate.snapshot.max-staleness-ms:300000}")
+                                     long maxStalenessMillis) {
+        this.exchangeRateSerializer = exchangeRateSerializer;
+        this.changeFeed = changeFeed;
+        this.path = Paths.get(path);
+        this.latencyBudget = Duration.ofMillis(latencyBudgetMillis);
+        this.maxStalenessMillis = maxStalenessMillis;
+    }
+    @PostConstruct
+    public void open() {
+        try {
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_LENGTH);
+            }
+            snapshot = read();
+            if (snapshot != null) {
+                log.info("Loaded exchange rate snapshot version {} observed at {}",
+                        snapshot.rate.getVersion(), snapshot.observedAt);
+            }
+        } catch (IOException e) {
+            log.error("Exchange rate snapshot unavailable at {}: {}", path, e.getMessage());
+        }
+        subscription = changeFeed.changes().subscribe(this::record);
+    }
+    @PreDestroy
+    public void close() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+        synchronized (this) {
+            if (buffer != null) {
+                buffer.force();
+            }
+        }
+    }
+    public Duration latencyBudget() {
+        return latencyBudget;
+    }
+    /**
+     * Stores a rate just read from or written to Redis, and clears the fallback flag.
+     * An older version than the one already stored is ignored.
+     */
+    public void record(BootCoinExchangeRate rate) {
+        servingSnapshot.set(false);
+        Snapshot current = snapshot;
+        if (current != null && current.rate.getVersion() >= rate.getVersion()) {
+            snapshot = new Snapshot(current.rate, System.currentTimeMillis());
+            return;
+        }
+        Snapshot recorded = new Snapshot(rate, System.currentTimeMillis());
+        snapshot = recorded;
+        write(recorded);
+    }
+    /**
+     * The stored rate if it is within the staleness limit; returning one marks the instance
+     * as serving from the snapshot until Redis answers again.
+     */
+    public BootCoinExchangeRate fallback() {
+        Snapshot current = snapshot;
+        if (current == null || System.currentTimeMillis() - current.observedAt > maxStalenessMillis) {
+            return null;
+        }
+        if (servingSnapshot.compareAndSet(false, true)) {
+            log.warn("Serving exchange rate version {} from the local snapshot", current.rate.getVersion());
+        }
+        return current.rate;
+    }
+    public boolean isServingSnapshot() {
+        return servingSnapshot.get();
+    }
+    /**
+     * Milliseconds since the stored rate was last confirmed by Redis, or -1 when there is none.
+     */
+    public long snapshotAgeMillis() {
+        Snapshot current = snapshot;
+        return current == null ? -1 : System.currentTimeMillis() - current.observedAt;
+    }
+    private synchronized void write(Snapshot recorded) {
+        if (buffer == null) {
+            return;
+        }
+        byte[] record = exchangeRateSerializer.serialize(recorded.rate);
+        buffer.putLong(OBSERVED_AT_OFFSET, recorded.observedAt);
+        buffer.duplicate().position(RECORD_OFFSET).put(record);
+        buffer.putInt(CHECKSUM_OFFSET, (int) checksum(recorded.observedAt, record));
+        buffer.putInt(0, MAGIC);
+    }
+    private Snapshot read() {
+        if (buffer.getInt(0) != MAGIC) {
+            return null;
+        }
+        long observedAt = buffer.getLong(OBSERVED_AT_OFFSET);
+        byte[] record = new byte[ExchangeRateRedisSerializer.RECORD_LENGTH];
+        buffer.duplicate().position(RECORD_OFFSET).get(record);
+        if (buffer.getInt(CHECKSUM_OFFSET) != (int) checksum(observedAt, record)) {
+            log.warn("Ignoring corrupt exchange rate snapshot at {}", path);
+            return null;
+        }
+        return new Snapshot(exchangeRateSerializer.deserialize(record), observedAt);
+    }
+    private static long checksum(long observedAt, byte[] record) {
+        CRC32 crc = new CRC32();
+        for (int shift = 56; shift >= 0; shift -= 8) {
+            crc.update((int) (observedAt >>> shift));
+        }
+        crc.update(record);
+        return crc.getValue();
+    }
+    private static final class Snapshot {
+        private final BootCoinExchangeRate rate;
+        private final long observedAt;
+        private Snapshot(BootCoinExchangeRate rate, long observedAt) {
+            this.rate = rate;
+            this.observedAt = observedAt;
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.bank.bootcoinservice.util.SingleFlight;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.stereotype.Component;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Collectors;
+
+/**
+ * BootCoin rates for every configured quote currency, one key per currency. PEN uses
+ * {@code bootcoin:{exchange_rate}}; other currencies use {@code bootcoin:{exchange_rate:ccy}}. The
+ * braces are a cluster hash tag: a rate and its history stream share a slot, so the upsert script
+ * can write both in cluster mode.
+ * Readers see an immutable snapshot of all pairs. The snapshot is loaded with a single MGET, and it
+ * is replaced with a new copy whenever a change notification arrives for any currency.
+ */
+@Component
+@Slf4j
+public class ExchangeRateTable {
+    public static final String BASE_CURRENCY = "PEN";
+    private static final String ALL_CURRENCIES = "*";
+    private final ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate;
+    private final List<String> currencies;
+    private final long ttlNanos;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final SingleFlight<String, Map<String, BootCoinExchangeRate>> loads = new SingleFlight<>();
+    private Disposable subscription;
+    public ExchangeRateTable(ReactiveRedisTemplate<String, BootCoinExchangeRate> exchangeRateRedisTemplate,
+                             @Value("${bootcoin.exchange-rate.currencies:PEN,USD}") List<String> currencies,
+                             @Value("${bootcoin.exchange-rate.near-cache.ttl-ms:30000}") long ttlMillis) {
+        this.exchangeRateRedisTemplate = exchangeRateRedisTemplate;
+        this.currencies = currencies.stream()
+                .map(currency -> currency.trim().toUpperCase(Locale.ROOT))
+                .distinct()
+                .collect(Collectors.toUnmodifiableList());
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMillis);
+    }
+    public static String keyFor(String currency) {
+        return "bootcoin:{" + hashTagFor(currency) + "}";
+    }
+    public static String historyKeyFor(String currency) {
+        return keyFor(currency) + ":history";
+    }
+    private static String hashTagFor(String currency) {
+        return BASE_CURRENCY.equals(currency) ? "exchange_rate" : "exchange_rate:" + currency;
+    }
+    public static String channelFor(String currency) {
+        return BASE_CURRENCY.equals(currency)
+                ? ExchangeRateChangeFeed.CHANGES_CHANNEL
+                : ExchangeRateChangeFeed.CHANGES_CHANNEL + ":" + currency;
+    }
+    @PostConstruct
+    public void subscribe() {
+        subscription = exchangeRateRedisTemplate.listenToPattern(ExchangeRateChangeFeed.CHANGES_CHANNEL + "*")
+                .doOnError(error -> {
+                    log.error("Exchange rate table subscription failed: {}", error.getMessage());
+                    snapshot.set(null);
+                })
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(Duration.ofSeconds(30)))
+                .subscribe(message -> {
+                    String currency = currencyOf(message.getChannel());
+                    if (currency != null) {
+                        apply(currency, message.getMessage());
+                    }
+                });
+    }
+    @PreDestroy
+    public void unsubscribe() {
+        if (subscription != null) {
+            subscription.dispose();
+        }
+    }
+    public List<String> currencies() {
+        return currencies;
+    }
+    public String normalize(String currency) {
+        String normalized = currency == null ? "" : currency.trim().toUpperCase(Locale.ROOT);
+        if (!currencies.contains(normalized)) {
+            throw new IllegalArgumentException("Unsupported currency: " + currency);
+        }
+        return normalized;
+    }
+    /**
+     * All known rates, reloading them with one MGET when the snapshot is missing or older than the TTL.
+     */
+    public Mono<Map<String, BootCoinExchangeRate>> rates() {
+        Snapshot current = snapshot.get();
+        if (current != null && System.nanoTime() - current.loadedAt < ttlNanos) {
+            return Mono.just(current.rates);
+        }
+        return loads.execute(ALL_CURRENCIES, this::load);
+    }
+    /**
+     * Records a rate that was just stored, keeping whichever of the known and new versions is newer.
+     */
+    public void apply(String currency, BootCoinExchangeRate rate) {
+        snapshot.getAndUpdate(current -> {
+            if (current == null) {
+                return null;
+            }
+            BootCoinExchangeRate known = current.rates.get(currency);
+            if (known != null && known.getVersion() >= rate.getVersion()) {
+                return current;
+            }
+            Map<String, BootCoinExchangeRate> rates = new HashMap<>(current.rates);
+            rates.put(currency, rate);
+            return new Snapshot(Map.copyOf(rates), current.loadedAt);
+        });
+    }
+    private Mono<Map<String, BootCoinExchangeRate>> load() {
+        List<String> keys = currencies.stream().map(ExchangeRateTable::keyFor).collect(Collectors.toList());
+        return exchangeRateRedisTemplate.opsForValue().multiGet(keys)
+                .map(values -> {
+                    Map<String, BootCoinExchangeRate> rates = new HashMap<>();
+                    for (int i = 0; i < currencies.size(); i++) {
+                        if (values.get(i) != null) {
+                            rates.put(currencies.get(i), values.get(i));
+                        }
+                    }
+                    Snapshot loaded = new Snapshot(Map.copyOf(rates), System.nanoTime());
+                    snapshot.set(loaded);
+                    log.info("Loaded exchange rates for {}", rates.keySet());
+                    return loaded.rates;
+                })
+                .timeout(Duration.ofSeconds(5));
+    }
+    private String currencyOf(String channel) {
+        for (String currency : currencies) {
+            if (channelFor(currency).equals(channel)) {
+                return currency;
+            }
+        }
+        return null;
+    }
+    private static final class Snapshot {
+        private final Map<String, BootCoinExchangeRate> rates;
+        private final long loadedAt;
+        private Snapshot(Map<String, BootCoinExchangeRate> rates, long loadedAt) {
+            this.rates = rates;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+public class ExchangeRateVersionConflictException extends RuntimeException {
+    public ExchangeRateVersionConflictException(long expectedVersion) {
+        super("Exchange rate was modified concurrently, expected version " + expectedVersion);
+    }
+}
@@ -0,0 +1,7 @@
+package com.bank.bootcoinservice.service.ledger;
+
+public class InsufficientBalanceException extends IllegalArgumentException {
+    public InsufficientBalanceException(String account) {
+        super("Account " + account + " does not have enough balance.");
+    }
+}
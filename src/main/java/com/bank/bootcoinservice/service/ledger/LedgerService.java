@@ -0,0 +1,32 @@
+package com.bank.bootcoinservice.service.ledger;
+
+import io.reactivex.Completable;
+import io.reactivex.Single;
+
+import java.math.BigDecimal;
+
+public interface LedgerService {
+    /**
+     * System account that BootCoins bought from the bank are issued from, so its balance is
+     * the negative of all issued coins.
+     */
+    String BANK_ACCOUNT = "bootcoin:bank";
+    /**
+     * Prefix of the per-purchase accounts that hold the seller's coins while a P2P trade is in flight.
+     */
+    String ESCROW_ACCOUNT_PREFIX = "bootcoin:escrow:";
+    /**
+     * Moves {@code amount} between two accounts, failing with {@link InsufficientBalanceException}
+     * when the source balance does not cover it. Posting the same {@code postingId} again has no effect.
+     */
+    Completable transfer(String postingId, String fromAccount, String toAccount, BigDecimal amount);
+    /**
+     * Credits {@code amount} to the account from {@link #BANK_ACCOUNT}.
+     */
+    Completable issue(String postingId, String toAccount, BigDecimal amount);
+    Single<BigDecimal> balanceOf(String account);
+    /**
+     * Sum of all balances, which must be zero.
+     */
+    Single<BigDecimal> imbalance();
+}
@@ -0,0 +1,342 @@
+package com.bank.bootcoinservice.service.ledger;
+
+import com.bank.bootcoinservice.config.MongoIndexes;
+import com.bank.bootcoinservice.model.ledger.LedgerEntry;
+import com.bank.bootcoinservice.model.ledger.LedgerSnapshot;
+import com.bank.bootcoinservice.model.user.BootCoinUser;
+import com.bank.bootcoinservice.repository.BootCoinUserRepository;
+import com.bank.bootcoinservice.repository.LedgerEntryRepository;
+import com.bank.bootcoinservice.repository.LedgerSnapshotRepository;
+import com.bank.bootcoinservice.util.KeyedLock;
+import com.mongodb.MongoException;
+import io.reactivex.Completable;
+import io.reactivex.Single;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Append-only double-entry ledger. A posting writes a debit entry and a credit entry in one
+ * transaction, each with the next sequence of its account. A unique index on account and sequence
+ * rejects any append made from a stale head. Balances are the latest snapshot plus the entries
+ * after it, and they are kept in a bounded LRU cache of account heads.
+ *
+ * Postings from this instance are serialized per account, so cached heads advance without gaps
+ * while postings on unrelated accounts run concurrently. A conflict therefore means another
+ * instance appended first: the heads are reloaded and the posting is retried. Dirty heads are
+ * snapshotted periodically. Cached heads are reloaded for reads once older than the TTL, and
+ * before a posting is rejected for insufficient balance.
+ */
+@Service
+@Slf4j
+public class LedgerServiceImpl implements LedgerService {
+    private static final String OPENING_POSTING_PREFIX = "opening:";
+    private static final int MAX_ATTEMPTS = 5;
+    private final LedgerEntryRepository entryRepository;
+    private final LedgerSnapshotRepository snapshotRepository;
+    private final BootCoinUserRepository userRepository;
+    private final MongoIndexes mongoIndexes;
+    private final long readTtlNanos;
+    private final Duration snapshotInterval;
+    private final Map<String, AccountHead> heads;
+    private final KeyedLock<String> accountLocks = new KeyedLock<>();
+    private Disposable snapshotter;
+    private Disposable migration;
+    public LedgerServiceImpl(LedgerEntryRepository entryRepository,
+                             LedgerSnapshotRepository snapshotRepository,
+                             BootCoinUserRepository userRepository,
+                             MongoIndexes mongoIndexes,
+                             @Value("${bootcoin.ledger.cache.max-accounts:10000}") int maxCachedAccounts,
+                             @Value("${bootcoin.ledger.cache.ttl-ms:5000}") long readTtlMillis,
+                             @Value("${bootcoin.ledger.snapshot.interval-ms:60000}") long snapshotIntervalMillis) {
+        this.entryRepository = entryRepository;
+        this.snapshotRepository = snapshotRepository;
+        this.userRepository = userRepository;
+        this.mongoIndexes = mongoIndexes;
+        this.readTtlNanos = TimeUnit.MILLISECONDS.toNanos(readTtlMillis);
+        this.snapshotInterval = Duration.ofMillis(snapshotIntervalMillis);
+        this.heads = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, AccountHead> eldest) {
+                return size() > maxCachedAccounts;
+            }
+        };
+    }
+    @PostConstruct
+    public void start() {
+        snapshotter = Flux.interval(snapshotInterval, snapshotInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> snapshotDirtyHeads(), 1)
+                .subscribe();
+        migration = Flux.from(importLegacyBalances().toFlowable())
+                .subscribe(null, error -> log.error("Importing legacy balances failed: {}", error.getMessage()),
+                    () -> log.info("Legacy balances imported into the ledger"));
+    }
+    @PreDestroy
+    public void stop() {
+        if (snapshotter != null) {
+            snapshotter.dispose();
+        }
+        if (migration != null) {
+            migration.dispose();
+        }
+    }
+    @Override
+    public Completable transfer(String postingId, String fromAccount, String toAccount, BigDecimal amount) {
+        return post(postingId, fromAccount, toAccount, amount, true);
+    }
+    @Override
+    public Completable issue(String postingId, String toAccount, BigDecimal amount) {
+        return post(postingId, BANK_ACCOUNT, toAccount, amount, false);
+    }
+    @Override
+    public Single<BigDecimal> balanceOf(String account) {
+        return Single.fromPublisher(head(account, false).map(head -> head.balance));
+    }
+    @Override
+    public Single<BigDecimal> imbalance() {
+        return entryRepository.sumOfAmounts();
+    }
+    private Completable post(String postingId, String fromAccount, String toAccount, BigDecimal amount,
+                             boolean guarded) {
+        if (amount == null || amount.signum() <= 0) {
+            return Completable.error(new IllegalArgumentException("Posting amount must be greater than zero."));
+        }
+        if (fromAccount.equals(toAccount)) {
+            return Completable.error(new IllegalArgumentException("Posting accounts must be different."));
+        }
+        Posting posting = new Posting(postingId, fromAccount, toAccount, amount, guarded);
+        // appends rely on the unique indexes to detect a stale head
+        return mongoIndexes.ready().andThen(Completable.fromPublisher(
+                accountLocks.withLocks(List.of(fromAccount, toAccount), () -> write(posting, 1))));
+    }
+    private Mono<Void> write(Posting posting, int attempt) {
+        Mono<Set<String>> landed = attempt == 1 ? Mono.just(Set.of()) : landedAccounts(posting);
+        return landed.flatMap(accounts -> append(posting, accounts, attempt > 1, false))
+                .onErrorResume(LedgerServiceImpl::isConflict, conflict -> {
+                    forget(posting.from);
+                    forget(posting.to);
+                    if (attempt == MAX_ATTEMPTS) {
+                        return Mono.error(conflict);
+                    }
+                    log.debug("Ledger append for posting {} conflicted, retrying", posting.id);
+                    return write(posting, attempt + 1);
+                });
+    }
+    /**
+     * A duplicate sequence, or a write conflict that aborted the transaction of a concurrent append.
+     */
+    private static boolean isConflict(Throwable error) {
+        if (error instanceof DuplicateKeyException) {
+            return true;
+        }
+        Throwable mongoError = error instanceof MongoException ? error : error.getCause();
+        return mongoError instanceof MongoException
+                && ((MongoException) mongoError).hasErrorLabel(MongoException.TRANSIENT_TRANSACTION_ERROR_LABEL);
+    }
+    private Mono<Set<String>> landedAccounts(Posting posting) {
+        return Flux.from(entryRepository.findByPostingId(posting.id))
+                .map(LedgerEntry::getAccount)
+                .collect(Collectors.toSet());
+    }
+    /**
+     * Both entries land in one transaction. Postings written before that could land debit first
+     * without their credit, so a partially landed posting is completed with the credit alone, which
+     * needs no balance check. A posting that fails the balance check against a cached head checks
+     * again against the head in Mongo, because another instance may have credited the account. It is
+     * then looked up before it is rejected, because a redelivered posting may have spent the balance
+     * itself.
+     */
+    private Mono<Void> append(Posting posting, Set<String> landed, boolean landedChecked, boolean reloaded) {
+        boolean debitLanded = landed.contains(posting.from);
+        boolean creditLanded = landed.contains(posting.to);
+        if (debitLanded && creditLanded) {
+            return Mono.empty();
+        }
+        return Mono.zip(head(posting.from, true), head(posting.to, true))
+                .flatMap(accounts -> {
+                    AccountHead from = accounts.getT1();
+                    AccountHead to = accounts.getT2();
+                    if (!debitLanded && posting.guarded && from.balance.compareTo(posting.amount) < 0) {
+                        if (!reloaded) {
+                            forget(posting.from);
+                            return append(posting, landed, landedChecked, true);
+                        }
+                        return landedChecked
+                                ? Mono.error(new InsufficientBalanceException(posting.from))
+                                : landedAccounts(posting).flatMap(found -> found.isEmpty()
+                                        ? Mono.error(new InsufficientBalanceException(posting.from))
+                                        : append(posting, found, true, true));
+                    }
+                    List<LedgerEntry> entries = new ArrayList<>(2);
+                    if (!debitLanded) {
+                        entries.add(entry(posting, from, posting.amount.negate(), posting.to));
+                    }
+                    if (!creditLanded) {
+                        entries.add(entry(posting, to, posting.amount, posting.from));
+                    }
+                    return Flux.from(entryRepository.insertPosting(entries))
+                            .doOnNext(this::advance)
+                            .then();
+                });
+    }
+    private static LedgerEntry entry(Posting posting, AccountHead head, BigDecimal amount, String counterparty) {
+        return LedgerEntry.builder()
+                .postingId(posting.id)
+                .account(head.account)
+                .sequence(head.sequence + 1)
+                .amount(amount)
+                .counterparty(counterparty)
+                .createdAt(LocalDateTime.now())
+                .build();
+    }
+    private Mono<AccountHead> head(String account, boolean forWrite) {
+        return Mono.defer(() -> {
+            AccountHead cached;
+            synchronized (heads) {
+                cached = heads.get(account);
+            }
+            if (cached != null && (forWrite || System.nanoTime() - cached.loadedAt < readTtlNanos)) {
+                return Mono.just(cached);
+            }
+            return load(account).map(this::remember);
+        });
+    }
+    private Mono<AccountHead> load(String account) {
+        long loadedAt = System.nanoTime();
+        return Flux.from(snapshotRepository.findById(account).toFlowable())
+                .next()
+                .map(snapshot -> new AccountHead(account, snapshot.getSequence(), snapshot.getBalance(),
+                        snapshot.getSequence(), loadedAt))
+                .defaultIfEmpty(new AccountHead(account, 0, BigDecimal.ZERO, 0, loadedAt))
+                .flatMap(snapshot -> Flux.from(entryRepository
+                                .findByAccountAndSequenceGreaterThanOrderBySequenceAsc(account, snapshot.sequence))
+                        .reduce(snapshot, AccountHead::apply));
+    }
+    private AccountHead remember(AccountHead loaded) {
+        synchronized (heads) {
+            AccountHead current = heads.get(loaded.account);
+            if (current != null && current.sequence > loaded.sequence) {
+                return current;
+            }
+            heads.put(loaded.account, loaded);
+            return loaded;
+        }
+    }
+    private void advance(LedgerEntry entry) {
+        synchronized (heads) {
+            AccountHead head = heads.get(entry.getAccount());
+            if (head != null && head.sequence == entry.getSequence() - 1) {
+                heads.put(entry.getAccount(), head.apply(entry));
+            } else {
+                heads.remove(entry.getAccount());
+            }
+        }
+    }
+    private void forget(String account) {
+        synchronized (heads) {
+            heads.remove(account);
+        }
+    }
+    private Mono<Void> snapshotDirtyHeads() {
+        List<AccountHead> dirty;
+        synchronized (heads) {
+            dirty = heads.values().stream()
+                    .filter(head -> head.sequence > head.snapshotSequence)
+                    .collect(Collectors.toList());
+        }
+        return Flux.fromIterable(dirty)
+                .concatMap(head -> Flux.from(snapshotRepository.save(LedgerSnapshot.builder()
+                                .id(head.account)
+                                .sequence(head.sequence)
+                                .balance(head.balance)
+                                .takenAt(LocalDateTime.now())
+                                .build())
+                        .toFlowable())
+                        .doOnNext(snapshot -> markSnapshotted(head.account, snapshot.getSequence())))
+                .doOnComplete(() -> log.debug("Snapshotted {} ledger balances", dirty.size()))
+                .onErrorResume(error -> {
+                    log.warn("Failed to snapshot ledger balances: {}", error.getMessage());
+                    return Mono.empty();
+                })
+                .then();
+    }
+    private void markSnapshotted(String account, long sequence) {
+        synchronized (heads) {
+            AccountHead head = heads.get(account);
+            if (head != null && head.sequence >= sequence) {
+                heads.put(account, new AccountHead(account, head.sequence, head.balance, sequence, head.loadedAt));
+            }
+        }
+    }
+    /**
+     * Moves balances still stored on users into the ledger as opening postings, then removes them.
+     * The posting id makes a repeated import after a crash a no-op.
+     */
+    private Completable importLegacyBalances() {
+        return userRepository.findByBalanceExists(true)
+                .concatMapCompletable(user -> openingPosting(user)
+                        .andThen(userRepository.clearLegacyBalance(user.getDocumentNumber())));
+    }
+    private Completable openingPosting(BootCoinUser user) {
+        String postingId = OPENING_POSTING_PREFIX + user.getDocumentNumber();
+        BigDecimal balance = user.getBalance();
+        if (balance.signum() > 0) {
+            return post(postingId, BANK_ACCOUNT, user.getDocumentNumber(), balance, false);
+        }
+        if (balance.signum() < 0) {
+            return post(postingId, user.getDocumentNumber(), BANK_ACCOUNT, balance.negate(), false);
+        }
+        return Completable.complete();
+    }
+    private static final class Posting {
+        private final String id;
+        private final String from;
+        private final String to;
+        private final BigDecimal amount;
+        private final boolean guarded;
+        private Posting(String id, String from, String to, BigDecimal amount, boolean guarded) {
+            this.id = id;
+            this.from = from;
+            this.to = to;
+            this.amount = amount;
+            this.guarded = guarded;
+        }
+    }
+    private static final class AccountHead {
+        private final String account;
+        private final long sequence;
+        private final BigDecimal balance;
+        private final long snapshotSequence;
+        private final long loadedAt;
+        private AccountHead(String account, long sequence, BigDecimal balance, long snapshotSequence,
+                            long loadedAt) {
+            this.account = account;
+            this.sequence = sequence;
+            this.balance = balance;
+            this.snapshotSequence = snapshotSequence;
+            this.loadedAt = loadedAt;
+        }
+        private AccountHead apply(LedgerEntry entry) {
+            return new AccountHead(account, entry.getSequence(), balance.add(entry.getAmount()), snapshotSequence,
+                    loadedAt);
+        }
+    }
+}
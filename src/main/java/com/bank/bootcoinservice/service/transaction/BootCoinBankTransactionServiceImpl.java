@@ -4,11 +4,14 @@ import com.bank.bootcoinservice.dto.transaction.BootCoinBankTransactionRequest;
 import com.bank.bootcoinservice.dto.transaction.BootCoinBankTransactionResponse;
 import com.bank.bootcoinservice.dto.transaction.bank.BootCoinBankPurchaseCompleted;
 import com.bank.bootcoinservice.dto.transaction.bank.BootCoinBankPurchaseRequested;
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
 import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
 import com.bank.bootcoinservice.model.transaction.TransactionStatus;
 import com.bank.bootcoinservice.repository.BootCoinTransactionRepository;
 import com.bank.bootcoinservice.repository.BootCoinUserRepository;
 import com.bank.bootcoinservice.service.exchangerate.BootCoinExchangeRateService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateQuoteService;
+import com.bank.bootcoinservice.service.ledger.LedgerService;
 import io.reactivex.Completable;
 import io.reactivex.Single;
 import lombok.RequiredArgsConstructor;
@@ -27,6 +30,8 @@ public class BootCoinBankTransactionServiceImpl implements BootCoinBankTransacti
     private final BootCoinUserRepository bootCoinUserRepository;
     private final KafkaTemplate<String, Object> kafkaTemplate;
     private final BootCoinExchangeRateService exchangeRateService;
+    private final ExchangeRateQuoteService quoteService;
+    private final LedgerService ledgerService;
     @Override
     public Single<BootCoinBankTransactionResponse> requestTransaction(BootCoinBankTransactionRequest request) {
         log.info("Processing transaction request: {}", request);
@@ -44,7 +49,7 @@ public class BootCoinBankTransactionServiceImpl implements BootCoinBankTransacti
                                 "Transaction rejected: The bank account " +
                                     "provided doesn't match your registered account."));
                     }
-                    return exchangeRateService.getCurrentExchangeRate()
+                    return pricingRate(request.getQuoteId())
                             .flatMap(exchangeRate -> {
                                 BigDecimal totalAmountInPEN = request.getAmount().multiply(exchangeRate.getBuyRate());
                                 BootCoinTransaction transaction = BootCoinTransaction.builder()
@@ -75,6 +80,11 @@ public class BootCoinBankTransactionServiceImpl implements BootCoinBankTransacti
                             });
                 });
     }
+    private Single<BootCoinExchangeRate> pricingRate(String quoteId) {
+        return quoteId == null
+                ? exchangeRateService.getCurrentExchangeRate()
+                : quoteService.getQuotedRate(quoteId);
+    }
     @Override
     public Completable processTransactionResult(BootCoinBankPurchaseCompleted event) {
         return repository.findById(event.getTransactionId())
@@ -82,15 +92,9 @@ public class BootCoinBankTransactionServiceImpl implements BootCoinBankTransacti
                     transaction.setStatus(event.isAccepted() ? TransactionStatus.COMPLETED : TransactionStatus.FAILED);
                     transaction.setUpdatedAt(LocalDateTime.now());
                     if (event.isAccepted()) {
-                        return bootCoinUserRepository.findByDocumentNumber(transaction.getBuyerDocumentNumber())
-                                .flatMapCompletable(user -> {
-                                    BigDecimal newBalance = user.getBalance().add(transaction.getAmount());
-                                    user.setBalance(newBalance);
-                                    return bootCoinUserRepository.save(user)
-                                            .flatMapCompletable(savedUser ->
-                                                    repository.save(transaction).ignoreElement()
-                                            );
-                                });
+                        return ledgerService.issue(transaction.getId(), transaction.getBuyerDocumentNumber(),
+                                        transaction.getAmount())
+                                .andThen(repository.save(transaction).ignoreElement());
                     } else {
                         return repository.save(transaction).ignoreElement();
                     }
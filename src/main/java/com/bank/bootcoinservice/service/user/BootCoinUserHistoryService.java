@@ -0,0 +1,18 @@
+package com.bank.bootcoinservice.service.user;
+
+import com.bank.bootcoinservice.dto.history.UserHistoryEntry;
+import com.bank.bootcoinservice.dto.history.UserHistoryPage;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+
+public interface BootCoinUserHistoryService {
+    /**
+     * One page of the user's purchases and transactions, newest first, after {@code cursor} (null for
+     * the newest).
+     */
+    Single<UserHistoryPage> getHistory(String documentNumber, String cursor, int size);
+    /**
+     * The user's whole history after {@code cursor}, newest first, read as the subscriber requests it.
+     */
+    Flowable<UserHistoryEntry> streamHistory(String documentNumber, String cursor);
+}
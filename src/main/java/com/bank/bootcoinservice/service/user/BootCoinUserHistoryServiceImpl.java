@@ -0,0 +1,107 @@
+package com.bank.bootcoinservice.service.user;
+
+import com.bank.bootcoinservice.dto.history.UserHistoryEntry;
+import com.bank.bootcoinservice.dto.history.UserHistoryPage;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import com.bank.bootcoinservice.repository.BootCoinTransactionRepository;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+
+import java.time.LocalDateTime;
+import java.util.Comparator;
+
+/**
+ * Merges the user's purchases and bank sales into one history. Each collection is read newest first
+ * from a single cursor, and the two cursors are merged one entry at a time, so no more than a batch
+ * per collection is held in memory however long the history is. A settled P2P purchase is also
+ * recorded as a transaction under the purchase's id; only the purchase is listed for it.
+ */
+@Service
+@RequiredArgsConstructor
+public class BootCoinUserHistoryServiceImpl implements BootCoinUserHistoryService {
+    private static final int MAX_PAGE_SIZE = 500;
+    private static final int STREAM_BATCH_SIZE = 100;
+    private static final Comparator<UserHistoryEntry> NEWEST_FIRST = Comparator
+            .comparing(UserHistoryEntry::getCreatedAt)
+            .thenComparing(UserHistoryEntry::getId)
+            .thenComparing(UserHistoryEntry::getSource)
+            .reversed();
+    private final BootCoinPurchaseRepository purchaseRepository;
+    private final BootCoinTransactionRepository transactionRepository;
+    @Override
+    public Single<UserHistoryPage> getHistory(String documentNumber, String cursor, int size) {
+        if (size < 1 || size > MAX_PAGE_SIZE) {
+            return Single.error(new IllegalArgumentException("Page size must be between 1 and " + MAX_PAGE_SIZE));
+        }
+        // one extra entry tells whether there is a next page
+        return history(documentNumber, cursor, size + 1)
+                .take(size + 1)
+                .toList()
+                .map(entries -> entries.size() <= size
+                        ? new UserHistoryPage(entries, null)
+                        : new UserHistoryPage(entries.subList(0, size), entries.get(size - 1).getCursor()));
+    }
+    @Override
+    public Flowable<UserHistoryEntry> streamHistory(String documentNumber, String cursor) {
+        return history(documentNumber, cursor, STREAM_BATCH_SIZE);
+    }
+    private Flowable<UserHistoryEntry> history(String documentNumber, String cursor, int batchSize) {
+        return Flowable.defer(() -> {
+            UserHistoryCursor before = cursor == null ? null : UserHistoryCursor.decode(cursor);
+            LocalDateTime beforeCreatedAt = before == null ? null : before.getCreatedAt();
+            String beforeId = before == null ? null : before.getId();
+            // transactions sort before purchases at the same position, so a purchase there is still ahead
+            boolean includePurchaseAtCursor = before != null
+                    && before.getSource() == UserHistoryEntry.Source.TRANSACTION;
+            Flux<UserHistoryEntry> purchases = Flux.from(purchaseRepository
+                            .findHistory(documentNumber, beforeCreatedAt, beforeId, includePurchaseAtCursor,
+                                    batchSize))
+                    .map(purchase -> fromPurchase(purchase, documentNumber));
+            Flux<UserHistoryEntry> transactions = Flux.from(transactionRepository
+                            .findBankHistory(documentNumber, beforeCreatedAt, beforeId, batchSize))
+                    .map(transaction -> fromTransaction(transaction, documentNumber));
+            return Flowable.fromPublisher(Flux.mergeComparing(batchSize, NEWEST_FIRST, purchases, transactions));
+        });
+    }
+    private static UserHistoryEntry fromPurchase(BootCoinPurchase purchase, String documentNumber) {
+        boolean buyer = documentNumber.equals(purchase.getBuyerDocumentNumber());
+        return UserHistoryEntry.builder()
+                .source(UserHistoryEntry.Source.PURCHASE)
+                .id(purchase.getId())
+                .role(buyer ? UserHistoryEntry.Role.BUYER : UserHistoryEntry.Role.SELLER)
+                .counterpartyDocumentNumber(buyer ? purchase.getSellerDocumentNumber()
+                        : purchase.getBuyerDocumentNumber())
+                .transactionType(purchase.getTransactionType())
+                .paymentMethod(purchase.getPaymentMethod())
+                .status(purchase.getStatus())
+                .amount(purchase.getAmount())
+                .totalAmountInPEN(purchase.getTotalAmountInPEN())
+                .createdAt(purchase.getCreatedAt())
+                .cursor(new UserHistoryCursor(purchase.getCreatedAt(), purchase.getId(),
+                        UserHistoryEntry.Source.PURCHASE).encode())
+                .build();
+    }
+    private static UserHistoryEntry fromTransaction(BootCoinTransaction transaction, String documentNumber) {
+        boolean buyer = documentNumber.equals(transaction.getBuyerDocumentNumber());
+        return UserHistoryEntry.builder()
+                .source(UserHistoryEntry.Source.TRANSACTION)
+                .id(transaction.getId())
+                .role(buyer ? UserHistoryEntry.Role.BUYER : UserHistoryEntry.Role.SELLER)
+                .counterpartyDocumentNumber(buyer ? transaction.getSellerDocumentNumber()
+                        : transaction.getBuyerDocumentNumber())
+                .transactionType(transaction.getTransactionType())
+                .paymentMethod(transaction.getPaymentMethod())
+                .status(transaction.getStatus())
+                .amount(transaction.getAmount())
+                .totalAmountInPEN(transaction.getTotalAmountInPEN())
+                .createdAt(transaction.getCreatedAt())
+                .cursor(new UserHistoryCursor(transaction.getCreatedAt(), transaction.getId(),
+                        UserHistoryEntry.Source.TRANSACTION).encode())
+                .build();
+    }
+}
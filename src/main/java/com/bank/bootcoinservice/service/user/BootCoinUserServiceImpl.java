@@ -9,13 +9,14 @@ import com.bank.bootcoinservice.dto.bootcoin.BootCoinUserRegistrationResponse;
 import com.bank.bootcoinservice.dto.event.KafkaValidationRequest;
 import com.bank.bootcoinservice.event.BootCoinUserEventListener;
 import com.bank.bootcoinservice.model.user.BootCoinUser;
+import com.bank.bootcoinservice.repository.BootCoinUserCache;
 import com.bank.bootcoinservice.repository.BootCoinUserRepository;
 import io.reactivex.Single;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.kafka.core.KafkaTemplate;
 import org.springframework.stereotype.Service;
 
-import java.math.BigDecimal;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -26,16 +27,19 @@ public class BootCoinUserServiceImpl implements BootCoinUserService {
     private final BootCoinUserRepository repository;
     private final KafkaTemplate<String, KafkaValidationRequest> kafkaTemplate;
     private final BootCoinUserEventListener eventListener;
+    private final BootCoinUserCache userCache;
     @Override
     public Single<BootCoinUserRegistrationResponse> registerUser(BootCoinUserRegistrationRequest request) {
         BootCoinUser user = new BootCoinUser();
         user.setDocumentNumber(request.getDocumentNumber());
         user.setPhoneNumber(request.getPhoneNumber());
         user.setEmail(request.getEmail());
-        user.setBalance(BigDecimal.ZERO);
         user.setHasYanki(request.isAssociateYanki());
         user.setBankAccountId(request.getBankAccountId());
         return repository.save(user)
+                .onErrorResumeNext(error -> error instanceof DuplicateKeyException
+                    ? Single.error(new RuntimeException("User already registered"))
+                    : Single.error(error))
                 .flatMap(savedUser -> {
                     List<Single<Boolean>> validationEvents = new ArrayList<>();
                     if (request.isAssociateYanki()) {
@@ -64,7 +68,7 @@ public class BootCoinUserServiceImpl implements BootCoinUserService {
     }
     @Override
     public Single<AssociateYankiResponse> associateYanki(AssociateYankiRequest request) {
-        return repository.findByDocumentNumber(request.getDocumentNumber())
+        return repository.findOneByDocumentNumber(request.getDocumentNumber())
                 .switchIfEmpty(Single.error(new RuntimeException("User not found")))
                 .flatMap(user -> {
                     if (user.isHasYanki()) {
@@ -80,6 +84,7 @@ public class BootCoinUserServiceImpl implements BootCoinUserService {
                                 user.setHasYanki(true);
                                 return repository.save(user);
                             })
+                            .doOnSuccess(updatedUser -> userCache.invalidate(updatedUser.getDocumentNumber()))
                             .map(updatedUser ->
                                 new AssociateYankiResponse(updatedUser.getId(),
                                     updatedUser.isHasYanki()));
@@ -87,7 +92,7 @@ public class BootCoinUserServiceImpl implements BootCoinUserService {
     }
     @Override
     public Single<AssociateBankAccountResponse> associateBankAccount(AssociateBankAccountRequest request) {
-        return repository.findByDocumentNumber(request.getDocumentNumber())
+        return repository.findOneByDocumentNumber(request.getDocumentNumber())
                 .switchIfEmpty(Single.error(new RuntimeException("User not found")))
                 .flatMap(user -> {
                     if (user.getBankAccountId() != null) {
@@ -103,6 +108,7 @@ public class BootCoinUserServiceImpl implements BootCoinUserService {
                                 user.setBankAccountId(request.getBankAccountId());
                                 return repository.save(user);
                             })
+                            .doOnSuccess(updatedUser -> userCache.invalidate(updatedUser.getDocumentNumber()))
                             .map(updatedUser ->
                                 new AssociateBankAccountResponse(updatedUser.getId(),
                                     updatedUser.getBankAccountId()));
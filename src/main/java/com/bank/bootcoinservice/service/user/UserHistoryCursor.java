@@ -0,0 +1,53 @@
+package com.bank.bootcoinservice.service.user;
+
+import com.bank.bootcoinservice.dto.history.UserHistoryEntry;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Keyset position in a user's history, ordered newest first by creation time, then id, then source with
+ * transactions before purchases. Clients get it as an opaque URL-safe token. Tokens issued before the
+ * source was added carry none and resume after both sources at that position, as they did then.
+ */
+final class UserHistoryCursor {
+    private static final String SEPARATOR = "|";
+    private final LocalDateTime createdAt;
+    private final String id;
+    private final UserHistoryEntry.Source source;
+    UserHistoryCursor(LocalDateTime createdAt, String id, UserHistoryEntry.Source source) {
+        this.createdAt = createdAt;
+        this.id = id;
+        this.source = source;
+    }
+    LocalDateTime getCreatedAt() {
+        return createdAt;
+    }
+    String getId() {
+        return id;
+    }
+    UserHistoryEntry.Source getSource() {
+        return source;
+    }
+    String encode() {
+        return Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((createdAt + SEPARATOR + id + SEPARATOR + source).getBytes(StandardCharsets.UTF_8));
+    }
+    static UserHistoryCursor decode(String token) {
+        try {
+            String value = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            String[] parts = value.split("\\" + SEPARATOR, -1);
+            if (parts.length < 2 || parts.length > 3 || parts[1].isEmpty()) {
+                throw new IllegalArgumentException("Invalid history cursor: " + token);
+            }
+            UserHistoryEntry.Source source = parts.length == 3
+                    ? UserHistoryEntry.Source.valueOf(parts[2])
+                    : UserHistoryEntry.Source.PURCHASE;
+            return new UserHistoryCursor(LocalDateTime.parse(parts[0]), parts[1], source);
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid history cursor: " + token);
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.bank.bootcoinservice.util;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * Runs actions one at a time per key without blocking a thread: an action waits only for the
+ * actions queued before it on the same keys. An action over several keys takes them in natural
+ * order, so two actions sharing keys cannot wait on each other. A caller that cancels while
+ * waiting hands its turn on only once the action before it has finished.
+ */
+public class KeyedLock<K extends Comparable<K>> {
+    private final ConcurrentMap<K, Mono<Void>> tails = new ConcurrentHashMap<>();
+    public <T> Mono<T> withLocks(Collection<K> keys, Supplier<Mono<T>> action) {
+        List<K> ordered = keys.stream().distinct().sorted().collect(Collectors.toList());
+        Mono<T> locked = Mono.defer(action);
+        for (int i = ordered.size() - 1; i >= 0; i--) {
+            locked = withLock(ordered.get(i), locked);
+        }
+        return locked;
+    }
+    private <T> Mono<T> withLock(K key, Mono<T> action) {
+        return Mono.defer(() -> {
+            Sinks.Empty<Void> released = Sinks.empty();
+            Mono<Void> turn = released.asMono();
+            Mono<Void> previous = tails.put(key, turn);
+            Mono<Void> wait = previous == null ? Mono.empty() : previous;
+            AtomicBoolean acquired = new AtomicBoolean();
+            Runnable release = () -> {
+                tails.remove(key, turn);
+                released.tryEmitEmpty();
+            };
+            return wait.then(Mono.fromRunnable(() -> acquired.set(true)))
+                    .then(action)
+                    .doFinally(signal -> {
+                        if (acquired.get()) {
+                            release.run();
+                        } else {
+                            wait.subscribe(null, null, release);
+                        }
+                    });
+        });
+    }
+}
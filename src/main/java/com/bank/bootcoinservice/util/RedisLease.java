@@ -0,0 +1,44 @@
+package com.bank.bootcoinservice.util;
+
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * A lease on one Redis key, held by at most one instance at a time. The lease lapses on its own
+ * when the holder stops renewing it, so a crashed holder never blocks the others for longer than
+ * the lease duration. Acquiring again while holding it extends it.
+ */
+public class RedisLease {
+    private static final RedisScript<Long> ACQUIRE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/lease_acquire.lua"), Long.class);
+    private static final RedisScript<Long> RELEASE_SCRIPT =
+            RedisScript.of(new ClassPathResource("scripts/lease_release.lua"), Long.class);
+    private final ReactiveStringRedisTemplate redisTemplate;
+    private final String key;
+    private final String owner = UUID.randomUUID().toString();
+    public RedisLease(ReactiveStringRedisTemplate redisTemplate, String key) {
+        this.redisTemplate = redisTemplate;
+        this.key = key;
+    }
+    /**
+     * Emits true when this instance holds the lease for the next {@code duration}.
+     */
+    public Mono<Boolean> acquire(Duration duration) {
+        return redisTemplate.execute(ACQUIRE_SCRIPT, List.of(key), List.of(owner, String.valueOf(duration.toMillis())))
+                .next()
+                .map(held -> held == 1L)
+                .defaultIfEmpty(false);
+    }
+    public Mono<Boolean> release() {
+        return redisTemplate.execute(RELEASE_SCRIPT, List.of(key), List.of(owner))
+                .next()
+                .map(released -> released == 1L)
+                .defaultIfEmpty(false);
+    }
+}
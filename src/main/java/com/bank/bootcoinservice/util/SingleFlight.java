@@ -0,0 +1,31 @@
+package com.bank.bootcoinservice.util;
+
+import reactor.core.publisher.Mono;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent loads of the same key: the first caller starts the loader and every
+ * caller that arrives while it is in flight shares its result. The shared load is reference
+ * counted, so it is cancelled once every caller has cancelled or timed out. The key is released
+ * when the load terminates or is cancelled, so later callers start a fresh load.
+ */
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, Mono<V>> inFlight = new ConcurrentHashMap<>();
+    public Mono<V> execute(K key, Supplier<Mono<V>> loader) {
+        return Mono.defer(() -> inFlight.computeIfAbsent(key, k -> {
+            AtomicReference<Mono<V>> self = new AtomicReference<>();
+            Mono<V> shared = Mono.defer(loader)
+                    .doFinally(signal -> inFlight.remove(k, self.get()))
+                    .flux()
+                    .replay(1)
+                    .refCount()
+                    .next();
+            self.set(shared);
+            return shared;
+        }));
+    }
+}
@@ -0,0 +1,37 @@
+-- Creates or updates the exchange rate of one currency in one atomic step.
+-- Both keys carry the same hash tag, so they live in one slot in cluster mode.
+-- KEYS[1]  exchange rate key
+-- KEYS[2]  history stream; every stored value is appended with a server-assigned id
+-- ARGV[1]  'create' (only if absent), 'update' (only if present) or 'upsert' (either)
+-- ARGV[2]  binary rate record; its last 8 bytes hold the version and are replaced here
+-- ARGV[3]  version the caller expects to replace, 0 to skip the check
+-- ARGV[4]  channel notified with the stored value
+-- Returns the stored version, 0 when the create/update precondition fails
+-- and -1 when the expected version does not match.
+local VERSION_OFFSET = 28
+local current = redis.call('GET', KEYS[1])
+if ARGV[1] == 'create' and current then
+    return 0
+end
+if ARGV[1] == 'update' and not current then
+    return 0
+end
+local currentVersion = 0
+if current then
+    if string.sub(current, 1, 1) == '{' then
+        -- value still in the legacy JSON format
+        currentVersion = tonumber(string.match(current, '"version":(%d+)')) or 0
+    else
+        currentVersion = struct.unpack('>i8', current, VERSION_OFFSET + 1)
+    end
+end
+local expectedVersion = tonumber(ARGV[3]) or 0
+if expectedVersion > 0 and expectedVersion ~= currentVersion then
+    return -1
+end
+local version = currentVersion + 1
+local payload = string.sub(ARGV[2], 1, VERSION_OFFSET) .. struct.pack('>i8', version)
+redis.call('SET', KEYS[1], payload)
+redis.call('XADD', KEYS[2], '*', 'rate', payload)
+redis.call('PUBLISH', ARGV[4], payload)
+return version
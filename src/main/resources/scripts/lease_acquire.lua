@@ -0,0 +1,15 @@
+-- Takes a lease that is free, or extends it when the caller already holds it.
+-- KEYS[1]  lease key
+-- ARGV[1]  owner id of the caller
+-- ARGV[2]  lease duration in milliseconds
+-- Returns 1 when the caller holds the lease afterwards, 0 when another owner does.
+local owner = redis.call('GET', KEYS[1])
+if not owner then
+    redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])
+    return 1
+end
+if owner == ARGV[1] then
+    redis.call('PEXPIRE', KEYS[1], ARGV[2])
+    return 1
+end
+return 0
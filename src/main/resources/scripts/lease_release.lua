@@ -0,0 +1,8 @@
+-- Gives a lease up, only if the caller still holds it.
+-- KEYS[1]  lease key
+-- ARGV[1]  owner id of the caller
+-- Returns 1 when the lease was released, 0 when another owner holds it or it expired.
+if redis.call('GET', KEYS[1]) == ARGV[1] then
+    return redis.call('DEL', KEYS[1])
+end
+return 0
@@ -3,7 +3,9 @@ package com.bank.bootcoinservice;
 import org.junit.jupiter.api.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
-@SpringBootTest
+// The embedded mongod on the test classpath is for the *IT tests, not for the application context
+@SpringBootTest(properties = "spring.autoconfigure.exclude="
+		+ "org.springframework.boot.autoconfigure.mongo.embedded.EmbeddedMongoAutoConfiguration")
 class BootcoinServiceApplicationTests {
 
 	@Test
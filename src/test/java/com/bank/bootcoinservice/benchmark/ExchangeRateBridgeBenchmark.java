@@ -0,0 +1,65 @@
+package com.bank.bootcoinservice.benchmark;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import io.reactivex.Single;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.function.Supplier;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Per-call latency of the previous {@code Single.create} + {@code boundedElastic} bridge against
+ * {@code Single.fromPublisher} over the same Mono. The Mono stands in for a Redis reply that is
+ * already available, so only the bridge overhead is measured. Not part of the default test run;
+ * start it with {@code mvn test -Dtest=ExchangeRateBridgeBenchmark}.
+ */
+@Slf4j
+public class ExchangeRateBridgeBenchmark {
+    private static final int WARMUP_ITERATIONS = 50_000;
+    private static final int MEASURED_ITERATIONS = 200_000;
+    private static final BootCoinExchangeRate RATE = new BootCoinExchangeRate(new BigDecimal("3.75"),
+            new BigDecimal("3.85"), LocalDateTime.now(), 42L);
+    @AfterAll
+    static void shutdownSchedulers() {
+        Schedulers.shutdownNow();
+    }
+    @Test
+    void bridge_LatencyBeforeAndAfter() {
+        Supplier<Single<BootCoinExchangeRate>> before = () -> Single.create(emitter ->
+                Mono.fromCallable(() -> RATE)
+                        .subscribeOn(Schedulers.boundedElastic())
+                        .subscribe(emitter::onSuccess, emitter::onError));
+        Supplier<Single<BootCoinExchangeRate>> after = () -> Single.fromPublisher(Mono.fromCallable(() -> RATE));
+        measure("create+elastic", WARMUP_ITERATIONS, before);
+        measure("fromPublisher", WARMUP_ITERATIONS, after);
+        long[] beforeLatencies = measure("create+elastic", MEASURED_ITERATIONS, before);
+        long[] afterLatencies = measure("fromPublisher", MEASURED_ITERATIONS, after);
+        report("create+elastic", beforeLatencies);
+        report("fromPublisher", afterLatencies);
+    }
+    private static long[] measure(String name, int iterations, Supplier<Single<BootCoinExchangeRate>> call) {
+        long[] latencies = new long[iterations];
+        long versions = 0;
+        for (int i = 0; i < iterations; i++) {
+            long start = System.nanoTime();
+            versions += call.get().blockingGet().getVersion();
+            latencies[i] = System.nanoTime() - start;
+        }
+        assertEquals(42L * iterations, versions, name);
+        Arrays.sort(latencies);
+        return latencies;
+    }
+    private static void report(String name, long[] sorted) {
+        log.info("{}: p50={} us, p99={} us, p99.9={} us", name, micros(sorted, 0.50), micros(sorted, 0.99),
+                micros(sorted, 0.999));
+    }
+    private static String micros(long[] sorted, double quantile) {
+        long nanos = sorted[(int) Math.min(sorted.length - 1, Math.round(quantile * sorted.length))];
+        return String.format("%.1f", nanos / 1000.0);
+    }
+}
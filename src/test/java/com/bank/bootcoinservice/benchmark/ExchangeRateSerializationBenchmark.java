@@ -0,0 +1,62 @@
+package com.bank.bootcoinservice.benchmark;
+
+import com.bank.bootcoinservice.config.ExchangeRateRedisSerializer;
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Compares the JSON and binary exchange rate encodings by payload size and encode/decode cost.
+ * Not part of the default test run; start it with
+ * {@code mvn test -Dtest=ExchangeRateSerializationBenchmark}.
+ */
+@Slf4j
+public class ExchangeRateSerializationBenchmark {
+    private static final int WARMUP_ITERATIONS = 200_000;
+    private static final int MEASURED_ITERATIONS = 1_000_000;
+    private ObjectMapper objectMapper;
+    private ExchangeRateRedisSerializer binary;
+    private BootCoinExchangeRate rate;
+    private long sink;
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        binary = new ExchangeRateRedisSerializer(objectMapper);
+        rate = new BootCoinExchangeRate(new BigDecimal("3.75"), new BigDecimal("3.85"), LocalDateTime.now(), 42L);
+    }
+    @Test
+    void encodings_SizeAndCost() throws Exception {
+        byte[] json = objectMapper.writeValueAsBytes(rate);
+        byte[] record = binary.serialize(rate);
+        log.info("size: json={} bytes, binary={} bytes", json.length, record.length);
+        assertTrue(record.length < json.length);
+        for (int round = 0; round < 2; round++) {
+            boolean measured = round == 1;
+            int iterations = measured ? MEASURED_ITERATIONS : WARMUP_ITERATIONS;
+            run(measured, "json encode", iterations, () -> sink += objectMapper.writeValueAsBytes(rate).length);
+            run(measured, "binary encode", iterations, () -> sink += binary.serialize(rate).length);
+            Operation jsonDecode = () -> sink += objectMapper.readValue(json, BootCoinExchangeRate.class).getVersion();
+            run(measured, "json decode", iterations, jsonDecode);
+            run(measured, "binary decode", iterations, () -> sink += binary.deserialize(record).getVersion());
+        }
+        assertTrue(sink > 0);
+    }
+    private static void run(boolean measured, String name, int iterations, Operation operation) throws Exception {
+        long start = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            operation.run();
+        }
+        long elapsed = System.nanoTime() - start;
+        if (measured) {
+            log.info("{}: {} ns/op", name, String.format("%.1f", (double) elapsed / iterations));
+        }
+    }
+    @FunctionalInterface
+    private interface Operation {
+        void run() throws Exception;
+    }
+}
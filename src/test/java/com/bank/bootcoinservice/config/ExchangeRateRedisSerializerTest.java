@@ -0,0 +1,73 @@
+package com.bank.bootcoinservice.config;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.serializer.SerializationException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+public class ExchangeRateRedisSerializerTest {
+    private ObjectMapper objectMapper;
+    private ExchangeRateRedisSerializer serializer;
+    private BootCoinExchangeRate exchangeRate;
+    @BeforeEach
+    void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules();
+        serializer = new ExchangeRateRedisSerializer(objectMapper);
+        exchangeRate = new BootCoinExchangeRate(new BigDecimal("3.750"), new BigDecimal("3.85"),
+                LocalDateTime.of(2024, 5, 1, 10, 30, 15, 123_000_000), 7L);
+    }
+    @Test
+    void serialize_RoundTripsFixedLengthRecord() {
+        // When
+        byte[] bytes = serializer.serialize(exchangeRate);
+        BootCoinExchangeRate result = serializer.deserialize(bytes);
+        // Then
+        assertEquals(ExchangeRateRedisSerializer.RECORD_LENGTH, bytes.length);
+        assertEquals(new BigDecimal("3.750"), result.getBuyRate());
+        assertEquals(3, result.getBuyRate().scale());
+        assertEquals(new BigDecimal("3.85"), result.getSellRate());
+        assertEquals(exchangeRate.getUpdatedAt(), result.getUpdatedAt());
+        assertEquals(7L, result.getVersion());
+    }
+    @Test
+    void serialize_NullTimestampRoundTrips() {
+        // Given
+        exchangeRate.setUpdatedAt(null);
+        // When
+        BootCoinExchangeRate result = serializer.deserialize(serializer.serialize(exchangeRate));
+        // Then
+        assertNull(result.getUpdatedAt());
+    }
+    @Test
+    void deserialize_ReadsLegacyJson() throws Exception {
+        // Given
+        byte[] json = objectMapper.writeValueAsBytes(exchangeRate);
+        // When
+        BootCoinExchangeRate result = serializer.deserialize(json);
+        // Then
+        assertEquals(0, new BigDecimal("3.75").compareTo(result.getBuyRate()));
+        assertEquals(0, new BigDecimal("3.85").compareTo(result.getSellRate()));
+        assertEquals(7L, result.getVersion());
+    }
+    @Test
+    void deserialize_EmptyIsNull() {
+        assertNull(serializer.deserialize(null));
+        assertNull(serializer.deserialize(new byte[0]));
+    }
+    @Test
+    void deserialize_UnknownRecordFails() {
+        byte[] record = "not a rate".getBytes(StandardCharsets.UTF_8);
+        assertThrows(SerializationException.class, () -> serializer.deserialize(record));
+    }
+    @Test
+    void serialize_MantissaTooLargeFails() {
+        // Given
+        exchangeRate.setBuyRate(new BigDecimal("12345678901234567890.5"));
+        // When & Then
+        assertThrows(SerializationException.class, () -> serializer.serialize(exchangeRate));
+    }
+}
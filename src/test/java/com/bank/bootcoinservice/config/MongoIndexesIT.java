@@ -0,0 +1,131 @@
+package com.bank.bootcoinservice.config;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.ledger.LedgerEntry;
+import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
+import com.bank.bootcoinservice.model.user.BootCoinUser;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.bson.Document;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Checks against an embedded mongod that every repository finder is served by a declared index.
+ */
+public class MongoIndexesIT {
+    private static MongodExecutable mongod;
+    private static MongoClient client;
+    private static ReactiveMongoTemplate mongoTemplate;
+    @BeforeAll
+    static void startMongo() throws Exception {
+        int port = Network.getFreeServerPort();
+        mongod = MongodStarter.getDefaultInstance().prepare(MongodConfig.builder()
+                .version(Version.Main.PRODUCTION)
+                .net(new Net(port, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+        client = MongoClients.create("mongodb://localhost:" + port);
+        mongoTemplate = new ReactiveMongoTemplate(client, "bootcoin");
+        // Spring Boot registers the @Document classes up front; a bare template discovers them lazily
+        Stream.of(BootCoinUser.class, BootCoinPurchase.class, BootCoinSellOffer.class, LedgerEntry.class,
+                BootCoinTransaction.class)
+                .forEach(type -> mongoTemplate.getConverter().getMappingContext().getPersistentEntity(type));
+        new MongoIndexes(mongoTemplate).ready().blockingAwait();
+    }
+    @AfterAll
+    static void stopMongo() {
+        client.close();
+        mongod.stop();
+    }
+    private static Document winningPlan(String collection, Document filter, Document sort) {
+        Document explain = mongoTemplate.getCollection(collection)
+                .flatMap(documents -> Mono.from(documents.find(filter).sort(sort).explain()))
+                .block();
+        return explain.get("queryPlanner", Document.class).get("winningPlan", Document.class);
+    }
+    private static List<Document> stages(Document plan) {
+        List<Document> stages = new ArrayList<>();
+        stages.add(plan);
+        Object inputStage = plan.get("inputStage");
+        if (inputStage instanceof Document) {
+            stages.addAll(stages((Document) inputStage));
+        }
+        Object inputStages = plan.get("inputStages");
+        if (inputStages instanceof List) {
+            for (Object stage : (List<?>) inputStages) {
+                stages.addAll(stages((Document) stage));
+            }
+        }
+        return stages;
+    }
+    private static void assertUsesIndex(String expectedIndex, Document plan) {
+        List<Document> stages = stages(plan);
+        assertTrue(stages.stream().noneMatch(stage -> "COLLSCAN".equals(stage.getString("stage"))), plan::toJson);
+        assertTrue(stages.stream().anyMatch(stage -> "IXSCAN".equals(stage.getString("stage"))
+                && (expectedIndex == null || expectedIndex.equals(stage.getString("indexName")))), plan::toJson);
+    }
+    @Test
+    void userFinders_UseIndexes() {
+        assertUsesIndex("document_number",
+                winningPlan("bootcoin_user", new Document("documentNumber", "12345678"), new Document()));
+        assertUsesIndex(null, winningPlan("bootcoin_user",
+                new Document("phoneNumber", "987654321").append("documentNumber", "12345678"), new Document()));
+        assertUsesIndex("legacy_balance", winningPlan("bootcoin_user",
+                new Document("balance", new Document("$exists", true)), new Document()));
+    }
+    @Test
+    void purchaseFinders_UseIndexes() {
+        assertUsesIndex(null, winningPlan("bootcoin_purchases",
+                new Document("status", "WAITING_FOR_SELLER"), new Document("createdAt", 1)));
+        assertUsesIndex(null, winningPlan("bootcoin_purchases",
+                new Document("status", "PROCESSING").append("updatedAt", new Document("$lt", LocalDateTime.now())),
+                new Document()));
+        assertUsesIndex(null, winningPlan("bootcoin_purchases",
+                new Document("status", new Document("$in", List.of("COMPLETED", "FAILED")))
+                        .append("reservedAmount", new Document("$exists", true))
+                        .append("updatedAt", new Document("$lt", LocalDateTime.now())),
+                new Document()));
+    }
+    @Test
+    void historyFinders_UseIndexes() {
+        Document involving = new Document("$or", List.of(
+                new Document("buyerDocumentNumber", "12345678").append("createdAt", new Document("$ne", null)),
+                new Document("sellerDocumentNumber", "12345678").append("createdAt", new Document("$ne", null))));
+        Document newestFirst = new Document("createdAt", -1).append("_id", -1);
+        assertUsesIndex("buyer_created", winningPlan("bootcoin_purchases", involving, newestFirst));
+        assertUsesIndex("seller_created", winningPlan("bootcoin_purchases", involving, newestFirst));
+        Document boughtFromBank = new Document("buyerDocumentNumber", "12345678")
+                .append("sellerDocumentNumber", null).append("createdAt", new Document("$ne", null));
+        assertUsesIndex("buyer_created", winningPlan("bootcoin_transactions", boughtFromBank, newestFirst));
+    }
+    @Test
+    void sellOfferFinder_UsesIndex() {
+        assertUsesIndex("status_created", winningPlan("bootcoin_sell_offers",
+                new Document("status", "OPEN"), new Document("createdAt", 1)));
+    }
+    @Test
+    void documentNumber_IsUnique() {
+        BootCoinUser first = new BootCoinUser();
+        first.setDocumentNumber("11111111");
+        BootCoinUser second = new BootCoinUser();
+        second.setDocumentNumber("11111111");
+        mongoTemplate.insert(first).block();
+        assertThrows(DuplicateKeyException.class, () -> mongoTemplate.insert(second).block());
+    }
+}
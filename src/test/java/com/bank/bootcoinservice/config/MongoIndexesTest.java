@@ -0,0 +1,94 @@
+package com.bank.bootcoinservice.config;
+
+import com.bank.bootcoinservice.model.ledger.LedgerEntry;
+import com.mongodb.MongoCommandException;
+import com.mongodb.ServerAddress;
+import org.bson.BsonDocument;
+import org.bson.BsonInt32;
+import org.bson.BsonString;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.index.IndexDefinition;
+import org.springframework.data.mongodb.core.index.ReactiveIndexOperations;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import reactor.core.publisher.Mono;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class MongoIndexesTest {
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    @Mock
+    private ReactiveIndexOperations indexOperations;
+    private final List<String> ensured = new ArrayList<>();
+    private MongoIndexes mongoIndexes;
+    @BeforeEach
+    void setUp() {
+        MongoMappingContext mappingContext = new MongoMappingContext();
+        mappingContext.setSimpleTypeHolder(new MongoCustomConversions(List.of()).getSimpleTypeHolder());
+        mappingContext.getPersistentEntity(LedgerEntry.class);
+        when(mongoTemplate.getConverter()).thenReturn(new MappingMongoConverter(NoOpDbRefResolver.INSTANCE,
+                mappingContext));
+        when(mongoTemplate.indexOps("bootcoin_ledger")).thenReturn(indexOperations);
+        mongoIndexes = new MongoIndexes(mongoTemplate);
+    }
+    private static String name(IndexDefinition index) {
+        return (String) index.getIndexOptions().get("name");
+    }
+    private static MongoCommandException commandError(int code, String message) {
+        BsonDocument response = new BsonDocument("ok", new BsonInt32(0))
+                .append("code", new BsonInt32(code))
+                .append("errmsg", new BsonString(message));
+        return new MongoCommandException(response, new ServerAddress());
+    }
+    private void failOn(String indexName, RuntimeException error) {
+        when(indexOperations.ensureIndex(any(IndexDefinition.class))).thenAnswer(invocation -> {
+            String name = name(invocation.getArgument(0));
+            if (name.equals(indexName)) {
+                return Mono.error(error);
+            }
+            ensured.add(name);
+            return Mono.just(name);
+        });
+    }
+    @Test
+    void ready_KeepsIndexThatExistsWithOtherOptions() {
+        // Given
+        failOn("account_sequence", new DataIntegrityViolationException("Index options conflict",
+                commandError(85, "Index already exists with different options")));
+        // When
+        mongoIndexes.ready().blockingAwait();
+        // Then
+        assertEquals(List.of("posting_account"), ensured);
+        assertEquals(Status.UP, mongoIndexes.health().block().getStatus());
+    }
+    @Test
+    void ready_FailsWhenUniqueIndexCannotBeBuiltAndRetriesOnNextCall() {
+        // Given: duplicated data blocks the unique index
+        failOn("account_sequence", new DataIntegrityViolationException("E11000 duplicate key error",
+                commandError(11000, "E11000 duplicate key error")));
+        assertEquals(Status.OUT_OF_SERVICE, mongoIndexes.health().block().getStatus());
+        // When & Then: the other index is still created
+        assertThrows(DataIntegrityViolationException.class, () -> mongoIndexes.ready().blockingAwait());
+        assertEquals(List.of("posting_account"), ensured);
+        assertEquals(Status.DOWN, mongoIndexes.health().block().getStatus());
+        // Once the data is fixed, the next caller builds it
+        failOn("none", new IllegalStateException());
+        mongoIndexes.ready().blockingAwait();
+        mongoIndexes.ready().blockingAwait();
+        assertEquals(List.of("posting_account", "account_sequence", "posting_account"), ensured);
+        assertEquals(Status.UP, mongoIndexes.health().block().getStatus());
+    }
+}
@@ -0,0 +1,47 @@
+package com.bank.bootcoinservice.config;
+
+import org.bson.Document;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Mono;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class MongoReplicaSetCheckTest {
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    private MongoReplicaSetCheck replicaSetCheck;
+    @BeforeEach
+    void setUp() {
+        replicaSetCheck = new MongoReplicaSetCheck(mongoTemplate, 1000);
+    }
+    @Test
+    void check_AcceptsReplicaSetMember() {
+        // Given
+        when(mongoTemplate.executeCommand(new Document("hello", 1)))
+                .thenReturn(Mono.just(new Document("isWritablePrimary", true).append("setName", "rs0")));
+        // When & Then
+        assertDoesNotThrow(() -> replicaSetCheck.check());
+    }
+    @Test
+    void check_AcceptsMongos() {
+        // Given
+        when(mongoTemplate.executeCommand(new Document("hello", 1)))
+                .thenReturn(Mono.just(new Document("isWritablePrimary", true).append("msg", "isdbgrid")));
+        // When & Then
+        assertDoesNotThrow(() -> replicaSetCheck.check());
+    }
+    @Test
+    void check_RejectsStandaloneServer() {
+        // Given
+        when(mongoTemplate.executeCommand(new Document("hello", 1)))
+                .thenReturn(Mono.just(new Document("isWritablePrimary", true)));
+        // When & Then
+        Exception exception = assertThrows(IllegalStateException.class, () -> replicaSetCheck.check());
+        assertTrue(exception.getMessage().startsWith("MongoDB must be a replica set"));
+    }
+}
@@ -0,0 +1,100 @@
+package com.bank.bootcoinservice.config;
+
+import io.lettuce.core.ReadFrom;
+import io.lettuce.core.cluster.ClusterClientOptions;
+import io.lettuce.core.resource.ClientResources;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.RedisNode;
+import org.springframework.data.redis.connection.lettuce.LettuceConnectionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import static org.junit.jupiter.api.Assertions.*;
+@ExtendWith(MockitoExtension.class)
+public class RedisConfigTest {
+    @Mock
+    private ClientResources clientResources;
+    private RedisConfig redisConfig;
+    @BeforeEach
+    void setUp() {
+        redisConfig = new RedisConfig();
+        ReflectionTestUtils.setField(redisConfig, "redisMode", "standalone");
+        ReflectionTestUtils.setField(redisConfig, "redisHost", "localhost");
+        ReflectionTestUtils.setField(redisConfig, "redisPort", 6380);
+        ReflectionTestUtils.setField(redisConfig, "redisNodes", List.of());
+        ReflectionTestUtils.setField(redisConfig, "sentinelMaster", "");
+        ReflectionTestUtils.setField(redisConfig, "redisPassword", "secret");
+        ReflectionTestUtils.setField(redisConfig, "timeout", 2000);
+        ReflectionTestUtils.setField(redisConfig, "exchangeRateReadFrom", "replicaPreferred");
+    }
+    private void useTopology(String mode, List<String> nodes) {
+        ReflectionTestUtils.setField(redisConfig, "redisMode", mode);
+        ReflectionTestUtils.setField(redisConfig, "redisNodes", nodes);
+    }
+    private static Set<String> hostsAndPorts(Iterable<RedisNode> nodes) {
+        Set<String> result = new HashSet<>();
+        nodes.forEach(node -> result.add(node.getHost() + ":" + node.getPort()));
+        return result;
+    }
+    private LettuceConnectionFactory connectionFactory() {
+        return redisConfig.redisConnectionFactory(clientResources);
+    }
+    @Test
+    void standalone_ReplicaFactoryDoesNotSetReadFrom() {
+        // When
+        LettuceConnectionFactory primary = redisConfig.redisConnectionFactory(clientResources);
+        LettuceConnectionFactory replica = redisConfig.replicaConnectionFactory(clientResources);
+        // Then
+        assertEquals("localhost", primary.getStandaloneConfiguration().getHostName());
+        assertEquals(6380, primary.getStandaloneConfiguration().getPort());
+        assertNull(primary.getSentinelConfiguration());
+        assertNull(primary.getClusterConfiguration());
+        assertTrue(primary.getClientConfiguration().getReadFrom().isEmpty());
+        assertTrue(replica.getClientConfiguration().getReadFrom().isEmpty());
+    }
+    @Test
+    void sentinel_OnlyReplicaFactoryReadsFromReplicas() {
+        // Given
+        useTopology("sentinel", List.of("s1:26379", " s2:26379 "));
+        ReflectionTestUtils.setField(redisConfig, "sentinelMaster", "bootcoin");
+        // When
+        LettuceConnectionFactory primary = redisConfig.redisConnectionFactory(clientResources);
+        LettuceConnectionFactory replica = redisConfig.replicaConnectionFactory(clientResources);
+        // Then
+        assertEquals("bootcoin", primary.getSentinelConfiguration().getMaster().getName());
+        assertEquals(Set.of("s1:26379", "s2:26379"),
+                hostsAndPorts(primary.getSentinelConfiguration().getSentinels()));
+        assertTrue(primary.getClientConfiguration().getReadFrom().isEmpty());
+        assertSame(ReadFrom.REPLICA_PREFERRED, replica.getClientConfiguration().getReadFrom().orElseThrow());
+    }
+    @Test
+    void cluster_UsesSeedNodesAndTopologyRefresh() {
+        // Given
+        useTopology("cluster", List.of("n1:7000", "n2:7001"));
+        ReflectionTestUtils.setField(redisConfig, "exchangeRateReadFrom", "nearest");
+        // When
+        LettuceConnectionFactory primary = redisConfig.redisConnectionFactory(clientResources);
+        LettuceConnectionFactory replica = redisConfig.replicaConnectionFactory(clientResources);
+        // Then
+        assertEquals(Set.of("n1:7000", "n2:7001"),
+                hostsAndPorts(primary.getClusterConfiguration().getClusterNodes()));
+        ClusterClientOptions options = (ClusterClientOptions) primary.getClientConfiguration()
+                .getClientOptions().orElseThrow();
+        assertTrue(options.getTopologyRefreshOptions().isPeriodicRefreshEnabled());
+        assertTrue(primary.getClientConfiguration().getReadFrom().isEmpty());
+        assertSame(ReadFrom.NEAREST, replica.getClientConfiguration().getReadFrom().orElseThrow());
+    }
+    @Test
+    void cluster_WithoutNodesFails() {
+        // Given
+        useTopology("cluster", List.of(" "));
+        // When / Then
+        IllegalStateException error = assertThrows(IllegalStateException.class, this::connectionFactory);
+        assertTrue(error.getMessage().contains("spring.data.redis.nodes"));
+    }
+}
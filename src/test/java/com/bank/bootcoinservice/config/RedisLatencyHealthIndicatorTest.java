@@ -0,0 +1,84 @@
+package com.bank.bootcoinservice.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.boot.actuate.health.Health;
+import org.springframework.boot.actuate.health.Status;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class RedisLatencyHealthIndicatorTest {
+    @Mock
+    private ReactiveRedisTemplate<String, String> redisTemplate;
+    private SimpleMeterRegistry meterRegistry;
+    private RedisLatencyHealthIndicator healthIndicator;
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        healthIndicator = new RedisLatencyHealthIndicator(redisTemplate, meterRegistry, 2000, 100, 200);
+    }
+    private void recordMillis(long millis, int times) {
+        for (int i = 0; i < times; i++) {
+            healthIndicator.record(TimeUnit.MILLISECONDS.toNanos(millis));
+        }
+    }
+    @Test
+    void health_UnknownBeforeFirstSample() {
+        assertEquals(Status.UNKNOWN, healthIndicator.health().block().getStatus());
+    }
+    @Test
+    void health_UpWhenP99IsWithinThreshold() {
+        // Given
+        recordMillis(2, 98);
+        recordMillis(150, 2);
+        // When
+        Health health = healthIndicator.health().block();
+        // Then
+        assertEquals(Status.UP, health.getStatus());
+        assertEquals(2L, health.getDetails().get("p50Ms"));
+        assertEquals(150L, health.getDetails().get("p99Ms"));
+        assertEquals(100L, meterRegistry.get("bootcoin.redis.ping").timer().count());
+        verifyNoInteractions(redisTemplate);
+    }
+    @Test
+    void health_OutOfServiceWhenP99ExceedsThreshold() {
+        // Given
+        recordMillis(2, 98);
+        recordMillis(500, 2);
+        // When
+        Health health = healthIndicator.health().block();
+        // Then
+        assertEquals(Status.OUT_OF_SERVICE, health.getStatus());
+        assertEquals(500L, health.getDetails().get("p99Ms"));
+    }
+    @Test
+    void health_SlowSamplesAgeOutOfWindow() {
+        // Given
+        recordMillis(500, 5);
+        // When
+        recordMillis(2, 100);
+        // Then
+        assertEquals(Status.UP, healthIndicator.health().block().getStatus());
+    }
+    @Test
+    void health_DownAfterConsecutiveFailures() {
+        // Given
+        recordMillis(2, 10);
+        // When
+        for (int i = 0; i < 3; i++) {
+            healthIndicator.recordFailure(new IllegalStateException("Connection refused"));
+        }
+        Health health = healthIndicator.health().block();
+        // Then
+        assertEquals(Status.DOWN, health.getStatus());
+        assertEquals("IllegalStateException: Connection refused", health.getDetails().get("lastError"));
+        healthIndicator.record(TimeUnit.MILLISECONDS.toNanos(2));
+        assertEquals(Status.UP, healthIndicator.health().block().getStatus());
+    }
+}
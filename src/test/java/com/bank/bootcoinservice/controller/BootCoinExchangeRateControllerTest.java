@@ -1,32 +1,51 @@
 package com.bank.bootcoinservice.controller;
 
 import com.bank.bootcoinservice.dto.BaseResponse;
+import com.bank.bootcoinservice.dto.exchangerate.ExchangeRateHistoryPage;
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateHistoryEntry;
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateQuote;
 import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
 import com.bank.bootcoinservice.service.exchangerate.BootCoinExchangeRateService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateQuoteService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateVersionConflictException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import io.reactivex.Flowable;
 import io.reactivex.Single;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import java.math.BigDecimal;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.when;
 @ExtendWith(MockitoExtension.class)
 public class BootCoinExchangeRateControllerTest {
     @Mock
     private BootCoinExchangeRateService exchangeRateService;
-    @InjectMocks
+    @Mock
+    private ExchangeRateQuoteService quoteService;
+    private ObjectMapper objectMapper;
     private BootCoinExchangeRateController exchangeRateController;
     private BootCoinExchangeRate exchangeRate;
     private LocalDateTime now;
     @BeforeEach
     void setUp() {
+        objectMapper = new ObjectMapper().findAndRegisterModules()
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+        exchangeRateController = new BootCoinExchangeRateController(exchangeRateService, quoteService, objectMapper);
         now = LocalDateTime.now();
         exchangeRate = new BootCoinExchangeRate();
         exchangeRate.setBuyRate(new BigDecimal("3.75"));
@@ -34,37 +53,94 @@ public class BootCoinExchangeRateControllerTest {
         exchangeRate.setUpdatedAt(now);
     }
     @Test
-    public void getExchangeRate_Success() {
+    public void getExchangeRate_Success() throws Exception {
         // Given
+        exchangeRate.setVersion(4L);
         when(exchangeRateService.getCurrentExchangeRate())
                 .thenReturn(Single.just(exchangeRate));
         // When
-        ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
-                exchangeRateController.getExchangeRate().blockingGet();
+        ResponseEntity<byte[]> result = exchangeRateController.getExchangeRate(null).blockingGet();
         // Then
         assertNotNull(result);
         assertEquals(HttpStatus.OK, result.getStatusCode());
-        assertEquals(HttpStatus.OK.value(), result.getBody().getStatus());
-        assertEquals("Exchange rate retrieved", result.getBody().getMessage());
-        assertNotNull(result.getBody().getData());
-        assertEquals(exchangeRate.getBuyRate(), result.getBody().getData().getBuyRate());
-        assertEquals(exchangeRate.getSellRate(), result.getBody().getData().getSellRate());
-        assertEquals(exchangeRate.getUpdatedAt(), result.getBody().getData().getUpdatedAt());
+        assertNotNull(result.getHeaders().getETag());
+        assertTrue(result.getHeaders().getETag().startsWith("\"4-"));
+        JsonNode body = objectMapper.readTree(result.getBody());
+        assertEquals(HttpStatus.OK.value(), body.get("status").asInt());
+        assertEquals("Exchange rate retrieved", body.get("message").asText());
+        assertEquals(0, exchangeRate.getBuyRate().compareTo(body.get("data").get("buyRate").decimalValue()));
+        assertEquals(0, exchangeRate.getSellRate().compareTo(body.get("data").get("sellRate").decimalValue()));
+        assertEquals(4L, body.get("data").get("version").asLong());
+    }
+    @Test
+    public void getExchangeRate_SameVersionReusesEncodedBody() {
+        // Given
+        exchangeRate.setVersion(4L);
+        when(exchangeRateService.getCurrentExchangeRate())
+                .thenReturn(Single.just(exchangeRate));
+        // When
+        ResponseEntity<byte[]> first = exchangeRateController.getExchangeRate(null).blockingGet();
+        ResponseEntity<byte[]> second = exchangeRateController.getExchangeRate(null).blockingGet();
+        // Then
+        assertSame(first.getBody(), second.getBody());
+        assertEquals(first.getHeaders().getETag(), second.getHeaders().getETag());
+    }
+    @Test
+    public void getExchangeRate_NewVersionChangesEtag() {
+        // Given
+        exchangeRate.setVersion(4L);
+        BootCoinExchangeRate updatedRate = new BootCoinExchangeRate(new BigDecimal("3.80"), new BigDecimal("3.90"),
+                now, 5L);
+        when(exchangeRateService.getCurrentExchangeRate())
+                .thenReturn(Single.just(exchangeRate), Single.just(updatedRate));
+        // When
+        ResponseEntity<byte[]> first = exchangeRateController.getExchangeRate(null).blockingGet();
+        ResponseEntity<byte[]> second = exchangeRateController.getExchangeRate(null).blockingGet();
+        // Then
+        assertNotEquals(first.getHeaders().getETag(), second.getHeaders().getETag());
+    }
+    @Test
+    public void getExchangeRate_IfNoneMatchReturnsNotModified() {
+        // Given
+        exchangeRate.setVersion(4L);
+        when(exchangeRateService.getCurrentExchangeRate())
+                .thenReturn(Single.just(exchangeRate));
+        String etag = exchangeRateController.getExchangeRate(null).blockingGet().getHeaders().getETag();
+        // When
+        ResponseEntity<byte[]> result = exchangeRateController.getExchangeRate("\"other\", " + etag)
+                .blockingGet();
+        // Then
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertEquals(etag, result.getHeaders().getETag());
+        assertNull(result.getBody());
     }
     @Test
-    public void getExchangeRate_NotFound() {
+    public void getExchangeRate_NotFound() throws Exception {
         // Given
         when(exchangeRateService.getCurrentExchangeRate())
                 .thenReturn(Single.error(new RuntimeException("Exchange rate not found")));
         // When
-        ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
-                exchangeRateController.getExchangeRate().blockingGet();
+        ResponseEntity<byte[]> result = exchangeRateController.getExchangeRate(null).blockingGet();
         // Then
         assertNotNull(result);
         assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
-        assertEquals(HttpStatus.NOT_FOUND.value(), result.getBody().getStatus());
-        assertEquals("No exchange rate found", result.getBody().getMessage());
-        assertNull(result.getBody().getData());
+        JsonNode body = objectMapper.readTree(result.getBody());
+        assertEquals(HttpStatus.NOT_FOUND.value(), body.get("status").asInt());
+        assertEquals("No exchange rate found", body.get("message").asText());
+        assertTrue(body.get("data").isNull());
+    }
+    @Test
+    public void createQuote_Success() {
+        // Given
+        ExchangeRateQuote quote = new ExchangeRateQuote("quote-id", new BigDecimal("3.75"), new BigDecimal("3.85"),
+                4L, Instant.now().plusSeconds(30));
+        when(quoteService.createQuote()).thenReturn(Single.just(quote));
+        // When
+        ResponseEntity<BaseResponse<ExchangeRateQuote>> result = exchangeRateController.createQuote().blockingGet();
+        // Then
+        assertEquals(HttpStatus.CREATED, result.getStatusCode());
+        assertEquals("Exchange rate quote created", result.getBody().getMessage());
+        assertSame(quote, result.getBody().getData());
     }
     @Test
     public void saveExchangeRate_Success() {
@@ -105,7 +181,7 @@ public class BootCoinExchangeRateControllerTest {
         updatedRate.setBuyRate(new BigDecimal("3.80"));
         updatedRate.setSellRate(new BigDecimal("3.90"));
         updatedRate.setUpdatedAt(now);
-        when(exchangeRateService.updateExchangeRate(any(BigDecimal.class), any(BigDecimal.class)))
+        when(exchangeRateService.updateExchangeRate(any(BigDecimal.class), any(BigDecimal.class), anyLong()))
                 .thenReturn(Single.just(updatedRate));
         // When
         ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
@@ -122,7 +198,7 @@ public class BootCoinExchangeRateControllerTest {
     @Test
     public void updateExchangeRate_NotFound() {
         // Given
-        when(exchangeRateService.updateExchangeRate(any(BigDecimal.class), any(BigDecimal.class)))
+        when(exchangeRateService.updateExchangeRate(any(BigDecimal.class), any(BigDecimal.class), anyLong()))
                 .thenReturn(Single.error(new RuntimeException("Exchange rate not found")));
         // When
         ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
@@ -134,4 +210,139 @@ public class BootCoinExchangeRateControllerTest {
         assertEquals("Exchange rate does not exist, cannot update", result.getBody().getMessage());
         assertNull(result.getBody().getData());
     }
+    @Test
+    public void updateExchangeRate_VersionConflict() {
+        // Given
+        exchangeRate.setVersion(3L);
+        when(exchangeRateService.updateExchangeRate(any(BigDecimal.class), any(BigDecimal.class), eq(3L)))
+                .thenReturn(Single.error(new ExchangeRateVersionConflictException(3L)));
+        // When
+        ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
+                exchangeRateController.updateExchangeRate(exchangeRate).blockingGet();
+        // Then
+        assertNotNull(result);
+        assertEquals(HttpStatus.CONFLICT, result.getStatusCode());
+        assertEquals(HttpStatus.CONFLICT.value(), result.getBody().getStatus());
+        assertEquals("Exchange rate was modified concurrently, expected version 3", result.getBody().getMessage());
+        assertNull(result.getBody().getData());
+    }
+    @Test
+    public void getExchangeRateHistory_Success() {
+        // Given
+        ExchangeRateHistoryPage page = new ExchangeRateHistoryPage(
+                List.of(new ExchangeRateHistoryEntry("1714557600000-0", Instant.ofEpochMilli(1714557600000L),
+                        exchangeRate)),
+                null);
+        when(exchangeRateService.getExchangeRateHistory(null, 50)).thenReturn(Single.just(page));
+        // When
+        ResponseEntity<BaseResponse<ExchangeRateHistoryPage>> result =
+                exchangeRateController.getExchangeRateHistory(null, 50).blockingGet();
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("Exchange rate history retrieved", result.getBody().getMessage());
+        assertSame(page, result.getBody().getData());
+    }
+    @Test
+    public void getExchangeRateHistory_InvalidPageSize() {
+        // Given
+        when(exchangeRateService.getExchangeRateHistory(null, 0))
+                .thenReturn(Single.error(new IllegalArgumentException("Page size must be between 1 and 500")));
+        // When
+        ResponseEntity<BaseResponse<ExchangeRateHistoryPage>> result =
+                exchangeRateController.getExchangeRateHistory(null, 0).blockingGet();
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertEquals("Page size must be between 1 and 500", result.getBody().getMessage());
+        assertNull(result.getBody().getData());
+    }
+    @Test
+    public void getExchangeRateAt_NotFound() {
+        // Given
+        Instant instant = Instant.parse("2020-01-01T00:00:00Z");
+        when(exchangeRateService.getRateAt(instant))
+                .thenReturn(Single.error(new RuntimeException("No exchange rate recorded at " + instant)));
+        // When
+        ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
+                exchangeRateController.getExchangeRateAt(instant).blockingGet();
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+        assertEquals("No exchange rate found at 2020-01-01T00:00:00Z", result.getBody().getMessage());
+    }
+    @Test
+    public void streamExchangeRate_SendsCurrentRateThenChanges() {
+        // Given
+        exchangeRate.setVersion(1L);
+        BootCoinExchangeRate changedRate = new BootCoinExchangeRate(new BigDecimal("3.80"), new BigDecimal("3.90"),
+                now, 2L);
+        when(exchangeRateService.getCurrentExchangeRate()).thenReturn(Single.just(exchangeRate));
+        when(exchangeRateService.getExchangeRateChanges()).thenReturn(Flowable.just(changedRate));
+        // When
+        List<ServerSentEvent<BootCoinExchangeRate>> events = exchangeRateController.streamExchangeRate()
+                .take(2)
+                .toList()
+                .blockingGet();
+        // Then
+        assertEquals("1", events.get(0).id());
+        assertEquals("exchange-rate", events.get(0).event());
+        assertSame(exchangeRate, events.get(0).data());
+        assertEquals("2", events.get(1).id());
+        assertSame(changedRate, events.get(1).data());
+    }
+    @Test
+    public void streamExchangeRate_NoCurrentRateStillStreamsChanges() {
+        // Given
+        when(exchangeRateService.getCurrentExchangeRate())
+                .thenReturn(Single.error(new RuntimeException("Exchange rate not found")));
+        when(exchangeRateService.getExchangeRateChanges()).thenReturn(Flowable.just(exchangeRate));
+        // When
+        ServerSentEvent<BootCoinExchangeRate> event = exchangeRateController.streamExchangeRate().blockingFirst();
+        // Then
+        assertSame(exchangeRate, event.data());
+    }
+    @Test
+    public void getExchangeRates_Success() {
+        // Given
+        when(exchangeRateService.getExchangeRates()).thenReturn(Single.just(Map.of("PEN", exchangeRate)));
+        // When
+        ResponseEntity<BaseResponse<Map<String, BootCoinExchangeRate>>> result =
+                exchangeRateController.getExchangeRates().blockingGet();
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertSame(exchangeRate, result.getBody().getData().get("PEN"));
+    }
+    @Test
+    public void getExchangeRateByCurrency_Unsupported() {
+        // Given
+        when(exchangeRateService.getExchangeRate("EUR"))
+                .thenReturn(Single.error(new IllegalArgumentException("Unsupported currency: EUR")));
+        // When
+        ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
+                exchangeRateController.getExchangeRateForCurrency("EUR").blockingGet();
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertEquals("Unsupported currency: EUR", result.getBody().getMessage());
+    }
+    @Test
+    public void getExchangeRateByCurrency_NotFound() {
+        // Given
+        when(exchangeRateService.getExchangeRate("USD"))
+                .thenReturn(Single.error(new RuntimeException("Exchange rate not found for USD")));
+        // When
+        ResponseEntity<BaseResponse<BootCoinExchangeRate>> result =
+                exchangeRateController.getExchangeRateForCurrency("USD").blockingGet();
+        // Then
+        assertEquals(HttpStatus.NOT_FOUND, result.getStatusCode());
+    }
+    @Test
+    public void updateExchangeRates_Success() {
+        // Given
+        Map<String, BootCoinExchangeRate> request = Map.of("USD", exchangeRate);
+        when(exchangeRateService.updateExchangeRates(request)).thenReturn(Single.just(request));
+        // When
+        ResponseEntity<BaseResponse<Map<String, BootCoinExchangeRate>>> result =
+                exchangeRateController.updateExchangeRates(request).blockingGet();
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("Exchange rates updated", result.getBody().getMessage());
+    }
 }
@@ -3,7 +3,12 @@ package com.bank.bootcoinservice.controller;
 import com.bank.bootcoinservice.dto.BaseResponse;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinPurchaseRequest;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinPurchaseResponse;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinSellOfferRequest;
 import com.bank.bootcoinservice.dto.bootcoinpurchase.BootCoinSellRequest;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.PendingPurchaseEvent;
+import com.bank.bootcoinservice.dto.bootcoinpurchase.PendingPurchasePage;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.bootcoinpurchase.SellOfferStatus;
 import com.bank.bootcoinservice.model.transaction.PaymentMethod;
 import com.bank.bootcoinservice.model.transaction.TransactionStatus;
 import com.bank.bootcoinservice.model.transaction.TransactionType;
@@ -18,6 +23,7 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.http.codec.ServerSentEvent;
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -122,60 +128,109 @@ public class BootCoinPurchaseControllerTest {
         // Given
         BootCoinPurchaseResponse purchase1 = BootCoinPurchaseResponse.builder()
                 .purchaseId("purchase1")
-                .status(TransactionStatus.PENDING)
+                .status(TransactionStatus.WAITING_FOR_SELLER)
                 .build();
         BootCoinPurchaseResponse purchase2 = BootCoinPurchaseResponse.builder()
                 .purchaseId("purchase2")
                 .status(TransactionStatus.WAITING_FOR_SELLER)
                 .build();
-        when(purchaseService.getPendingPurchases())
-                .thenReturn(Flowable.fromIterable(Arrays.asList(purchase1, purchase2)));
+        when(purchaseService.getPendingPurchases(PaymentMethod.YANKI, new BigDecimal("5"), null, null, 2))
+                .thenReturn(Single.just(new PendingPurchasePage(Arrays.asList(purchase1, purchase2), "next")));
         // When
-        List<BaseResponse<BootCoinPurchaseResponse>> results =
-                purchaseController.getPendingPurchases(validToken).toList().blockingGet();
+        ResponseEntity<BaseResponse<PendingPurchasePage>> result = purchaseController
+                .getPendingPurchases(PaymentMethod.YANKI, new BigDecimal("5"), null, null, 2, validToken)
+                .blockingGet();
         // Then
-        assertNotNull(results);
-        assertEquals(2, results.size());
-        assertEquals(HttpStatus.OK.value(), results.get(0).getStatus());
-        assertEquals("Pending purchase requests retrieved successfully", results.get(0).getMessage());
-        assertEquals(purchase1.getPurchaseId(), results.get(0).getData().getPurchaseId());
-        assertEquals(purchase2.getPurchaseId(), results.get(1).getData().getPurchaseId());
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("Pending purchase requests retrieved successfully", result.getBody().getMessage());
+        assertEquals(purchase1.getPurchaseId(), result.getBody().getData().getItems().get(0).getPurchaseId());
+        assertEquals(purchase2.getPurchaseId(), result.getBody().getData().getItems().get(1).getPurchaseId());
+        assertEquals("next", result.getBody().getData().getNextCursor());
     }
     @Test
     public void getPendingPurchases_InvalidToken() {
         // When
-        List<BaseResponse<BootCoinPurchaseResponse>> results =
-                purchaseController.getPendingPurchases(null).toList().blockingGet();
+        ResponseEntity<BaseResponse<PendingPurchasePage>> result = purchaseController
+                .getPendingPurchases(null, null, null, null, 50, null).blockingGet();
         // Then
-        assertNotNull(results);
-        assertEquals(1, results.size());
-        assertEquals(401, results.get(0).getStatus());
-        assertEquals("Missing or invalid token", results.get(0).getMessage());
-        assertNull(results.get(0).getData());
+        assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
+        assertEquals(401, result.getBody().getStatus());
+        assertEquals("Missing or invalid token", result.getBody().getMessage());
+        assertNull(result.getBody().getData());
     }
     @Test
     public void getPendingPurchases_InvalidTokenFormat() {
         // When
-        List<BaseResponse<BootCoinPurchaseResponse>> results =
-                purchaseController.getPendingPurchases("InvalidTokenFormat").toList().blockingGet();
+        ResponseEntity<BaseResponse<PendingPurchasePage>> result = purchaseController
+                .getPendingPurchases(null, null, null, null, 50, "InvalidTokenFormat").blockingGet();
+        // Then
+        assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
+        assertEquals("Missing or invalid token", result.getBody().getMessage());
+        assertNull(result.getBody().getData());
+    }
+    @Test
+    public void getPendingPurchases_InvalidCursor() {
+        // Given
+        when(purchaseService.getPendingPurchases(null, null, null, "bogus", 50))
+                .thenReturn(Single.error(new IllegalArgumentException("Invalid purchase cursor: bogus")));
+        // When
+        ResponseEntity<BaseResponse<PendingPurchasePage>> result = purchaseController
+                .getPendingPurchases(null, null, null, "bogus", 50, validToken).blockingGet();
         // Then
-        assertNotNull(results);
-        assertEquals(1, results.size());
-        assertEquals(401, results.get(0).getStatus());
-        assertEquals("Missing or invalid token", results.get(0).getMessage());
-        assertNull(results.get(0).getData());
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertEquals("Invalid purchase cursor: bogus", result.getBody().getMessage());
     }
     @Test
     public void getPendingPurchases_ServiceError() {
         // Given
-        when(purchaseService.getPendingPurchases())
-                .thenReturn(Flowable.error(new RuntimeException("Service error")));
+        when(purchaseService.getPendingPurchases(null, null, null, null, 50))
+                .thenReturn(Single.error(new RuntimeException("Service error")));
         // When & Then
         assertThrows(RuntimeException.class, () -> {
-            purchaseController.getPendingPurchases(validToken).toList().blockingGet();
+            purchaseController.getPendingPurchases(null, null, null, null, 50, validToken).blockingGet();
         });
     }
     @Test
+    public void streamPendingPurchases_SendsEventsWithResumeTokenAsId() {
+        // Given
+        PendingPurchaseEvent added = new PendingPurchaseEvent(PendingPurchaseEvent.Type.ADDED,
+                purchaseResponse.getPurchaseId(), purchaseResponse, "token-2");
+        when(purchaseService.streamPendingPurchases(PaymentMethod.YANKI, null, null, 50, "token-1"))
+                .thenReturn(Flowable.just(added));
+        // When
+        List<ServerSentEvent<PendingPurchaseEvent>> events = purchaseController
+                .streamPendingPurchases(PaymentMethod.YANKI, null, null, 50, "token-1", validToken)
+                .take(1)
+                .toList()
+                .blockingGet();
+        // Then
+        assertEquals("token-2", events.get(0).id());
+        assertEquals("pending-purchase", events.get(0).event());
+        assertEquals(added, events.get(0).data());
+    }
+    @Test
+    public void streamPendingPurchases_InvalidToken() {
+        // When
+        List<ServerSentEvent<PendingPurchaseEvent>> events = purchaseController
+                .streamPendingPurchases(null, null, null, 50, null, "InvalidTokenFormat").toList().blockingGet();
+        // Then
+        assertEquals(1, events.size());
+        assertEquals("error", events.get(0).event());
+        assertEquals("Missing or invalid token", events.get(0).comment());
+    }
+    @Test
+    public void streamPendingPurchases_ClientFellBehind() {
+        // Given
+        when(purchaseService.streamPendingPurchases(null, null, null, 50, null))
+                .thenReturn(Flowable.error(new IllegalStateException("Pending purchase feed client fell behind")));
+        // When
+        List<ServerSentEvent<PendingPurchaseEvent>> events = purchaseController
+                .streamPendingPurchases(null, null, null, 50, null, validToken).toList().blockingGet();
+        // Then
+        assertEquals(1, events.size());
+        assertEquals("resync", events.get(0).event());
+    }
+    @Test
     public void acceptPurchase_Success() {
         // Given
         BootCoinPurchaseResponse acceptedResponse = BootCoinPurchaseResponse.builder()
@@ -232,4 +287,52 @@ public class BootCoinPurchaseControllerTest {
             purchaseController.acceptPurchase("purchase123", sellRequest, validToken).blockingGet();
         });
     }
+    @Test
+    public void postSellOffer_Success() {
+        // Given
+        BootCoinSellOffer offer = BootCoinSellOffer.builder()
+                .id("offer123")
+                .sellerDocumentNumber("87654321")
+                .paymentMethod(PaymentMethod.YANKI)
+                .amount(new BigDecimal("20.00"))
+                .remainingAmount(new BigDecimal("20.00"))
+                .rate(new BigDecimal("3.80"))
+                .status(SellOfferStatus.OPEN)
+                .build();
+        when(purchaseService.postSellOffer(any(BootCoinSellOfferRequest.class))).thenReturn(Single.just(offer));
+        // When
+        ResponseEntity<BaseResponse<BootCoinSellOffer>> result =
+                purchaseController.postSellOffer(BootCoinSellOfferRequest.builder().build(), validToken).blockingGet();
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("Sell offer posted successfully", result.getBody().getMessage());
+        assertEquals("offer123", result.getBody().getData().getId());
+    }
+    @Test
+    public void cancelSellOffer_Success() {
+        // Given
+        BootCoinSellOffer offer = BootCoinSellOffer.builder()
+                .id("offer123")
+                .sellerDocumentNumber("87654321")
+                .status(SellOfferStatus.CANCELLED)
+                .build();
+        when(purchaseService.cancelSellOffer("offer123", "87654321")).thenReturn(Single.just(offer));
+        // When
+        ResponseEntity<BaseResponse<BootCoinSellOffer>> result =
+                purchaseController.cancelSellOffer("offer123", "87654321", validToken).blockingGet();
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals("Sell offer cancelled successfully", result.getBody().getMessage());
+        assertEquals(SellOfferStatus.CANCELLED, result.getBody().getData().getStatus());
+    }
+    @Test
+    public void cancelSellOffer_InvalidToken() {
+        // When
+        ResponseEntity<BaseResponse<BootCoinSellOffer>> result =
+                purchaseController.cancelSellOffer("offer123", "87654321", null).blockingGet();
+        // Then
+        assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
+        assertEquals("Missing or invalid token", result.getBody().getMessage());
+        assertNull(result.getBody().getData());
+    }
 }
@@ -0,0 +1,84 @@
+package com.bank.bootcoinservice.controller;
+
+import com.bank.bootcoinservice.dto.BaseResponse;
+import com.bank.bootcoinservice.dto.history.UserHistoryEntry;
+import com.bank.bootcoinservice.dto.history.UserHistoryPage;
+import com.bank.bootcoinservice.service.user.BootCoinUserHistoryService;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.server.ResponseStatusException;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class BootCoinUserHistoryControllerTest {
+    private static final String USER = "12345678";
+    private static final String TOKEN = "Bearer valid-token";
+    @Mock
+    private BootCoinUserHistoryService historyService;
+    @InjectMocks
+    private BootCoinUserHistoryController historyController;
+    @Test
+    public void getHistory_Success() {
+        // Given
+        UserHistoryEntry entry = UserHistoryEntry.builder().id("p1").source(UserHistoryEntry.Source.PURCHASE).build();
+        UserHistoryPage page = new UserHistoryPage(List.of(entry), "next");
+        when(historyService.getHistory(USER, null, 50)).thenReturn(Single.just(page));
+        // When
+        ResponseEntity<BaseResponse<UserHistoryPage>> result = historyController
+                .getHistory(USER, null, 50, TOKEN).blockingGet();
+        // Then
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertEquals(page, result.getBody().getData());
+    }
+    @Test
+    public void getHistory_InvalidCursor() {
+        // Given
+        when(historyService.getHistory(USER, "bogus", 50))
+                .thenReturn(Single.error(new IllegalArgumentException("Invalid history cursor: bogus")));
+        // When
+        ResponseEntity<BaseResponse<UserHistoryPage>> result = historyController
+                .getHistory(USER, "bogus", 50, TOKEN).blockingGet();
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, result.getStatusCode());
+        assertEquals("Invalid history cursor: bogus", result.getBody().getMessage());
+    }
+    @Test
+    public void getHistory_InvalidToken() {
+        // When
+        ResponseEntity<BaseResponse<UserHistoryPage>> result = historyController
+                .getHistory(USER, null, 50, "InvalidTokenFormat").blockingGet();
+        // Then
+        assertEquals(HttpStatus.UNAUTHORIZED, result.getStatusCode());
+        verifyNoInteractions(historyService);
+    }
+    @Test
+    public void streamHistory_EmitsEntries() {
+        // Given
+        UserHistoryEntry first = UserHistoryEntry.builder().id("t2").build();
+        UserHistoryEntry second = UserHistoryEntry.builder().id("p1").build();
+        when(historyService.streamHistory(USER, null)).thenReturn(Flowable.just(first, second));
+        // When
+        List<UserHistoryEntry> entries = historyController.streamHistory(USER, null, TOKEN).toList().blockingGet();
+        // Then
+        assertEquals(List.of(first, second), entries);
+    }
+    @Test
+    public void streamHistory_InvalidCursorIsBadRequest() {
+        // Given
+        when(historyService.streamHistory(USER, "bogus"))
+                .thenReturn(Flowable.error(new IllegalArgumentException("Invalid history cursor: bogus")));
+        // When
+        ResponseStatusException exception = assertThrows(ResponseStatusException.class, () ->
+                historyController.streamHistory(USER, "bogus", TOKEN).blockingFirst());
+        // Then
+        assertEquals(HttpStatus.BAD_REQUEST, exception.getStatus());
+    }
+}
@@ -0,0 +1,120 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.PaymentMethod;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import de.flapdoodle.embed.mongo.MongodExecutable;
+import de.flapdoodle.embed.mongo.MongodStarter;
+import de.flapdoodle.embed.mongo.config.MongodConfig;
+import de.flapdoodle.embed.mongo.config.Net;
+import de.flapdoodle.embed.mongo.distribution.Version;
+import de.flapdoodle.embed.process.runtime.Network;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import static org.junit.jupiter.api.Assertions.*;
+/**
+ * Checks the conditional claim against an embedded mongod, where concurrent sellers really race.
+ */
+public class BootCoinPurchaseRepositoryIT {
+    private static MongodExecutable mongod;
+    private static MongoClient client;
+    private static ReactiveMongoTemplate mongoTemplate;
+    private static BootCoinPurchaseRepositoryCustom repository;
+    @BeforeAll
+    static void startMongo() throws Exception {
+        int port = Network.getFreeServerPort();
+        mongod = MongodStarter.getDefaultInstance().prepare(MongodConfig.builder()
+                .version(Version.Main.PRODUCTION)
+                .net(new Net(port, Network.localhostIsIPv6()))
+                .build());
+        mongod.start();
+        client = MongoClients.create("mongodb://localhost:" + port);
+        mongoTemplate = new ReactiveMongoTemplate(client, "bootcoin");
+        repository = new BootCoinPurchaseRepositoryCustomImpl(mongoTemplate);
+    }
+    @AfterAll
+    static void stopMongo() {
+        client.close();
+        mongod.stop();
+    }
+    private static BootCoinPurchase waitingPurchase() {
+        return mongoTemplate.insert(BootCoinPurchase.builder()
+                .buyerDocumentNumber("12345678")
+                .paymentMethod(PaymentMethod.TRANSFER)
+                .amount(new BigDecimal("10.00"))
+                .totalAmountInPEN(new BigDecimal("38.50"))
+                .status(TransactionStatus.WAITING_FOR_SELLER)
+                .createdAt(LocalDateTime.now())
+                .updatedAt(LocalDateTime.now())
+                .build()).block();
+    }
+    private static BootCoinPurchase claimBy(String purchaseId, String sellerDocumentNumber) {
+        return BootCoinPurchase.builder()
+                .id(purchaseId)
+                .sellerDocumentNumber(sellerDocumentNumber)
+                .sellerAccountNumber("account-" + sellerDocumentNumber)
+                .build();
+    }
+    @Test
+    void claimWaitingPurchase_ConcurrentSellersExactlyOneWins() throws Exception {
+        int sellers = 16;
+        int rounds = 10;
+        ExecutorService executor = Executors.newFixedThreadPool(sellers);
+        try {
+            for (int round = 0; round < rounds; round++) {
+                String purchaseId = waitingPurchase().getId();
+                CountDownLatch start = new CountDownLatch(1);
+                List<Future<BootCoinPurchase>> attempts = new ArrayList<>();
+                for (int i = 0; i < sellers; i++) {
+                    BootCoinPurchase claim = claimBy(purchaseId, "seller-" + i);
+                    attempts.add(executor.submit(() -> {
+                        start.await();
+                        return repository.claimWaitingPurchase(claim, List.of(PaymentMethod.TRANSFER))
+                                .blockingGet();
+                    }));
+                }
+                start.countDown();
+                List<BootCoinPurchase> winners = new ArrayList<>();
+                for (Future<BootCoinPurchase> attempt : attempts) {
+                    BootCoinPurchase claimed = attempt.get(10, TimeUnit.SECONDS);
+                    if (claimed != null) {
+                        winners.add(claimed);
+                    }
+                }
+                assertEquals(1, winners.size());
+                BootCoinPurchase stored = mongoTemplate.findById(purchaseId, BootCoinPurchase.class).block();
+                assertEquals(TransactionStatus.PROCESSING, stored.getStatus());
+                assertEquals(winners.get(0).getSellerDocumentNumber(), stored.getSellerDocumentNumber());
+                assertEquals(0, new BigDecimal("10.00").compareTo(stored.getReservedAmount()));
+                assertEquals(0, new BigDecimal("38.50").compareTo(stored.getTotalAmountInPEN()));
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+    @Test
+    void claimWaitingPurchase_OtherPaymentMethodIsNotClaimed() {
+        // Given
+        String purchaseId = waitingPurchase().getId();
+        // When
+        BootCoinPurchase claimed = repository.claimWaitingPurchase(claimBy(purchaseId, "seller-1"),
+                List.of(PaymentMethod.YANKI)).blockingGet();
+        // Then
+        assertNull(claimed);
+        assertEquals(TransactionStatus.WAITING_FOR_SELLER,
+                mongoTemplate.findById(purchaseId, BootCoinPurchase.class).block().getStatus());
+    }
+}
@@ -0,0 +1,116 @@
+package com.bank.bootcoinservice.repository;
+
+import com.bank.bootcoinservice.model.user.BootCoinUser;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.OperationType;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.bson.BsonDocument;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.math.BigDecimal;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class BootCoinUserCacheTest {
+    private static final String DOCUMENT_NUMBER = "12345678";
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    private final Sinks.Many<ChangeStreamEvent<Document>> changeStream = Sinks.many().unicast().onBackpressureBuffer();
+    private SimpleMeterRegistry meterRegistry;
+    private BootCoinUserCache userCache;
+    private BootCoinUser user;
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        userCache = new BootCoinUserCache(mongoTemplate, meterRegistry, 100, 300000);
+        user = user(new ObjectId().toHexString(), DOCUMENT_NUMBER);
+        lenient().doAnswer(invocation -> Mono.just(user))
+                .when(mongoTemplate).findOne(any(Query.class), eq(BootCoinUser.class));
+    }
+    @AfterEach
+    void tearDown() {
+        userCache.unsubscribe();
+    }
+    private static BootCoinUser user(String id, String documentNumber) {
+        BootCoinUser user = new BootCoinUser();
+        user.setId(id);
+        user.setDocumentNumber(documentNumber);
+        user.setPhoneNumber("987654321");
+        user.setBalance(new BigDecimal("5.00"));
+        return user;
+    }
+    private double requests(String result) {
+        return meterRegistry.get("bootcoin.user.cache.requests").tag("result", result).counter().count();
+    }
+    @Test
+    void findByDocumentNumber_SecondReadIsAHitWithoutBalance() {
+        // Given
+        BootCoinUser first = userCache.findByDocumentNumber(DOCUMENT_NUMBER).blockingGet();
+        // When
+        BootCoinUser second = userCache.findByDocumentNumber(DOCUMENT_NUMBER).blockingGet();
+        // Then
+        verify(mongoTemplate, times(1)).findOne(any(Query.class), eq(BootCoinUser.class));
+        assertEquals(user.getId(), second.getId());
+        assertNull(first.getBalance());
+        assertNull(second.getBalance());
+        assertNotSame(first, second);
+        assertEquals(1.0, requests("hit"));
+        assertEquals(1.0, requests("miss"));
+        assertEquals(0.5, userCache.hitRatio());
+    }
+    @Test
+    void invalidate_NextReadGoesToMongo() {
+        // Given
+        userCache.findByDocumentNumber(DOCUMENT_NUMBER).blockingGet();
+        user.setHasYanki(true);
+        // When
+        userCache.invalidate(DOCUMENT_NUMBER);
+        BootCoinUser result = userCache.findByDocumentNumber(DOCUMENT_NUMBER).blockingGet();
+        // Then
+        assertTrue(result.isHasYanki());
+        verify(mongoTemplate, times(2)).findOne(any(Query.class), eq(BootCoinUser.class));
+    }
+    @Test
+    void findByDocumentNumber_EvictsLeastRecentlyUsedUser() {
+        // Given
+        userCache = new BootCoinUserCache(mongoTemplate, new SimpleMeterRegistry(), 1, 300000);
+        userCache.findByDocumentNumber(DOCUMENT_NUMBER).blockingGet();
+        user = user(new ObjectId().toHexString(), "87654321");
+        // When
+        userCache.findByDocumentNumber("87654321").blockingGet();
+        // Then
+        assertEquals(1, userCache.size());
+    }
+    @Test
+    void subscribe_ChangeFromAnotherInstanceInvalidatesUser() {
+        // Given
+        doReturn(changeStream.asFlux()).when(mongoTemplate).changeStream(
+                eq(BootCoinUserCache.COLLECTION), any(ChangeStreamOptions.class), eq(Document.class));
+        userCache.subscribe();
+        userCache.findByDocumentNumber(DOCUMENT_NUMBER).blockingGet();
+        assertEquals(1, userCache.size());
+        // When
+        BsonDocument documentKey = new BsonDocument("_id", new BsonObjectId(new ObjectId(user.getId())));
+        ChangeStreamDocument<Document> raw = new ChangeStreamDocument<>(OperationType.UPDATE, null, null, null,
+                null, documentKey, null, null, null, null);
+        changeStream.tryEmitNext(new ChangeStreamEvent<>(raw, Document.class, null));
+        // Then
+        assertEquals(0, userCache.size());
+        // one for the subscription itself, one for the change
+        assertEquals(2.0, meterRegistry.get("bootcoin.user.cache.invalidations").counter().count());
+    }
+}
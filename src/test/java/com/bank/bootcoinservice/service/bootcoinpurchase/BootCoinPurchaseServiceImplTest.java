@@ -2,6 +2,8 @@ package com.bank.bootcoinservice.service.bootcoinpurchase;
 
 import com.bank.bootcoinservice.dto.bootcoinpurchase.*;
 import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinSellOffer;
+import com.bank.bootcoinservice.model.bootcoinpurchase.SellOfferStatus;
 import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
 import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
 import com.bank.bootcoinservice.model.transaction.PaymentMethod;
@@ -9,9 +11,14 @@ import com.bank.bootcoinservice.model.transaction.TransactionStatus;
 import com.bank.bootcoinservice.model.transaction.TransactionType;
 import com.bank.bootcoinservice.model.user.BootCoinUser;
 import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import com.bank.bootcoinservice.repository.BootCoinSellOfferRepository;
 import com.bank.bootcoinservice.repository.BootCoinTransactionRepository;
 import com.bank.bootcoinservice.repository.BootCoinUserRepository;
 import com.bank.bootcoinservice.service.exchangerate.BootCoinExchangeRateService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateQuoteService;
+import com.bank.bootcoinservice.service.ledger.InsufficientBalanceException;
+import com.bank.bootcoinservice.service.ledger.LedgerService;
+import io.reactivex.Completable;
 import io.reactivex.Flowable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
@@ -24,12 +31,25 @@ import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.kafka.core.KafkaTemplate;
+import reactor.core.publisher.Flux;
 
 import java.math.BigDecimal;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.*;
@@ -53,6 +73,21 @@ public class BootCoinPurchaseServiceImplTest {
     @Mock
     private BootCoinExchangeRateService exchangeRateService;
 
+    @Mock
+    private ExchangeRateQuoteService quoteService;
+
+    @Mock
+    private BootCoinSellOfferRepository sellOfferRepository;
+
+    @Mock
+    private LedgerService ledgerService;
+
+    @Mock
+    private PendingPurchaseFeed pendingPurchaseFeed;
+
+    @Mock
+    private SagaTimeouts sagaTimeouts;
+
     @InjectMocks
     private BootCoinPurchaseServiceImpl purchaseService;
 
@@ -133,6 +168,7 @@ public class BootCoinPurchaseServiceImplTest {
                 .paymentMethod(PaymentMethod.TRANSFER)
                 .amount(new BigDecimal("10.00"))
                 .totalAmountInPEN(new BigDecimal("38.50")) // 10 * 3.85
+                .limitRate(new BigDecimal("3.85"))
                 .status(TransactionStatus.WAITING_FOR_SELLER)
                 .transactionType(TransactionType.P2P)
                 .createdAt(LocalDateTime.now())
@@ -149,6 +185,16 @@ public class BootCoinPurchaseServiceImplTest {
         failureResponse.setTransactionId(purchaseId);
         failureResponse.setSuccess(false);
         failureResponse.setMessage("Transaction failed: insufficient funds");
+
+        // Sellers have enough ledger balance unless a test says otherwise
+        lenient().doReturn(Single.just(new BigDecimal("50.00"))).when(ledgerService).balanceOf(anyString());
+        lenient().doReturn(Completable.complete()).when(ledgerService)
+            .transfer(anyString(), anyString(), anyString(), any(BigDecimal.class));
+        // No order is resting on the other side unless a test says otherwise
+        lenient().doReturn(Flowable.empty()).when(sellOfferRepository)
+            .findMatchingOffers(any(PaymentMethod.class), any(BigDecimal.class), any(BigDecimal.class), anyString());
+        lenient().doReturn(Flowable.empty()).when(purchaseRepository)
+            .findMatchingPurchases(any(PaymentMethod.class), any(BigDecimal.class), any(BigDecimal.class), anyString());
     }
 
     @Test
@@ -183,6 +229,43 @@ public class BootCoinPurchaseServiceImplTest {
         assertEquals(savedPurchase.getStatus(), response.getStatus());
     }
 
+    @Test
+    void requestPurchase_WithQuotePricesAtQuotedRate() {
+        // Given
+        purchaseRequest.setQuoteId("quote-id");
+        BootCoinExchangeRate quotedRate = new BootCoinExchangeRate(new BigDecimal("3.50"), new BigDecimal("3.60"),
+                null, 7L);
+        doReturn(Maybe.just(buyer)).when(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
+        doReturn(Single.just(quotedRate)).when(quoteService).getQuotedRate("quote-id");
+        doReturn(Single.just(savedPurchase)).when(purchaseRepository).save(any(BootCoinPurchase.class));
+
+        // When
+        purchaseService.requestPurchase(purchaseRequest).blockingGet();
+
+        // Then
+        verify(purchaseRepository).save(purchaseCaptor.capture());
+        assertEquals(purchaseRequest.getAmount().multiply(new BigDecimal("3.60")),
+                purchaseCaptor.getValue().getTotalAmountInPEN());
+        verifyNoInteractions(exchangeRateService);
+    }
+
+    @Test
+    void requestPurchase_ExpiredQuote() {
+        // Given
+        purchaseRequest.setQuoteId("quote-id");
+        doReturn(Maybe.just(buyer)).when(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
+        doReturn(Single.error(new IllegalArgumentException("Quote has expired.")))
+                .when(quoteService).getQuotedRate("quote-id");
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.requestPurchase(purchaseRequest).blockingGet();
+        });
+
+        assertEquals("Quote has expired.", exception.getMessage());
+        verifyNoInteractions(purchaseRepository);
+    }
+
     @Test
     void requestPurchase_UserNotFound() {
         // Given
@@ -253,16 +336,132 @@ public class BootCoinPurchaseServiceImplTest {
                 .build();
 
         Flowable<BootCoinPurchase> purchasesFlowable = Flowable.fromIterable(Arrays.asList(purchase1, purchase2));
-        doReturn(purchasesFlowable).when(purchaseRepository).findByStatus(TransactionStatus.WAITING_FOR_SELLER);
+        doReturn(purchasesFlowable).when(purchaseRepository)
+            .findWaitingPage(PaymentMethod.YANKI, new BigDecimal("1"), new BigDecimal("20"), null, null, 3);
+
+        // When
+        PendingPurchasePage page = purchaseService
+            .getPendingPurchases(PaymentMethod.YANKI, new BigDecimal("1"), new BigDecimal("20"), null, 2)
+            .blockingGet();
+
+        // Then
+        assertEquals(2, page.getItems().size());
+        assertNull(page.getNextCursor());
+        verify(purchaseRepository)
+            .findWaitingPage(PaymentMethod.YANKI, new BigDecimal("1"), new BigDecimal("20"), null, null, 3);
+    }
+
+    @Test
+    void getPendingPurchases_CursorWalksEveryPurchaseOnce() {
+        // Given: keyset order is createdAt then id, with ties on createdAt
+        LocalDateTime base = LocalDateTime.of(2024, 1, 1, 10, 0);
+        List<BootCoinPurchase> book = new ArrayList<>();
+        for (int i = 0; i < 7; i++) {
+            book.add(BootCoinPurchase.builder()
+                    .id("p" + i)
+                    .status(TransactionStatus.WAITING_FOR_SELLER)
+                    .createdAt(base.plusSeconds(i / 2))
+                    .build());
+        }
+        doAnswer(invocation -> {
+            LocalDateTime afterCreatedAt = invocation.getArgument(3);
+            String afterId = invocation.getArgument(4);
+            int limit = invocation.getArgument(5);
+            return Flowable.fromIterable(book)
+                    .filter(purchase -> afterCreatedAt == null
+                            || purchase.getCreatedAt().isAfter(afterCreatedAt)
+                            || purchase.getCreatedAt().isEqual(afterCreatedAt)
+                            && purchase.getId().compareTo(afterId) > 0)
+                    .take(limit);
+        }).when(purchaseRepository).findWaitingPage(isNull(), isNull(), isNull(), any(), any(), eq(4));
+
+        // When
+        List<String> seen = new ArrayList<>();
+        String cursor = null;
+        int pages = 0;
+        do {
+            PendingPurchasePage page = purchaseService.getPendingPurchases(null, null, null, cursor, 3).blockingGet();
+            page.getItems().forEach(item -> seen.add(item.getPurchaseId()));
+            cursor = page.getNextCursor();
+            pages++;
+        } while (cursor != null);
+
+        // Then
+        assertEquals(Arrays.asList("p0", "p1", "p2", "p3", "p4", "p5", "p6"), seen);
+        assertEquals(3, pages);
+    }
+
+    @Test
+    void streamPendingPurchases_FiltersAddedPurchasesButKeepsRemovals() {
+        // Given
+        BootCoinPurchase yanki = BootCoinPurchase.builder().id("p1").status(TransactionStatus.WAITING_FOR_SELLER)
+                .paymentMethod(PaymentMethod.YANKI).amount(new BigDecimal("10")).build();
+        BootCoinPurchase transfer = BootCoinPurchase.builder().id("p2").status(TransactionStatus.WAITING_FOR_SELLER)
+                .paymentMethod(PaymentMethod.TRANSFER).amount(new BigDecimal("10")).build();
+        Flowable<BootCoinPurchase> firstPage = Flowable.empty();
+        doReturn(firstPage).when(purchaseRepository).findWaitingPage(PaymentMethod.YANKI, null, null, null, null, 20);
+        PendingPurchaseFeed.Change addedYanki = new PendingPurchaseFeed.Change(1, "t1",
+                PendingPurchaseEvent.Type.ADDED, "p1", yanki);
+        PendingPurchaseFeed.Change addedTransfer = new PendingPurchaseFeed.Change(2, "t2",
+                PendingPurchaseEvent.Type.ADDED, "p2", transfer);
+        PendingPurchaseFeed.Change removed = new PendingPurchaseFeed.Change(3, "t3",
+                PendingPurchaseEvent.Type.REMOVED, "p2", null);
+        when(pendingPurchaseFeed.changes("t0", firstPage))
+                .thenReturn(Flux.just(addedYanki, addedTransfer, removed));
+
+        // When
+        List<PendingPurchaseEvent> events = purchaseService
+            .streamPendingPurchases(PaymentMethod.YANKI, null, null, 20, "t0")
+            .toList()
+            .blockingGet();
+
+        // Then
+        assertEquals(2, events.size());
+        assertEquals("p1", events.get(0).getPurchase().getPurchaseId());
+        assertEquals("t1", events.get(0).getResumeToken());
+        assertEquals(PendingPurchaseEvent.Type.REMOVED, events.get(1).getType());
+        assertNull(events.get(1).getPurchase());
+    }
+
+    @Test
+    void expireWaitingPurchases_ExpiresDuePurchasesInOneUpdate() {
+        // Given: p2 was claimed between the lookup and the update
+        LocalDateTime now = LocalDateTime.now();
+        when(purchaseRepository.findExpiredWaitingIds(now, 10)).thenReturn(Flowable.just("p1", "p2"));
+        when(purchaseRepository.expireWaiting(Arrays.asList("p1", "p2"), BootCoinPurchaseServiceImpl.EXPIRED_MESSAGE))
+                .thenReturn(Single.just(1L));
+
+        // When
+        int due = purchaseService.expireWaitingPurchases(now, 10).blockingGet();
+
+        // Then
+        assertEquals(2, due);
+    }
+
+    @Test
+    void expireWaitingPurchases_NothingDue() {
+        // Given
+        LocalDateTime now = LocalDateTime.now();
+        when(purchaseRepository.findExpiredWaitingIds(now, 10)).thenReturn(Flowable.empty());
 
         // When
-        List<BootCoinPurchaseResponse> responses = purchaseService.getPendingPurchases()
-                .toList()
-                .blockingGet();
+        int due = purchaseService.expireWaitingPurchases(now, 10).blockingGet();
 
         // Then
-        assertEquals(2, responses.size());
-        verify(purchaseRepository).findByStatus(TransactionStatus.WAITING_FOR_SELLER);
+        assertEquals(0, due);
+        verify(purchaseRepository, never()).expireWaiting(anyCollection(), anyString());
+    }
+
+    @Test
+    void getPendingPurchases_RejectsInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () ->
+            purchaseService.getPendingPurchases(null, null, null, "not-a-cursor", 10).blockingGet());
+        assertThrows(IllegalArgumentException.class, () ->
+            purchaseService.getPendingPurchases(null, null, null, null, 0).blockingGet());
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> purchaseService
+            .getPendingPurchases(null, new BigDecimal("10"), new BigDecimal("5"), null, 10).blockingGet());
+        assertEquals("Minimum amount must not exceed maximum amount.", exception.getMessage());
+        verifyNoInteractions(purchaseRepository);
     }
 
     @Test
@@ -271,48 +470,30 @@ public class BootCoinPurchaseServiceImplTest {
         // Update savedPurchase with necessary details
         savedPurchase.setStatus(TransactionStatus.WAITING_FOR_SELLER);
 
-        // Create updated purchase with seller info
-        BootCoinPurchase updatedPurchase = BootCoinPurchase.builder()
-                .id(savedPurchase.getId())
-                .buyerDocumentNumber(savedPurchase.getBuyerDocumentNumber())
-                .buyerPhoneNumber(savedPurchase.getBuyerPhoneNumber())
-                .buyerAccountNumber(savedPurchase.getBuyerAccountNumber())
-                .sellerDocumentNumber(seller.getDocumentNumber())
-                .sellerAccountNumber(seller.getBankAccountId())
-                .paymentMethod(PaymentMethod.TRANSFER)
-                .amount(savedPurchase.getAmount())
-                .totalAmountInPEN(savedPurchase.getTotalAmountInPEN())
-                .status(TransactionStatus.PROCESSING)
-                .transactionType(TransactionType.P2P)
-                .createdAt(savedPurchase.getCreatedAt())
-                .updatedAt(LocalDateTime.now())
-                .build();
-
-        Maybe<BootCoinPurchase> purchaseMaybe = Maybe.just(savedPurchase);
         Maybe<BootCoinUser> sellerMaybe = Maybe.just(seller);
-        Single<BootCoinPurchase> updatedPurchaseSingle = Single.just(updatedPurchase);
 
-        doReturn(purchaseMaybe).when(purchaseRepository)
-            .findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         doReturn(sellerMaybe).when(userRepository)
             .findByDocumentNumber(seller.getDocumentNumber());
-        doReturn(updatedPurchaseSingle).when(purchaseRepository)
-            .save(any(BootCoinPurchase.class));
+        stubAtomicClaim(storedWith(savedPurchase));
         doReturn(null).when(kafkaTemplate).send(anyString(), any());
 
         // When
         BootCoinPurchaseResponse response = purchaseService.acceptPurchase(purchaseId, sellRequest).blockingGet();
 
         // Then
-        verify(purchaseRepository).findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         verify(userRepository).findByDocumentNumber(seller.getDocumentNumber());
-        verify(purchaseRepository).save(purchaseCaptor.capture());
+        verify(purchaseRepository).claimWaitingPurchase(purchaseCaptor.capture(), eq(List.of(PaymentMethod.TRANSFER)));
+        verifyNoMoreInteractions(purchaseRepository);
+        verify(ledgerService, never()).balanceOf(anyString());
+        verify(ledgerService).transfer("reserve:" + purchaseId, seller.getDocumentNumber(),
+            LedgerService.ESCROW_ACCOUNT_PREFIX + purchaseId, new BigDecimal("10.00"));
         verify(kafkaTemplate).send(eq("bootcoin.transaction.transfer.requested"), transferEventCaptor.capture());
+        verify(sagaTimeouts).start(purchaseId);
 
         BootCoinPurchase capturedPurchase = purchaseCaptor.getValue();
         assertEquals(seller.getDocumentNumber(), capturedPurchase.getSellerDocumentNumber());
         assertEquals(seller.getBankAccountId(), capturedPurchase.getSellerAccountNumber());
-        assertEquals(TransactionStatus.PROCESSING, capturedPurchase.getStatus());
+        assertEquals(TransactionStatus.PROCESSING, response.getStatus());
 
         TransactionEvent capturedEvent = transferEventCaptor.getValue();
         assertEquals(savedPurchase.getId(), capturedEvent.getPurchaseId());
@@ -334,47 +515,27 @@ public class BootCoinPurchaseServiceImplTest {
                 .sellerPhoneNumber(seller.getPhoneNumber())
                 .build();
 
-        // Create updated purchase with seller info
-        BootCoinPurchase updatedPurchase = BootCoinPurchase.builder()
-                .id(savedPurchase.getId())
-                .buyerDocumentNumber(savedPurchase.getBuyerDocumentNumber())
-                .buyerPhoneNumber(savedPurchase.getBuyerPhoneNumber())
-                .sellerDocumentNumber(seller.getDocumentNumber())
-                .sellerPhoneNumber(seller.getPhoneNumber())
-                .paymentMethod(PaymentMethod.YANKI)
-                .amount(savedPurchase.getAmount())
-                .totalAmountInPEN(savedPurchase.getTotalAmountInPEN())
-                .status(TransactionStatus.PROCESSING)
-                .transactionType(TransactionType.P2P)
-                .createdAt(savedPurchase.getCreatedAt())
-                .updatedAt(LocalDateTime.now())
-                .build();
 
-        Maybe<BootCoinPurchase> purchaseMaybe = Maybe.just(savedPurchase);
         Maybe<BootCoinUser> sellerMaybe = Maybe.just(seller);
-        Single<BootCoinPurchase> updatedPurchaseSingle = Single.just(updatedPurchase);
 
-        doReturn(purchaseMaybe).when(purchaseRepository)
-            .findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         doReturn(sellerMaybe).when(userRepository)
             .findByDocumentNumber(seller.getDocumentNumber());
-        doReturn(updatedPurchaseSingle).when(purchaseRepository)
-            .save(any(BootCoinPurchase.class));
+        stubAtomicClaim(storedWith(savedPurchase));
         doReturn(null).when(kafkaTemplate).send(anyString(), any());
 
         // When
         BootCoinPurchaseResponse response = purchaseService.acceptPurchase(purchaseId, sellRequest).blockingGet();
 
         // Then
-        verify(purchaseRepository).findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         verify(userRepository).findByDocumentNumber(seller.getDocumentNumber());
-        verify(purchaseRepository).save(purchaseCaptor.capture());
+        verify(purchaseRepository).claimWaitingPurchase(purchaseCaptor.capture(), eq(List.of(PaymentMethod.YANKI)));
+        verify(purchaseRepository, never()).save(any(BootCoinPurchase.class));
         verify(kafkaTemplate).send(eq("bootcoin.transaction.yanki.requested"), yankiEventCaptor.capture());
 
         BootCoinPurchase capturedPurchase = purchaseCaptor.getValue();
         assertEquals(seller.getDocumentNumber(), capturedPurchase.getSellerDocumentNumber());
         assertEquals(seller.getPhoneNumber(), capturedPurchase.getSellerPhoneNumber());
-        assertEquals(TransactionStatus.PROCESSING, capturedPurchase.getStatus());
+        assertEquals(TransactionStatus.PROCESSING, response.getStatus());
 
         YankiEvent capturedEvent = yankiEventCaptor.getValue();
         assertEquals(savedPurchase.getId(), capturedEvent.getPurchaseId());
@@ -386,9 +547,9 @@ public class BootCoinPurchaseServiceImplTest {
     @Test
     void acceptPurchase_PurchaseNotFound() {
         // Given
-        Maybe<BootCoinPurchase> emptyMaybe = Maybe.empty();
-        doReturn(emptyMaybe).when(purchaseRepository)
-            .findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        stubAtomicClaim(new HashMap<>());
+        doReturn(Maybe.empty()).when(purchaseRepository).findById(purchaseId);
 
         // When & Then
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
@@ -396,19 +557,17 @@ public class BootCoinPurchaseServiceImplTest {
         });
 
         assertEquals("Purchase request not found or already taken.", exception.getMessage());
-        verify(purchaseRepository).findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
-        verifyNoInteractions(userRepository);
+        verify(purchaseRepository).claimWaitingPurchase(any(BootCoinPurchase.class), anyCollection());
+        verify(purchaseRepository).findById(purchaseId);
         verifyNoMoreInteractions(purchaseRepository);
+        verifyNoInteractions(kafkaTemplate);
     }
 
     @Test
     void acceptPurchase_SellerNotFound() {
         // Given
-        Maybe<BootCoinPurchase> purchaseMaybe = Maybe.just(savedPurchase);
         Maybe<BootCoinUser> emptyMaybe = Maybe.empty();
 
-        doReturn(purchaseMaybe).when(purchaseRepository)
-            .findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         doReturn(emptyMaybe).when(userRepository)
             .findByDocumentNumber(seller.getDocumentNumber());
 
@@ -418,9 +577,8 @@ public class BootCoinPurchaseServiceImplTest {
         });
 
         assertEquals("Seller not found.", exception.getMessage());
-        verify(purchaseRepository).findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         verify(userRepository).findByDocumentNumber(seller.getDocumentNumber());
-        verifyNoMoreInteractions(purchaseRepository);
+        verifyNoInteractions(purchaseRepository);
     }
 
     @Test
@@ -429,13 +587,12 @@ public class BootCoinPurchaseServiceImplTest {
         savedPurchase.setPaymentMethod(PaymentMethod.YANKI);
         seller.setHasYanki(false);
 
-        Maybe<BootCoinPurchase> purchaseMaybe = Maybe.just(savedPurchase);
         Maybe<BootCoinUser> sellerMaybe = Maybe.just(seller);
 
-        doReturn(purchaseMaybe).when(purchaseRepository)
-            .findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         doReturn(sellerMaybe).when(userRepository)
             .findByDocumentNumber(seller.getDocumentNumber());
+        stubAtomicClaim(storedWith(savedPurchase));
+        doReturn(Maybe.just(savedPurchase)).when(purchaseRepository).findById(purchaseId);
 
         // When & Then
         Exception exception = assertThrows(IllegalArgumentException.class, () -> {
@@ -443,88 +600,65 @@ public class BootCoinPurchaseServiceImplTest {
         });
 
         assertEquals("Seller does not have Yanki enabled.", exception.getMessage());
-        verify(purchaseRepository).findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
-        verify(userRepository).findByDocumentNumber(seller.getDocumentNumber());
-        verifyNoMoreInteractions(purchaseRepository);
-    }
-
-    @Test
-    void acceptPurchase_SellerLowBalance() {
-        // Given
-        // Set seller balance lower than purchase amount
-        seller.setBalance(new BigDecimal("5.00"));
-        savedPurchase.setAmount(new BigDecimal("10.00"));
-
-        Maybe<BootCoinPurchase> purchaseMaybe = Maybe.just(savedPurchase);
-        Maybe<BootCoinUser> sellerMaybe = Maybe.just(seller);
-
-        doReturn(purchaseMaybe).when(purchaseRepository)
-            .findByIdAndStatus(purchaseId,
-                TransactionStatus.WAITING_FOR_SELLER);
-        doReturn(sellerMaybe).when(userRepository)
-            .findByDocumentNumber(seller.getDocumentNumber());
-
-        // When & Then
-        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
-            purchaseService.acceptPurchase(purchaseId, sellRequest).blockingGet();
-        });
-
-        assertEquals("Seller does not have enough balance to take the offer.", exception.getMessage());
-        verify(purchaseRepository).findByIdAndStatus(purchaseId, TransactionStatus.WAITING_FOR_SELLER);
         verify(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        verify(purchaseRepository).claimWaitingPurchase(any(BootCoinPurchase.class),
+            eq(List.of(PaymentMethod.TRANSFER)));
+        verify(purchaseRepository).findById(purchaseId);
         verifyNoMoreInteractions(purchaseRepository);
+        verify(ledgerService, never()).transfer(anyString(), anyString(), anyString(), any(BigDecimal.class));
     }
 
-    @Test
-    void updateTransactionStatus_Success() {
-        // Given
-        BootCoinPurchase purchase = BootCoinPurchase.builder()
+    private BootCoinPurchase processingPurchase() {
+        return BootCoinPurchase.builder()
                 .id(purchaseId)
                 .buyerDocumentNumber(buyer.getDocumentNumber())
                 .sellerDocumentNumber(seller.getDocumentNumber())
                 .amount(new BigDecimal("10.00"))
+                .reservedAmount(new BigDecimal("10.00"))
                 .status(TransactionStatus.PROCESSING)
                 .build();
+    }
 
-        BootCoinPurchase updatedPurchase = BootCoinPurchase.builder()
-                .id(purchaseId)
-                .buyerDocumentNumber(buyer.getDocumentNumber())
-                .sellerDocumentNumber(seller.getDocumentNumber())
-                .amount(new BigDecimal("10.00"))
-                .status(TransactionStatus.COMPLETED)
-                .messageResponse("Transaction completed successfully")
-                .build();
+    private BootCoinPurchase finished(BootCoinPurchase purchase, TransactionStatus status, String message) {
+        BootCoinPurchase finished = copy(purchase);
+        finished.setStatus(status);
+        finished.setMessageResponse(message);
+        return finished;
+    }
+
+    @Test
+    void updateTransactionStatus_Success() {
+        // Given
+        BootCoinPurchase purchase = processingPurchase();
+        BootCoinPurchase updatedPurchase = finished(purchase, TransactionStatus.COMPLETED,
+            "Transaction completed successfully");
 
         BootCoinTransaction transaction = new BootCoinTransaction();
         transaction.setId(purchaseId);
 
-        Maybe<BootCoinPurchase> purchaseMaybe = Maybe.just(purchase);
-        Single<BootCoinPurchase> updatedPurchaseSingle = Single.just(updatedPurchase);
-        Single<BootCoinTransaction> transactionSingle = Single.just(transaction);
-        Maybe<BootCoinUser> buyerMaybe = Maybe.just(buyer);
-        Maybe<BootCoinUser> sellerMaybe = Maybe.just(seller);
-
-        doReturn(purchaseMaybe).when(purchaseRepository).findById(purchaseId);
-        doReturn(updatedPurchaseSingle).when(purchaseRepository).save(any(BootCoinPurchase.class));
-        doReturn(transactionSingle).when(transactionRepository).save(any(BootCoinTransaction.class));
-        doReturn(buyerMaybe).when(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
-        doReturn(sellerMaybe).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
-        doReturn(Single.just(buyer)).when(userRepository).save(any(BootCoinUser.class));
+        doReturn(Maybe.just(purchase)).when(purchaseRepository).findById(purchaseId);
+        doReturn(Maybe.just(updatedPurchase)).when(purchaseRepository)
+            .finishProcessing(purchaseId, TransactionStatus.COMPLETED, "Transaction completed successfully");
+        doReturn(Single.just(transaction)).when(transactionRepository).save(any(BootCoinTransaction.class));
+        doReturn(Completable.complete()).when(purchaseRepository).clearReservation(purchaseId);
 
         // When
         BootCoinPurchase result = purchaseService.updateTransactionStatus(successResponse).blockingGet();
 
         // Then
         verify(purchaseRepository).findById(purchaseId);
-        verify(purchaseRepository).save(purchaseCaptor.capture());
+        verify(purchaseRepository)
+            .finishProcessing(purchaseId, TransactionStatus.COMPLETED, "Transaction completed successfully");
         verify(transactionRepository).save(transactionCaptor.capture());
-        verify(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
-        verify(userRepository).findByDocumentNumber(seller.getDocumentNumber());
-        verify(userRepository, times(2)).save(any(BootCoinUser.class));
+        verify(ledgerService).transfer("settle:" + purchaseId, LedgerService.ESCROW_ACCOUNT_PREFIX + purchaseId,
+            buyer.getDocumentNumber(), new BigDecimal("10.00"));
+        verify(purchaseRepository).clearReservation(purchaseId);
+        verify(purchaseRepository, never()).save(any(BootCoinPurchase.class));
+        verify(sagaTimeouts).finish(purchaseId);
+        verifyNoInteractions(userRepository);
 
-        BootCoinPurchase capturedPurchase = purchaseCaptor.getValue();
-        assertEquals(TransactionStatus.COMPLETED, capturedPurchase.getStatus());
-        assertEquals("Transaction completed successfully", capturedPurchase.getMessageResponse());
+        assertEquals(TransactionStatus.COMPLETED, result.getStatus());
+        assertEquals("Transaction completed successfully", result.getMessageResponse());
 
         BootCoinTransaction capturedTransaction = transactionCaptor.getValue();
         assertEquals(purchaseId, capturedTransaction.getId());
@@ -534,41 +668,121 @@ public class BootCoinPurchaseServiceImplTest {
     @Test
     void updateTransactionStatus_Failed() {
         // Given
-        BootCoinPurchase purchase = BootCoinPurchase.builder()
-                .id(purchaseId)
-                .buyerDocumentNumber(buyer.getDocumentNumber())
-                .sellerDocumentNumber(seller.getDocumentNumber())
-                .amount(new BigDecimal("10.00"))
-                .status(TransactionStatus.PROCESSING)
-                .build();
-
-        BootCoinPurchase updatedPurchase = BootCoinPurchase.builder()
-                .id(purchaseId)
-                .buyerDocumentNumber(buyer.getDocumentNumber())
-                .sellerDocumentNumber(seller.getDocumentNumber())
-                .amount(new BigDecimal("10.00"))
-                .status(TransactionStatus.FAILED)
-                .messageResponse("Transaction failed: insufficient funds")
-                .build();
-
-        Maybe<BootCoinPurchase> purchaseMaybe = Maybe.just(purchase);
-        Single<BootCoinPurchase> updatedPurchaseSingle = Single.just(updatedPurchase);
+        BootCoinPurchase purchase = processingPurchase();
+        BootCoinPurchase updatedPurchase = finished(purchase, TransactionStatus.FAILED,
+            "Transaction failed: insufficient funds");
 
-        doReturn(purchaseMaybe).when(purchaseRepository).findById(purchaseId);
-        doReturn(updatedPurchaseSingle).when(purchaseRepository).save(any(BootCoinPurchase.class));
+        doReturn(Maybe.just(purchase)).when(purchaseRepository).findById(purchaseId);
+        doReturn(Maybe.just(updatedPurchase)).when(purchaseRepository)
+            .finishProcessing(purchaseId, TransactionStatus.FAILED, "Transaction failed: insufficient funds");
+        doReturn(Completable.complete()).when(purchaseRepository).clearReservation(purchaseId);
 
         // When
         BootCoinPurchase result = purchaseService.updateTransactionStatus(failureResponse).blockingGet();
 
         // Then
         verify(purchaseRepository).findById(purchaseId);
-        verify(purchaseRepository).save(purchaseCaptor.capture());
+        verify(ledgerService).transfer("release:" + purchaseId, LedgerService.ESCROW_ACCOUNT_PREFIX + purchaseId,
+            seller.getDocumentNumber(), new BigDecimal("10.00"));
+        verify(purchaseRepository).clearReservation(purchaseId);
         verifyNoInteractions(transactionRepository);
         verifyNoInteractions(userRepository);
 
-        BootCoinPurchase capturedPurchase = purchaseCaptor.getValue();
-        assertEquals(TransactionStatus.FAILED, capturedPurchase.getStatus());
-        assertEquals("Transaction failed: insufficient funds", capturedPurchase.getMessageResponse());
+        assertEquals(TransactionStatus.FAILED, result.getStatus());
+        assertEquals("Transaction failed: insufficient funds", result.getMessageResponse());
+    }
+
+    @Test
+    void updateTransactionStatus_SellerBalanceNoLongerCoversTransfer() {
+        // Given: accepted before escrow existed, so nothing was reserved
+        BootCoinPurchase purchase = processingPurchase();
+        purchase.setReservedAmount(null);
+
+        doReturn(Maybe.just(purchase)).when(purchaseRepository).findById(purchaseId);
+        doReturn(Maybe.just(finished(purchase, TransactionStatus.COMPLETED, "Transaction completed successfully")))
+            .when(purchaseRepository)
+            .finishProcessing(purchaseId, TransactionStatus.COMPLETED, "Transaction completed successfully");
+        doReturn(Single.just(new BootCoinTransaction())).when(transactionRepository)
+            .save(any(BootCoinTransaction.class));
+        doReturn(Completable.error(new InsufficientBalanceException(seller.getDocumentNumber())))
+            .when(ledgerService)
+            .transfer(purchaseId, seller.getDocumentNumber(), buyer.getDocumentNumber(), new BigDecimal("10.00"));
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.updateTransactionStatus(successResponse).blockingGet();
+        });
+
+        assertEquals("Account 87654321 does not have enough balance.", exception.getMessage());
+        verify(ledgerService, never()).transfer(eq("settle:" + purchaseId), anyString(), anyString(),
+            any(BigDecimal.class));
+        verify(purchaseRepository, never()).clearReservation(anyString());
+        verifyNoInteractions(userRepository);
+    }
+
+    @Test
+    void updateTransactionStatus_EmptyEscrowIsNotPaidFromSellerBalance() {
+        // Given
+        BootCoinPurchase purchase = processingPurchase();
+
+        doReturn(Maybe.just(purchase)).when(purchaseRepository).findById(purchaseId);
+        doReturn(Maybe.just(finished(purchase, TransactionStatus.COMPLETED, "Transaction completed successfully")))
+            .when(purchaseRepository)
+            .finishProcessing(purchaseId, TransactionStatus.COMPLETED, "Transaction completed successfully");
+        doReturn(Single.just(new BootCoinTransaction())).when(transactionRepository)
+            .save(any(BootCoinTransaction.class));
+        doReturn(Completable.error(new InsufficientBalanceException(LedgerService.ESCROW_ACCOUNT_PREFIX + purchaseId)))
+            .when(ledgerService).transfer("settle:" + purchaseId, LedgerService.ESCROW_ACCOUNT_PREFIX + purchaseId,
+                buyer.getDocumentNumber(), new BigDecimal("10.00"));
+        AtomicBoolean cleared = new AtomicBoolean();
+        doReturn(Completable.fromAction(() -> cleared.set(true))).when(purchaseRepository).clearReservation(purchaseId);
+
+        // When & Then
+        assertThrows(InsufficientBalanceException.class, () -> {
+            purchaseService.updateTransactionStatus(successResponse).blockingGet();
+        });
+
+        verify(ledgerService, times(1)).transfer(anyString(), anyString(), anyString(), any(BigDecimal.class));
+        assertFalse(cleared.get());
+    }
+
+    @Test
+    void updateTransactionStatus_ResultAfterExpiryIsRejected() {
+        // Given
+        BootCoinPurchase expired = finished(processingPurchase(), TransactionStatus.FAILED, "expired");
+        expired.setReservedAmount(null);
+        doReturn(Maybe.just(expired)).when(purchaseRepository).findById(purchaseId);
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.updateTransactionStatus(successResponse).blockingGet();
+        });
+
+        assertEquals("Transaction is no longer processing.", exception.getMessage());
+        verify(purchaseRepository).findById(purchaseId);
+        verifyNoMoreInteractions(purchaseRepository);
+        verify(ledgerService, never()).transfer(anyString(), anyString(), anyString(), any(BigDecimal.class));
+    }
+
+    @Test
+    void updateTransactionStatus_RedeliveredResultFinishesOpenEscrowOnly() {
+        // Given
+        BootCoinPurchase completed = finished(processingPurchase(), TransactionStatus.COMPLETED, "ok");
+        doReturn(Maybe.just(completed)).when(purchaseRepository).findById(purchaseId);
+        doReturn(Single.just(new BootCoinTransaction())).when(transactionRepository)
+            .save(any(BootCoinTransaction.class));
+        doReturn(Completable.complete()).when(purchaseRepository).clearReservation(purchaseId);
+
+        // When: the escrow was left open by a crash, then closed by the first redelivery
+        purchaseService.updateTransactionStatus(successResponse).blockingGet();
+        completed.setReservedAmount(null);
+        purchaseService.updateTransactionStatus(successResponse).blockingGet();
+
+        // Then
+        verify(purchaseRepository, never())
+            .finishProcessing(anyString(), any(TransactionStatus.class), anyString());
+        verify(ledgerService, times(1)).transfer(anyString(), anyString(), anyString(), any(BigDecimal.class));
+        verify(purchaseRepository, times(1)).clearReservation(purchaseId);
     }
 
     @Test
@@ -588,4 +802,471 @@ public class BootCoinPurchaseServiceImplTest {
         verifyNoInteractions(transactionRepository);
         verifyNoInteractions(userRepository);
     }
+
+    private static BootCoinPurchase copy(BootCoinPurchase purchase) {
+        return BootCoinPurchase.builder()
+                .id(purchase.getId())
+                .buyerDocumentNumber(purchase.getBuyerDocumentNumber())
+                .buyerPhoneNumber(purchase.getBuyerPhoneNumber())
+                .buyerAccountNumber(purchase.getBuyerAccountNumber())
+                .sellerDocumentNumber(purchase.getSellerDocumentNumber())
+                .sellerPhoneNumber(purchase.getSellerPhoneNumber())
+                .sellerAccountNumber(purchase.getSellerAccountNumber())
+                .paymentMethod(purchase.getPaymentMethod())
+                .amount(purchase.getAmount())
+                .totalAmountInPEN(purchase.getTotalAmountInPEN())
+                .limitRate(purchase.getLimitRate())
+                .reservedAmount(purchase.getReservedAmount())
+                .status(purchase.getStatus())
+                .transactionType(purchase.getTransactionType())
+                .createdAt(purchase.getCreatedAt())
+                .updatedAt(purchase.getUpdatedAt())
+                .version(purchase.getVersion())
+                .build();
+    }
+
+    private static Map<String, BootCoinPurchase> storedWith(BootCoinPurchase purchase) {
+        Map<String, BootCoinPurchase> stored = new HashMap<>();
+        stored.put(purchase.getId(), copy(purchase));
+        return stored;
+    }
+
+    // Stands in for the conditional findAndModify: only a waiting purchase of an accepted method can be claimed, once.
+    private void stubAtomicClaim(Map<String, BootCoinPurchase> stored) {
+        doAnswer(invocation -> {
+            BootCoinPurchase claim = invocation.getArgument(0);
+            Collection<PaymentMethod> paymentMethods = invocation.getArgument(1);
+            synchronized (stored) {
+                BootCoinPurchase current = stored.get(claim.getId());
+                if (current == null || current.getStatus() != TransactionStatus.WAITING_FOR_SELLER
+                        || !paymentMethods.contains(current.getPaymentMethod())) {
+                    return Maybe.empty();
+                }
+                BootCoinPurchase claimed = copy(current);
+                claimed.setSellerDocumentNumber(claim.getSellerDocumentNumber());
+                claimed.setSellerPhoneNumber(claim.getSellerPhoneNumber());
+                claimed.setSellerAccountNumber(claim.getSellerAccountNumber());
+                if (claim.getTotalAmountInPEN() != null) {
+                    claimed.setTotalAmountInPEN(claim.getTotalAmountInPEN());
+                }
+                claimed.setReservedAmount(current.getAmount());
+                claimed.setStatus(TransactionStatus.PROCESSING);
+                claimed.setVersion(current.getVersion() == null ? 1L : current.getVersion() + 1);
+                stored.put(claimed.getId(), claimed);
+                return Maybe.just(copy(claimed));
+            }
+        }).when(purchaseRepository).claimWaitingPurchase(any(BootCoinPurchase.class), anyCollection());
+    }
+
+    @Test
+    void acceptPurchase_AlreadyClaimedIsRejectedWithoutRetry() {
+        // Given
+        BootCoinPurchase taken = copy(savedPurchase);
+        taken.setStatus(TransactionStatus.PROCESSING);
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        stubAtomicClaim(storedWith(taken));
+        doReturn(Maybe.just(taken)).when(purchaseRepository).findById(purchaseId);
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.acceptPurchase(purchaseId, sellRequest).blockingGet();
+        });
+
+        assertEquals("Purchase request not found or already taken.", exception.getMessage());
+        verify(purchaseRepository).claimWaitingPurchase(any(BootCoinPurchase.class), anyCollection());
+        verify(purchaseRepository).findById(purchaseId);
+        verifyNoMoreInteractions(purchaseRepository);
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    void acceptPurchase_ReservationFailureGivesClaimBack() {
+        // Given
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        stubAtomicClaim(storedWith(savedPurchase));
+        doReturn(Completable.error(new InsufficientBalanceException(seller.getDocumentNumber())))
+            .when(ledgerService).transfer("reserve:" + purchaseId, seller.getDocumentNumber(),
+                LedgerService.ESCROW_ACCOUNT_PREFIX + purchaseId, new BigDecimal("10.00"));
+        doReturn(Maybe.just(savedPurchase)).when(purchaseRepository)
+            .releaseClaim(purchaseId, seller.getDocumentNumber());
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.acceptPurchase(purchaseId, sellRequest).blockingGet();
+        });
+
+        assertEquals("Seller does not have enough balance to take the offer.", exception.getMessage());
+        verify(purchaseRepository).releaseClaim(purchaseId, seller.getDocumentNumber());
+        verify(ledgerService, never()).balanceOf(anyString());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    void acceptPurchase_ConcurrentAcceptsCannotOversellSeller() throws Exception {
+        // Given: only one 10.00 reservation fits in the seller's 15.00
+        Map<String, BootCoinPurchase> stored = new HashMap<>();
+        for (String id : Arrays.asList("p1", "p2")) {
+            BootCoinPurchase purchase = copy(savedPurchase);
+            purchase.setId(id);
+            stored.put(id, purchase);
+        }
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        stubAtomicClaim(stored);
+        BigDecimal[] available = {new BigDecimal("15.00")};
+        doAnswer(invocation -> Completable.defer(() -> {
+            synchronized (available) {
+                BigDecimal amount = invocation.getArgument(3);
+                if (available[0].compareTo(amount) < 0) {
+                    return Completable.error(new InsufficientBalanceException(seller.getDocumentNumber()));
+                }
+                available[0] = available[0].subtract(amount);
+                return Completable.complete();
+            }
+        })).when(ledgerService).transfer(startsWith("reserve:"), eq(seller.getDocumentNumber()), anyString(),
+            any(BigDecimal.class));
+        doAnswer(invocation -> {
+            synchronized (stored) {
+                BootCoinPurchase released = stored.get(invocation.<String>getArgument(0));
+                released.setStatus(TransactionStatus.WAITING_FOR_SELLER);
+                released.setSellerDocumentNumber(null);
+                released.setReservedAmount(null);
+                return Maybe.just(copy(released));
+            }
+        }).when(purchaseRepository).releaseClaim(anyString(), eq(seller.getDocumentNumber()));
+        doReturn(null).when(kafkaTemplate).send(anyString(), any());
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Boolean>> attempts = new ArrayList<>();
+        try {
+            for (String id : Arrays.asList("p1", "p2")) {
+                attempts.add(executor.submit(() -> {
+                    start.await();
+                    try {
+                        purchaseService.acceptPurchase(id, sellRequest).blockingGet();
+                        return true;
+                    } catch (IllegalArgumentException e) {
+                        assertEquals("Seller does not have enough balance to take the offer.", e.getMessage());
+                        return false;
+                    }
+                }));
+            }
+            start.countDown();
+
+            // When
+            int accepted = 0;
+            for (Future<Boolean> attempt : attempts) {
+                accepted += attempt.get(10, TimeUnit.SECONDS) ? 1 : 0;
+            }
+
+            // Then
+            assertEquals(1, accepted);
+            assertEquals(0, new BigDecimal("5.00").compareTo(available[0]));
+            assertEquals(1, stored.values().stream()
+                .filter(purchase -> purchase.getStatus() == TransactionStatus.WAITING_FOR_SELLER)
+                .count());
+            verify(kafkaTemplate, times(1)).send(anyString(), any());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private BootCoinSellOfferRequest sellOfferRequest(String rate) {
+        return BootCoinSellOfferRequest.builder()
+                .sellerDocumentNumber(seller.getDocumentNumber())
+                .paymentMethod(PaymentMethod.TRANSFER)
+                .sellerAccountNumber(seller.getBankAccountId())
+                .amount(new BigDecimal("20.00"))
+                .rate(new BigDecimal(rate))
+                .build();
+    }
+
+    private static BootCoinSellOffer copy(BootCoinSellOffer offer) {
+        return BootCoinSellOffer.builder()
+                .id(offer.getId())
+                .sellerDocumentNumber(offer.getSellerDocumentNumber())
+                .paymentMethod(offer.getPaymentMethod())
+                .sellerPhoneNumber(offer.getSellerPhoneNumber())
+                .sellerAccountNumber(offer.getSellerAccountNumber())
+                .amount(offer.getAmount())
+                .remainingAmount(offer.getRemainingAmount())
+                .rate(offer.getRate())
+                .status(offer.getStatus())
+                .createdAt(offer.getCreatedAt())
+                .updatedAt(offer.getUpdatedAt())
+                .build();
+    }
+
+    // Stands in for the offers collection: takes and give-backs are conditional, like the updates.
+    private Map<String, BootCoinSellOffer> stubOfferCollection() {
+        Map<String, BootCoinSellOffer> offers = new HashMap<>();
+        lenient().doAnswer(invocation -> {
+            BootCoinSellOffer offer = invocation.getArgument(0);
+            synchronized (offers) {
+                if (offer.getId() == null) {
+                    offer.setId("offer-" + (offers.size() + 1));
+                }
+                offers.put(offer.getId(), copy(offer));
+            }
+            return Single.just(offer);
+        }).when(sellOfferRepository).save(any(BootCoinSellOffer.class));
+        lenient().doAnswer(invocation -> Maybe.defer(() -> {
+            synchronized (offers) {
+                BootCoinSellOffer offer = offers.get(invocation.<String>getArgument(0));
+                return offer == null ? Maybe.empty() : Maybe.just(copy(offer));
+            }
+        })).when(sellOfferRepository).findById(anyString());
+        lenient().doAnswer(invocation -> {
+            PaymentMethod paymentMethod = invocation.getArgument(0);
+            BigDecimal maxRate = invocation.getArgument(1);
+            BigDecimal amount = invocation.getArgument(2);
+            String excludedSeller = invocation.getArgument(3);
+            synchronized (offers) {
+                return Flowable.fromIterable(offers.values().stream()
+                        .filter(offer -> offer.getStatus() == SellOfferStatus.OPEN
+                                && offer.getPaymentMethod() == paymentMethod
+                                && offer.getRate().compareTo(maxRate) <= 0
+                                && offer.getRemainingAmount().compareTo(amount) >= 0
+                                && !offer.getSellerDocumentNumber().equals(excludedSeller))
+                        .sorted(Comparator.comparing(BootCoinSellOffer::getRate))
+                        .map(BootCoinPurchaseServiceImplTest::copy)
+                        .collect(Collectors.toList()));
+            }
+        }).when(sellOfferRepository).findMatchingOffers(any(PaymentMethod.class), any(BigDecimal.class),
+            any(BigDecimal.class), anyString());
+        lenient().doAnswer(invocation -> Maybe.defer(() -> {
+            BigDecimal amount = invocation.getArgument(1);
+            synchronized (offers) {
+                BootCoinSellOffer offer = offers.get(invocation.<String>getArgument(0));
+                if (offer == null || offer.getStatus() != SellOfferStatus.OPEN
+                        || offer.getRemainingAmount().compareTo(amount) < 0) {
+                    return Maybe.empty();
+                }
+                offer.setRemainingAmount(offer.getRemainingAmount().subtract(amount));
+                offer.setStatus(offer.getRemainingAmount().signum() == 0 ? SellOfferStatus.FILLED
+                    : SellOfferStatus.OPEN);
+                return Maybe.just(copy(offer));
+            }
+        })).when(sellOfferRepository).takeFromOffer(anyString(), any(BigDecimal.class));
+        lenient().doAnswer(invocation -> Maybe.defer(() -> {
+            BigDecimal amount = invocation.getArgument(1);
+            synchronized (offers) {
+                BootCoinSellOffer offer = offers.get(invocation.<String>getArgument(0));
+                if (offer == null || offer.getStatus() == SellOfferStatus.CANCELLED) {
+                    return Maybe.empty();
+                }
+                offer.setRemainingAmount(offer.getRemainingAmount().add(amount));
+                offer.setStatus(SellOfferStatus.OPEN);
+                return Maybe.just(copy(offer));
+            }
+        })).when(sellOfferRepository).giveBackToOffer(anyString(), any(BigDecimal.class));
+        lenient().doAnswer(invocation -> Maybe.defer(() -> {
+            synchronized (offers) {
+                BootCoinSellOffer offer = offers.get(invocation.<String>getArgument(0));
+                if (offer == null || offer.getStatus() != SellOfferStatus.OPEN
+                        || !offer.getSellerDocumentNumber().equals(invocation.getArgument(1))) {
+                    return Maybe.empty();
+                }
+                offer.setStatus(SellOfferStatus.CANCELLED);
+                return Maybe.just(copy(offer));
+            }
+        })).when(sellOfferRepository).cancelOpenOffer(anyString(), anyString());
+        return offers;
+    }
+
+    // Stands in for the purchases collection, with the claim as the only way out of waiting.
+    private Map<String, BootCoinPurchase> stubPurchaseCollection() {
+        Map<String, BootCoinPurchase> stored = new HashMap<>();
+        lenient().doAnswer(invocation -> {
+            BootCoinPurchase purchase = invocation.getArgument(0);
+            if (purchase.getId() == null) {
+                purchase.setId(purchaseId);
+            }
+            synchronized (stored) {
+                stored.put(purchase.getId(), copy(purchase));
+            }
+            return Single.just(purchase);
+        }).when(purchaseRepository).save(any(BootCoinPurchase.class));
+        lenient().doAnswer(invocation -> {
+            PaymentMethod paymentMethod = invocation.getArgument(0);
+            BigDecimal minRate = invocation.getArgument(1);
+            BigDecimal maxAmount = invocation.getArgument(2);
+            String excludedBuyer = invocation.getArgument(3);
+            synchronized (stored) {
+                return Flowable.fromIterable(stored.values().stream()
+                        .filter(purchase -> purchase.getStatus() == TransactionStatus.WAITING_FOR_SELLER
+                                && purchase.getPaymentMethod() == paymentMethod
+                                && purchase.getLimitRate().compareTo(minRate) >= 0
+                                && purchase.getAmount().compareTo(maxAmount) <= 0
+                                && !purchase.getBuyerDocumentNumber().equals(excludedBuyer))
+                        .sorted(Comparator.comparing(BootCoinPurchase::getLimitRate).reversed())
+                        .map(BootCoinPurchaseServiceImplTest::copy)
+                        .collect(Collectors.toList()));
+            }
+        }).when(purchaseRepository).findMatchingPurchases(any(PaymentMethod.class), any(BigDecimal.class),
+            any(BigDecimal.class), anyString());
+        stubAtomicClaim(stored);
+        return stored;
+    }
+
+    @Test
+    void postSellOffer_MatchesRestingPurchaseAtPurchasePrice() {
+        // Given
+        doReturn(Maybe.just(buyer)).when(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        doReturn(Single.just(exchangeRate)).when(exchangeRateService).getCurrentExchangeRate();
+        stubOfferCollection();
+        stubPurchaseCollection();
+        doReturn(null).when(kafkaTemplate).send(anyString(), any());
+        purchaseService.requestPurchase(purchaseRequest).blockingGet();
+
+        // When
+        BootCoinSellOffer offer = purchaseService.postSellOffer(sellOfferRequest("3.80")).blockingGet();
+
+        // Then
+        assertEquals(0, new BigDecimal("10.00").compareTo(offer.getRemainingAmount()));
+        assertEquals(SellOfferStatus.OPEN, offer.getStatus());
+        verify(kafkaTemplate).send(eq("bootcoin.transaction.transfer.requested"), transferEventCaptor.capture());
+        TransactionEvent capturedEvent = transferEventCaptor.getValue();
+        assertEquals(purchaseId, capturedEvent.getPurchaseId());
+        assertEquals(seller.getDocumentNumber(), capturedEvent.getSellerDocumentNumber());
+        assertEquals(seller.getBankAccountId(), capturedEvent.getSellerAccountNumber());
+        assertEquals(0, new BigDecimal("38.50").compareTo(capturedEvent.getTotalAmountInPEN()));
+    }
+
+    @Test
+    void requestPurchase_MatchesRestingOfferAtOfferPrice() {
+        // Given
+        doReturn(Maybe.just(buyer)).when(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        doReturn(Single.just(exchangeRate)).when(exchangeRateService).getCurrentExchangeRate();
+        Map<String, BootCoinSellOffer> offers = stubOfferCollection();
+        stubPurchaseCollection();
+        doReturn(null).when(kafkaTemplate).send(anyString(), any());
+        purchaseService.postSellOffer(sellOfferRequest("3.70")).blockingGet();
+
+        // When
+        BootCoinPurchaseResponse response = purchaseService.requestPurchase(purchaseRequest).blockingGet();
+
+        // Then
+        assertEquals(TransactionStatus.PROCESSING, response.getStatus());
+        assertEquals(0, new BigDecimal("37.00").compareTo(response.getTotalAmountInPEN()));
+        assertEquals(0, new BigDecimal("10.00").compareTo(offers.get("offer-1").getRemainingAmount()));
+        verify(kafkaTemplate).send(eq("bootcoin.transaction.transfer.requested"), any(TransactionEvent.class));
+    }
+
+    @Test
+    void requestPurchase_ClaimedElsewhereGivesAmountBackToOffer() {
+        // Given: another instance claims the purchase between the take and the claim
+        doReturn(Maybe.just(buyer)).when(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        doReturn(Single.just(exchangeRate)).when(exchangeRateService).getCurrentExchangeRate();
+        Map<String, BootCoinSellOffer> offers = stubOfferCollection();
+        purchaseService.postSellOffer(sellOfferRequest("3.70")).blockingGet();
+        doReturn(Single.just(savedPurchase)).when(purchaseRepository).save(any(BootCoinPurchase.class));
+        doReturn(Maybe.empty()).when(purchaseRepository)
+            .claimWaitingPurchase(any(BootCoinPurchase.class), anyCollection());
+
+        // When
+        BootCoinPurchaseResponse response = purchaseService.requestPurchase(purchaseRequest).blockingGet();
+
+        // Then
+        assertEquals(TransactionStatus.WAITING_FOR_SELLER, response.getStatus());
+        assertEquals(0, new BigDecimal("20.00").compareTo(offers.get("offer-1").getRemainingAmount()));
+        assertEquals(SellOfferStatus.OPEN, offers.get("offer-1").getStatus());
+        verify(sellOfferRepository).takeFromOffer("offer-1", new BigDecimal("10.00"));
+        verify(ledgerService, never()).transfer(anyString(), anyString(), anyString(), any(BigDecimal.class));
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    void postSellOffer_UnfundedSellerWithdrawsOfferAndPurchaseWaits() {
+        // Given
+        doReturn(Maybe.just(buyer)).when(userRepository).findByDocumentNumber(buyer.getDocumentNumber());
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        doReturn(Single.just(exchangeRate)).when(exchangeRateService).getCurrentExchangeRate();
+        Map<String, BootCoinSellOffer> offers = stubOfferCollection();
+        Map<String, BootCoinPurchase> stored = stubPurchaseCollection();
+        purchaseService.requestPurchase(purchaseRequest).blockingGet();
+        doReturn(Completable.error(new InsufficientBalanceException(seller.getDocumentNumber())))
+            .when(ledgerService).transfer(startsWith("reserve:"), anyString(), anyString(), any(BigDecimal.class));
+        doAnswer(invocation -> {
+            BootCoinPurchase released = stored.get(invocation.<String>getArgument(0));
+            released.setStatus(TransactionStatus.WAITING_FOR_SELLER);
+            released.setSellerDocumentNumber(null);
+            released.setReservedAmount(null);
+            return Maybe.just(copy(released));
+        }).when(purchaseRepository).releaseClaim(purchaseId, seller.getDocumentNumber());
+
+        // When
+        BootCoinSellOffer offer = purchaseService.postSellOffer(sellOfferRequest("3.80")).blockingGet();
+
+        // Then
+        assertEquals(SellOfferStatus.CANCELLED, offer.getStatus());
+        assertEquals(0, new BigDecimal("20.00").compareTo(offers.get(offer.getId()).getRemainingAmount()));
+        assertEquals(TransactionStatus.WAITING_FOR_SELLER, stored.get(purchaseId).getStatus());
+        verifyNoInteractions(kafkaTemplate);
+    }
+
+    @Test
+    void postSellOffer_SellerBankAccountMismatch() {
+        // Given
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        BootCoinSellOfferRequest request = sellOfferRequest("3.80");
+        request.setSellerAccountNumber("another-account");
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.postSellOffer(request).blockingGet();
+        });
+
+        assertEquals("Seller bank account does not match.", exception.getMessage());
+        verifyNoInteractions(sellOfferRepository);
+    }
+
+    @Test
+    void cancelSellOffer_CancelsOpenOffer() {
+        // Given
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        stubOfferCollection();
+        BootCoinSellOffer posted = purchaseService.postSellOffer(sellOfferRequest("3.80")).blockingGet();
+
+        // When
+        BootCoinSellOffer cancelled = purchaseService.cancelSellOffer(posted.getId(), seller.getDocumentNumber())
+            .blockingGet();
+
+        // Then
+        assertEquals(SellOfferStatus.CANCELLED, cancelled.getStatus());
+        assertEquals(0, new BigDecimal("20.00").compareTo(cancelled.getRemainingAmount()));
+    }
+
+    @Test
+    void cancelSellOffer_OtherSellerIsRejected() {
+        // Given
+        doReturn(Maybe.just(seller)).when(userRepository).findByDocumentNumber(seller.getDocumentNumber());
+        Map<String, BootCoinSellOffer> offers = stubOfferCollection();
+        BootCoinSellOffer posted = purchaseService.postSellOffer(sellOfferRequest("3.80")).blockingGet();
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.cancelSellOffer(posted.getId(), buyer.getDocumentNumber()).blockingGet();
+        });
+
+        assertEquals("Sell offer does not belong to the seller.", exception.getMessage());
+        assertEquals(SellOfferStatus.OPEN, offers.get(posted.getId()).getStatus());
+        verify(sellOfferRepository, never()).cancelOpenOffer(anyString(), anyString());
+    }
+
+    @Test
+    void cancelSellOffer_NotFound() {
+        // Given
+        doReturn(Maybe.empty()).when(sellOfferRepository).findById("missing-offer");
+
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            purchaseService.cancelSellOffer("missing-offer", seller.getDocumentNumber()).blockingGet();
+        });
+
+        assertEquals("Sell offer not found or already filled.", exception.getMessage());
+        verify(sellOfferRepository, never()).cancelOpenOffer(anyString(), anyString());
+    }
 }
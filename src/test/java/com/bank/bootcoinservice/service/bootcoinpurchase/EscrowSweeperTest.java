@@ -0,0 +1,85 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.dto.bootcoinpurchase.TransactionResponse;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import io.reactivex.Flowable;
+import io.reactivex.Single;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class EscrowSweeperTest {
+    @Mock
+    private BootCoinPurchaseRepository repository;
+    @Mock
+    private BootCoinPurchaseService purchaseService;
+    @Captor
+    private ArgumentCaptor<TransactionResponse> resultCaptor;
+    private EscrowSweeper sweeper;
+    @BeforeEach
+    void setUp() {
+        sweeper = new EscrowSweeper(repository, purchaseService, 60000);
+    }
+    private static BootCoinPurchase purchase(String id, TransactionStatus status, String message) {
+        return BootCoinPurchase.builder()
+                .id(id)
+                .amount(new BigDecimal("10.00"))
+                .reservedAmount(new BigDecimal("10.00"))
+                .status(status)
+                .messageResponse(message)
+                .updatedAt(LocalDateTime.now().minusHours(1))
+                .build();
+    }
+    @Test
+    void sweep_FinishesOpenEscrowsAgain() {
+        // Given
+        doReturn(Flowable.just(purchase("paid", TransactionStatus.COMPLETED, "ok"),
+                purchase("refused", TransactionStatus.FAILED, "declined")))
+                .when(repository).findByStatusInAndReservedAmountExistsAndUpdatedAtBefore(
+                        eq(List.of(TransactionStatus.COMPLETED, TransactionStatus.FAILED)), eq(true),
+                        any(LocalDateTime.class));
+        doAnswer(invocation -> Single.just(new BootCoinPurchase()))
+                .when(purchaseService).updateTransactionStatus(any(TransactionResponse.class));
+        // When
+        sweeper.sweep().blockingAwait();
+        // Then
+        verify(purchaseService, times(2)).updateTransactionStatus(resultCaptor.capture());
+        List<TransactionResponse> results = resultCaptor.getAllValues();
+        assertEquals("paid", results.get(0).getTransactionId());
+        assertTrue(results.get(0).isSuccess());
+        assertEquals("ok", results.get(0).getMessage());
+        assertEquals("refused", results.get(1).getTransactionId());
+        assertFalse(results.get(1).isSuccess());
+        assertEquals("declined", results.get(1).getMessage());
+        verify(repository, never()).findByStatusAndUpdatedAtBefore(any(TransactionStatus.class),
+                any(LocalDateTime.class));
+    }
+    @Test
+    void sweep_OneFailureDoesNotStopTheRest() {
+        // Given
+        doReturn(Flowable.just(purchase("first", TransactionStatus.COMPLETED, "ok"),
+                purchase("second", TransactionStatus.FAILED, "declined")))
+                .when(repository).findByStatusInAndReservedAmountExistsAndUpdatedAtBefore(
+                        anyCollection(), eq(true), any(LocalDateTime.class));
+        doAnswer(invocation -> invocation.<TransactionResponse>getArgument(0).getTransactionId().equals("first")
+                ? Single.error(new IllegalStateException("Mongo unavailable"))
+                : Single.just(new BootCoinPurchase()))
+                .when(purchaseService).updateTransactionStatus(any(TransactionResponse.class));
+        // When
+        sweeper.sweep().blockingAwait();
+        // Then
+        verify(purchaseService, times(2)).updateTransactionStatus(any(TransactionResponse.class));
+    }
+}
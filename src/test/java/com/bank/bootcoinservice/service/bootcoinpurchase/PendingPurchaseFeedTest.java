@@ -0,0 +1,141 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.mongodb.MongoException;
+import com.mongodb.client.model.changestream.OperationType;
+import org.bson.BsonDocument;
+import org.bson.BsonString;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.mongodb.core.ChangeStreamEvent;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import reactor.test.StepVerifier;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class PendingPurchaseFeedTest {
+    @Mock
+    private ReactiveMongoTemplate mongoTemplate;
+    private final Sinks.Many<ChangeStreamEvent<BootCoinPurchase>> changeStream =
+            Sinks.many().unicast().onBackpressureBuffer();
+    private PendingPurchaseFeed feed;
+    @BeforeEach
+    void setUp() {
+        lenient().doReturn(changeStream.asFlux()).when(mongoTemplate).changeStream(
+                eq(PendingPurchaseFeed.COLLECTION), any(ChangeStreamOptions.class), eq(BootCoinPurchase.class));
+        feed = new PendingPurchaseFeed(mongoTemplate, 8, 2);
+    }
+    @AfterEach
+    void tearDown() {
+        feed.disconnect();
+    }
+    private static BootCoinPurchase purchase(String id, TransactionStatus status) {
+        return BootCoinPurchase.builder().id(id).status(status).build();
+    }
+    @SuppressWarnings("unchecked")
+    private void emit(String token, OperationType operation, BootCoinPurchase purchase) {
+        ChangeStreamEvent<BootCoinPurchase> event = mock(ChangeStreamEvent.class, withSettings().lenient());
+        when(event.getResumeToken()).thenReturn(new BsonDocument("_data", new BsonString(token)));
+        when(event.getOperationType()).thenReturn(operation);
+        when(event.getBody()).thenReturn(purchase);
+        changeStream.tryEmitNext(event);
+    }
+    private static String describe(PendingPurchaseFeed.Change change) {
+        return change.getType() + ":" + change.getPurchaseId() + "@" + change.getResumeToken();
+    }
+    @Test
+    void connect_FansOutStatusChangesToEverySubscriber() {
+        // Given
+        List<String> first = new ArrayList<>();
+        List<String> second = new ArrayList<>();
+        feed.changes(null, Flux.empty()).subscribe(change -> first.add(describe(change)));
+        feed.changes(null, Flux.empty()).subscribe(change -> second.add(describe(change)));
+        feed.connect();
+        // When
+        emit("t1", OperationType.INSERT, purchase("p1", TransactionStatus.WAITING_FOR_SELLER));
+        emit("t2", OperationType.UPDATE, purchase("p1", TransactionStatus.PROCESSING));
+        emit("t3", OperationType.INSERT, purchase("p2", TransactionStatus.COMPLETED));
+        emit("t4", OperationType.UPDATE, purchase("p1", TransactionStatus.WAITING_FOR_SELLER));
+        // Then
+        List<String> expected = List.of("ADDED:p1@t1", "REMOVED:p1@t2", "ADDED:p1@t4");
+        assertEquals(expected, first);
+        assertEquals(expected, second);
+        verify(mongoTemplate, times(1)).changeStream(eq(PendingPurchaseFeed.COLLECTION),
+                any(ChangeStreamOptions.class), eq(BootCoinPurchase.class));
+    }
+    @Test
+    void changes_KnownTokenReplaysOnlyMissedChanges() {
+        // Given
+        feed.connect();
+        emit("t1", OperationType.INSERT, purchase("p1", TransactionStatus.WAITING_FOR_SELLER));
+        emit("t2", OperationType.INSERT, purchase("p2", TransactionStatus.WAITING_FOR_SELLER));
+        emit("t3", OperationType.UPDATE, purchase("p1", TransactionStatus.PROCESSING));
+        // When & Then
+        StepVerifier.create(feed.changes("t2", Flux.error(new AssertionError("snapshot must not be read"))))
+                .assertNext(change -> assertEquals("REMOVED:p1@t3", describe(change)))
+                .then(() -> emit("t4", OperationType.INSERT, purchase("p3", TransactionStatus.WAITING_FOR_SELLER)))
+                .assertNext(change -> assertEquals("ADDED:p3@t4", describe(change)))
+                .thenCancel()
+                .verify();
+    }
+    @Test
+    void changes_ForgottenTokenStartsFromSnapshot() {
+        // Given: only the last two changes are kept
+        feed.connect();
+        emit("t1", OperationType.INSERT, purchase("p1", TransactionStatus.WAITING_FOR_SELLER));
+        emit("t2", OperationType.INSERT, purchase("p2", TransactionStatus.WAITING_FOR_SELLER));
+        emit("t3", OperationType.INSERT, purchase("p3", TransactionStatus.WAITING_FOR_SELLER));
+        // When & Then
+        StepVerifier.create(feed.changes("t1", Flux.just(purchase("p9", TransactionStatus.WAITING_FOR_SELLER))))
+                .assertNext(change -> assertEquals("ADDED:p9@t3", describe(change)))
+                .then(() -> emit("t4", OperationType.UPDATE, purchase("p9", TransactionStatus.PROCESSING)))
+                .assertNext(change -> assertEquals("REMOVED:p9@t4", describe(change)))
+                .thenCancel()
+                .verify();
+    }
+    @Test
+    void connect_HistoryLostFailsClientsAndDropsKeptChanges() {
+        // Given
+        feed.connect();
+        emit("t1", OperationType.INSERT, purchase("p1", TransactionStatus.WAITING_FOR_SELLER));
+        // When & Then
+        StepVerifier.create(feed.changes("t1", Flux.empty()))
+                .then(() -> changeStream.tryEmitError(new MongoException(286, "Resume point no longer in oplog")))
+                .expectError(IllegalStateException.class)
+                .verify();
+        StepVerifier.create(feed.changes("t1", Flux.just(purchase("p9", TransactionStatus.WAITING_FOR_SELLER))))
+                .assertNext(change -> assertEquals("p9", change.getPurchaseId()))
+                .thenCancel()
+                .verify();
+    }
+    @Test
+    void changes_ClientThatFallsBehindIsFailedWithoutSlowingOthers() {
+        // Given
+        List<String> fast = new ArrayList<>();
+        feed.changes(null, Flux.empty()).subscribe(change -> fast.add(describe(change)));
+        feed.connect();
+        // When & Then
+        StepVerifier.create(feed.changes(null, Flux.empty()), 0)
+                .then(() -> {
+                    for (int i = 0; i < 10; i++) {
+                        emit("t" + i, OperationType.INSERT, purchase("p" + i, TransactionStatus.WAITING_FOR_SELLER));
+                    }
+                })
+                .thenRequest(Long.MAX_VALUE)
+                .thenConsumeWhile(change -> true)
+                .expectError(IllegalStateException.class)
+                .verify();
+        assertEquals(10, fast.size());
+    }
+}
@@ -0,0 +1,93 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import io.reactivex.Single;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import reactor.core.publisher.Flux;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class PurchaseExpirySweeperTest {
+    @Mock
+    private BootCoinPurchaseRepository repository;
+    @Mock
+    private BootCoinPurchaseService purchaseService;
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+    private final Map<String, String> leases = new HashMap<>();
+    private PurchaseExpirySweeper sweeper;
+    @BeforeEach
+    void setUp() {
+        // Lease scripts: acquire takes (owner, duration), release takes (owner)
+        lenient().doAnswer(invocation -> {
+            String key = invocation.<List<String>>getArgument(1).get(0);
+            List<String> args = invocation.getArgument(2);
+            String owner = args.get(0);
+            String holder = leases.get(key);
+            if (args.size() == 2) {
+                if (holder == null || holder.equals(owner)) {
+                    leases.put(key, owner);
+                    return Flux.just(1L);
+                }
+                return Flux.just(0L);
+            }
+            return Flux.just(owner.equals(holder) && leases.remove(key) != null ? 1L : 0L);
+        }).when(redisTemplate).execute(any(RedisScript.class), anyList(), anyList());
+        sweeper = new PurchaseExpirySweeper(repository, purchaseService, redisTemplate, 86400000, 60000, 30000, 2);
+    }
+    @Test
+    void sweep_ExpiresBatchesUntilOneIsShortAndReleasesTheLease() {
+        // Given
+        when(purchaseService.expireWaitingPurchases(any(LocalDateTime.class), eq(2)))
+                .thenReturn(Single.just(2), Single.just(2), Single.just(1));
+        // When
+        sweeper.sweep().blockingAwait();
+        // Then
+        verify(purchaseService, times(3)).expireWaitingPurchases(any(LocalDateTime.class), eq(2));
+        assertFalse(leases.containsKey(PurchaseExpirySweeper.LEASE_KEY));
+    }
+    @Test
+    void sweep_SkipsWhileAnotherInstanceHoldsTheLease() {
+        // Given
+        leases.put(PurchaseExpirySweeper.LEASE_KEY, "other-instance");
+        // When
+        sweeper.sweep().blockingAwait();
+        // Then
+        verifyNoInteractions(purchaseService);
+        assertEquals("other-instance", leases.get(PurchaseExpirySweeper.LEASE_KEY));
+    }
+    @Test
+    void sweep_StopsAfterLosingTheLease() {
+        // Given: the lease lapses during the first batch and another instance takes it
+        when(purchaseService.expireWaitingPurchases(any(LocalDateTime.class), eq(2))).thenAnswer(invocation -> {
+            leases.put(PurchaseExpirySweeper.LEASE_KEY, "other-instance");
+            return Single.just(2);
+        });
+        // When
+        sweeper.sweep().blockingAwait();
+        // Then
+        verify(purchaseService, times(1)).expireWaitingPurchases(any(LocalDateTime.class), eq(2));
+        assertEquals("other-instance", leases.get(PurchaseExpirySweeper.LEASE_KEY));
+    }
+    @Test
+    void sweep_BatchFailureStillReleasesTheLease() {
+        // Given
+        when(purchaseService.expireWaitingPurchases(any(LocalDateTime.class), eq(2)))
+                .thenReturn(Single.error(new IllegalStateException("Mongo unavailable")));
+        // When
+        sweeper.sweep().blockingAwait();
+        // Then
+        assertFalse(leases.containsKey(PurchaseExpirySweeper.LEASE_KEY));
+    }
+}
@@ -0,0 +1,70 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveStringRedisTemplate;
+import org.springframework.data.redis.core.ReactiveZSetOperations;
+import reactor.core.publisher.Mono;
+import reactor.test.StepVerifier;
+import java.time.Duration;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class SagaTimeoutsTest {
+    @Mock
+    private ReactiveStringRedisTemplate redisTemplate;
+    @Mock
+    private ReactiveZSetOperations<String, String> zSetOperations;
+    private SagaTimeouts sagaTimeouts;
+    @BeforeEach
+    void setUp() {
+        lenient().when(redisTemplate.opsForZSet()).thenReturn(zSetOperations);
+        lenient().when(zSetOperations.add(eq(SagaTimeouts.SAGAS_KEY), anyString(), anyDouble()))
+                .thenReturn(Mono.just(true));
+        lenient().when(zSetOperations.remove(eq(SagaTimeouts.SAGAS_KEY), any())).thenReturn(Mono.just(1L));
+        sagaTimeouts = new SagaTimeouts(redisTemplate, 50, 10);
+    }
+    @AfterEach
+    void tearDown() {
+        sagaTimeouts.stop();
+    }
+    @Test
+    void start_FiresDeadlineLocallyAndTracksItInRedis() {
+        // When & Then
+        StepVerifier.create(sagaTimeouts.expired())
+                .then(() -> sagaTimeouts.start("p1"))
+                .expectNext("p1")
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        verify(zSetOperations).add(eq(SagaTimeouts.SAGAS_KEY), eq("p1"), anyDouble());
+    }
+    @Test
+    void finish_CancelsTheDeadline() {
+        // When & Then
+        StepVerifier.create(sagaTimeouts.expired())
+                .then(() -> {
+                    sagaTimeouts.start("p1");
+                    sagaTimeouts.finish("p1");
+                    sagaTimeouts.start("p2");
+                })
+                .expectNext("p2")
+                .thenCancel()
+                .verify(Duration.ofSeconds(5));
+        verify(zSetOperations).remove(SagaTimeouts.SAGAS_KEY, "p1");
+    }
+    @Test
+    void claim_KeepsOnlySagasThisInstanceRemoved() {
+        // Given: another instance already removed p2
+        when(zSetOperations.remove(SagaTimeouts.SAGAS_KEY, "p2")).thenReturn(Mono.just(0L));
+        // When
+        List<String> claimed = sagaTimeouts.claim(List.of("p1", "p2", "p3")).collectList().block();
+        // Then
+        assertEquals(List.of("p1", "p3"), claimed);
+    }
+}
@@ -0,0 +1,99 @@
+package com.bank.bootcoinservice.service.bootcoinpurchase;
+
+import com.bank.bootcoinservice.dto.bootcoinpurchase.TransactionResponse;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Captor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class SagaWatchdogTest {
+    @Mock
+    private SagaTimeouts sagaTimeouts;
+    @Mock
+    private BootCoinPurchaseRepository repository;
+    @Mock
+    private BootCoinPurchaseService purchaseService;
+    @Captor
+    private ArgumentCaptor<TransactionResponse> resultCaptor;
+    private SagaWatchdog watchdog;
+    @BeforeEach
+    void setUp() {
+        watchdog = new SagaWatchdog(sagaTimeouts, repository, purchaseService, 10000, 30000, 2);
+    }
+    private static BootCoinPurchase purchase(String id, TransactionStatus status) {
+        return BootCoinPurchase.builder().id(id).status(status).build();
+    }
+    @Test
+    void compensate_FailsSagasStillProcessingAndSkipsFinishedOnes() {
+        // Given: the result of "paid" arrived on another instance
+        when(repository.findById("stuck")).thenReturn(Maybe.just(purchase("stuck", TransactionStatus.PROCESSING)));
+        when(repository.findById("paid")).thenReturn(Maybe.just(purchase("paid", TransactionStatus.COMPLETED)));
+        when(purchaseService.updateTransactionStatus(any(TransactionResponse.class)))
+                .thenReturn(Single.just(purchase("stuck", TransactionStatus.FAILED)));
+        // When
+        watchdog.compensate(List.of("stuck", "paid")).blockingAwait();
+        // Then
+        verify(purchaseService).updateTransactionStatus(resultCaptor.capture());
+        assertEquals("stuck", resultCaptor.getValue().getTransactionId());
+        assertFalse(resultCaptor.getValue().isSuccess());
+        assertEquals(SagaWatchdog.TIMEOUT_MESSAGE, resultCaptor.getValue().getMessage());
+        verify(sagaTimeouts, never()).retryLater(anyString(), any(Duration.class));
+    }
+    @Test
+    void compensate_RetriesLaterWhenCompensationFails() {
+        // Given
+        when(repository.findById("first")).thenReturn(Maybe.just(purchase("first", TransactionStatus.PROCESSING)));
+        when(repository.findById("second")).thenReturn(Maybe.just(purchase("second", TransactionStatus.PROCESSING)));
+        when(purchaseService.updateTransactionStatus(any(TransactionResponse.class)))
+                .thenReturn(Single.error(new IllegalStateException("Mongo unavailable")),
+                        Single.just(purchase("second", TransactionStatus.FAILED)));
+        // When
+        watchdog.compensate(List.of("first", "second")).blockingAwait();
+        // Then
+        verify(sagaTimeouts).retryLater("first", Duration.ofMillis(30000));
+        verify(purchaseService, times(2)).updateTransactionStatus(any(TransactionResponse.class));
+    }
+    @Test
+    void stale_BatchesPurchasesProcessingPastTheTimeout() {
+        // Given
+        when(sagaTimeouts.getTimeout()).thenReturn(Duration.ofMinutes(5));
+        when(repository.findByStatusAndUpdatedAtBefore(eq(TransactionStatus.PROCESSING), any(LocalDateTime.class)))
+                .thenReturn(Flowable.just(purchase("first", TransactionStatus.PROCESSING),
+                        purchase("second", TransactionStatus.PROCESSING),
+                        purchase("third", TransactionStatus.PROCESSING)));
+        // When
+        List<List<String>> batches = watchdog.stale().toList().blockingGet();
+        // Then
+        assertEquals(List.of(List.of("first", "second"), List.of("third")), batches);
+        ArgumentCaptor<LocalDateTime> cutoff = ArgumentCaptor.forClass(LocalDateTime.class);
+        verify(repository).findByStatusAndUpdatedAtBefore(eq(TransactionStatus.PROCESSING), cutoff.capture());
+        assertTrue(cutoff.getValue().isBefore(LocalDateTime.now().minusMinutes(5)));
+        assertTrue(cutoff.getValue().isAfter(LocalDateTime.now().minusMinutes(6)));
+    }
+    @Test
+    void stale_LookupFailureSkipsTheScan() {
+        // Given
+        when(sagaTimeouts.getTimeout()).thenReturn(Duration.ofMinutes(5));
+        when(repository.findByStatusAndUpdatedAtBefore(eq(TransactionStatus.PROCESSING), any(LocalDateTime.class)))
+                .thenReturn(Flowable.error(new IllegalStateException("Mongo unavailable")));
+        // When
+        List<List<String>> batches = watchdog.stale().toList().blockingGet();
+        // Then
+        assertTrue(batches.isEmpty());
+    }
+}
@@ -1,52 +1,80 @@
 package com.bank.bootcoinservice.service.exchangerate;
 
+import com.bank.bootcoinservice.config.ExchangeRateRedisSerializer;
+import com.bank.bootcoinservice.dto.exchangerate.ExchangeRateHistoryPage;
 import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
-import org.mockito.InjectMocks;
+import org.mockito.ArgumentCaptor;
+import org.mockito.ArgumentMatchers;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.RedisConnectionFailureException;
 import org.springframework.data.redis.core.ReactiveRedisTemplate;
 import org.springframework.data.redis.core.ReactiveValueOperations;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.data.redis.serializer.RedisElementReader;
+import org.springframework.data.redis.serializer.SerializationException;
+import reactor.core.publisher.Flux;
+import io.reactivex.Flowable;
 import reactor.core.publisher.Mono;
 import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.anyList;
 import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 @ExtendWith(MockitoExtension.class)
 public class BootCoinExchangeRateServiceImplTest {
     @Mock
-    private ReactiveRedisTemplate<String, String> redisTemplate;
+    private ReactiveRedisTemplate<String, BootCoinExchangeRate> redisTemplate;
     @Mock
-    private ReactiveValueOperations<String, String> valueOperations;
+    private ReactiveValueOperations<String, BootCoinExchangeRate> valueOperations;
     @Mock
-    private ObjectMapper objectMapper;
-    @InjectMocks
+    private ExchangeRateNearCache nearCache;
+    @Mock
+    private ExchangeRateHistory exchangeRateHistory;
+    @Mock
+    private ExchangeRateChangeFeed changeFeed;
+    @Mock
+    private ExchangeRateTable exchangeRateTable;
+    @Mock
+    private ExchangeRateSnapshotStore snapshotStore;
+    private ExchangeRateRedisSerializer serializer;
     private BootCoinExchangeRateServiceImpl exchangeRateService;
     private BootCoinExchangeRate exchangeRate;
-    private String exchangeRateJson;
-    private static final String EXCHANGE_RATE_KEY = "bootcoin:exchange_rate";
+    private static final String EXCHANGE_RATE_KEY = "bootcoin:{exchange_rate}";
+    private static final List<String> SCRIPT_KEYS = List.of(EXCHANGE_RATE_KEY, ExchangeRateHistory.HISTORY_KEY);
     @BeforeEach
-    void setUp() throws Exception {
+    void setUp() {
         // Initialize test data
         exchangeRate = new BootCoinExchangeRate();
         exchangeRate.setBuyRate(new BigDecimal("3.75"));
         exchangeRate.setSellRate(new BigDecimal("3.85"));
         exchangeRate.setUpdatedAt(LocalDateTime.now());
-        // Create JSON representation
-        exchangeRateJson = "{\"buyRate\":3.75,\"sellRate\":3.85,\"updatedAt\":\"2023-01-01T12:00:00\"}";
+        serializer = new ExchangeRateRedisSerializer(new ObjectMapper().findAndRegisterModules());
+        exchangeRateService = new BootCoinExchangeRateServiceImpl(redisTemplate, serializer, nearCache,
+                exchangeRateHistory, changeFeed, exchangeRateTable, snapshotStore);
         // Mock the operations
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+        lenient().when(snapshotStore.latencyBudget()).thenReturn(Duration.ofSeconds(5));
     }
     @Test
-    void getCurrentExchangeRate_Success() throws Exception {
+    void getCurrentExchangeRate_Success() {
         // Given
-        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.just(exchangeRateJson));
-        when(objectMapper.readValue(exchangeRateJson, BootCoinExchangeRate.class)).thenReturn(exchangeRate);
+        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.just(exchangeRate));
         // When
         BootCoinExchangeRate result = exchangeRateService.getCurrentExchangeRate().blockingGet();
         // Then
@@ -54,7 +82,56 @@ public class BootCoinExchangeRateServiceImplTest {
         assertEquals(exchangeRate.getBuyRate(), result.getBuyRate());
         assertEquals(exchangeRate.getSellRate(), result.getSellRate());
         verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verify(objectMapper).readValue(exchangeRateJson, BootCoinExchangeRate.class);
+        verify(nearCache).put(exchangeRate, 0L);
+        verify(snapshotStore).record(exchangeRate);
+    }
+    @Test
+    void getCurrentExchangeRate_RunsOnCallingThread() {
+        // Given
+        AtomicReference<Thread> redisThread = new AtomicReference<>();
+        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.fromCallable(() -> {
+            redisThread.set(Thread.currentThread());
+            return exchangeRate;
+        }));
+        // When
+        exchangeRateService.getCurrentExchangeRate().blockingGet();
+        // Then
+        assertSame(Thread.currentThread(), redisThread.get());
+    }
+    @Test
+    void getCurrentExchangeRate_NearCacheHit() {
+        // Given
+        when(nearCache.get()).thenReturn(exchangeRate);
+        // When
+        BootCoinExchangeRate result = exchangeRateService.getCurrentExchangeRate().blockingGet();
+        // Then
+        assertSame(exchangeRate, result);
+        verifyNoInteractions(valueOperations);
+    }
+    @Test
+    void getCurrentExchangeRate_ConcurrentMissesShareOneRedisCall() {
+        // Given
+        when(valueOperations.get(EXCHANGE_RATE_KEY))
+                .thenReturn(Mono.just(exchangeRate).delayElement(Duration.ofMillis(200)));
+        // When
+        List<BootCoinExchangeRate> results = Flowable.range(0, 20)
+                .flatMapSingle(i -> exchangeRateService.getCurrentExchangeRate())
+                .toList()
+                .blockingGet();
+        // Then
+        assertEquals(20, results.size());
+        results.forEach(result -> assertSame(exchangeRate, result));
+        verify(valueOperations, times(1)).get(EXCHANGE_RATE_KEY);
+    }
+    @Test
+    void getCurrentExchangeRate_SequentialMissesLoadAgain() {
+        // Given
+        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.just(exchangeRate));
+        // When
+        exchangeRateService.getCurrentExchangeRate().blockingGet();
+        exchangeRateService.getCurrentExchangeRate().blockingGet();
+        // Then
+        verify(valueOperations, times(2)).get(EXCHANGE_RATE_KEY);
     }
     @Test
     void getCurrentExchangeRate_NotFound() {
@@ -66,32 +143,88 @@ public class BootCoinExchangeRateServiceImplTest {
         });
         assertEquals("Exchange rate not found", exception.getMessage());
         verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verifyNoInteractions(objectMapper);
+        verify(nearCache, never()).put(any(), anyLong());
     }
     @Test
-    void getCurrentExchangeRate_DeserializationError() throws Exception {
+    void getCurrentExchangeRate_DeserializationError() {
         // Given
-        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.just(exchangeRateJson));
-        when(objectMapper.readValue(exchangeRateJson, BootCoinExchangeRate.class))
-                .thenThrow(new RuntimeException("JSON parsing error"));
+        when(valueOperations.get(EXCHANGE_RATE_KEY))
+                .thenReturn(Mono.error(new SerializationException("Unrecognized exchange rate record")));
         // When & Then
         Exception exception = assertThrows(RuntimeException.class, () -> {
             exchangeRateService.getCurrentExchangeRate().blockingGet();
         });
         assertTrue(exception.getMessage().contains("Error parsing exchange rate data"));
         verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verify(objectMapper).readValue(exchangeRateJson, BootCoinExchangeRate.class);
     }
-    private void setupRedisOperations() {
-        // Mock the operations - moved from setUp to here so it's only called when needed
-        when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    @Test
+    void getCurrentExchangeRate_SlowRedisServesSnapshot() {
+        // Given
+        BootCoinExchangeRate snapshot = new BootCoinExchangeRate(new BigDecimal("3.70"), new BigDecimal("3.80"),
+                LocalDateTime.now(), 3L);
+        when(snapshotStore.latencyBudget()).thenReturn(Duration.ofMillis(50));
+        when(snapshotStore.fallback()).thenReturn(snapshot);
+        when(valueOperations.get(EXCHANGE_RATE_KEY))
+                .thenReturn(Mono.just(exchangeRate).delayElement(Duration.ofSeconds(1)));
+        // When
+        BootCoinExchangeRate result = exchangeRateService.getCurrentExchangeRate().blockingGet();
+        // Then
+        assertSame(snapshot, result);
+    }
+    @Test
+    void getCurrentExchangeRate_SlowRedisWithoutSnapshotWaitsForLoad() {
+        // Given
+        when(snapshotStore.latencyBudget()).thenReturn(Duration.ofMillis(50));
+        when(snapshotStore.fallback()).thenReturn(null);
+        when(valueOperations.get(EXCHANGE_RATE_KEY))
+                .thenReturn(Mono.just(exchangeRate).delayElement(Duration.ofMillis(300)));
+        // When
+        BootCoinExchangeRate result = exchangeRateService.getCurrentExchangeRate().blockingGet();
+        // Then
+        assertSame(exchangeRate, result);
+        verify(valueOperations, times(1)).get(EXCHANGE_RATE_KEY);
     }
     @Test
-    void saveExchangeRateToCache_Success() throws Exception {
+    void getCurrentExchangeRate_RedisDownServesSnapshot() {
+        // Given
+        BootCoinExchangeRate snapshot = new BootCoinExchangeRate(new BigDecimal("3.70"), new BigDecimal("3.80"),
+                LocalDateTime.now(), 3L);
+        when(snapshotStore.fallback()).thenReturn(snapshot);
+        when(valueOperations.get(EXCHANGE_RATE_KEY))
+                .thenReturn(Mono.error(new RedisConnectionFailureException("Connection refused")));
+        // When
+        BootCoinExchangeRate result = exchangeRateService.getCurrentExchangeRate().blockingGet();
+        // Then
+        assertSame(snapshot, result);
+        verify(nearCache, never()).put(any(), anyLong());
+    }
+    @Test
+    void getCurrentExchangeRate_NotFoundIsNotMaskedBySnapshot() {
         // Given
         when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.empty());
-        when(objectMapper.writeValueAsString(any(BootCoinExchangeRate.class))).thenReturn(exchangeRateJson);
-        when(valueOperations.set(eq(EXCHANGE_RATE_KEY), eq(exchangeRateJson))).thenReturn(Mono.just(Boolean.TRUE));
+        // When & Then
+        assertThrows(RuntimeException.class, () -> exchangeRateService.getCurrentExchangeRate().blockingGet());
+        verify(snapshotStore, never()).fallback();
+    }
+    private void givenScriptReturns(long version) {
+        when(redisTemplate.execute(ArgumentMatchers.<RedisScript<Long>>any(), eq(SCRIPT_KEYS),
+                anyList(), any(), ArgumentMatchers.<RedisElementReader<Long>>any()))
+                .thenReturn(Flux.just(version));
+    }
+    @SuppressWarnings("unchecked")
+    private List<byte[]> capturedScriptArgs() {
+        ArgumentCaptor<List<byte[]>> args = ArgumentCaptor.forClass(List.class);
+        verify(redisTemplate).execute(ArgumentMatchers.<RedisScript<Long>>any(), eq(SCRIPT_KEYS),
+                args.capture(), any(), ArgumentMatchers.<RedisElementReader<Long>>any());
+        return args.getValue();
+    }
+    private static String text(byte[] bytes) {
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+    @Test
+    void saveExchangeRateToCache_Success() {
+        // Given
+        givenScriptReturns(1L);
         // When
         BootCoinExchangeRate result = exchangeRateService
                 .saveExchangeRateToCache(new BigDecimal("3.75"), new BigDecimal("3.85"))
@@ -100,14 +233,22 @@ public class BootCoinExchangeRateServiceImplTest {
         assertNotNull(result);
         assertEquals(new BigDecimal("3.75"), result.getBuyRate());
         assertEquals(new BigDecimal("3.85"), result.getSellRate());
-        verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verify(objectMapper).writeValueAsString(any(BootCoinExchangeRate.class));
-        verify(valueOperations).set(eq(EXCHANGE_RATE_KEY), eq(exchangeRateJson));
+        assertEquals(1L, result.getVersion());
+        List<byte[]> args = capturedScriptArgs();
+        assertEquals("create", text(args.get(0)));
+        BootCoinExchangeRate stored = serializer.deserialize(args.get(1));
+        assertEquals(new BigDecimal("3.75"), stored.getBuyRate());
+        assertEquals(new BigDecimal("3.85"), stored.getSellRate());
+        assertEquals("0", text(args.get(2)));
+        assertEquals(ExchangeRateChangeFeed.CHANGES_CHANNEL, text(args.get(3)));
+        verify(nearCache).invalidate();
+        verify(exchangeRateTable).apply("PEN", result);
+        verifyNoInteractions(valueOperations);
     }
     @Test
     void saveExchangeRateToCache_AlreadyExists() {
         // Given
-        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.just(exchangeRateJson));
+        givenScriptReturns(0L);
         // When & Then
         Exception exception = assertThrows(RuntimeException.class, () -> {
             exchangeRateService
@@ -115,34 +256,24 @@ public class BootCoinExchangeRateServiceImplTest {
                     .blockingGet();
         });
         assertEquals("Exchange rate already exists, use update instead", exception.getMessage());
-        verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verifyNoMoreInteractions(objectMapper);
-        verify(valueOperations, never()).set(anyString(), anyString());
+        verify(nearCache, never()).invalidate();
     }
     @Test
-    void saveExchangeRateToCache_SerializationError() throws Exception {
-        // Given
-        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.empty());
-        when(objectMapper.writeValueAsString(any(BootCoinExchangeRate.class)))
-                .thenThrow(new RuntimeException("JSON serialization error"));
+    void saveExchangeRateToCache_SerializationError() {
         // When & Then
         Exception exception = assertThrows(RuntimeException.class, () -> {
             exchangeRateService
-                    .saveExchangeRateToCache(new BigDecimal("3.75"), new BigDecimal("3.85"))
+                    .saveExchangeRateToCache(new BigDecimal("12345678901234567890.5"), new BigDecimal("3.85"))
                     .blockingGet();
         });
-        assertTrue(exception.getMessage().contains("JSON serialization error"));
-        verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verify(objectMapper).writeValueAsString(any(BootCoinExchangeRate.class));
-        verify(valueOperations, never()).set(anyString(), anyString());
+        assertTrue(exception.getMessage().contains("does not fit in 64 bits"));
+        verify(redisTemplate, never()).execute(ArgumentMatchers.<RedisScript<Long>>any(), anyList(), anyList(),
+                any(), ArgumentMatchers.<RedisElementReader<Long>>any());
     }
     @Test
-    void updateExchangeRate_Success() throws Exception {
+    void updateExchangeRate_Success() {
         // Given
-        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.just(exchangeRateJson));
-        when(objectMapper.readValue(exchangeRateJson, BootCoinExchangeRate.class)).thenReturn(exchangeRate);
-        when(objectMapper.writeValueAsString(any(BootCoinExchangeRate.class))).thenReturn(exchangeRateJson);
-        when(valueOperations.set(eq(EXCHANGE_RATE_KEY), eq(exchangeRateJson))).thenReturn(Mono.just(Boolean.TRUE));
+        givenScriptReturns(5L);
         // When
         BootCoinExchangeRate result = exchangeRateService
                 .updateExchangeRate(new BigDecimal("3.90"), new BigDecimal("4.00"))
@@ -151,15 +282,26 @@ public class BootCoinExchangeRateServiceImplTest {
         assertNotNull(result);
         assertEquals(new BigDecimal("3.90"), result.getBuyRate());
         assertEquals(new BigDecimal("4.00"), result.getSellRate());
-        verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verify(objectMapper).readValue(exchangeRateJson, BootCoinExchangeRate.class);
-        verify(objectMapper).writeValueAsString(any(BootCoinExchangeRate.class));
-        verify(valueOperations).set(eq(EXCHANGE_RATE_KEY), eq(exchangeRateJson));
+        assertEquals(5L, result.getVersion());
+        List<byte[]> args = capturedScriptArgs();
+        assertEquals("update", text(args.get(0)));
+        assertEquals("0", text(args.get(2)));
+        verify(nearCache).invalidate();
+    }
+    @Test
+    void updateExchangeRate_WithExpectedVersion() {
+        // Given
+        givenScriptReturns(5L);
+        // When
+        exchangeRateService.updateExchangeRate(new BigDecimal("3.90"), new BigDecimal("4.00"), 4L)
+                .blockingGet();
+        // Then
+        assertEquals("4", text(capturedScriptArgs().get(2)));
     }
     @Test
     void updateExchangeRate_NotFound() {
         // Given
-        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.empty());
+        givenScriptReturns(0L);
         // When & Then
         Exception exception = assertThrows(RuntimeException.class, () -> {
             exchangeRateService
@@ -167,25 +309,130 @@ public class BootCoinExchangeRateServiceImplTest {
                     .blockingGet();
         });
         assertEquals("Exchange rate does not exist, cannot update", exception.getMessage());
-        verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verifyNoInteractions(objectMapper);
+        verify(nearCache, never()).invalidate();
     }
     @Test
-    void updateExchangeRate_DeserializationError() throws Exception {
+    void updateExchangeRate_VersionConflict() {
         // Given
-        when(valueOperations.get(EXCHANGE_RATE_KEY)).thenReturn(Mono.just(exchangeRateJson));
-        when(objectMapper.readValue(exchangeRateJson, BootCoinExchangeRate.class))
-                .thenThrow(new RuntimeException("JSON parsing error"));
+        givenScriptReturns(-1L);
         // When & Then
-        Exception exception = assertThrows(RuntimeException.class, () -> {
+        assertThrows(ExchangeRateVersionConflictException.class, () -> {
             exchangeRateService
-                    .updateExchangeRate(new BigDecimal("3.90"), new BigDecimal("4.00"))
+                    .updateExchangeRate(new BigDecimal("3.90"), new BigDecimal("4.00"), 2L)
                     .blockingGet();
         });
-        assertTrue(exception.getMessage().contains("Error parsing existing exchange rate data"));
-        verify(valueOperations).get(EXCHANGE_RATE_KEY);
-        verify(objectMapper).readValue(exchangeRateJson, BootCoinExchangeRate.class);
-        verify(objectMapper, never()).writeValueAsString(any());
-        verify(valueOperations, never()).set(anyString(), anyString());
+        verify(nearCache, never()).invalidate();
+    }
+    @Test
+    void getExchangeRate_ReadsFromTableSnapshot() {
+        // Given
+        when(exchangeRateTable.normalize("usd")).thenReturn("USD");
+        when(exchangeRateTable.rates()).thenReturn(Mono.just(Map.of("USD", exchangeRate)));
+        // When
+        BootCoinExchangeRate result = exchangeRateService.getExchangeRate("usd").blockingGet();
+        // Then
+        assertSame(exchangeRate, result);
+        verifyNoInteractions(valueOperations);
+    }
+    @Test
+    void getExchangeRate_NotStored() {
+        // Given
+        when(exchangeRateTable.normalize("USD")).thenReturn("USD");
+        when(exchangeRateTable.rates()).thenReturn(Mono.just(Map.of()));
+        // When & Then
+        Exception exception = assertThrows(RuntimeException.class, () -> {
+            exchangeRateService.getExchangeRate("USD").blockingGet();
+        });
+        assertEquals("Exchange rate not found for USD", exception.getMessage());
+    }
+    @Test
+    void updateExchangeRates_WritesEveryCurrencyInOneBatch() {
+        // Given
+        BootCoinExchangeRate usdRate = new BootCoinExchangeRate(new BigDecimal("1.00"), new BigDecimal("1.03"),
+                null, 0L);
+        when(exchangeRateTable.normalize(anyString())).thenAnswer(invocation -> invocation.getArgument(0));
+        when(redisTemplate.execute(ArgumentMatchers.<RedisScript<Long>>any(), anyList(), anyList(), any(),
+                ArgumentMatchers.<RedisElementReader<Long>>any()))
+                .thenReturn(Flux.just(7L));
+        Map<String, BootCoinExchangeRate> request = new LinkedHashMap<>();
+        request.put("PEN", exchangeRate);
+        request.put("USD", usdRate);
+        // When
+        Map<String, BootCoinExchangeRate> result = exchangeRateService.updateExchangeRates(request).blockingGet();
+        // Then
+        assertEquals(Set.of("PEN", "USD"), result.keySet());
+        assertEquals(7L, result.get("USD").getVersion());
+        assertEquals(new BigDecimal("1.03"), result.get("USD").getSellRate());
+        verify(redisTemplate).execute(ArgumentMatchers.<RedisScript<Long>>any(), eq(SCRIPT_KEYS), anyList(),
+                any(), ArgumentMatchers.<RedisElementReader<Long>>any());
+        verify(redisTemplate).execute(ArgumentMatchers.<RedisScript<Long>>any(),
+                eq(List.of("bootcoin:{exchange_rate:USD}", "bootcoin:{exchange_rate:USD}:history")), anyList(),
+                any(), ArgumentMatchers.<RedisElementReader<Long>>any());
+        verify(exchangeRateTable).apply("USD", result.get("USD"));
+        verify(nearCache, times(1)).invalidate();
+    }
+    @Test
+    void updateExchangeRates_UnsupportedCurrency() {
+        // Given
+        when(exchangeRateTable.normalize("EUR")).thenThrow(new IllegalArgumentException("Unsupported currency: EUR"));
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            exchangeRateService.updateExchangeRates(Map.of("EUR", exchangeRate)).blockingGet();
+        });
+        assertEquals("Unsupported currency: EUR", exception.getMessage());
+        verify(redisTemplate, never()).execute(ArgumentMatchers.<RedisScript<Long>>any(), anyList(), anyList(),
+                any(), ArgumentMatchers.<RedisElementReader<Long>>any());
+    }
+    @Test
+    void getRateAt_Success() {
+        // Given
+        Instant instant = Instant.parse("2024-05-01T10:00:00Z");
+        when(exchangeRateHistory.rateAt(instant)).thenReturn(Mono.just(exchangeRate));
+        // When
+        BootCoinExchangeRate result = exchangeRateService.getRateAt(instant).blockingGet();
+        // Then
+        assertSame(exchangeRate, result);
+    }
+    @Test
+    void getRateAt_DisposingCancelsRedisCall() {
+        // Given
+        Instant instant = Instant.parse("2024-05-01T10:00:00Z");
+        AtomicBoolean cancelled = new AtomicBoolean();
+        when(exchangeRateHistory.rateAt(instant)).thenReturn(Mono.<BootCoinExchangeRate>never()
+                .doOnCancel(() -> cancelled.set(true)));
+        // When
+        exchangeRateService.getRateAt(instant).subscribe().dispose();
+        // Then
+        assertTrue(cancelled.get());
+    }
+    @Test
+    void getRateAt_NoneRecorded() {
+        // Given
+        Instant instant = Instant.parse("2024-05-01T10:00:00Z");
+        when(exchangeRateHistory.rateAt(instant)).thenReturn(Mono.empty());
+        // When & Then
+        Exception exception = assertThrows(RuntimeException.class, () -> {
+            exchangeRateService.getRateAt(instant).blockingGet();
+        });
+        assertEquals("No exchange rate recorded at 2024-05-01T10:00:00Z", exception.getMessage());
+    }
+    @Test
+    void getExchangeRateHistory_Success() {
+        // Given
+        ExchangeRateHistoryPage page = new ExchangeRateHistoryPage(List.of(), null);
+        when(exchangeRateHistory.page("1714557600000-0", 20)).thenReturn(Mono.just(page));
+        // When
+        ExchangeRateHistoryPage result = exchangeRateService.getExchangeRateHistory("1714557600000-0", 20)
+                .blockingGet();
+        // Then
+        assertSame(page, result);
+    }
+    @Test
+    void getExchangeRateHistory_InvalidPageSize() {
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> {
+            exchangeRateService.getExchangeRateHistory(null, 0).blockingGet();
+        });
+        verifyNoInteractions(exchangeRateHistory);
     }
 }
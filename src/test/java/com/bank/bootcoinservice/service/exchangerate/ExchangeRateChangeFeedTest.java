@@ -0,0 +1,69 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.connection.ReactiveSubscription;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import reactor.core.publisher.Flux;
+import reactor.test.StepVerifier;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateChangeFeedTest {
+    @Mock
+    private ReactiveRedisTemplate<String, BootCoinExchangeRate> redisTemplate;
+    private ExchangeRateChangeFeed changeFeed;
+    @BeforeEach
+    void setUp() {
+        changeFeed = new ExchangeRateChangeFeed(redisTemplate, 2);
+    }
+    @AfterEach
+    void tearDown() {
+        changeFeed.disconnect();
+    }
+    private static BootCoinExchangeRate rate(long version) {
+        return new BootCoinExchangeRate(new BigDecimal("3.75"), new BigDecimal("3.85"), LocalDateTime.now(), version);
+    }
+    private void givenPublished(BootCoinExchangeRate... rates) {
+        Flux<ReactiveSubscription.Message<String, BootCoinExchangeRate>> messages = Flux.fromArray(rates)
+                .map(rate -> new ReactiveSubscription.ChannelMessage<>(ExchangeRateChangeFeed.CHANGES_CHANNEL, rate));
+        doReturn(messages).when(redisTemplate).listenToChannel(ExchangeRateChangeFeed.CHANGES_CHANNEL);
+    }
+    @Test
+    void connect_FansOutEveryChangeToEverySubscriber() {
+        // Given
+        givenPublished(rate(1L), rate(2L));
+        List<Long> first = new ArrayList<>();
+        List<Long> second = new ArrayList<>();
+        changeFeed.changes().subscribe(rate -> first.add(rate.getVersion()));
+        changeFeed.changes().subscribe(rate -> second.add(rate.getVersion()));
+        // When
+        changeFeed.connect();
+        // Then
+        assertEquals(List.of(1L, 2L), first);
+        assertEquals(List.of(1L, 2L), second);
+        verify(redisTemplate, times(1)).listenToChannel(ExchangeRateChangeFeed.CHANGES_CHANNEL);
+    }
+    @Test
+    void changes_SlowSubscriberDropsOldest() {
+        // Given
+        givenPublished(rate(1L), rate(2L), rate(3L));
+        // When & Then
+        StepVerifier.create(changeFeed.changes(), 0)
+                .then(changeFeed::connect)
+                .thenRequest(2)
+                .assertNext(rate -> assertEquals(2L, rate.getVersion()))
+                .assertNext(rate -> assertEquals(3L, rate.getVersion()))
+                .thenCancel()
+                .verify();
+    }
+}
@@ -0,0 +1,176 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.config.ExchangeRateRedisSerializer;
+import com.bank.bootcoinservice.dto.exchangerate.ExchangeRateHistoryPage;
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.RedisZSetCommands.Limit;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveStreamOperations;
+import org.springframework.data.redis.serializer.RedisSerializationContext;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Sinks;
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateHistoryTest {
+    @Mock
+    private ReactiveRedisTemplate<String, BootCoinExchangeRate> redisTemplate;
+    @Mock
+    private ReactiveStreamOperations<String, String, BootCoinExchangeRate> streamOperations;
+    @Mock
+    private ExchangeRateChangeFeed changeFeed;
+    private ExchangeRateRedisSerializer serializer;
+    private MapRecord<String, String, BootCoinExchangeRate> first;
+    private MapRecord<String, String, BootCoinExchangeRate> second;
+    private MapRecord<String, String, BootCoinExchangeRate> third;
+    @BeforeEach
+    void setUp() {
+        serializer = new ExchangeRateRedisSerializer(new ObjectMapper());
+        doReturn(streamOperations).when(redisTemplate).opsForStream(any(RedisSerializationContext.class));
+        first = record("1000-0", 1L);
+        second = record("2000-0", 2L);
+        third = record("3000-0", 3L);
+    }
+    private static MapRecord<String, String, BootCoinExchangeRate> record(String id, long version) {
+        BootCoinExchangeRate rate = new BootCoinExchangeRate(new BigDecimal("3.75"), new BigDecimal("3.85"),
+                null, version);
+        return MapRecord.create(ExchangeRateHistory.HISTORY_KEY, Map.of("rate", rate)).withId(RecordId.of(id));
+    }
+    private void givenReverseRangeReturns(Flux<MapRecord<String, String, BootCoinExchangeRate>> records) {
+        when(streamOperations.reverseRange(eq(ExchangeRateHistory.HISTORY_KEY), any(Range.class), any(Limit.class)))
+                .thenReturn(records);
+    }
+    @Test
+    void rateAt_BinarySearchesWindow() {
+        // Given
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 10, 30000);
+        givenReverseRangeReturns(Flux.just(third, second, first));
+        // When & Then
+        assertEquals(2L, history.rateAt(Instant.ofEpochMilli(2500)).block().getVersion());
+        assertEquals(1L, history.rateAt(Instant.ofEpochMilli(1000)).block().getVersion());
+        assertEquals(3L, history.rateAt(Instant.ofEpochMilli(3000)).block().getVersion());
+        assertNull(history.rateAt(Instant.ofEpochMilli(999)).block());
+        verify(streamOperations, times(1))
+                .reverseRange(eq(ExchangeRateHistory.HISTORY_KEY), any(Range.class), any(Limit.class));
+    }
+    @Test
+    void rateAt_OlderThanWindowReadsStream() {
+        // Given
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 2, 30000);
+        givenReverseRangeReturns(Flux.just(third, second));
+        // When
+        history.rateAt(Instant.ofEpochMilli(2500)).block();
+        when(streamOperations.reverseRange(eq(ExchangeRateHistory.HISTORY_KEY),
+                eq(Range.leftUnbounded(Range.Bound.inclusive("1500"))), any(Limit.class)))
+                .thenReturn(Flux.just(first));
+        BootCoinExchangeRate result = history.rateAt(Instant.ofEpochMilli(1500)).block();
+        // Then
+        assertEquals(1L, result.getVersion());
+    }
+    @Test
+    void rateAt_RecentInstantServedFromWindowWithoutChanges() {
+        // Given
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 10, 30000);
+        givenReverseRangeReturns(Flux.just(second, first));
+        history.rateAt(Instant.ofEpochMilli(1000)).block();
+        // When
+        BootCoinExchangeRate result = history.rateAt(Instant.now()).block();
+        // Then
+        assertEquals(2L, result.getVersion());
+        verify(streamOperations, times(1))
+                .reverseRange(eq(ExchangeRateHistory.HISTORY_KEY), any(Range.class), any(Limit.class));
+    }
+    @Test
+    void rateAt_ChangeNotificationAppendsOnlyNewEntries() {
+        // Given
+        Sinks.Many<BootCoinExchangeRate> changes = Sinks.many().multicast().directBestEffort();
+        when(changeFeed.changes()).thenReturn(changes.asFlux());
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 10, 30000);
+        history.subscribe();
+        givenReverseRangeReturns(Flux.just(first));
+        history.rateAt(Instant.ofEpochMilli(1000)).block();
+        long now = System.currentTimeMillis();
+        MapRecord<String, String, BootCoinExchangeRate> latest = record(now + "-0", 2L);
+        when(streamOperations.reverseRange(eq(ExchangeRateHistory.HISTORY_KEY),
+                eq(Range.rightUnbounded(Range.Bound.inclusive("1000-1"))), any(Limit.class)))
+                .thenReturn(Flux.just(latest));
+        // When
+        changes.tryEmitNext(latest.getValue().get("rate"));
+        BootCoinExchangeRate result = history.rateAt(Instant.ofEpochMilli(now)).block();
+        // Then
+        assertEquals(2L, result.getVersion());
+        assertEquals(1L, history.rateAt(Instant.ofEpochMilli(1500)).block().getVersion());
+        verify(streamOperations, times(2))
+                .reverseRange(eq(ExchangeRateHistory.HISTORY_KEY), any(Range.class), any(Limit.class));
+        history.unsubscribe();
+    }
+    @Test
+    void rateAt_WindowBehindNotifiedVersionReadsStream() {
+        // Given
+        Sinks.Many<BootCoinExchangeRate> changes = Sinks.many().multicast().directBestEffort();
+        when(changeFeed.changes()).thenReturn(changes.asFlux());
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 10, 30000);
+        history.subscribe();
+        givenReverseRangeReturns(Flux.just(first));
+        history.rateAt(Instant.ofEpochMilli(1000)).block();
+        // the replica has not seen version 2 yet when the notification arrives
+        when(streamOperations.reverseRange(eq(ExchangeRateHistory.HISTORY_KEY),
+                eq(Range.rightUnbounded(Range.Bound.inclusive("1000-1"))), any(Limit.class)))
+                .thenReturn(Flux.empty());
+        changes.tryEmitNext(second.getValue().get("rate"));
+        // When
+        BootCoinExchangeRate result = history.rateAt(Instant.now()).block();
+        // Then
+        assertEquals(1L, result.getVersion());
+        verify(streamOperations, times(3))
+                .reverseRange(eq(ExchangeRateHistory.HISTORY_KEY), any(Range.class), any(Limit.class));
+        history.unsubscribe();
+    }
+    @Test
+    void page_ReturnsNextCursorWhenMoreEntriesExist() {
+        // Given
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 10, 30000);
+        givenReverseRangeReturns(Flux.just(third, second, first));
+        // When
+        ExchangeRateHistoryPage page = history.page(null, 2).block();
+        // Then
+        assertEquals(2, page.getItems().size());
+        assertEquals("3000-0", page.getItems().get(0).getId());
+        assertEquals(Instant.ofEpochMilli(3000), page.getItems().get(0).getEffectiveAt());
+        assertEquals("2000-0", page.getNextCursor());
+    }
+    @Test
+    void page_SkipsCursorEntry() {
+        // Given
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 10, 30000);
+        givenReverseRangeReturns(Flux.just(second, first));
+        // When
+        ExchangeRateHistoryPage page = history.page("2000-0", 2).block();
+        // Then
+        assertEquals(1, page.getItems().size());
+        assertEquals("1000-0", page.getItems().get(0).getId());
+        assertNull(page.getNextCursor());
+    }
+    @Test
+    void page_InvalidCursor() {
+        // Given
+        ExchangeRateHistory history = new ExchangeRateHistory(redisTemplate, serializer, changeFeed, 10, 30000);
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> history.page("latest", 2).block());
+        verifyNoInteractions(streamOperations);
+    }
+}
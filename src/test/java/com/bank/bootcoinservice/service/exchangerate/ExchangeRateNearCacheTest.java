@@ -0,0 +1,73 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateNearCacheTest {
+    @Mock
+    private ExchangeRateChangeFeed changeFeed;
+    private SimpleMeterRegistry meterRegistry;
+    private ExchangeRateNearCache nearCache;
+    private BootCoinExchangeRate exchangeRate;
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        nearCache = new ExchangeRateNearCache(changeFeed, meterRegistry, 30000);
+        exchangeRate = new BootCoinExchangeRate(new BigDecimal("3.75"), new BigDecimal("3.85"),
+                LocalDateTime.now(), 1L);
+    }
+    @Test
+    void get_ReturnsStoredRateAndCountsHitsAndMisses() {
+        // Given
+        assertNull(nearCache.get());
+        nearCache.put(exchangeRate, nearCache.generation());
+        // When
+        BootCoinExchangeRate result = nearCache.get();
+        // Then
+        assertSame(exchangeRate, result);
+        assertEquals(1.0, meterRegistry.get("bootcoin.exchange.rate.cache.requests")
+                .tag("result", "hit").counter().count());
+        assertEquals(1.0, meterRegistry.get("bootcoin.exchange.rate.cache.requests")
+                .tag("result", "miss").counter().count());
+    }
+    @Test
+    void get_ExpiredEntryIsAMiss() {
+        // Given
+        nearCache = new ExchangeRateNearCache(changeFeed, meterRegistry, 0);
+        nearCache.put(exchangeRate, nearCache.generation());
+        // When & Then
+        assertNull(nearCache.get());
+    }
+    @Test
+    void put_DiscardedWhenInvalidatedDuringLoad() {
+        // Given
+        long generation = nearCache.generation();
+        nearCache.invalidate();
+        // When
+        nearCache.put(exchangeRate, generation);
+        // Then
+        assertNull(nearCache.get());
+    }
+    @Test
+    void subscribe_ChangeMessageInvalidatesEntry() {
+        // Given
+        nearCache.put(exchangeRate, nearCache.generation());
+        when(changeFeed.changes()).thenReturn(Flux.just(exchangeRate));
+        // When
+        nearCache.subscribe();
+        // Then
+        assertNull(nearCache.get());
+        assertEquals(1.0, meterRegistry.get("bootcoin.exchange.rate.cache.invalidations").counter().count());
+        nearCache.unsubscribe();
+    }
+}
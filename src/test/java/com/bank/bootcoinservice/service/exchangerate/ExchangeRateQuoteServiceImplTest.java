@@ -0,0 +1,105 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.bank.bootcoinservice.model.exchangerate.ExchangeRateQuote;
+import io.reactivex.Single;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import reactor.core.publisher.Mono;
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateQuoteServiceImplTest {
+    private static final String SECRET = "quote-signing-secret-for-tests-only";
+    private static final String QUOTE_KEY_PREFIX = "bootcoin:exchange_rate:quote:";
+    @Mock
+    private BootCoinExchangeRateService exchangeRateService;
+    @Mock
+    private ReactiveRedisTemplate<String, BootCoinExchangeRate> redisTemplate;
+    @Mock
+    private ReactiveValueOperations<String, BootCoinExchangeRate> valueOperations;
+    private ExchangeRateQuoteServiceImpl quoteService;
+    private BootCoinExchangeRate exchangeRate;
+    @BeforeEach
+    void setUp() {
+        exchangeRate = new BootCoinExchangeRate(new BigDecimal("3.75"), new BigDecimal("3.85"),
+                LocalDateTime.now(), 4L);
+        quoteService = new ExchangeRateQuoteServiceImpl(exchangeRateService, redisTemplate, SECRET, 30000);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+    private ExchangeRateQuote givenQuote(ExchangeRateQuoteServiceImpl service) {
+        when(exchangeRateService.getCurrentExchangeRate()).thenReturn(Single.just(exchangeRate));
+        when(valueOperations.set(startsWith(QUOTE_KEY_PREFIX), eq(exchangeRate), any(Duration.class)))
+                .thenReturn(Mono.just(true));
+        return service.createQuote().blockingGet();
+    }
+    @Test
+    void createQuote_LocksCurrentRateAndReplicatesIt() {
+        // When
+        ExchangeRateQuote quote = givenQuote(quoteService);
+        // Then
+        assertEquals(exchangeRate.getBuyRate(), quote.getBuyRate());
+        assertEquals(exchangeRate.getSellRate(), quote.getSellRate());
+        assertEquals(4L, quote.getRateVersion());
+        assertEquals(3, quote.getQuoteId().split("\\.").length);
+        verify(valueOperations).set(eq(QUOTE_KEY_PREFIX + quote.getQuoteId()), eq(exchangeRate),
+                eq(Duration.ofMillis(30000)));
+    }
+    @Test
+    void getQuotedRate_IssuedLocallyNeedsNoRedisRead() {
+        // Given
+        ExchangeRateQuote quote = givenQuote(quoteService);
+        // When
+        BootCoinExchangeRate rate = quoteService.getQuotedRate(quote.getQuoteId()).blockingGet();
+        // Then
+        assertEquals(exchangeRate.getSellRate(), rate.getSellRate());
+        assertEquals(4L, rate.getVersion());
+        verify(valueOperations, never()).get(anyString());
+    }
+    @Test
+    void getQuotedRate_IssuedByAnotherInstanceIsReadOnceFromRedis() {
+        // Given
+        ExchangeRateQuote quote = givenQuote(quoteService);
+        ExchangeRateQuoteServiceImpl otherInstance = new ExchangeRateQuoteServiceImpl(exchangeRateService,
+                redisTemplate, SECRET, 30000);
+        when(valueOperations.get(QUOTE_KEY_PREFIX + quote.getQuoteId())).thenReturn(Mono.just(exchangeRate));
+        // When
+        otherInstance.getQuotedRate(quote.getQuoteId()).blockingGet();
+        BootCoinExchangeRate rate = otherInstance.getQuotedRate(quote.getQuoteId()).blockingGet();
+        // Then
+        assertEquals(exchangeRate.getBuyRate(), rate.getBuyRate());
+        verify(valueOperations, times(1)).get(QUOTE_KEY_PREFIX + quote.getQuoteId());
+    }
+    @Test
+    void getQuotedRate_TamperedQuoteIsRejected() {
+        // Given
+        ExchangeRateQuote quote = givenQuote(quoteService);
+        String[] parts = quote.getQuoteId().split("\\.");
+        String tampered = parts[0] + "." + (Long.parseLong(parts[1]) + 60000) + "." + parts[2];
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            quoteService.getQuotedRate(tampered).blockingGet();
+        });
+        assertEquals("Invalid quote.", exception.getMessage());
+    }
+    @Test
+    void getQuotedRate_ExpiredQuoteIsRejected() {
+        // Given
+        quoteService = new ExchangeRateQuoteServiceImpl(exchangeRateService, redisTemplate, SECRET, 0);
+        ExchangeRateQuote quote = givenQuote(quoteService);
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> {
+            quoteService.getQuotedRate(quote.getQuoteId()).blockingGet();
+        });
+        assertEquals("Quote has expired.", exception.getMessage());
+    }
+}
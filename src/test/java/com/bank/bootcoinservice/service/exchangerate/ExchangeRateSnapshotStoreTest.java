@@ -0,0 +1,117 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.config.ExchangeRateRedisSerializer;
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import reactor.core.publisher.Flux;
+import java.io.RandomAccessFile;
+import java.math.BigDecimal;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateSnapshotStoreTest {
+    @TempDir
+    Path directory;
+    @Mock
+    private ExchangeRateChangeFeed changeFeed;
+    private ExchangeRateRedisSerializer serializer;
+    private ExchangeRateSnapshotStore store;
+    private BootCoinExchangeRate exchangeRate;
+    @BeforeEach
+    void setUp() {
+        serializer = new ExchangeRateRedisSerializer(new ObjectMapper().findAndRegisterModules());
+        lenient().when(changeFeed.changes()).thenReturn(Flux.never());
+        store = open(300000);
+        exchangeRate = new BootCoinExchangeRate(new BigDecimal("3.75"), new BigDecimal("3.85"),
+                LocalDateTime.now().withNano(0), 4L);
+    }
+    @AfterEach
+    void tearDown() {
+        store.close();
+    }
+    private ExchangeRateSnapshotStore open(long maxStalenessMillis) {
+        ExchangeRateSnapshotStore opened = new ExchangeRateSnapshotStore(serializer, changeFeed,
+                directory.resolve("rate.snapshot").toString(), 250, maxStalenessMillis);
+        opened.open();
+        return opened;
+    }
+    @Test
+    void fallback_EmptyWithoutRecordedRate() {
+        assertNull(store.fallback());
+        assertFalse(store.isServingSnapshot());
+        assertEquals(-1, store.snapshotAgeMillis());
+    }
+    @Test
+    void record_SurvivesRestart() {
+        // Given
+        store.record(exchangeRate);
+        store.close();
+        // When
+        ExchangeRateSnapshotStore reopened = open(300000);
+        BootCoinExchangeRate result = reopened.fallback();
+        // Then
+        assertNotNull(result);
+        assertEquals(exchangeRate.getBuyRate(), result.getBuyRate());
+        assertEquals(exchangeRate.getSellRate(), result.getSellRate());
+        assertEquals(exchangeRate.getUpdatedAt(), result.getUpdatedAt());
+        assertEquals(4L, result.getVersion());
+        reopened.close();
+    }
+    @Test
+    void record_OlderVersionIsIgnored() {
+        // Given
+        store.record(exchangeRate);
+        // When
+        store.record(new BootCoinExchangeRate(new BigDecimal("3.10"), new BigDecimal("3.20"),
+                LocalDateTime.now(), 2L));
+        // Then
+        assertEquals(4L, store.fallback().getVersion());
+    }
+    @Test
+    void fallback_FlagsServingUntilNextRecord() {
+        // Given
+        store.record(exchangeRate);
+        // When
+        store.fallback();
+        // Then
+        assertTrue(store.isServingSnapshot());
+        store.record(exchangeRate);
+        assertFalse(store.isServingSnapshot());
+    }
+    @Test
+    void fallback_StaleSnapshotIsNotServed() throws Exception {
+        // Given
+        store.record(exchangeRate);
+        store.close();
+        ExchangeRateSnapshotStore strict = open(0);
+        Thread.sleep(5);
+        // When & Then
+        assertNull(strict.fallback());
+        assertFalse(strict.isServingSnapshot());
+        strict.close();
+    }
+    @Test
+    void open_CorruptFileIsIgnored() throws Exception {
+        // Given
+        store.record(exchangeRate);
+        store.close();
+        try (RandomAccessFile file = new RandomAccessFile(directory.resolve("rate.snapshot").toFile(), "rw")) {
+            file.seek(20);
+            file.write(0x7F);
+        }
+        // When
+        ExchangeRateSnapshotStore reopened = open(300000);
+        // Then
+        assertNull(reopened.fallback());
+        reopened.close();
+    }
+}
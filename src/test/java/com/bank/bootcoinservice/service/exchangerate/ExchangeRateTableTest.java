@@ -0,0 +1,91 @@
+package com.bank.bootcoinservice.service.exchangerate;
+
+import com.bank.bootcoinservice.model.exchangerate.BootCoinExchangeRate;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.data.redis.core.ReactiveRedisTemplate;
+import org.springframework.data.redis.core.ReactiveValueOperations;
+import reactor.core.publisher.Mono;
+import java.math.BigDecimal;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class ExchangeRateTableTest {
+    private static final List<String> KEYS = List.of("bootcoin:{exchange_rate}", "bootcoin:{exchange_rate:USD}");
+    @Mock
+    private ReactiveRedisTemplate<String, BootCoinExchangeRate> redisTemplate;
+    @Mock
+    private ReactiveValueOperations<String, BootCoinExchangeRate> valueOperations;
+    private ExchangeRateTable table;
+    private BootCoinExchangeRate penRate;
+    private BootCoinExchangeRate usdRate;
+    @BeforeEach
+    void setUp() {
+        table = new ExchangeRateTable(redisTemplate, List.of("pen", " USD"), 30000);
+        penRate = new BootCoinExchangeRate(new BigDecimal("3.75"), new BigDecimal("3.85"), LocalDateTime.now(), 3L);
+        usdRate = new BootCoinExchangeRate(new BigDecimal("1.00"), new BigDecimal("1.03"), LocalDateTime.now(), 2L);
+        lenient().when(redisTemplate.opsForValue()).thenReturn(valueOperations);
+    }
+    @Test
+    void keyFor_RateAndHistoryShareHashTag() {
+        assertEquals("bootcoin:{exchange_rate}", ExchangeRateTable.keyFor("PEN"));
+        assertEquals("bootcoin:{exchange_rate:USD}", ExchangeRateTable.keyFor("USD"));
+        assertEquals(ExchangeRateChangeFeed.CHANGES_CHANNEL, ExchangeRateTable.channelFor("PEN"));
+        assertEquals("bootcoin:{exchange_rate}:history", ExchangeRateHistory.HISTORY_KEY);
+        assertEquals("bootcoin:{exchange_rate:USD}:history", ExchangeRateTable.historyKeyFor("USD"));
+    }
+    @Test
+    void rates_LoadsAllCurrenciesWithOneMultiGet() {
+        // Given
+        when(valueOperations.multiGet(KEYS)).thenReturn(Mono.just(List.of(penRate, usdRate)));
+        // When
+        Map<String, BootCoinExchangeRate> first = table.rates().block();
+        Map<String, BootCoinExchangeRate> second = table.rates().block();
+        // Then
+        assertSame(penRate, first.get("PEN"));
+        assertSame(usdRate, first.get("USD"));
+        assertSame(first, second);
+        verify(valueOperations, times(1)).multiGet(KEYS);
+    }
+    @Test
+    void rates_MissingCurrencyIsLeftOut() {
+        // Given
+        when(valueOperations.multiGet(KEYS)).thenReturn(Mono.just(Arrays.asList(penRate, null)));
+        // When
+        Map<String, BootCoinExchangeRate> rates = table.rates().block();
+        // Then
+        assertEquals(Map.of("PEN", penRate), rates);
+    }
+    @Test
+    void apply_SwapsInNewerVersionsOnly() {
+        // Given
+        when(valueOperations.multiGet(KEYS)).thenReturn(Mono.just(List.of(penRate, usdRate)));
+        Map<String, BootCoinExchangeRate> loaded = table.rates().block();
+        BootCoinExchangeRate newer = new BootCoinExchangeRate(new BigDecimal("1.01"), new BigDecimal("1.04"),
+                LocalDateTime.now(), 3L);
+        BootCoinExchangeRate older = new BootCoinExchangeRate(new BigDecimal("0.99"), new BigDecimal("1.02"),
+                LocalDateTime.now(), 1L);
+        // When
+        table.apply("USD", newer);
+        table.apply("USD", older);
+        Map<String, BootCoinExchangeRate> rates = table.rates().block();
+        // Then
+        assertSame(newer, rates.get("USD"));
+        assertSame(penRate, rates.get("PEN"));
+        assertSame(usdRate, loaded.get("USD"));
+        verify(valueOperations, times(1)).multiGet(KEYS);
+    }
+    @Test
+    void normalize_RejectsUnconfiguredCurrency() {
+        assertEquals("USD", table.normalize(" usd"));
+        Exception exception = assertThrows(IllegalArgumentException.class, () -> table.normalize("EUR"));
+        assertEquals("Unsupported currency: EUR", exception.getMessage());
+    }
+}
@@ -0,0 +1,252 @@
+package com.bank.bootcoinservice.service.ledger;
+
+import com.bank.bootcoinservice.config.MongoIndexes;
+import com.bank.bootcoinservice.model.ledger.LedgerEntry;
+import com.bank.bootcoinservice.model.ledger.LedgerSnapshot;
+import com.bank.bootcoinservice.model.user.BootCoinUser;
+import com.bank.bootcoinservice.repository.BootCoinUserRepository;
+import com.bank.bootcoinservice.repository.LedgerEntryRepository;
+import com.bank.bootcoinservice.repository.LedgerSnapshotRepository;
+import io.reactivex.Completable;
+import io.reactivex.Flowable;
+import io.reactivex.Maybe;
+import io.reactivex.Single;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class LedgerServiceImplTest {
+    private static final String SELLER = "87654321";
+    private static final String BUYER = "12345678";
+    @Mock
+    private LedgerEntryRepository entryRepository;
+    @Mock
+    private LedgerSnapshotRepository snapshotRepository;
+    @Mock
+    private BootCoinUserRepository userRepository;
+    @Mock
+    private MongoIndexes mongoIndexes;
+    private final List<LedgerEntry> entries = new ArrayList<>();
+    private final Map<String, LedgerSnapshot> snapshots = new HashMap<>();
+    private LedgerServiceImpl ledgerService;
+    @BeforeEach
+    void setUp() {
+        lenient().when(mongoIndexes.ready()).thenReturn(Completable.complete());
+        lenient().when(userRepository.findByBalanceExists(true)).thenReturn(Flowable.empty());
+        // Transactional insert that enforces the unique (account, sequence) and (postingId, account) indexes
+        lenient().doAnswer(invocation -> {
+            List<LedgerEntry> batch = invocation.getArgument(0);
+            synchronized (entries) {
+                for (LedgerEntry entry : batch) {
+                    boolean duplicate = entries.stream().anyMatch(existing ->
+                            existing.getAccount().equals(entry.getAccount())
+                                    && (existing.getSequence() == entry.getSequence()
+                                    || existing.getPostingId().equals(entry.getPostingId())));
+                    if (duplicate) {
+                        return Flowable.error(new DuplicateKeyException("E11000 duplicate key error"));
+                    }
+                }
+                entries.addAll(batch);
+            }
+            return Flowable.fromIterable(batch);
+        }).when(entryRepository).insertPosting(anyList());
+        lenient().doAnswer(invocation -> Flowable.fromIterable(select(entry ->
+                entry.getPostingId().equals(invocation.getArgument(0)))))
+                .when(entryRepository).findByPostingId(anyString());
+        lenient().doAnswer(invocation -> {
+            String account = invocation.getArgument(0);
+            long after = invocation.getArgument(1);
+            return Flowable.fromIterable(select(entry ->
+                    entry.getAccount().equals(account) && entry.getSequence() > after));
+        }).when(entryRepository).findByAccountAndSequenceGreaterThanOrderBySequenceAsc(anyString(), anyLong());
+        lenient().doAnswer(invocation -> Single.just(select(entry -> true).stream()
+                .map(LedgerEntry::getAmount)
+                .reduce(BigDecimal.ZERO, BigDecimal::add)))
+                .when(entryRepository).sumOfAmounts();
+        lenient().doAnswer(invocation -> {
+            LedgerSnapshot snapshot = snapshots.get(invocation.<String>getArgument(0));
+            return snapshot == null ? Maybe.empty() : Maybe.just(snapshot);
+        }).when(snapshotRepository).findById(anyString());
+        lenient().doAnswer(invocation -> {
+            LedgerSnapshot snapshot = invocation.getArgument(0);
+            snapshots.put(snapshot.getId(), snapshot);
+            return Single.just(snapshot);
+        }).when(snapshotRepository).save(any(LedgerSnapshot.class));
+        ledgerService = new LedgerServiceImpl(entryRepository, snapshotRepository, userRepository, mongoIndexes,
+                100, 60000, 60000);
+    }
+    @AfterEach
+    void tearDown() {
+        ledgerService.stop();
+    }
+    private List<LedgerEntry> select(Predicate<LedgerEntry> filter) {
+        synchronized (entries) {
+            return entries.stream()
+                    .filter(filter)
+                    .sorted(Comparator.comparingLong(LedgerEntry::getSequence))
+                    .collect(Collectors.toList());
+        }
+    }
+    private BigDecimal balance(String account) {
+        return ledgerService.balanceOf(account).blockingGet();
+    }
+    @Test
+    void transfer_AppendsSequencedEntriesAndKeepsZeroSum() {
+        // Given
+        ledgerService.start();
+        ledgerService.issue("bank-1", SELLER, new BigDecimal("20.00")).blockingAwait();
+        // When
+        ledgerService.transfer("purchase-1", SELLER, BUYER, new BigDecimal("7.50")).blockingAwait();
+        ledgerService.transfer("purchase-2", SELLER, BUYER, new BigDecimal("2.50")).blockingAwait();
+        // Then
+        assertEquals(0, new BigDecimal("10.00").compareTo(balance(SELLER)));
+        assertEquals(0, new BigDecimal("10.00").compareTo(balance(BUYER)));
+        assertEquals(0, new BigDecimal("-20.00").compareTo(balance(LedgerService.BANK_ACCOUNT)));
+        assertEquals(List.of(1L, 2L, 3L), select(entry -> entry.getAccount().equals(SELLER)).stream()
+                .map(LedgerEntry::getSequence)
+                .collect(Collectors.toList()));
+        assertEquals(0, ledgerService.imbalance().blockingGet().signum());
+    }
+    @Test
+    void transfer_InsufficientBalanceAppendsNothing() {
+        // Given
+        ledgerService.start();
+        ledgerService.issue("bank-1", SELLER, new BigDecimal("5.00")).blockingAwait();
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+                ledgerService.transfer("purchase-1", SELLER, BUYER, new BigDecimal("5.01")).blockingAwait());
+        assertEquals("Account 87654321 does not have enough balance.", exception.getMessage());
+        assertEquals(2, select(entry -> true).size());
+        assertEquals(0, new BigDecimal("5.00").compareTo(balance(SELLER)));
+    }
+    @Test
+    void transfer_RepeatedPostingIsNoOp() {
+        // Given
+        ledgerService.start();
+        ledgerService.issue("bank-1", SELLER, new BigDecimal("20.00")).blockingAwait();
+        ledgerService.transfer("purchase-1", SELLER, BUYER, new BigDecimal("5.00")).blockingAwait();
+        // When
+        ledgerService.transfer("purchase-1", SELLER, BUYER, new BigDecimal("5.00")).blockingAwait();
+        // Then
+        assertEquals(0, new BigDecimal("15.00").compareTo(balance(SELLER)));
+        assertEquals(4, select(entry -> true).size());
+    }
+    @Test
+    void transfer_RedeliveredPostingThatSpentTheBalanceIsNoOp() {
+        // Given
+        ledgerService.start();
+        ledgerService.issue("bank-1", SELLER, new BigDecimal("5.00")).blockingAwait();
+        ledgerService.transfer("reserve:p1", SELLER, LedgerService.ESCROW_ACCOUNT_PREFIX + "p1",
+                new BigDecimal("5.00")).blockingAwait();
+        // When
+        ledgerService.transfer("reserve:p1", SELLER, LedgerService.ESCROW_ACCOUNT_PREFIX + "p1",
+                new BigDecimal("5.00")).blockingAwait();
+        // Then
+        assertEquals(0, balance(SELLER).signum());
+        assertEquals(4, select(entry -> true).size());
+        assertThrows(InsufficientBalanceException.class, () -> ledgerService.transfer("reserve:p2", SELLER,
+                LedgerService.ESCROW_ACCOUNT_PREFIX + "p2", new BigDecimal("5.00")).blockingAwait());
+    }
+    @Test
+    void transfer_RechecksBalanceAfterAnotherInstanceAppended() {
+        // Given
+        ledgerService.start();
+        ledgerService.issue("bank-1", SELLER, new BigDecimal("10.00")).blockingAwait();
+        assertEquals(0, new BigDecimal("10.00").compareTo(balance(SELLER)));
+        // Another instance debits the seller, so the cached head here is stale
+        synchronized (entries) {
+            entries.add(LedgerEntry.builder().postingId("elsewhere").account(SELLER).sequence(2)
+                    .amount(new BigDecimal("-8.00")).counterparty("99999999").build());
+            entries.add(LedgerEntry.builder().postingId("elsewhere").account("99999999").sequence(1)
+                    .amount(new BigDecimal("8.00")).counterparty(SELLER).build());
+        }
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () ->
+                ledgerService.transfer("purchase-1", SELLER, BUYER, new BigDecimal("5.00")).blockingAwait());
+        ledgerService.transfer("purchase-2", SELLER, BUYER, new BigDecimal("2.00")).blockingAwait();
+        assertEquals(0, balance(SELLER).signum());
+        assertEquals(3L, select(entry -> entry.getAccount().equals(SELLER)).get(2).getSequence());
+        assertEquals(0, ledgerService.imbalance().blockingGet().signum());
+    }
+    @Test
+    void transfer_ReloadsCachedHeadBeforeRejecting() {
+        // Given: the seller's empty head is cached here, then another instance credits the seller
+        ledgerService.start();
+        assertEquals(0, balance(SELLER).signum());
+        LedgerServiceImpl otherInstance = new LedgerServiceImpl(entryRepository, snapshotRepository, userRepository,
+                mongoIndexes, 100, 60000, 60000);
+        otherInstance.issue("bank-1", SELLER, new BigDecimal("10.00")).blockingAwait();
+        // When
+        ledgerService.transfer("reserve:p1", SELLER, LedgerService.ESCROW_ACCOUNT_PREFIX + "p1",
+                new BigDecimal("6.00")).blockingAwait();
+        // Then
+        assertEquals(0, new BigDecimal("4.00").compareTo(balance(SELLER)));
+        assertEquals(List.of(1L, 2L), select(entry -> entry.getAccount().equals(SELLER)).stream()
+                .map(LedgerEntry::getSequence)
+                .collect(Collectors.toList()));
+        assertThrows(InsufficientBalanceException.class, () -> ledgerService.transfer("reserve:p2", SELLER,
+                LedgerService.ESCROW_ACCOUNT_PREFIX + "p2", new BigDecimal("6.00")).blockingAwait());
+        verify(entryRepository, times(1)).findByPostingId("reserve:p2");
+    }
+    @Test
+    void balanceOf_StartsFromSnapshot() {
+        // Given: entries up to the snapshot are not read again
+        ledgerService.start();
+        snapshots.put(BUYER, LedgerSnapshot.builder().id(BUYER).sequence(2).balance(new BigDecimal("7.00")).build());
+        synchronized (entries) {
+            entries.add(LedgerEntry.builder().postingId("old").account(BUYER).sequence(2)
+                    .amount(new BigDecimal("1000.00")).build());
+            entries.add(LedgerEntry.builder().postingId("new").account(BUYER).sequence(3)
+                    .amount(new BigDecimal("1.00")).build());
+        }
+        // When
+        BigDecimal balance = balance(BUYER);
+        // Then
+        assertEquals(0, new BigDecimal("8.00").compareTo(balance));
+        verify(entryRepository).findByAccountAndSequenceGreaterThanOrderBySequenceAsc(BUYER, 2L);
+    }
+    @Test
+    void start_ImportsLegacyBalancesAsOpeningPostings() {
+        // Given
+        BootCoinUser legacy = new BootCoinUser();
+        legacy.setDocumentNumber(SELLER);
+        legacy.setBalance(new BigDecimal("12.00"));
+        when(userRepository.findByBalanceExists(true)).thenReturn(Flowable.just(legacy));
+        when(userRepository.clearLegacyBalance(SELLER)).thenReturn(Completable.complete());
+        // When
+        ledgerService.start();
+        // Then
+        assertEquals(0, new BigDecimal("12.00").compareTo(balance(SELLER)));
+        assertEquals("opening:" + SELLER, select(entry -> entry.getAccount().equals(SELLER)).get(0).getPostingId());
+        verify(userRepository).clearLegacyBalance(SELLER);
+    }
+    @Test
+    void snapshots_DirtyBalancesArePersisted() {
+        // Given
+        ledgerService.stop();
+        ledgerService = new LedgerServiceImpl(entryRepository, snapshotRepository, userRepository, mongoIndexes,
+                100, 60000, 20);
+        ledgerService.start();
+        // When
+        ledgerService.issue("bank-1", BUYER, new BigDecimal("3.00")).blockingAwait();
+        // Then
+        verify(snapshotRepository, timeout(2000)).save(argThat(snapshot ->
+                snapshot.getId().equals(BUYER) && snapshot.getSequence() == 1
+                        && snapshot.getBalance().compareTo(new BigDecimal("3.00")) == 0));
+    }
+}
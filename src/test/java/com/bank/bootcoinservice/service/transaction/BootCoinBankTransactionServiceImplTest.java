@@ -13,6 +13,8 @@ import com.bank.bootcoinservice.model.user.BootCoinUser;
 import com.bank.bootcoinservice.repository.BootCoinTransactionRepository;
 import com.bank.bootcoinservice.repository.BootCoinUserRepository;
 import com.bank.bootcoinservice.service.exchangerate.BootCoinExchangeRateService;
+import com.bank.bootcoinservice.service.exchangerate.ExchangeRateQuoteService;
+import com.bank.bootcoinservice.service.ledger.LedgerService;
 import io.reactivex.Completable;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
@@ -41,13 +43,15 @@ public class BootCoinBankTransactionServiceImplTest {
     private KafkaTemplate<String, Object> kafkaTemplate;
     @Mock
     private BootCoinExchangeRateService exchangeRateService;
+    @Mock
+    private ExchangeRateQuoteService quoteService;
+    @Mock
+    private LedgerService ledgerService;
     @InjectMocks
     private BootCoinBankTransactionServiceImpl transactionService;
     @Captor
     private ArgumentCaptor<BootCoinTransaction> transactionCaptor;
     @Captor
-    private ArgumentCaptor<BootCoinUser> userCaptor;
-    @Captor
     private ArgumentCaptor<BootCoinBankPurchaseRequested> eventCaptor;
     private BootCoinBankTransactionRequest transactionRequest;
     private BootCoinUser user;
@@ -138,6 +142,25 @@ public class BootCoinBankTransactionServiceImplTest {
         assertEquals(TransactionStatus.PENDING, response.getStatus());
     }
     @Test
+    void requestTransaction_WithQuotePricesAtQuotedRate() {
+        // Given
+        transactionRequest.setQuoteId("quote-id");
+        BootCoinExchangeRate quotedRate = new BootCoinExchangeRate(new BigDecimal("3.50"), new BigDecimal("3.60"),
+                null, 7L);
+        doReturn(Maybe.just(user)).when(userRepository)
+                .findByDocumentNumber(transactionRequest.getBuyerDocumentNumber());
+        doReturn(Single.just(quotedRate)).when(quoteService).getQuotedRate("quote-id");
+        doReturn(Single.just(savedTransaction)).when(transactionRepository).save(any(BootCoinTransaction.class));
+        doReturn(null).when(kafkaTemplate).send(anyString(), any());
+        // When
+        transactionService.requestTransaction(transactionRequest).blockingGet();
+        // Then
+        verify(transactionRepository).save(transactionCaptor.capture());
+        assertEquals(transactionRequest.getAmount().multiply(new BigDecimal("3.50")),
+                transactionCaptor.getValue().getTotalAmountInPEN());
+        verifyNoInteractions(exchangeRateService);
+    }
+    @Test
     void requestTransaction_UserNotFound() {
         // Given
         Maybe<BootCoinUser> emptyMaybe = Maybe.empty();
@@ -173,33 +196,22 @@ public class BootCoinBankTransactionServiceImplTest {
     void processTransactionResult_Accepted() {
         // Given
         Maybe<BootCoinTransaction> transactionMaybe = Maybe.just(savedTransaction);
-        Maybe<BootCoinUser> userMaybe = Maybe.just(user);
-        // Set the initial balance to 100 and transaction amount to 10
-        user.setBalance(new BigDecimal("100.00"));
         savedTransaction.setAmount(new BigDecimal("10.00"));
-        // Expected new balance should be 110 (100 + 10)
-        BigDecimal expectedNewBalance = new BigDecimal("110.00");
-        BootCoinUser updatedUser = new BootCoinUser();
-        updatedUser.setId(user.getId());
-        updatedUser.setDocumentNumber(user.getDocumentNumber());
-        updatedUser.setBankAccountId(user.getBankAccountId());
-        updatedUser.setBalance(expectedNewBalance);
         BootCoinTransaction updatedTransaction = new BootCoinTransaction();
         updatedTransaction.setId(savedTransaction.getId());
         updatedTransaction.setStatus(TransactionStatus.COMPLETED);
         doReturn(transactionMaybe).when(transactionRepository).findById(completedEvent.getTransactionId());
-        doReturn(userMaybe).when(userRepository).findByDocumentNumber(savedTransaction.getBuyerDocumentNumber());
-        doReturn(Single.just(updatedUser)).when(userRepository).save(any(BootCoinUser.class));
+        doReturn(Completable.complete()).when(ledgerService)
+                .issue(savedTransaction.getId(), savedTransaction.getBuyerDocumentNumber(), new BigDecimal("10.00"));
         doReturn(Single.just(updatedTransaction)).when(transactionRepository).save(any(BootCoinTransaction.class));
         // When
         transactionService.processTransactionResult(completedEvent).blockingAwait();
         // Then
         verify(transactionRepository).findById(completedEvent.getTransactionId());
-        verify(userRepository).findByDocumentNumber(savedTransaction.getBuyerDocumentNumber());
-        verify(userRepository).save(userCaptor.capture());
+        verify(ledgerService)
+                .issue(savedTransaction.getId(), savedTransaction.getBuyerDocumentNumber(), new BigDecimal("10.00"));
         verify(transactionRepository).save(transactionCaptor.capture());
-        BootCoinUser capturedUser = userCaptor.getValue();
-        assertEquals(expectedNewBalance, capturedUser.getBalance());
+        verifyNoInteractions(userRepository);
         BootCoinTransaction capturedTransaction = transactionCaptor.getValue();
         assertEquals(TransactionStatus.COMPLETED, capturedTransaction.getStatus());
     }
@@ -0,0 +1,167 @@
+package com.bank.bootcoinservice.service.user;
+
+import com.bank.bootcoinservice.dto.history.UserHistoryEntry;
+import com.bank.bootcoinservice.dto.history.UserHistoryPage;
+import com.bank.bootcoinservice.model.bootcoinpurchase.BootCoinPurchase;
+import com.bank.bootcoinservice.model.transaction.BootCoinTransaction;
+import com.bank.bootcoinservice.model.transaction.TransactionStatus;
+import com.bank.bootcoinservice.repository.BootCoinPurchaseRepository;
+import com.bank.bootcoinservice.repository.BootCoinTransactionRepository;
+import io.reactivex.Flowable;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InjectMocks;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+@ExtendWith(MockitoExtension.class)
+public class BootCoinUserHistoryServiceImplTest {
+    private static final String USER = "12345678";
+    private static final String OTHER = "87654321";
+    @Mock
+    private BootCoinPurchaseRepository purchaseRepository;
+    @Mock
+    private BootCoinTransactionRepository transactionRepository;
+    @InjectMocks
+    private BootCoinUserHistoryServiceImpl historyService;
+    private LocalDateTime start;
+    @BeforeEach
+    void setUp() {
+        start = LocalDateTime.of(2024, 1, 1, 12, 0);
+    }
+    private BootCoinPurchase purchase(String id, int minute, String buyer, String seller) {
+        return BootCoinPurchase.builder().id(id).buyerDocumentNumber(buyer).sellerDocumentNumber(seller)
+                .status(TransactionStatus.COMPLETED).createdAt(start.plusMinutes(minute)).build();
+    }
+    private BootCoinTransaction transaction(String id, int minute) {
+        return BootCoinTransaction.builder().id(id).buyerDocumentNumber(USER)
+                .status(TransactionStatus.PENDING).createdAt(start.plusMinutes(minute)).build();
+    }
+    private static <T> Flowable<T> before(List<T> newestFirst, Function<T, LocalDateTime> createdAt,
+                                          Function<T, String> id, LocalDateTime beforeCreatedAt, String beforeId,
+                                          boolean includeBeforeId) {
+        // what the keyset query returns from a collection already sorted newest first
+        return Flowable.fromIterable(newestFirst).filter(document -> {
+            if (beforeCreatedAt == null) {
+                return true;
+            }
+            int byCreatedAt = createdAt.apply(document).compareTo(beforeCreatedAt);
+            int byId = id.apply(document).compareTo(beforeId);
+            return byCreatedAt < 0 || byCreatedAt == 0 && (byId < 0 || byId == 0 && includeBeforeId);
+        });
+    }
+    private static List<String> ids(List<UserHistoryEntry> entries) {
+        return entries.stream().map(UserHistoryEntry::getId).collect(Collectors.toList());
+    }
+    @Test
+    void getHistory_MergesBothCollectionsNewestFirst() {
+        // Given
+        when(purchaseRepository.findHistory(USER, null, null, false, 4)).thenReturn(Flowable.just(
+                purchase("p3", 30, USER, OTHER), purchase("p1", 10, OTHER, USER)));
+        when(transactionRepository.findBankHistory(USER, null, null, 4)).thenReturn(Flowable.just(
+                transaction("t4", 40), transaction("t2", 20)));
+        // When
+        UserHistoryPage page = historyService.getHistory(USER, null, 3).blockingGet();
+        // Then
+        assertEquals(List.of("t4", "p3", "t2"), ids(page.getItems()));
+        assertEquals(UserHistoryEntry.Role.BUYER, page.getItems().get(1).getRole());
+        assertEquals(OTHER, page.getItems().get(1).getCounterpartyDocumentNumber());
+        assertEquals(page.getItems().get(2).getCursor(), page.getNextCursor());
+    }
+    @Test
+    void getHistory_NextCursorResumesAfterLastEntry() {
+        // Given
+        UserHistoryCursor cursor = new UserHistoryCursor(start.plusMinutes(20), "t2",
+                UserHistoryEntry.Source.TRANSACTION);
+        when(purchaseRepository.findHistory(USER, start.plusMinutes(20), "t2", true, 3))
+                .thenReturn(Flowable.just(purchase("p1", 10, OTHER, USER)));
+        when(transactionRepository.findBankHistory(USER, start.plusMinutes(20), "t2", 3))
+                .thenReturn(Flowable.empty());
+        // When
+        UserHistoryPage page = historyService.getHistory(USER, cursor.encode(), 2).blockingGet();
+        // Then
+        assertEquals(List.of("p1"), ids(page.getItems()));
+        assertEquals(UserHistoryEntry.Role.SELLER, page.getItems().get(0).getRole());
+        assertNull(page.getNextCursor());
+    }
+    @Test
+    void getHistory_PagesThroughTiesAcrossSources() {
+        // Given: a settled purchase and a bank sale created at the same time, one with the same id
+        BootCoinPurchase settled = purchase("x", 10, USER, OTHER);
+        List<BootCoinPurchase> purchases = List.of(purchase("x1", 10, OTHER, USER), settled,
+                purchase("p0", 5, USER, OTHER));
+        List<BootCoinTransaction> bankSales = List.of(transaction("x3", 10), transaction("x", 10));
+        when(purchaseRepository.findHistory(eq(USER), any(), any(), anyBoolean(), anyInt())).thenAnswer(call ->
+                before(purchases, BootCoinPurchase::getCreatedAt, BootCoinPurchase::getId,
+                        call.getArgument(1), call.getArgument(2), call.getArgument(3)));
+        when(transactionRepository.findBankHistory(eq(USER), any(), any(), anyInt())).thenAnswer(call ->
+                before(bankSales, BootCoinTransaction::getCreatedAt, BootCoinTransaction::getId,
+                        call.getArgument(1), call.getArgument(2), false));
+        // When: one entry per page
+        List<String> entries = new ArrayList<>();
+        String cursor = null;
+        do {
+            UserHistoryPage page = historyService.getHistory(USER, cursor, 1).blockingGet();
+            page.getItems().forEach(entry -> entries.add(entry.getSource() + ":" + entry.getId()));
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        // Then: every entry once, the settled purchase included, in the same order as a single page
+        assertEquals(List.of("TRANSACTION:x3", "PURCHASE:x1", "TRANSACTION:x", "PURCHASE:x", "PURCHASE:p0"),
+                entries);
+    }
+    @Test
+    void getHistory_LegacyCursorWithoutSource() {
+        // Given
+        String legacy = Base64.getUrlEncoder().withoutPadding()
+                .encodeToString((start.plusMinutes(20) + "|t2").getBytes(StandardCharsets.UTF_8));
+        when(purchaseRepository.findHistory(USER, start.plusMinutes(20), "t2", false, 2))
+                .thenReturn(Flowable.empty());
+        when(transactionRepository.findBankHistory(USER, start.plusMinutes(20), "t2", 2))
+                .thenReturn(Flowable.empty());
+        // When
+        UserHistoryPage page = historyService.getHistory(USER, legacy, 1).blockingGet();
+        // Then
+        assertTrue(page.getItems().isEmpty());
+        assertNull(page.getNextCursor());
+    }
+    @Test
+    void getHistory_InvalidCursor() {
+        // When & Then
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+                historyService.getHistory(USER, "bogus", 10).blockingGet());
+        assertEquals("Invalid history cursor: bogus", exception.getMessage());
+        verifyNoInteractions(purchaseRepository, transactionRepository);
+    }
+    @Test
+    void getHistory_InvalidPageSize() {
+        // When & Then
+        assertThrows(IllegalArgumentException.class, () -> historyService.getHistory(USER, null, 0).blockingGet());
+        assertThrows(IllegalArgumentException.class, () -> historyService.getHistory(USER, null, 501).blockingGet());
+    }
+    @Test
+    void streamHistory_ReadsOnlyWhatTheSubscriberRequests() {
+        // Given: a long history that must not be read in full
+        AtomicInteger emitted = new AtomicInteger();
+        when(purchaseRepository.findHistory(eq(USER), isNull(), isNull(), eq(false), anyInt())).thenReturn(
+                Flowable.range(0, 100_000).map(i -> purchase("p" + i, -i, USER, OTHER))
+                        .doOnNext(purchase -> emitted.incrementAndGet()));
+        when(transactionRepository.findBankHistory(eq(USER), isNull(), isNull(), anyInt()))
+                .thenReturn(Flowable.empty());
+        // When
+        List<UserHistoryEntry> entries = historyService.streamHistory(USER, null).take(5).toList().blockingGet();
+        // Then
+        assertEquals(List.of("p0", "p1", "p2", "p3", "p4"), ids(entries));
+        assertTrue(emitted.get() <= 200, "read " + emitted.get() + " purchases");
+    }
+}
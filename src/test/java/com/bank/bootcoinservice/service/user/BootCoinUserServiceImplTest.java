@@ -9,6 +9,7 @@ import com.bank.bootcoinservice.dto.bootcoin.BootCoinUserRegistrationResponse;
 import com.bank.bootcoinservice.dto.event.KafkaValidationRequest;
 import com.bank.bootcoinservice.event.BootCoinUserEventListener;
 import com.bank.bootcoinservice.model.user.BootCoinUser;
+import com.bank.bootcoinservice.repository.BootCoinUserCache;
 import com.bank.bootcoinservice.repository.BootCoinUserRepository;
 import io.reactivex.Maybe;
 import io.reactivex.Single;
@@ -20,6 +21,7 @@ import org.mockito.Captor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.kafka.core.KafkaTemplate;
 import java.math.BigDecimal;
 import java.util.UUID;
@@ -34,6 +36,8 @@ public class BootCoinUserServiceImplTest {
     private KafkaTemplate<String, KafkaValidationRequest> kafkaTemplate;
     @Mock
     private BootCoinUserEventListener eventListener;
+    @Mock
+    private BootCoinUserCache userCache;
     @InjectMocks
     private BootCoinUserServiceImpl bootCoinUserService;
     @Captor
@@ -82,7 +86,7 @@ public class BootCoinUserServiceImplTest {
         assertEquals(registrationRequest.getDocumentNumber(), capturedUser.getDocumentNumber());
         assertEquals(registrationRequest.getPhoneNumber(), capturedUser.getPhoneNumber());
         assertEquals(registrationRequest.getEmail(), capturedUser.getEmail());
-        assertEquals(BigDecimal.ZERO, capturedUser.getBalance());
+        assertNull(capturedUser.getBalance());
         assertEquals(registrationRequest.isAssociateYanki(), capturedUser.isHasYanki());
         assertEquals(registrationRequest.getBankAccountId(), capturedUser.getBankAccountId());
         assertEquals(savedUser.getId(), response.getUserId());
@@ -92,6 +96,17 @@ public class BootCoinUserServiceImplTest {
         verifyNoInteractions(eventListener);
     }
     @Test
+    public void registerUser_DocumentNumberAlreadyRegistered() {
+        // Given
+        when(repository.save(any(BootCoinUser.class)))
+                .thenReturn(Single.error(new DuplicateKeyException("E11000 duplicate key error")));
+        // When & Then
+        Exception exception = assertThrows(RuntimeException.class, () ->
+                bootCoinUserService.registerUser(registrationRequest).blockingGet());
+        assertEquals("User already registered", exception.getMessage());
+        verifyNoInteractions(eventListener);
+    }
+    @Test
     public void registerUser_WithYanki() {
         // Given
         registrationRequest.setAssociateYanki(true);
@@ -174,7 +189,7 @@ public class BootCoinUserServiceImplTest {
         Maybe<BootCoinUser> userMaybe = Maybe.just(user);
         Single<Boolean> validationSingle = Single.just(true);
         Single<BootCoinUser> updatedUserSingle = Single.just(updatedUser);
-        doReturn(userMaybe).when(repository).findByDocumentNumber(bankAccountRequest.getDocumentNumber());
+        doReturn(userMaybe).when(repository).findOneByDocumentNumber(bankAccountRequest.getDocumentNumber());
         doReturn(validationSingle).when(eventListener).sendEventAndWait(anyString(), any(KafkaValidationRequest.class));
         doReturn(updatedUserSingle).when(repository).save(any(BootCoinUser.class));
         // When
@@ -182,10 +197,11 @@ public class BootCoinUserServiceImplTest {
                 .associateBankAccount(bankAccountRequest)
                 .blockingGet();
         // Then
-        verify(repository).findByDocumentNumber(bankAccountRequest.getDocumentNumber());
+        verify(repository).findOneByDocumentNumber(bankAccountRequest.getDocumentNumber());
         verify(eventListener).sendEventAndWait(eq("bootcoin.bank.account.association"),
             any(KafkaValidationRequest.class));
         verify(repository).save(userCaptor.capture());
+        verify(userCache).invalidate(updatedUser.getDocumentNumber());
         BootCoinUser capturedUser = userCaptor.getValue();
         assertEquals(bankAccountRequest.getBankAccountId(), capturedUser.getBankAccountId());
         assertEquals(updatedUser.getId(), response.getDocumentNumber());
@@ -195,12 +211,12 @@ public class BootCoinUserServiceImplTest {
     public void associateBankAccount_UserNotFound() {
         // Given
         Maybe<BootCoinUser> emptyMaybe = Maybe.empty();
-        doReturn(emptyMaybe).when(repository).findByDocumentNumber(bankAccountRequest.getDocumentNumber());
+        doReturn(emptyMaybe).when(repository).findOneByDocumentNumber(bankAccountRequest.getDocumentNumber());
         // When & Then
         assertThrows(RuntimeException.class, () -> {
             bootCoinUserService.associateBankAccount(bankAccountRequest).blockingGet();
         });
-        verify(repository).findByDocumentNumber(bankAccountRequest.getDocumentNumber());
+        verify(repository).findOneByDocumentNumber(bankAccountRequest.getDocumentNumber());
         verifyNoInteractions(eventListener);
     }
     @Test
@@ -210,13 +226,13 @@ public class BootCoinUserServiceImplTest {
         user.setDocumentNumber(bankAccountRequest.getDocumentNumber());
         user.setBankAccountId("existing-bank-account");
         Maybe<BootCoinUser> userMaybe = Maybe.just(user);
-        doReturn(userMaybe).when(repository).findByDocumentNumber(bankAccountRequest.getDocumentNumber());
+        doReturn(userMaybe).when(repository).findOneByDocumentNumber(bankAccountRequest.getDocumentNumber());
         // When & Then
         Exception exception = assertThrows(RuntimeException.class, () -> {
             bootCoinUserService.associateBankAccount(bankAccountRequest).blockingGet();
         });
         assertEquals("User already has a bank account associated", exception.getMessage());
-        verify(repository).findByDocumentNumber(bankAccountRequest.getDocumentNumber());
+        verify(repository).findOneByDocumentNumber(bankAccountRequest.getDocumentNumber());
         verifyNoInteractions(eventListener);
     }
     @Test
@@ -268,7 +284,7 @@ public class BootCoinUserServiceImplTest {
         Maybe<BootCoinUser> userMaybe = Maybe.just(user);
         Single<Boolean> validationSingle = Single.just(true);
         Single<BootCoinUser> updatedUserSingle = Single.just(updatedUser);
-        doReturn(userMaybe).when(repository).findByDocumentNumber(yankiRequest.getDocumentNumber());
+        doReturn(userMaybe).when(repository).findOneByDocumentNumber(yankiRequest.getDocumentNumber());
         doReturn(validationSingle).when(eventListener).sendEventAndWait(anyString(), any(KafkaValidationRequest.class));
         doReturn(updatedUserSingle).when(repository).save(any(BootCoinUser.class));
         // When
@@ -276,9 +292,10 @@ public class BootCoinUserServiceImplTest {
                 .associateYanki(yankiRequest)
                 .blockingGet();
         // Then
-        verify(repository).findByDocumentNumber(yankiRequest.getDocumentNumber());
+        verify(repository).findOneByDocumentNumber(yankiRequest.getDocumentNumber());
         verify(eventListener).sendEventAndWait(eq("bootcoin.yanki.association"), any(KafkaValidationRequest.class));
         verify(repository).save(userCaptor.capture());
+        verify(userCache).invalidate(updatedUser.getDocumentNumber());
         BootCoinUser capturedUser = userCaptor.getValue();
         assertTrue(capturedUser.isHasYanki());
         assertEquals(updatedUser.getId(), response.getDocumentNumber());
@@ -288,12 +305,12 @@ public class BootCoinUserServiceImplTest {
     public void associateYanki_UserNotFound() {
         // Given
         Maybe<BootCoinUser> emptyMaybe = Maybe.empty();
-        doReturn(emptyMaybe).when(repository).findByDocumentNumber(yankiRequest.getDocumentNumber());
+        doReturn(emptyMaybe).when(repository).findOneByDocumentNumber(yankiRequest.getDocumentNumber());
         // When & Then
         assertThrows(RuntimeException.class, () -> {
             bootCoinUserService.associateYanki(yankiRequest).blockingGet();
         });
-        verify(repository).findByDocumentNumber(yankiRequest.getDocumentNumber());
+        verify(repository).findOneByDocumentNumber(yankiRequest.getDocumentNumber());
         verifyNoInteractions(eventListener);
     }
     @Test
@@ -303,13 +320,13 @@ public class BootCoinUserServiceImplTest {
         user.setDocumentNumber(yankiRequest.getDocumentNumber());
         user.setHasYanki(true);
         Maybe<BootCoinUser> userMaybe = Maybe.just(user);
-        doReturn(userMaybe).when(repository).findByDocumentNumber(yankiRequest.getDocumentNumber());
+        doReturn(userMaybe).when(repository).findOneByDocumentNumber(yankiRequest.getDocumentNumber());
         // When & Then
         Exception exception = assertThrows(RuntimeException.class, () -> {
             bootCoinUserService.associateYanki(yankiRequest).blockingGet();
         });
         assertEquals("User already has a Yanki account associated", exception.getMessage());
-        verify(repository).findByDocumentNumber(yankiRequest.getDocumentNumber());
+        verify(repository).findOneByDocumentNumber(yankiRequest.getDocumentNumber());
         verifyNoInteractions(eventListener);
     }
 }
\ No newline at end of file
@@ -0,0 +1,61 @@
+package com.bank.bootcoinservice.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+public class KeyedLockTest {
+    private final KeyedLock<String> lock = new KeyedLock<>();
+    @Test
+    void withLocks_SameKeyWaitsForPreviousAction() {
+        // Given
+        Sinks.Empty<Void> firstDone = Sinks.empty();
+        AtomicInteger started = new AtomicInteger();
+        lock.withLocks(List.of("a"), () -> {
+            started.incrementAndGet();
+            return firstDone.asMono();
+        }).subscribe();
+        // When
+        lock.withLocks(List.of("a", "b"), () -> Mono.fromRunnable(started::incrementAndGet)).subscribe();
+        // Then
+        assertEquals(1, started.get());
+        firstDone.tryEmitEmpty();
+        assertEquals(2, started.get());
+    }
+    @Test
+    void withLocks_OtherKeysDoNotWait() {
+        // Given
+        lock.withLocks(List.of("a"), Mono::never).subscribe();
+        // When
+        String result = lock.withLocks(List.of("b", "c"), () -> Mono.just("done")).block();
+        // Then
+        assertEquals("done", result);
+    }
+    @Test
+    void withLocks_CancelledWaiterKeepsTheOrder() {
+        // Given
+        Sinks.Empty<Void> firstDone = Sinks.empty();
+        AtomicInteger started = new AtomicInteger();
+        lock.withLocks(List.of("a"), firstDone::asMono).subscribe();
+        Disposable cancelled = lock.withLocks(List.of("a"), () -> Mono.fromRunnable(started::incrementAndGet))
+                .subscribe();
+        lock.withLocks(List.of("a"), () -> Mono.fromRunnable(started::incrementAndGet)).subscribe();
+        // When
+        cancelled.dispose();
+        // Then
+        assertEquals(0, started.get());
+        firstDone.tryEmitEmpty();
+        assertEquals(1, started.get());
+    }
+    @Test
+    void withLocks_FailedActionReleasesTheKey() {
+        // Given
+        Mono<Object> failing = lock.withLocks(List.of("a"), () -> Mono.error(new IllegalStateException("boom")));
+        // When & Then
+        assertThrows(IllegalStateException.class, failing::block);
+        assertEquals("next", lock.withLocks(List.of("a"), () -> Mono.just("next")).block());
+    }
+}
@@ -0,0 +1,58 @@
+package com.bank.bootcoinservice.util;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import static org.junit.jupiter.api.Assertions.*;
+public class SingleFlightTest {
+    private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+    @Test
+    void execute_ConcurrentCallersShareOneLoad() {
+        // Given
+        AtomicInteger loads = new AtomicInteger();
+        Sinks.One<String> result = Sinks.one();
+        Mono<String> first = singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            return result.asMono();
+        });
+        Mono<String> second = singleFlight.execute("key", () -> {
+            loads.incrementAndGet();
+            return Mono.just("other");
+        });
+        AtomicInteger received = new AtomicInteger();
+        first.subscribe(value -> received.incrementAndGet());
+        second.subscribe(value -> received.incrementAndGet());
+        // When
+        result.tryEmitValue("value");
+        // Then
+        assertEquals(1, loads.get());
+        assertEquals(2, received.get());
+        assertEquals("fresh", singleFlight.execute("key", () -> Mono.just("fresh")).block());
+    }
+    @Test
+    void execute_CancelledByEveryCallerCancelsTheLoad() {
+        // Given
+        AtomicBoolean cancelled = new AtomicBoolean();
+        Mono<String> never = Mono.<String>never().doOnCancel(() -> cancelled.set(true));
+        Disposable first = singleFlight.execute("key", () -> never).subscribe();
+        Disposable second = singleFlight.execute("key", () -> never).subscribe();
+        // When
+        first.dispose();
+        assertFalse(cancelled.get());
+        second.dispose();
+        // Then
+        assertTrue(cancelled.get());
+        assertEquals("fresh", singleFlight.execute("key", () -> Mono.just("fresh")).block());
+    }
+    @Test
+    void execute_ErrorIsSharedAndReleasesTheKey() {
+        // Given
+        Mono<String> failing = singleFlight.execute("key", () -> Mono.error(new IllegalStateException("down")));
+        // When & Then
+        assertThrows(IllegalStateException.class, failing::block);
+        assertEquals("fresh", singleFlight.execute("key", () -> Mono.just("fresh")).block());
+    }
+}